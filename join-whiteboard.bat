@@ -22,8 +22,12 @@ REM Get username if provided
 set USERNAME=user
 if not "%~1"=="" set USERNAME=%1
 
+REM Get board ID if provided
+set BOARD=default
+if not "%~2"=="" set BOARD=%2
+
 REM Start the client
-echo Running WhiteboardClient in join mode connecting to localhost:8001 as %USERNAME%...
-java -cp target/sync-board-1.0.0.jar -Djava.rmi.server.hostname=localhost -Djava.security.policy=security.policy com.jaiswal.WhiteboardLauncher join localhost 8001 %USERNAME%
+echo Running WhiteboardClient in join mode connecting to localhost:8001 as %USERNAME% on board %BOARD%...
+java -cp target/sync-board-1.0.0.jar -Djava.rmi.server.hostname=localhost -Djava.security.policy=security.policy com.jaiswal.WhiteboardLauncher join localhost 8001 %USERNAME% %BOARD%
 
 pause
\ No newline at end of file
@@ -9,8 +9,12 @@ import java.text.SimpleDateFormat;
 import java.util.Date;
 
 import com.jaiswal.client.CreateWhiteboard;
+import com.jaiswal.cluster.ClusterDirectory;
+import com.jaiswal.replication.ReplicaNode;
+import com.jaiswal.replication.ReplicationSource;
 import com.jaiswal.client.JoinWhiteboard;
-import com.jaiswal.server.WhiteboardServer;
+import com.jaiswal.server.BoardRegistry;
+import com.jaiswal.shared.IRemoteBoardDirectory;
 
 /**
  * A unified launcher for the SyncBoard application.
@@ -51,6 +55,9 @@ public class WhiteboardLauncher {
                 case "server":
                     startServer(remainingArgs);
                     break;
+                case "directory":
+                    startDirectory(remainingArgs);
+                    break;
                 case "create":
                     createWhiteboard(remainingArgs);
                     break;
@@ -87,8 +94,8 @@ public class WhiteboardLauncher {
             String localIP = InetAddress.getLocalHost().getHostAddress();
             System.out.println("Local IP address: " + localIP);
 
-            // Create the whiteboard server with the specified host and port
-            WhiteboardServer server = new WhiteboardServer(hostname, port);
+            // Create the server hosting all boards with the specified host and port
+            BoardRegistry server = new BoardRegistry(hostname, port);
             server.start();  // Start the server (this will create registry and bind)
 
             System.out.println("WhiteboardServer is running on " + hostname + ":" + port);
@@ -98,6 +105,41 @@ public class WhiteboardLauncher {
         }
     }
 
+    private static void startDirectory(String[] args) {
+        try {
+            int port = args.length > 0 ? Integer.parseInt(args[0]) : 9000;
+            System.out.println("Starting cluster directory on port " + port + "...");
+            ClusterDirectory.start(port);
+        } catch (NumberFormatException e) {
+            handleException("Invalid port number", e);
+        } catch (Exception e) {
+            handleException("Error starting cluster directory", e);
+        }
+    }
+
+    /**
+     * Asks the cluster directory, when one is configured, which node serves a board
+     * @param hostname Server given on the command line
+     * @param port Port given on the command line
+     * @param boardId The board
+     * @return The node to connect to, "host:port"
+     */
+    private static String locateBoard(String hostname, int port, String boardId) {
+        String directory = System.getProperty(ClusterDirectory.DIRECTORY_PROPERTY);
+        if (directory == null) {
+            return hostname + ":" + port;
+        }
+        try {
+            String owner = ClusterDirectory.lookup(directory).locate(boardId);
+            System.out.println("Board " + boardId + " is served by " + owner);
+            return owner;
+        } catch (Exception e) {
+            // Any node redirects to the owner, so fall back to the given one
+            System.err.println("Error locating board " + boardId + ": " + e.getMessage());
+            return hostname + ":" + port;
+        }
+    }
+
     private static void createWhiteboard(String[] args) {
         try {
             System.out.println("Creating a new whiteboard as manager...");
@@ -105,18 +147,22 @@ public class WhiteboardLauncher {
             // Validate args
             if (args.length < 2) {
                 System.out.println("Error: Missing required arguments for create command.");
-                System.out.println("Usage: syncboard create <serverHostname> <port> <username>");
+                System.out.println("Usage: syncboard create <serverHostname> <port> <username> [boardId]");
                 System.exit(1);
             }
 
             String hostname = args[0];
             int port = Integer.parseInt(args[1]);
             String username = args.length > 2 ? args[2] : "manager";
+            String boardId = args.length > 3 ? args[3] : IRemoteBoardDirectory.DEFAULT_BOARD;
 
-            System.out.println("Connecting to server at " + hostname + ":" + port + " as " + username);
+            String node = locateBoard(hostname, port, boardId);
+            hostname = node.substring(0, node.lastIndexOf(':'));
+            port = Integer.parseInt(node.substring(node.lastIndexOf(':') + 1));
+            System.out.println("Connecting to board " + boardId + " at " + hostname + ":" + port + " as " + username);
 
             // Execute create whiteboard
-            String[] createArgs = {hostname, String.valueOf(port), username};
+            String[] createArgs = {hostname, String.valueOf(port), username, boardId};
             CreateWhiteboard.main(createArgs);
         } catch (NumberFormatException e) {
             handleException("Invalid port number", e);
@@ -132,18 +178,22 @@ public class WhiteboardLauncher {
             // Validate args
             if (args.length < 2) {
                 System.out.println("Error: Missing required arguments for join command.");
-                System.out.println("Usage: syncboard join <serverHostname> <port> <username>");
+                System.out.println("Usage: syncboard join <serverHostname> <port> <username> [boardId]");
                 System.exit(1);
             }
 
             String hostname = args[0];
             int port = Integer.parseInt(args[1]);
             String username = args.length > 2 ? args[2] : "user";
+            String boardId = args.length > 3 ? args[3] : IRemoteBoardDirectory.DEFAULT_BOARD;
 
-            System.out.println("Connecting to server at " + hostname + ":" + port + " as " + username);
+            String node = locateBoard(hostname, port, boardId);
+            hostname = node.substring(0, node.lastIndexOf(':'));
+            port = Integer.parseInt(node.substring(node.lastIndexOf(':') + 1));
+            System.out.println("Connecting to board " + boardId + " at " + hostname + ":" + port + " as " + username);
 
             // Execute join whiteboard
-            String[] joinArgs = {hostname, String.valueOf(port), username};
+            String[] joinArgs = {hostname, String.valueOf(port), username, boardId};
             JoinWhiteboard.main(joinArgs);
         } catch (NumberFormatException e) {
             handleException("Invalid port number", e);
@@ -158,15 +208,24 @@ public class WhiteboardLauncher {
         System.out.println("Usage: syncboard <command> [options]");
         System.out.println();
         System.out.println("Commands:");
-        System.out.println("  server <hostname> <port>       - Start the whiteboard server");
-        System.out.println("  create <server> <port> <user>  - Create a new whiteboard as manager");
-        System.out.println("  join <server> <port> <user>    - Join an existing whiteboard");
-        System.out.println("  help                           - Show this help message");
+        System.out.println("  server <hostname> <port>               - Start the server hosting all boards");
+        System.out.println("  directory [port]                       - Start a cluster directory (default 9000)");
+        System.out.println("  create <server> <port> <user> [board]  - Create a new whiteboard as manager");
+        System.out.println("  join <server> <port> <user> [board]    - Join an existing whiteboard");
+        System.out.println("  help                                   - Show this help message");
         System.out.println();
         System.out.println("Examples:");
         System.out.println("  syncboard server localhost 8001");
         System.out.println("  syncboard create localhost 8001 manager");
         System.out.println("  syncboard join localhost 8001 user1");
+        System.out.println("  syncboard create localhost 8001 manager design-review");
+        System.out.println("  syncboard join localhost 8001 user2 design-review");
+        System.out.println();
+        System.out.println("Cluster: start a directory, then run servers and clients with");
+        System.out.println("  -D" + ClusterDirectory.DIRECTORY_PROPERTY + "=<host>:<port> to spread boards over the servers");
+        System.out.println();
+        System.out.println("Hot standby: run the primary server with -D" + ReplicationSource.PORT_PROPERTY + "=<port> and each follower");
+        System.out.println("  with its own -D" + ReplicationSource.PORT_PROPERTY + " plus -D" + ReplicaNode.PRIMARY_PROPERTY + "=<primary>:<port>");
     }
 
     private static void setupErrorLogging() {
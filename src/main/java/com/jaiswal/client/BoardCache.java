@@ -0,0 +1,147 @@
+package com.jaiswal.client;
+
+import com.jaiswal.shared.ElementCodec;
+import com.jaiswal.shared.IDrawable;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The last copy of a board seen by this client, kept on disk so that
+ * rejoining only fetches what changed since.
+ * <pre>
+ * header   magic, format, epoch, version, element count
+ * elements in stacking order, see {@link ElementCodec#write}
+ * </pre>
+ * Copies live in {@value #CACHE_DIR_PROPERTY}, by default ~/.syncboard/cache,
+ * one per server and board. A version only means something together with the
+ * epoch of the server copy it was taken from. A missing or damaged cache file
+ * just makes the client fetch the whole board.
+ */
+public class BoardCache {
+    // System property: directory for cached boards
+    public static final String CACHE_DIR_PROPERTY = "syncboard.cache.dir";
+    private static final int MAGIC = 0x53424443; // "SBDC"
+    private static final short FORMAT = 1;
+
+    /**
+     * A board as cached
+     */
+    public static final class CachedBoard {
+        private final long epoch;
+        private final long version;
+        private final List<IDrawable> elements;
+
+        CachedBoard(long epoch, long version, List<IDrawable> elements) {
+            this.epoch = epoch;
+            this.version = version;
+            this.elements = elements;
+        }
+
+        /**
+         * @return Epoch of the server copy the board was taken from
+         */
+        public long getEpoch() {
+            return epoch;
+        }
+
+        /**
+         * @return Board version the elements reflect
+         */
+        public long getVersion() {
+            return version;
+        }
+
+        /**
+         * @return Elements in stacking order
+         */
+        public List<IDrawable> getElements() {
+            return elements;
+        }
+    }
+
+    private final Path path;
+
+    /**
+     * Constructor for BoardCache
+     * @param host The server the board is opened on
+     * @param port The server port
+     * @param boardId The board
+     */
+    public BoardCache(String host, int port, String boardId) {
+        String dir = System.getProperty(CACHE_DIR_PROPERTY,
+                Paths.get(System.getProperty("user.home"), ".syncboard", "cache").toString());
+        this.path = Paths.get(dir, (host + "_" + port + "-" + boardId).replaceAll("[^A-Za-z0-9._-]", "_")
+                + ".board");
+    }
+
+    /**
+     * @return The cached board, or null if there is none or it cannot be read
+     */
+    public CachedBoard load() {
+        if (!Files.exists(path)) {
+            return null;
+        }
+        try {
+            ByteBuffer in = ByteBuffer.wrap(Files.readAllBytes(path));
+            if (in.getInt() != MAGIC || in.getShort() != FORMAT) {
+                return null;
+            }
+            long epoch = in.getLong();
+            long version = in.getLong();
+            int count = in.getInt();
+            List<IDrawable> elements = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                elements.add(ElementCodec.read(in));
+            }
+            System.out.println("Loaded cached board v" + version + " with " + count + " elements from " + path);
+            return new CachedBoard(epoch, version, elements);
+        } catch (IOException | BufferUnderflowException | IndexOutOfBoundsException e) {
+            System.err.println("Ignoring damaged board cache " + path + ": " + e);
+            return null;
+        }
+    }
+
+    /**
+     * Replaces the cached board. Written to a temporary file first, so a
+     * crash midway leaves the old copy.
+     * @param epoch Epoch of the server copy the board was taken from
+     * @param version Board version the elements reflect
+     * @param elements Elements in stacking order
+     */
+    public void save(long epoch, long version, List<IDrawable> elements) {
+        Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+        try {
+            Files.createDirectories(path.toAbsolutePath().getParent());
+            try (DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(Files.newOutputStream(temp), 64 * 1024))) {
+                out.writeInt(MAGIC);
+                out.writeShort(FORMAT);
+                out.writeLong(epoch);
+                out.writeLong(version);
+                out.writeInt(elements.size());
+                for (IDrawable drawable : elements) {
+                    ElementCodec.write(out, drawable);
+                }
+            }
+            try {
+                Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING);
+            }
+            System.out.println("Cached board v" + version + " with " + elements.size() + " elements in " + path);
+        } catch (IOException e) {
+            System.err.println("Error caching board in " + path + ": " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,476 @@
+package com.jaiswal.client;
+
+import com.jaiswal.shared.BoardDigest;
+import com.jaiswal.shared.BoardOp;
+import com.jaiswal.shared.IDrawable;
+import com.jaiswal.shared.IRemoteWhiteboard;
+import com.jaiswal.shared.SnapshotChunk;
+
+import java.awt.Rectangle;
+import java.rmi.RemoteException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Keeps the local canvas in step with the server's op stream.
+ * On join, and whenever the server resets the board, the snapshot is pulled in
+ * bounded chunks on a background thread. Ops arriving meanwhile are buffered
+ * and replayed once the snapshot is in place, skipping those it already covers.
+ * A failed chunk is retried on its own instead of restarting the transfer.
+ * <p>
+ * The server sends the current viewport's elements first, so each chunk is
+ * shown as it lands. Once the last chunk is in, the canvas is rebuilt in
+ * the stacking order the chunks carry.
+ * <p>
+ * A client with a copy of the board cached from an earlier visit shows it
+ * at once and only fetches the ops since, unless the server's history no
+ * longer reaches back that far. Leaving the board updates the cache.
+ * <p>
+ * Now and then the canvas is checked against the board through their
+ * {@link BoardDigest}s, comparing group hashes and then the buckets of the
+ * groups that differ, and only the elements of differing buckets are fetched.
+ */
+public class BoardSynchronizer {
+    private static final int MAX_CHUNK_ATTEMPTS = 5;
+    private static final long RETRY_DELAY_MS = 250;
+    private static final long CACHE_WRITE_TIMEOUT_MS = 5_000;
+    private static final long DIGEST_READ_TIMEOUT_MS = 5_000;
+    private static final int MAX_VERIFY_ATTEMPTS = 3;
+    // verifyOnce result when the server no longer has the version the canvas was read at
+    private static final int VERSION_GONE = -2;
+
+    private final String username;
+    private final CanvasUpdateCoalescer coalescer;
+    private final Consumer<String> errorHandler;
+    private final Supplier<Rectangle> viewport;
+    private final ExecutorService transferThread = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "snapshot-transfer");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private volatile IRemoteWhiteboard server;
+    // Epoch of the server copy the canvas' versions belong to, 0 until known
+    private volatile long epoch = 0;
+
+    // Guarded by this. Starts out syncing so ops pushed before start() are held back.
+    private boolean syncing = true;
+    private final List<BoardOp> buffered = new ArrayList<>();
+    private long appliedSequence = 0;
+    // Sequence of the newest RESET seen while syncing, makes an older transfer stale
+    private long resetSequence = 0;
+    // Set while the client resumes its session, the canvas is complete up to appliedSequence
+    private boolean resuming = false;
+    // Cached board to catch up from instead of fetching a snapshot, used by the next transfer
+    private BoardCache.CachedBoard cached;
+
+    /**
+     * Constructor for BoardSynchronizer
+     * @param username The local user, identifies the snapshot on the server
+     * @param coalescer Receives ops and snapshots for display
+     * @param errorHandler Reports transfer failures to the user
+     * @param viewport Supplies the visible canvas region, may return null
+     */
+    public BoardSynchronizer(String username, CanvasUpdateCoalescer coalescer, Consumer<String> errorHandler,
+                             Supplier<Rectangle> viewport) {
+        this.username = username;
+        this.coalescer = coalescer;
+        this.errorHandler = errorHandler;
+        this.viewport = viewport;
+    }
+
+    /**
+     * Start synchronizing with a server the client has just joined
+     * @param server The server stub
+     * @param cached The board as cached on an earlier visit, or null
+     */
+    public synchronized void start(IRemoteWhiteboard server, BoardCache.CachedBoard cached) {
+        this.server = server;
+        this.cached = cached;
+        resuming = false;
+        beginSnapshot();
+    }
+
+    /**
+     * Holds back pushed ops while the client resumes its session after a dropped connection
+     * @return Sequence number to resume after, or -1 if the canvas was still being fetched
+     */
+    public synchronized long pause() {
+        if (syncing && !resuming) {
+            return -1;
+        }
+        syncing = true;
+        resuming = true;
+        return appliedSequence;
+    }
+
+    /**
+     * Continues after the client resumed its session: the ops it missed are
+     * applied, then those pushed meanwhile
+     * @param server The server the session resumed on
+     * @param missed Ops after the sequence number {@link #pause()} returned
+     */
+    public synchronized void resume(IRemoteWhiteboard server, List<BoardOp> missed) {
+        this.server = server;
+        resuming = false;
+        syncing = false;
+        List<BoardOp> pending = new ArrayList<>(missed.size() + buffered.size());
+        pending.addAll(missed);
+        pending.addAll(buffered);
+        buffered.clear();
+        deliver(pending);
+    }
+
+    /**
+     * Writes the canvas to the cache, unless it is still being fetched
+     * @param cache The cache of this board
+     */
+    public void saveTo(BoardCache cache) {
+        CompletableFuture<Void> written;
+        synchronized (this) {
+            long from = epoch;
+            if (syncing || from == 0) {
+                return;
+            }
+            written = coalescer.readBoard((version, elements) -> cache.save(from, version, elements));
+        }
+        try {
+            written.get(CACHE_WRITE_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException | TimeoutException e) {
+            System.err.println("Board not cached: " + e);
+        }
+    }
+
+    /**
+     * Checks the canvas against the server's board and repairs the buckets
+     * that differ. The server compares at the version the canvas was read at,
+     * so ops arriving meanwhile do not spoil the check. If the server can no
+     * longer tell the board at that version, as after a clear, the canvas is
+     * read again. The check is skipped while the canvas is being fetched.
+     * @return Number of buckets repaired, or -1 if the check was given up
+     */
+    public int verify() {
+        for (int attempt = 1; ; attempt++) {
+            int repaired = verifyOnce();
+            if (repaired != VERSION_GONE) {
+                return repaired;
+            }
+            if (attempt >= MAX_VERIFY_ATTEMPTS) {
+                return -1;
+            }
+        }
+    }
+
+    private int verifyOnce() {
+        IRemoteWhiteboard board;
+        long[] version = new long[1];
+        long[][] local = new long[1][];
+        CompletableFuture<Void> read;
+        synchronized (this) {
+            if (syncing) {
+                return -1;
+            }
+            board = server;
+            read = coalescer.readDigest((v, buckets) -> {
+                version[0] = v;
+                local[0] = buckets;
+            });
+        }
+        try {
+            read.get(DIGEST_READ_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return -1;
+        } catch (ExecutionException | TimeoutException e) {
+            System.err.println("Canvas not verified: " + e);
+            return -1;
+        }
+
+        try {
+            int[] root = {0};
+            long[] groups = board.getDigestNodes(username, version[0], root);
+            if (groups == null) {
+                return VERSION_GONE;
+            }
+            int[] differingGroups = differing(groups, BoardDigest.children(local[0], root), BoardDigest.FIRST_GROUP);
+            if (differingGroups.length == 0) {
+                return 0;
+            }
+            long[] buckets = board.getDigestNodes(username, version[0], differingGroups);
+            if (buckets == null) {
+                return VERSION_GONE;
+            }
+            int[] differingBuckets = new int[0];
+            for (int g = 0; g < differingGroups.length; g++) {
+                int group = differingGroups[g] - BoardDigest.FIRST_GROUP;
+                int[] found = differing(Arrays.copyOfRange(buckets, g * BoardDigest.FANOUT, (g + 1) * BoardDigest.FANOUT),
+                        Arrays.copyOfRange(local[0], group * BoardDigest.FANOUT, (group + 1) * BoardDigest.FANOUT),
+                        group * BoardDigest.FANOUT);
+                int from = differingBuckets.length;
+                differingBuckets = Arrays.copyOf(differingBuckets, from + found.length);
+                System.arraycopy(found, 0, differingBuckets, from, found.length);
+            }
+            List<IDrawable> elements = board.fetchBuckets(username, version[0], differingBuckets);
+            if (elements == null) {
+                return VERSION_GONE;
+            }
+            coalescer.submitRepair(version[0], differingBuckets, elements);
+            System.out.println("Canvas differed from the board in " + differingBuckets.length + " buckets at v"
+                    + version[0] + ", repaired with " + elements.size() + " elements");
+            return differingBuckets.length;
+        } catch (RemoteException e) {
+            System.err.println("Canvas not verified: " + e.getMessage());
+            return -1;
+        }
+    }
+
+    /**
+     * @param remote Hashes of sibling nodes on the server
+     * @param local The same nodes' hashes here
+     * @param first Number of the first of them
+     * @return Numbers of the nodes whose hashes differ
+     */
+    private static int[] differing(long[] remote, long[] local, int first) {
+        int[] nodes = new int[remote.length];
+        int count = 0;
+        for (int i = 0; i < remote.length; i++) {
+            if (remote[i] != local[i]) {
+                nodes[count++] = first + i;
+            }
+        }
+        return Arrays.copyOf(nodes, count);
+    }
+
+    /**
+     * Stop the transfer thread when the client leaves the board
+     */
+    public void shutdown() {
+        transferThread.shutdownNow();
+    }
+
+    /**
+     * Handle ops pushed by the server. Safe to call from any thread.
+     * @param ops Ops in sequence order
+     */
+    public synchronized void onOps(List<BoardOp> ops) {
+        deliver(ops);
+    }
+
+    /**
+     * @return Sequence number of the last op reflected on the local canvas
+     */
+    public synchronized long getAppliedSequence() {
+        return appliedSequence;
+    }
+
+    private void deliver(List<BoardOp> ops) {
+        List<BoardOp> batch = new ArrayList<>(ops.size());
+        for (BoardOp op : ops) {
+            if (syncing) {
+                buffered.add(op);
+                if (op.getKind() == BoardOp.Kind.RESET) {
+                    resetSequence = Math.max(resetSequence, op.getSequence());
+                }
+            } else if (op.getSequence() > appliedSequence) {
+                batch.add(op);
+                appliedSequence = op.getSequence();
+                if (op.getKind() == BoardOp.Kind.RESET) {
+                    // Whatever follows depends on the new board, hold it back
+                    beginSnapshot();
+                }
+            }
+        }
+        if (!batch.isEmpty()) {
+            coalescer.submitOps(batch);
+        }
+    }
+
+    private void beginSnapshot() {
+        syncing = true;
+        transferThread.execute(this::transferSnapshot);
+    }
+
+    /**
+     * Pull all chunks of a snapshot, runs on the transfer thread
+     */
+    private void transferSnapshot() {
+        Thread thread = Thread.currentThread();
+        try {
+            epoch = withRetry(server::getEpoch);
+            BoardCache.CachedBoard fromCache = takeCached();
+            if (fromCache != null && catchUp(fromCache)) {
+                return;
+            }
+            while (true) {
+                thread.setPriority(Thread.NORM_PRIORITY);
+                Rectangle visible = viewport.get();
+                SnapshotChunk first = withRetry(() -> server.openSnapshot(username, visible));
+                if (first == null) {
+                    throw new RemoteException("Server refused snapshot for " + username);
+                }
+
+                // Show the visible region straight away, then fill in around it
+                List<SnapshotChunk> chunks = new ArrayList<>(first.getChunkCount());
+                chunks.add(first);
+                coalescer.submitSnapshot(first.getVersion(), first.getElements());
+                boolean complete = true;
+                for (int index = 1; index < first.getChunkCount(); index++) {
+                    if (isStale(first.getVersion())) {
+                        // The board was replaced meanwhile, this snapshot is no longer worth finishing
+                        complete = false;
+                        break;
+                    }
+                    int chunkIndex = index;
+                    SnapshotChunk chunk = withRetry(
+                            () -> server.fetchSnapshotChunk(username, first.getVersion(), chunkIndex));
+                    if (chunk == null) {
+                        // Snapshot expired on the server, start over
+                        complete = false;
+                        break;
+                    }
+                    if (chunk.getTier() == SnapshotChunk.TIER_REMAINDER) {
+                        // Off-screen elements should not compete with drawing and painting
+                        thread.setPriority(Thread.MIN_PRIORITY);
+                    }
+                    coalescer.submitSnapshotChunk(chunk.getElements());
+                    chunks.add(chunk);
+                }
+
+                if (complete) {
+                    finishSnapshot(first.getVersion(), chunks);
+                    return;
+                }
+            }
+        } catch (RemoteException e) {
+            errorHandler.accept("Error loading whiteboard contents: " + e.getMessage());
+            synchronized (this) {
+                // Show what we have rather than freezing the canvas
+                syncing = false;
+                List<BoardOp> pending = new ArrayList<>(buffered);
+                buffered.clear();
+                deliver(pending);
+            }
+        }
+    }
+
+    private synchronized BoardCache.CachedBoard takeCached() {
+        BoardCache.CachedBoard board = cached;
+        cached = null;
+        return board;
+    }
+
+    /**
+     * Brings a cached board up to date instead of fetching it whole
+     * @return false if the server cannot do so, the cached elements are then shown until the snapshot replaces them
+     */
+    private boolean catchUp(BoardCache.CachedBoard board) throws RemoteException {
+        if (board.getEpoch() != epoch) {
+            // Taken from another copy of the board or an earlier run of the server
+            return false;
+        }
+        coalescer.submitSnapshot(board.getVersion(), board.getElements());
+        List<BoardOp> behind = withRetry(() -> server.fetchOpsSince(username, board.getEpoch(), board.getVersion()));
+        if (behind == null) {
+            return false;
+        }
+        System.out.println("Caught up from cached v" + board.getVersion() + ", " + behind.size() + " ops behind");
+        synchronized (this) {
+            appliedSequence = board.getVersion();
+            syncing = false;
+            List<BoardOp> pending = new ArrayList<>(behind.size() + buffered.size());
+            pending.addAll(behind);
+            pending.addAll(buffered);
+            buffered.clear();
+            deliver(pending);
+        }
+        return true;
+    }
+
+    private synchronized boolean isStale(long version) {
+        return resetSequence > version;
+    }
+
+    private synchronized void finishSnapshot(long version, List<SnapshotChunk> chunks) {
+        if (!isStackingOrdered(chunks)) {
+            // Chunks arrived viewport first, put every element back at its stacking position
+            coalescer.submitSnapshot(version, inStackingOrder(chunks));
+        }
+        appliedSequence = version;
+        syncing = false;
+
+        // Replay ops that arrived during the transfer; older ones are already in the snapshot
+        List<BoardOp> pending = new ArrayList<>(buffered);
+        buffered.clear();
+        deliver(pending);
+    }
+
+    private static boolean isStackingOrdered(List<SnapshotChunk> chunks) {
+        int last = -1;
+        for (SnapshotChunk chunk : chunks) {
+            for (int position : chunk.getPositions()) {
+                if (position < last) {
+                    return false;
+                }
+                last = position;
+            }
+        }
+        return true;
+    }
+
+    private static List<IDrawable> inStackingOrder(List<SnapshotChunk> chunks) {
+        int slots = 0;
+        for (SnapshotChunk chunk : chunks) {
+            for (int position : chunk.getPositions()) {
+                slots = Math.max(slots, position + 1);
+            }
+        }
+        // Positions are distinct, gaps are elements cleared while the snapshot was read
+        IDrawable[] byPosition = new IDrawable[slots];
+        for (SnapshotChunk chunk : chunks) {
+            int[] positions = chunk.getPositions();
+            for (int i = 0; i < positions.length; i++) {
+                byPosition[positions[i]] = chunk.getElements().get(i);
+            }
+        }
+        List<IDrawable> elements = new ArrayList<>(slots);
+        for (IDrawable drawable : byPosition) {
+            if (drawable != null) {
+                elements.add(drawable);
+            }
+        }
+        return elements;
+    }
+
+    private interface RemoteCall<T> {
+        T call() throws RemoteException;
+    }
+
+    private static <T> T withRetry(RemoteCall<T> call) throws RemoteException {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return call.call();
+            } catch (RemoteException e) {
+                if (attempt >= MAX_CHUNK_ATTEMPTS) {
+                    throw e;
+                }
+                try {
+                    Thread.sleep(RETRY_DELAY_MS * attempt);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    throw e;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,278 @@
+package com.jaiswal.client;
+
+import com.jaiswal.gui.components.CanvasScene;
+import com.jaiswal.gui.components.SceneBuilder;
+import com.jaiswal.shared.BoardOp;
+import com.jaiswal.shared.ClientOp;
+import com.jaiswal.shared.IDrawable;
+
+import javax.swing.Timer;
+import java.util.Collections;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.LongFunction;
+
+/**
+ * Coalesces canvas updates arriving from the server so that the event dispatch
+ * thread applies at most one scene per display frame.
+ * Incoming ops and snapshots are queued and merged into the draw list on a
+ * background thread, which then builds a single render-ready scene for all of
+ * them. Intermediate scenes that were never built or never shown are counted
+ * as dropped. Ops drawn locally are shown on top until the server's updates
+ * include them, so drawing appears at once even while disconnected. Reads of
+ * the draw list and local drawing share the queue to stay in order with the
+ * server's updates, but are not counted as updates, and reads build no scene.
+ */
+public class CanvasUpdateCoalescer {
+    // Roughly one frame at 60Hz
+    private static final int FRAME_INTERVAL_MS = 16;
+
+    private final Consumer<CanvasScene> sink;
+    // Only touched from the preparation thread
+    private final SceneBuilder sceneBuilder = new SceneBuilder();
+    private final ExecutorService preparer = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "canvas-prepare");
+        t.setDaemon(true);
+        return t;
+    });
+
+    // Updates waiting to be merged, and prepared scene waiting for a frame
+    private final Queue<Update> pending = new ConcurrentLinkedQueue<>();
+    private final AtomicReference<CanvasScene> ready = new AtomicReference<>();
+    private final AtomicBoolean prepareScheduled = new AtomicBoolean(false);
+    private final AtomicBoolean frameScheduled = new AtomicBoolean(false);
+    private final Timer frameTimer;
+    // Supplies the local ops not yet in the draw list, given the draw list's board version
+    private volatile LongFunction<List<ClientOp>> localOps = version -> Collections.emptyList();
+
+    // Statistics
+    private final AtomicInteger queueDepth = new AtomicInteger();
+    private final AtomicLong receivedCount = new AtomicLong();
+    private final AtomicLong appliedCount = new AtomicLong();
+    private final AtomicLong droppedCount = new AtomicLong();
+
+    /**
+     * Constructor for CanvasUpdateCoalescer
+     * @param sink Receives the latest prepared scene on the event dispatch thread
+     */
+    public CanvasUpdateCoalescer(Consumer<CanvasScene> sink) {
+        this.sink = sink;
+        this.frameTimer = new Timer(FRAME_INTERVAL_MS, e -> applyReady());
+        this.frameTimer.setRepeats(false);
+        this.frameTimer.setCoalesce(true);
+    }
+
+    /**
+     * Queue a batch of ops. Safe to call from any thread.
+     * @param ops Ops in sequence order
+     */
+    public void submitOps(List<BoardOp> ops) {
+        enqueue(Source.REMOTE, builder -> {
+            for (BoardOp op : ops) {
+                builder.apply(op);
+            }
+        });
+    }
+
+    /**
+     * Queue a snapshot replacing the whole canvas. Safe to call from any thread.
+     * @param version The snapshot's board version
+     * @param elements Snapshot elements in stacking order
+     */
+    public void submitSnapshot(long version, List<IDrawable> elements) {
+        enqueue(Source.REMOTE, builder -> builder.reset(version, elements));
+    }
+
+    /**
+     * Queue a further chunk of a snapshot begun with submitSnapshot, so the
+     * canvas fills in as the transfer progresses. Safe to call from any thread.
+     * @param elements Chunk elements
+     */
+    public void submitSnapshotChunk(List<IDrawable> elements) {
+        enqueue(Source.REMOTE, builder -> builder.append(elements));
+    }
+
+    /**
+     * Reads the draw list once the updates queued so far are merged into it. Safe to call from any thread.
+     * @param reader Given the board version and the elements in stacking order, runs on the preparation thread
+     * @return Completes once the reader ran
+     */
+    public CompletableFuture<Void> readBoard(BiConsumer<Long, List<IDrawable>> reader) {
+        return read(builder -> reader.accept(builder.getVersion(), builder.getElements()));
+    }
+
+    /**
+     * Reads the draw list's digest once the updates queued so far are merged into it. Safe to call from any thread.
+     * @param reader Given the board version and a copy of the digest's bucket hashes
+     * @return Completes once the reader ran
+     */
+    public CompletableFuture<Void> readDigest(BiConsumer<Long, long[]> reader) {
+        return read(builder -> reader.accept(builder.getVersion(), builder.getDigestBuckets()));
+    }
+
+    private CompletableFuture<Void> read(Consumer<SceneBuilder> reader) {
+        CompletableFuture<Void> done = new CompletableFuture<>();
+        enqueue(Source.READ, builder -> {
+            try {
+                reader.accept(builder);
+                done.complete(null);
+            } catch (RuntimeException e) {
+                done.completeExceptionally(e);
+            }
+        });
+        return done;
+    }
+
+    /**
+     * Queue replacing digest buckets that differ from the server's. Ops applied
+     * since the version they were compared at are kept, see SceneBuilder.repair.
+     * Safe to call from any thread.
+     * @param version Board version the buckets were compared at
+     * @param buckets The differing buckets
+     * @param elements The server's elements in those buckets at that version, in stacking order
+     */
+    public void submitRepair(long version, int[] buckets, List<IDrawable> elements) {
+        enqueue(Source.REMOTE, builder -> builder.repair(version, buckets, elements));
+    }
+
+    /**
+     * Sets where the locally drawn ops shown over the canvas come from
+     * @param localOps Given the board version the canvas shows, returns the local ops it lacks
+     */
+    public void setLocalOps(LongFunction<List<ClientOp>> localOps) {
+        this.localOps = localOps;
+    }
+
+    /**
+     * Rebuilds the scene after local ops were drawn or confirmed. Safe to call from any thread.
+     */
+    public void localOpsChanged() {
+        enqueue(Source.LOCAL, builder -> {
+        });
+    }
+
+    private void enqueue(Source source, Consumer<SceneBuilder> action) {
+        if (source == Source.REMOTE) {
+            receivedCount.incrementAndGet();
+            queueDepth.incrementAndGet();
+        }
+        pending.add(new Update(source, action));
+
+        // Only one preparation is queued at a time; later updates ride along with it
+        if (prepareScheduled.compareAndSet(false, true)) {
+            preparer.execute(this::prepareScene);
+        }
+    }
+
+    /**
+     * Merge all queued updates and build one scene, runs on the preparation thread
+     */
+    private void prepareScene() {
+        // Clear the flag first so updates arriving during the build queue another pass
+        prepareScheduled.set(false);
+
+        int merged = 0;
+        boolean localChanged = false;
+        Update update;
+        while ((update = pending.poll()) != null) {
+            if (update.source == Source.REMOTE) {
+                queueDepth.decrementAndGet();
+                merged++;
+            } else if (update.source == Source.LOCAL) {
+                localChanged = true;
+            }
+            try {
+                update.action.accept(sceneBuilder);
+            } catch (RuntimeException e) {
+                System.err.println("Error preparing canvas update: " + e.getMessage());
+            }
+        }
+        if (merged == 0 && !localChanged) {
+            // Only reads, the canvas is unchanged
+            return;
+        }
+        if (merged > 1) {
+            droppedCount.addAndGet(merged - 1);
+        }
+
+        if (ready.getAndSet(sceneBuilder.build(localOps.apply(sceneBuilder.getVersion()))) != null) {
+            droppedCount.incrementAndGet();
+        }
+        if (frameScheduled.compareAndSet(false, true)) {
+            frameTimer.restart();
+        }
+    }
+
+    /**
+     * Swap in the most recent prepared scene, runs on the event dispatch thread
+     */
+    private void applyReady() {
+        frameScheduled.set(false);
+
+        CanvasScene scene = ready.getAndSet(null);
+        if (scene == null) {
+            return;
+        }
+
+        appliedCount.incrementAndGet();
+        sink.accept(scene);
+    }
+
+    /**
+     * @return Number of updates queued but not yet merged into the draw list
+     */
+    public int getQueueDepth() {
+        return queueDepth.get();
+    }
+
+    /**
+     * @return Total number of updates received from the server
+     */
+    public long getReceivedCount() {
+        return receivedCount.get();
+    }
+
+    /**
+     * @return Number of scenes actually applied to the canvas
+     */
+    public long getAppliedCount() {
+        return appliedCount.get();
+    }
+
+    /**
+     * @return Number of intermediate scenes skipped because newer updates were merged in
+     */
+    public long getDroppedCount() {
+        return droppedCount.get();
+    }
+
+    // Where a queued update comes from
+    private enum Source {
+        // Ops, snapshots and repairs from the server
+        REMOTE,
+        // Local drawing drawn or confirmed, only the overlay changes
+        LOCAL,
+        // A read of the draw list, nothing changes
+        READ
+    }
+
+    private static final class Update {
+        final Source source;
+        final Consumer<SceneBuilder> action;
+
+        Update(Source source, Consumer<SceneBuilder> action) {
+            this.source = source;
+            this.action = action;
+        }
+    }
+}
@@ -1,20 +1,22 @@
 package com.jaiswal.client;
+import com.jaiswal.shared.IRemoteBoardDirectory;
 import javax.swing.JOptionPane;
 import javax.swing.SwingUtilities;
 
 public class CreateWhiteboard {
     public static void main(String[] args) {
-        if (args.length != 3) {
-            System.out.println("Usage: java CreateWhiteBoard <serverIPAddress> <serverPort> <username>");
+        if (args.length != 3 && args.length != 4) {
+            System.out.println("Usage: java CreateWhiteBoard <serverIPAddress> <serverPort> <username> [boardId]");
             System.exit(1);
         }
 
         String host = args[0];
         int port = Integer.parseInt(args[1]);
         String username = args[2];
+        String boardId = args.length > 3 ? args[3] : IRemoteBoardDirectory.DEFAULT_BOARD;
 
         SwingUtilities.invokeLater(() -> {
-            WhiteboardClient client = new WhiteboardClient(host, port, username, true);
+            WhiteboardClient client = new WhiteboardClient(host, port, boardId, username, true);
             boolean connected = client.connect();
 
             if (!connected) {
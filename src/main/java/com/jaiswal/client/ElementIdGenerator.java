@@ -0,0 +1,51 @@
+package com.jaiswal.client;
+
+import com.jaiswal.shared.ElementId;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Mints the IDs of the elements a client draws, so drawing never waits for
+ * the server to number an element. The replica part is picked at random per
+ * client; the counter follows the clock in milliseconds and steps past it
+ * during bursts, so a restarted client does not reuse its earlier IDs and
+ * two clients that drew the same replica part only collide if they also
+ * draw in the same millisecond. The server rejects the rare collision.
+ */
+public class ElementIdGenerator {
+    // Counter zero point, 2024-01-01 UTC; 40 bits of milliseconds last until 2058
+    private static final long EPOCH_MS = 1_704_067_200_000L;
+
+    private final int replica;
+    private long lastCounter;
+
+    public ElementIdGenerator() {
+        // Replica 0 is reserved for IDs the server assigned on older boards
+        this(ThreadLocalRandom.current().nextInt(1, ElementId.MAX_REPLICA + 1));
+    }
+
+    /**
+     * @param replica Replica part of every ID, 1 to {@value ElementId#MAX_REPLICA}
+     */
+    public ElementIdGenerator(int replica) {
+        if (replica < 1 || replica > ElementId.MAX_REPLICA) {
+            throw new IllegalArgumentException("Replica ID out of range: " + replica);
+        }
+        this.replica = replica;
+    }
+
+    /**
+     * @return A new element ID, greater than any this generator returned before
+     */
+    public synchronized long next() {
+        lastCounter = Math.max(lastCounter + 1, System.currentTimeMillis() - EPOCH_MS);
+        return ElementId.of(replica, lastCounter);
+    }
+
+    /**
+     * @return Replica part of the IDs minted here
+     */
+    public int getReplica() {
+        return replica;
+    }
+}
@@ -1,28 +1,32 @@
 package com.jaiswal.client;
 
+import com.jaiswal.shared.IRemoteBoardDirectory;
+
 import javax.swing.JOptionPane;
 import javax.swing.SwingUtilities;
 
 public class JoinWhiteboard {
     public static void main(String[] args) {
-        if (args.length != 3) {
-            System.out.println("Usage: java JoinWhiteBoard <serverIPAddress> <serverPort> <username>");
+        if (args.length != 3 && args.length != 4) {
+            System.out.println("Usage: java JoinWhiteBoard <serverIPAddress> <serverPort> <username> [boardId]");
             System.exit(1);
         }
 
         String host = args[0];
         int port = Integer.parseInt(args[1]);
         String username = args[2];
+        String boardId = args.length > 3 ? args[3] : IRemoteBoardDirectory.DEFAULT_BOARD;
 
-        SwingUtilities.invokeLater(() -> {
-            WhiteboardClient client = new WhiteboardClient(host, port, username, false);
-            boolean connected = client.connect();
+        // Joining waits for the manager's approval, which must not hold up the event dispatch thread
+        WhiteboardClient client = new WhiteboardClient(host, port, boardId, username, false);
+        boolean connected = client.connect();
 
-            if (!connected) {
+        if (!connected) {
+            SwingUtilities.invokeLater(() -> {
                 JOptionPane.showMessageDialog(null, "Failed to connect to the server or join whiteboard.",
                         "Connection Error", JOptionPane.ERROR_MESSAGE);
                 System.exit(1);
-            }
-        });
+            });
+        }
     }
 }
\ No newline at end of file
@@ -0,0 +1,336 @@
+package com.jaiswal.client;
+
+import com.jaiswal.shared.ClientOp;
+import com.jaiswal.shared.ElementCodec;
+import com.jaiswal.shared.IDrawable;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * File holding the ops drawn on this client that the server has not
+ * acknowledged yet, so drawing done while the server is unreachable survives
+ * the client being closed and is sent the next time the user joins the board.
+ * <pre>
+ * header   magic, format, session token
+ * records  OP (sequence, kind, element) or ACK (sequence), appended as ops
+ *          are queued and acknowledged
+ * </pre>
+ * An OP record replaces any earlier op numbered the same or higher, as ops
+ * never sent may be dropped and renumbered. The file is cut back to its
+ * header whenever nothing is pending and rewritten with only the pending ops
+ * once it outgrows {@value #MAX_JOURNAL_BYTES} bytes. Records reach the
+ * operating system as they are written, they are not forced to disk.
+ * <p>
+ * Journals live in {@value #JOURNAL_DIR_PROPERTY}, by default
+ * ~/.syncboard/journal, one per board and user. A journal that cannot be
+ * opened, for instance because another client of the same user holds it,
+ * leaves the ops in memory only. Guarded by the owning pipeline's monitor.
+ */
+public class OpJournal {
+    // System property: directory for journals
+    public static final String JOURNAL_DIR_PROPERTY = "syncboard.journal.dir";
+    private static final int MAGIC = 0x53424A4C; // "SBJL"
+    private static final short FORMAT = 1;
+    private static final int HEADER_BYTES = 14;
+    private static final byte RECORD_OP = 1;
+    private static final byte RECORD_ACK = 2;
+    private static final long MAX_JOURNAL_BYTES = 4L * 1024 * 1024;
+
+    private final Path path;
+    private final long session;
+    private final List<ClientOp> recovered;
+    private FileChannel channel;
+    private FileLock lock;
+    // Reused for encoding records
+    private final ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+    private final DataOutputStream out = new DataOutputStream(bytes);
+    // True while the file holds no records
+    private boolean empty;
+
+    private OpJournal(Path path, long session, List<ClientOp> recovered, FileChannel channel, FileLock lock) {
+        this.path = path;
+        this.session = session;
+        this.recovered = recovered;
+        this.channel = channel;
+        this.lock = lock;
+        this.empty = recovered.isEmpty();
+    }
+
+    /**
+     * Opens the journal of a user on a board, recovering the ops an earlier
+     * run left unacknowledged. Never fails: without a usable file the ops are
+     * kept in memory only.
+     * @param boardId The board
+     * @param username The user
+     * @return The journal
+     */
+    public static OpJournal open(String boardId, String username) {
+        String dir = System.getProperty(JOURNAL_DIR_PROPERTY,
+                Paths.get(System.getProperty("user.home"), ".syncboard", "journal").toString());
+        Path path = Paths.get(dir, fileName(boardId) + "-" + fileName(username) + ".journal");
+        try {
+            return open(path);
+        } catch (IOException e) {
+            System.err.println("Cannot open journal " + path + ", unsent drawing is kept in memory only: "
+                    + e.getMessage());
+            return new OpJournal(null, new SecureRandom().nextLong(), Collections.emptyList(), null, null);
+        }
+    }
+
+    /**
+     * Opens a journal file, creating it if needed
+     * @param path The file
+     * @return The journal
+     * @throws IOException If the file cannot be used
+     */
+    public static OpJournal open(Path path) throws IOException {
+        Files.createDirectories(path.toAbsolutePath().getParent());
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        try {
+            FileLock lock;
+            try {
+                lock = channel.tryLock();
+            } catch (OverlappingFileLockException e) {
+                lock = null;
+            }
+            if (lock == null) {
+                throw new IOException("in use by another client");
+            }
+
+            List<ClientOp> ops = new ArrayList<>();
+            ByteBuffer in = readAll(channel);
+            long session = 0;
+            if (in.remaining() >= HEADER_BYTES && in.getInt() == MAGIC && in.getShort() == FORMAT) {
+                session = in.getLong();
+                readRecords(in, ops);
+            }
+
+            OpJournal journal;
+            if (ops.isEmpty()) {
+                journal = new OpJournal(path, new SecureRandom().nextLong(), ops, channel, lock);
+                journal.writeHeader();
+            } else {
+                // Continue the earlier session, so the server recognizes ops it already applied
+                journal = new OpJournal(path, session, ops, channel, lock);
+                channel.truncate(in.position());
+                channel.position(in.position());
+                System.out.println("Recovered " + ops.size() + " unsent changes from " + path);
+            }
+            return journal;
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    private static ByteBuffer readAll(FileChannel channel) throws IOException {
+        ByteBuffer in = ByteBuffer.allocate((int) Math.min(channel.size(), Integer.MAX_VALUE));
+        while (in.hasRemaining() && channel.read(in, in.position()) >= 0) {
+            // Keep reading until the buffer is full
+        }
+        return in.flip();
+    }
+
+    /**
+     * Replays the records of a journal, leaving the buffer after the last intact one
+     * @param ops Receives the pending ops
+     */
+    private static void readRecords(ByteBuffer in, List<ClientOp> ops) {
+        int end = in.position();
+        try {
+            while (in.hasRemaining()) {
+                byte tag = in.get();
+                long sequence = in.getLong();
+                if (tag == RECORD_OP) {
+                    ClientOp.Kind kind = ClientOp.Kind.values()[in.get()];
+                    IDrawable element = ElementCodec.read(in);
+                    // Ops never sent may have been renumbered since
+                    while (!ops.isEmpty() && ops.get(ops.size() - 1).getSequence() >= sequence) {
+                        ops.remove(ops.size() - 1);
+                    }
+                    ops.add(kind == ClientOp.Kind.ADD ? ClientOp.add(sequence, element) : ClientOp.clear(sequence));
+                } else if (tag == RECORD_ACK) {
+                    int drop = 0;
+                    while (drop < ops.size() && ops.get(drop).getSequence() <= sequence) {
+                        drop++;
+                    }
+                    ops.subList(0, drop).clear();
+                } else {
+                    break;
+                }
+                end = in.position();
+            }
+        } catch (BufferUnderflowException | IndexOutOfBoundsException | IOException e) {
+            // Torn last record, the client stopped while writing it
+        }
+        in.position(end);
+    }
+
+    private static String fileName(String name) {
+        return name.replaceAll("[^A-Za-z0-9._-]", "_");
+    }
+
+    /**
+     * @return Session token the journaled ops are numbered in, reused so the server deduplicates them
+     */
+    public long getSession() {
+        return session;
+    }
+
+    /**
+     * @return Ops an earlier run left unacknowledged, in sequence order
+     */
+    public List<ClientOp> getRecovered() {
+        return recovered;
+    }
+
+    /**
+     * Records a queued op
+     * @param op The op, replacing any journaled op numbered the same or higher
+     */
+    public void append(ClientOp op) {
+        if (channel == null) {
+            return;
+        }
+        try {
+            bytes.reset();
+            out.writeByte(RECORD_OP);
+            out.writeLong(op.getSequence());
+            out.writeByte(op.getKind().ordinal());
+            ElementCodec.write(out, op.getElement());
+            write();
+            empty = false;
+        } catch (IOException e) {
+            failed(e);
+        }
+    }
+
+    /**
+     * Records an acknowledgement
+     * @param acked Every op up to here was processed by the server
+     * @param pending Ops still unacknowledged, in sequence order
+     */
+    public void acked(long acked, Collection<ClientOp> pending) {
+        if (channel == null) {
+            return;
+        }
+        try {
+            if (pending.isEmpty()) {
+                channel.truncate(HEADER_BYTES);
+                channel.position(HEADER_BYTES);
+                empty = true;
+            } else if (channel.size() > MAX_JOURNAL_BYTES) {
+                rewrite(pending);
+            } else {
+                bytes.reset();
+                out.writeByte(RECORD_ACK);
+                out.writeLong(acked);
+                write();
+            }
+        } catch (IOException e) {
+            failed(e);
+        }
+    }
+
+    /**
+     * Closes the journal, removing the file if nothing is pending
+     */
+    public void close() {
+        if (channel == null) {
+            return;
+        }
+        try {
+            lock.release();
+            channel.close();
+            if (empty) {
+                Files.deleteIfExists(path);
+            }
+        } catch (IOException e) {
+            System.err.println("Error closing journal " + path + ": " + e.getMessage());
+        }
+        channel = null;
+    }
+
+    private void writeHeader() throws IOException {
+        bytes.reset();
+        out.writeInt(MAGIC);
+        out.writeShort(FORMAT);
+        out.writeLong(session);
+        channel.truncate(0);
+        channel.position(0);
+        write();
+    }
+
+    private void write() throws IOException {
+        ByteBuffer record = ByteBuffer.wrap(bytes.toByteArray());
+        while (record.hasRemaining()) {
+            channel.write(record);
+        }
+    }
+
+    /**
+     * Replaces the file with one holding only the pending ops, so a crash
+     * midway leaves the old file intact
+     */
+    private void rewrite(Collection<ClientOp> pending) throws IOException {
+        Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+        FileChannel current = channel;
+        try (FileChannel rewritten = FileChannel.open(temp, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            channel = rewritten;
+            writeHeader();
+            for (ClientOp op : pending) {
+                bytes.reset();
+                out.writeByte(RECORD_OP);
+                out.writeLong(op.getSequence());
+                out.writeByte(op.getKind().ordinal());
+                ElementCodec.write(out, op.getElement());
+                write();
+            }
+        } finally {
+            channel = current;
+        }
+
+        lock.release();
+        channel.close();
+        try {
+            Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING);
+        }
+        channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        lock = channel.lock();
+        channel.position(channel.size());
+    }
+
+    private void failed(IOException e) {
+        System.err.println("Error writing journal " + path + ", unsent drawing is kept in memory only: "
+                + e.getMessage());
+        try {
+            lock.release();
+            channel.close();
+        } catch (IOException ignored) {
+            // Already unusable
+        }
+        channel = null;
+    }
+}
@@ -0,0 +1,312 @@
+package com.jaiswal.client;
+
+import com.jaiswal.shared.BoardMovedException;
+import com.jaiswal.shared.ClientOp;
+import com.jaiswal.shared.IDrawable;
+import com.jaiswal.shared.IRemoteWhiteboard;
+import com.jaiswal.shared.OpAck;
+
+import java.rmi.RemoteException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Sends the ops drawn on this client to the board without waiting for each
+ * one. Ops are numbered per session and sent in batches, several calls in
+ * flight at once, until the window of unacknowledged ops is full. The server
+ * applies every op once and in order and answers with a cumulative ack;
+ * whatever was not acknowledged when a call fails is sent again. Drawing
+ * never blocks the caller.
+ * <p>
+ * While the server is unreachable ops queue up here and in the
+ * {@link OpJournal}, and are shown on the local canvas through
+ * {@link #pendingOps(long)}. Queuing a clear drops the ops not sent yet,
+ * which it would wipe anyway, so the backlog goes out compacted, and an idle
+ * pipeline sends its backlog in a single call.
+ */
+public class OpPipeline {
+    // Ops sent but not acknowledged, kept below the server's reorder window
+    private static final int MAX_UNACKED_OPS = 1_000;
+    private static final int MAX_BATCH_OPS = 200;
+    // Ops in the single call an idle pipeline sends its backlog in, within the server's reorder window
+    private static final int MAX_UPLOAD_OPS = 4_000;
+    private static final int MAX_CALLS_IN_FLIGHT = 4;
+    // Wait before sending again after the server refused a call
+    private static final long RETRY_DELAY_MS = 1_000;
+
+    private final String username;
+    private final long session;
+    private final OpJournal journal;
+    private final Supplier<IRemoteWhiteboard> server;
+    private final Consumer<IRemoteWhiteboard> connectionLost;
+    private final Consumer<String> errorHandler;
+    private final Runnable pendingChanged;
+
+    private final ScheduledExecutorService senders = Executors.newScheduledThreadPool(MAX_CALLS_IN_FLIGHT, r -> {
+        Thread t = new Thread(r, "op-pipeline");
+        t.setDaemon(true);
+        return t;
+    });
+
+    // Guarded by this object's monitor
+    private final ArrayDeque<ClientOp> unacked = new ArrayDeque<>();
+    // Acknowledged ops with the board version they are part of, until the canvas shows that version
+    private final ArrayDeque<Unseen> unseen = new ArrayDeque<>();
+    private long lastSequence;
+    // Every op up to here was processed by the server
+    private long acked;
+    // Highest op sent since the last retransmission
+    private long sent;
+    // Highest op ever sent, later ones never left the client
+    private long highestSent;
+    private int callsInFlight = 0;
+    // No calls go out until the client has joined, nor while it reconnects
+    private boolean suspended = true;
+    private boolean retryScheduled = false;
+    private boolean errorShown = false;
+
+    private static final class Unseen {
+        final ClientOp op;
+        final long version;
+
+        Unseen(ClientOp op, long version) {
+            this.op = op;
+            this.version = version;
+        }
+    }
+
+    /**
+     * Constructor for OpPipeline
+     * @param username The user whose ops are sent
+     * @param journal Keeps unacknowledged ops, its session token numbers the op stream on the server;
+     *                ops recovered from an earlier run are sent first
+     * @param server The server currently serving the board
+     * @param connectionLost Called with the server after it could not be reached; sending is
+     *                       suspended until the client is back on the board and calls {@link #resume()}
+     * @param errorHandler Shows errors to the user
+     * @param pendingChanged Called when ops were queued or acknowledged
+     */
+    public OpPipeline(String username, OpJournal journal, Supplier<IRemoteWhiteboard> server,
+                      Consumer<IRemoteWhiteboard> connectionLost, Consumer<String> errorHandler,
+                      Runnable pendingChanged) {
+        this.username = username;
+        this.session = journal.getSession();
+        this.journal = journal;
+        this.server = server;
+        this.connectionLost = connectionLost;
+        this.errorHandler = errorHandler;
+        this.pendingChanged = pendingChanged;
+
+        List<ClientOp> recovered = journal.getRecovered();
+        unacked.addAll(recovered);
+        acked = recovered.isEmpty() ? 0 : recovered.get(0).getSequence() - 1;
+        lastSequence = acked + recovered.size();
+        sent = acked;
+        // The earlier run may have sent them all
+        highestSent = lastSequence;
+    }
+
+    /**
+     * Queues an element to be drawn
+     * @param element The element, with its client-minted ID
+     */
+    public void add(IDrawable element) {
+        synchronized (this) {
+            enqueue(ClientOp.add(++lastSequence, element));
+        }
+        pendingChanged.run();
+    }
+
+    /**
+     * Queues clearing the canvas
+     */
+    public void clear() {
+        synchronized (this) {
+            // Ops not sent yet would only be wiped, the clear takes their place
+            while (lastSequence > highestSent) {
+                unacked.pollLast();
+                lastSequence--;
+            }
+            enqueue(ClientOp.clear(++lastSequence));
+        }
+        pendingChanged.run();
+    }
+
+    private void enqueue(ClientOp op) {
+        unacked.add(op);
+        journal.append(op);
+        pump();
+    }
+
+    /**
+     * Starts or restarts sending, beginning with every op not yet acknowledged
+     */
+    public synchronized void resume() {
+        suspended = false;
+        retryScheduled = false;
+        sent = acked;
+        pump();
+    }
+
+    /**
+     * @return Number of ops the server has not acknowledged yet
+     */
+    public synchronized int getUnackedCount() {
+        return unacked.size();
+    }
+
+    /**
+     * Ops drawn here that the local canvas does not show yet, to be drawn
+     * over it: those not acknowledged and those acknowledged at a newer
+     * board version than the canvas shows
+     * @param canvasVersion Board version the canvas shows
+     * @return The ops in sequence order
+     */
+    public synchronized List<ClientOp> pendingOps(long canvasVersion) {
+        while (!unseen.isEmpty() && unseen.peek().version <= canvasVersion) {
+            unseen.poll();
+        }
+        List<ClientOp> pending = new ArrayList<>(unseen.size() + unacked.size());
+        for (Unseen op : unseen) {
+            pending.add(op.op);
+        }
+        pending.addAll(unacked);
+        return pending;
+    }
+
+    /**
+     * Waits for the server to acknowledge every queued op
+     * @param timeoutMs How long to wait at most
+     * @return true if nothing is left unacknowledged
+     */
+    public synchronized boolean awaitAcked(long timeoutMs) {
+        long deadline = System.currentTimeMillis() + timeoutMs;
+        try {
+            for (long left = timeoutMs; !unacked.isEmpty() && left > 0; left = deadline - System.currentTimeMillis()) {
+                wait(left);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return unacked.isEmpty();
+    }
+
+    /**
+     * Stops sending, ops not yet acknowledged stay in the journal for the next run
+     */
+    public void shutdown() {
+        senders.shutdownNow();
+        synchronized (this) {
+            journal.close();
+        }
+    }
+
+    /**
+     * Sends batches while the window and the call limit allow
+     */
+    private void pump() {
+        while (!suspended && !retryScheduled && callsInFlight < MAX_CALLS_IN_FLIGHT && sent < lastSequence
+                && sent - acked < MAX_UNACKED_OPS) {
+            // A backlog, say from being offline, goes out in one call rather than a stream of small ones
+            boolean idle = callsInFlight == 0 && sent == acked;
+            int count = idle ? (int) Math.min(MAX_UPLOAD_OPS, lastSequence - sent)
+                    : (int) Math.min(MAX_BATCH_OPS, Math.min(lastSequence - sent, acked + MAX_UNACKED_OPS - sent));
+            List<ClientOp> batch = new ArrayList<>(count);
+            Iterator<ClientOp> ops = unacked.iterator();
+            // The deque starts right after the ack
+            for (long skip = sent - acked; skip > 0; skip--) {
+                ops.next();
+            }
+            while (batch.size() < count) {
+                batch.add(ops.next());
+            }
+
+            sent += count;
+            highestSent = Math.max(highestSent, sent);
+            callsInFlight++;
+            long base = acked;
+            senders.execute(() -> send(base, batch));
+        }
+    }
+
+    // Runs on a sender thread
+    private void send(long base, List<ClientOp> batch) {
+        IRemoteWhiteboard board = server.get();
+        OpAck ack;
+        try {
+            ack = board.submitOps(username, session, base, batch);
+        } catch (RemoteException e) {
+            failed(board, e);
+            return;
+        }
+        acknowledged(ack);
+    }
+
+    private void acknowledged(OpAck ack) {
+        List<String> rejections = ack.getRejections();
+        boolean progress;
+        synchronized (this) {
+            callsInFlight--;
+            progress = ack.getAcked() > acked;
+            if (progress) {
+                for (long n = ack.getAcked() - acked; n > 0 && !unacked.isEmpty(); n--) {
+                    unseen.add(new Unseen(unacked.poll(), ack.getVersion()));
+                }
+                acked = ack.getAcked();
+                sent = Math.max(sent, acked);
+                journal.acked(acked, unacked);
+                errorShown = false;
+                notifyAll();
+            }
+            if (callsInFlight == 0 && sent > acked) {
+                // Nothing left in flight yet ops are missing, the server dropped them: go back and resend
+                sent = acked;
+            }
+            pump();
+        }
+        if (progress) {
+            pendingChanged.run();
+        }
+        for (String rejection : rejections) {
+            errorHandler.accept("Drawing was refused: " + rejection);
+        }
+    }
+
+    private void failed(IRemoteWhiteboard board, RemoteException e) {
+        boolean reconnect = false;
+        synchronized (this) {
+            callsInFlight--;
+            // Whatever the outcome of the calls in flight, everything past the ack goes again
+            sent = acked;
+            if (WhiteboardClient.isConnectionFailure(e)) {
+                // Only the first failed call looks for the server
+                reconnect = !suspended;
+                suspended = true;
+            } else if (!retryScheduled) {
+                retryScheduled = true;
+                senders.schedule(this::retry, RETRY_DELAY_MS, TimeUnit.MILLISECONDS);
+                // A moved board is followed by the client, nothing to tell the user
+                if (!errorShown && BoardMovedException.find(e) == null) {
+                    errorShown = true;
+                    errorHandler.accept("Error sending drawing, retrying: " + e.getMessage());
+                }
+            }
+        }
+
+        if (reconnect) {
+            connectionLost.accept(board);
+        }
+    }
+
+    private synchronized void retry() {
+        retryScheduled = false;
+        pump();
+    }
+}
@@ -0,0 +1,148 @@
+package com.jaiswal.client;
+
+import java.io.IOException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Brings the client back onto its board after the connection drops.
+ * Attempts run one at a time on a background thread, backing off
+ * exponentially with jitter so a server coming back is not hit by all its
+ * clients at once. A short blip is retried straight away and never shown to
+ * the user; a longer outage is announced once.
+ */
+public class ReconnectSupervisor {
+    private static final long INITIAL_DELAY_MS = 50;
+    private static final long MAX_DELAY_MS = 10_000;
+    // Outages shorter than this go unannounced
+    private static final long NOTICE_AFTER_MS = 2_000;
+
+    /**
+     * One attempt to get back onto the board
+     */
+    public interface Attempt {
+        /**
+         * @return true once back on the board, false if the board turned the client away for good
+         * @throws IOException If the board cannot be reached yet, tried again after a delay
+         */
+        boolean reconnect() throws IOException;
+    }
+
+    private final Attempt attempt;
+    private final Runnable onReconnected;
+    private final Consumer<String> notifier;
+    private final Consumer<String> errorHandler;
+    private final ScheduledExecutorService reconnectThread = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "reconnect");
+        t.setDaemon(true);
+        return t;
+    });
+
+    // Guarded by this
+    private boolean reconnecting = false;
+    private long lostAt;
+    private int failedAttempts;
+    private boolean noticeShown;
+
+    /**
+     * Constructor for ReconnectSupervisor
+     * @param attempt Reconnects once
+     * @param onReconnected Runs after a successful attempt
+     * @param notifier Tells the user about a lasting outage and its end
+     * @param errorHandler Reports a board that refused the client
+     */
+    public ReconnectSupervisor(Attempt attempt, Runnable onReconnected, Consumer<String> notifier,
+                               Consumer<String> errorHandler) {
+        this.attempt = attempt;
+        this.onReconnected = onReconnected;
+        this.notifier = notifier;
+        this.errorHandler = errorHandler;
+    }
+
+    /**
+     * Starts reconnecting, unless already under way. Safe to call from any thread.
+     */
+    public synchronized void connectionLost() {
+        if (reconnecting || reconnectThread.isShutdown()) {
+            return;
+        }
+        reconnecting = true;
+        lostAt = System.currentTimeMillis();
+        failedAttempts = 0;
+        noticeShown = false;
+        System.out.println("Connection to the whiteboard lost, reconnecting");
+        reconnectThread.execute(this::tryReconnect);
+    }
+
+    /**
+     * @return true while the client is off the board and trying to get back
+     */
+    public synchronized boolean isReconnecting() {
+        return reconnecting;
+    }
+
+    /**
+     * Stops reconnecting when the client leaves the board
+     */
+    public void shutdown() {
+        reconnectThread.shutdownNow();
+    }
+
+    // Runs on the reconnect thread
+    private void tryReconnect() {
+        boolean back;
+        try {
+            back = attempt.reconnect();
+        } catch (IOException e) {
+            retryLater(e);
+            return;
+        }
+
+        long downtime;
+        boolean announced;
+        int attempts;
+        synchronized (this) {
+            reconnecting = false;
+            downtime = System.currentTimeMillis() - lostAt;
+            announced = noticeShown;
+            attempts = failedAttempts + 1;
+        }
+        if (!back) {
+            errorHandler.accept("Could not rejoin the whiteboard.");
+            return;
+        }
+        System.out.println("Reconnected after " + attempts + " attempts in " + downtime + " ms");
+        onReconnected.run();
+        if (announced) {
+            notifier.accept("Reconnected to the whiteboard.");
+        }
+    }
+
+    private void retryLater(IOException e) {
+        long delay;
+        boolean announce;
+        int attempts;
+        synchronized (this) {
+            attempts = ++failedAttempts;
+            // Exponential backoff, half of it random
+            long ceiling = Math.min(MAX_DELAY_MS, INITIAL_DELAY_MS << Math.min(failedAttempts - 1, 20));
+            delay = ceiling / 2 + ThreadLocalRandom.current().nextLong(ceiling / 2 + 1);
+            announce = !noticeShown && System.currentTimeMillis() - lostAt >= NOTICE_AFTER_MS;
+            noticeShown |= announce;
+        }
+        System.err.println("Reconnect attempt " + attempts + " failed (" + e.getMessage()
+                + "), next in " + delay + " ms");
+        if (announce) {
+            notifier.accept("Lost the connection to the whiteboard, reconnecting. Your drawing will be sent once back.");
+        }
+        try {
+            reconnectThread.schedule(this::tryReconnect, delay, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException shutDown) {
+            // The client left meanwhile
+        }
+    }
+}
@@ -3,46 +3,116 @@ package com.jaiswal.client;
 import com.jaiswal.gui.WhiteboardGUI;
 import com.jaiswal.shared.*;
 import com.jaiswal.shared.shapes.Shape;
+import com.jaiswal.transport.Transport;
 
 import javax.swing.*;
+import java.io.Closeable;
 import java.io.File;
 import java.io.PrintWriter;
-import java.rmi.NotBoundException;
+import java.io.IOException;
+import java.rmi.ConnectException;
+import java.rmi.ConnectIOException;
+import java.rmi.NoSuchObjectException;
 import java.rmi.RemoteException;
-import java.rmi.registry.LocateRegistry;
-import java.rmi.registry.Registry;
-import java.rmi.server.UnicastRemoteObject;
+import java.rmi.UnmarshalException;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
-import java.util.Map;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 /**
  * Client implementation for the distributed whiteboard application.
  * Handles communication with the server and updates the GUI.
  */
 public class WhiteboardClient implements IRemoteClient {
-    private final String host;
-    private final int port;
+    // Node currently serving the board, follows redirects when the board moves
+    private volatile String host;
+    private volatile int port;
+    private final String boardId;
     private final String username;
     private final boolean isManager;
 
-    private Registry registry;
-    private IRemoteWhiteboard server;
-    private WhiteboardGUI gui;
-    private boolean connected = false;
+    private final Transport transport = Transport.create();
+    // Give up following redirects after this many nodes in a row
+    private static final int MAX_REDIRECTS = 5;
+    // How often the server is checked, so a lost connection is noticed while the user is idle
+    private static final long FAILOVER_CHECK_MS = 1_000;
+    // How often the canvas is checked against the board, catching any divergence the op stream left
+    private static final long VERIFY_INTERVAL_MS = 30_000;
+    // How long disconnecting waits for drawing still on its way to the server
+    private static final long FLUSH_TIMEOUT_MS = 5_000;
+    // How long joining waits to be let in, past the server's own timeout for the manager's answer
+    private static final long JOIN_RESULT_TIMEOUT_MS = 90_000;
+
+    // Server the client is on the board through, replaced only once a join or resume succeeded
+    private volatile IRemoteWhiteboard server;
+    private volatile IRemoteClient stub;
+    // Identifies this client's session to the server, lets it resume after a dropped connection;
+    // taken over from the journal when an earlier run left drawing unsent
+    private final long sessionToken;
+    // Numbers the elements drawn here, so a retried call cannot add an element twice
+    private final ElementIdGenerator elementIds = new ElementIdGenerator();
+    // Carries drawing to the server without waiting for each op
+    private final OpPipeline pipeline;
+    // Gets the client back onto the board after the connection drops
+    private final ReconnectSupervisor reconnector;
+    private volatile WhiteboardGUI gui;
+    private volatile boolean connected = false;
+    // Completed by the server's answer to the join request in progress
+    private volatile CompletableFuture<Boolean> joinResult;
+    // Presence version the user list reflects, changes up to it are already shown
+    private volatile long presenceVersion = 0;
+
+    // Nodes replicating the board, the primary first; empty if the board is not replicated
+    private volatile List<String> failoverNodes = Collections.emptyList();
+    private final ScheduledExecutorService failoverWatch = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "failover-watch");
+        t.setDaemon(true);
+        return t;
+    });
+
+    // Collapses bursts of canvas updates into one apply per frame
+    private final CanvasUpdateCoalescer canvasCoalescer = new CanvasUpdateCoalescer(state -> {
+        if (gui != null) {
+            gui.updateCanvas(state);
+        }
+    });
+
+    // Pulls the board snapshot in chunks and orders incoming ops around it
+    private final BoardSynchronizer synchronizer;
+    // The board as this client last left it; what was loaded from it is used by the first join only
+    private final BoardCache boardCache;
+    private volatile BoardCache.CachedBoard cachedBoard;
 
     /**
      * Constructor for WhiteboardClient
      * @param host The server host address
      * @param port The server port
+     * @param boardId The board to open on the server
      * @param username The user's username
      * @param isManager Whether this client is the whiteboard manager
      */
-    public WhiteboardClient(String host, int port, String username, boolean isManager) {
+    public WhiteboardClient(String host, int port, String boardId, String username, boolean isManager) {
         this.host = host;
         this.port = port;
+        this.boardId = boardId;
         this.username = username;
         this.isManager = isManager;
+        this.boardCache = new BoardCache(host, port, boardId);
+        this.synchronizer = new BoardSynchronizer(username, canvasCoalescer, this::showError,
+                () -> gui != null ? gui.getCanvasViewport() : null);
+        OpJournal journal = OpJournal.open(boardId, username);
+        this.sessionToken = journal.getSession();
+        this.pipeline = new OpPipeline(username, journal, () -> server, this::connectionLost, this::showError,
+                canvasCoalescer::localOpsChanged);
+        canvasCoalescer.setLocalOps(pipeline::pendingOps);
+        this.reconnector = new ReconnectSupervisor(this::reconnect, pipeline::resume, this::showMessage,
+                this::showError);
 
         initGUI();
     }
@@ -58,7 +128,8 @@ public class WhiteboardClient implements IRemoteClient {
     }
 
     /**
-     * Connect to the whiteboard server
+     * Connect to the whiteboard server. Joining an existing board waits for
+     * the manager's approval.
      * @return true if connection successful, false otherwise
      */
     public boolean connect() {
@@ -72,28 +143,10 @@ public class WhiteboardClient implements IRemoteClient {
                 System.setSecurityManager(new SecurityManager());
             }
 
-            System.out.println("Connecting to server at " + host + ":" + port);
-
-            // Set important RMI properties
-            System.setProperty("java.rmi.server.hostname", host);
-            System.setProperty("java.rmi.server.useLocalHostname", "true");
-            System.setProperty("java.net.preferIPv4Stack", "true");
-
-            // Get registry and lookup the server
-            registry = LocateRegistry.getRegistry(host, port);
-
-            // Use the exact registry name the server bound with
-            server = (IRemoteWhiteboard) registry.lookup("WhiteboardServer");
-
-            System.out.println("Found server: " + server);
-
-            // Export this client
-            IRemoteClient stub = (IRemoteClient) UnicastRemoteObject.exportObject(this, 0);
-
-            System.out.println("Requesting to join as " + username + ", manager: " + isManager);
-
-            // Request to join
-            boolean approved = server.requestJoin(username, stub);
+            // Make this client reachable for callbacks, then open the board wherever it lives
+            cachedBoard = boardCache.load();
+            stub = transport.exportClient(this);
+            boolean approved = openAndJoin();
 
             if (!approved) {
                 if (isManager) {
@@ -106,15 +159,257 @@ public class WhiteboardClient implements IRemoteClient {
 
             connected = true;
             System.out.println("Successfully connected to server");
+            pipeline.resume();
+
+            // The server is watched so a dropped connection or failed server is replaced without the user noticing
+            failoverNodes = server.getFailoverNodes();
+            failoverWatch.scheduleWithFixedDelay(this::checkServer, FAILOVER_CHECK_MS, FAILOVER_CHECK_MS,
+                    TimeUnit.MILLISECONDS);
+            failoverWatch.scheduleWithFixedDelay(this::verifyCanvas, VERIFY_INTERVAL_MS, VERIFY_INTERVAL_MS,
+                    TimeUnit.MILLISECONDS);
             return true;
 
-        } catch (RemoteException | NotBoundException e) {
+        } catch (IOException e) {
             showError("Error connecting to server: " + e.getMessage());
             e.printStackTrace();
             return false;
         }
     }
 
+    /**
+     * Opens the board and joins it, following the board to another node if
+     * the current one does not serve it
+     * @return true if the client is on the board
+     * @throws IOException If no node serving the board can be reached
+     */
+    private boolean openAndJoin() throws IOException {
+        for (int hop = 0; ; hop++) {
+            System.out.println("Connecting to board " + boardId + " at " + host + ":" + port
+                    + " over " + transport.getName());
+            IRemoteWhiteboard candidate = null;
+            try {
+                candidate = transport.connect(host, port, boardId);
+                System.out.println("Found server: " + candidate);
+                return join(candidate);
+            } catch (IOException e) {
+                close(candidate);
+                BoardMovedException moved = BoardMovedException.find(e);
+                if (moved == null || hop >= MAX_REDIRECTS) {
+                    throw e;
+                }
+                System.out.println("Board " + boardId + " moved to " + moved.getOwner());
+                host = moved.getOwnerHost();
+                port = moved.getOwnerPort();
+                try {
+                    // The owner may still be taking the board over
+                    Thread.sleep(250L * hop);
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                    throw e;
+                }
+            }
+        }
+    }
+
+    /**
+     * Joins the board through a server. A client that was on the board before
+     * resumes its session and only fetches the ops it missed; the whole board
+     * is fetched if the server does not know the session.
+     * @param candidate The server
+     * @return true if the client is on the board
+     * @throws RemoteException If the server cannot be reached
+     */
+    private boolean join(IRemoteWhiteboard candidate) throws RemoteException {
+        long applied = connected ? synchronizer.pause() : -1;
+        if (applied >= 0) {
+            List<BoardOp> missed = candidate.resumeSession(username, sessionToken, applied, stub);
+            if (missed != null) {
+                server = candidate;
+                synchronizer.resume(candidate, missed);
+                System.out.println("Resumed session at v" + applied + ", " + missed.size() + " ops missed");
+                return true;
+            }
+        }
+
+        System.out.println("Requesting to join as " + username + ", manager: " + isManager);
+        CompletableFuture<Boolean> result = new CompletableFuture<>();
+        joinResult = result;
+        if (!candidate.requestJoin(username, sessionToken, stub) || !awaitJoinResult(candidate, result)) {
+            return false;
+        }
+        server = candidate;
+        // Transfer runs on its own thread, connect() may be called from the EDT
+        synchronizer.start(candidate, cachedBoard);
+        cachedBoard = null;
+        return true;
+    }
+
+    /**
+     * Waits for the server to let the client in, which takes until the
+     * manager answered unless the client joins as the manager
+     * @param candidate The server the request was made to
+     * @param result Completed with the server's answer
+     * @return true if the client was let in
+     * @throws RemoteException If the board moved to another node meanwhile
+     */
+    private boolean awaitJoinResult(IRemoteWhiteboard candidate, CompletableFuture<Boolean> result)
+            throws RemoteException {
+        try {
+            if (!result.isDone()) {
+                System.out.println("Waiting for the manager to approve joining");
+                if (gui != null) {
+                    gui.updateStatus("Waiting for the manager to let you in...");
+                }
+            }
+            return result.get(JOIN_RESULT_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        } catch (ExecutionException e) {
+            throw (RemoteException) e.getCause();
+        } catch (TimeoutException e) {
+            // Withdraw the request, so the name is free for the next attempt
+            try {
+                candidate.disconnect(username);
+            } catch (RemoteException ignored) {
+                // The server forgets the request on its own
+            }
+            return false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } finally {
+            joinResult = null;
+        }
+    }
+
+    /**
+     * Refreshes the failover nodes, noticing a lost connection.
+     * Runs on the failover watch thread.
+     */
+    private void checkServer() {
+        if (reconnector.isReconnecting()) {
+            return;
+        }
+        IRemoteWhiteboard current = server;
+        try {
+            failoverNodes = current.getFailoverNodes();
+        } catch (RemoteException e) {
+            if (isConnectionFailure(e)) {
+                connectionLost(current);
+            }
+        }
+    }
+
+    /**
+     * Checks the canvas against the board, repairing what differs.
+     * Runs on the failover watch thread.
+     */
+    private void verifyCanvas() {
+        if (!reconnector.isReconnecting()) {
+            synchronizer.verify();
+        }
+    }
+
+    /**
+     * Called when a server could not be reached. Safe to call from any thread.
+     * @param failed The server
+     */
+    private void connectionLost(IRemoteWhiteboard failed) {
+        if (server != failed) {
+            // Already back on the board through another server
+            pipeline.resume();
+            return;
+        }
+        reconnector.connectionLost();
+    }
+
+    /**
+     * Gets back onto the board after the connection dropped: on the same
+     * node if it is still there, otherwise on the successor of a replicated
+     * board. Runs on the reconnect thread.
+     * @return true if the client is on the board again
+     * @throws IOException If no node can be reached yet
+     */
+    private boolean reconnect() throws IOException {
+        // Callbacks still owed on the lost connection must not arrive after those of the new one
+        close(server);
+        transport.unexportClient(this);
+        stub = transport.exportClient(this);
+        try {
+            return openAndJoin();
+        } catch (IOException e) {
+            if (failoverNodes.size() < 2 || BoardMovedException.find(e) != null) {
+                throw e;
+            }
+            return failOver();
+        }
+    }
+
+    /**
+     * Rejoins the board on the node that took over from a failed server
+     * @return true if the client is on the board again, false if the successor turned it away
+     * @throws IOException If no successor is accepting changes yet
+     */
+    private boolean failOver() throws IOException {
+        List<String> nodes = failoverNodes;
+        String current = host + ":" + port;
+        System.out.println("Server " + current + " failed, looking for its successor among " + nodes);
+        for (String node : nodes) {
+            if (node.equals(current)) {
+                continue;
+            }
+            IRemoteWhiteboard candidate = null;
+            try {
+                String nodeHost = node.substring(0, node.lastIndexOf(':'));
+                int nodePort = Integer.parseInt(node.substring(node.lastIndexOf(':') + 1));
+                candidate = transport.connect(nodeHost, nodePort, boardId);
+                List<String> group = candidate.getFailoverNodes();
+                if (group.isEmpty() || !group.get(0).equals(node)) {
+                    // Still a read-only follower, wait for it to be promoted
+                    close(candidate);
+                    continue;
+                }
+
+                if (!join(candidate)) {
+                    close(candidate);
+                    return false;
+                }
+                host = nodeHost;
+                port = nodePort;
+                failoverNodes = group;
+                System.out.println("Failed over to " + node);
+                showMessage("The server failed, reconnected to " + node + ".");
+                return true;
+            } catch (IOException e) {
+                // Not reachable, try the next node
+                close(candidate);
+            }
+        }
+        throw new ConnectException("No successor of " + current + " is accepting changes yet");
+    }
+
+    /**
+     * @param e A failed call
+     * @return true if the server could not be reached, rather than refusing the call
+     */
+    static boolean isConnectionFailure(RemoteException e) {
+        return e instanceof ConnectException || e instanceof ConnectIOException
+                || e instanceof NoSuchObjectException || e instanceof UnmarshalException;
+    }
+
+    /**
+     * Releases the connection to a node that served the board, if the
+     * transport keeps one open per board
+     * @param board The node's proxy, may be null
+     */
+    private static void close(IRemoteWhiteboard board) {
+        if (board instanceof Closeable) {
+            try {
+                ((Closeable) board).close();
+            } catch (IOException ignored) {
+                // Connection already gone
+            }
+        }
+    }
+
     /**
      * Creates a security policy file if it doesn't exist
      */
@@ -146,15 +441,25 @@ public class WhiteboardClient implements IRemoteClient {
     public void disconnect() {
         if (connected) {
             try {
+                // Offline there is nothing to wait for, the journal keeps the drawing
+                if (reconnector.isReconnecting() || !pipeline.awaitAcked(FLUSH_TIMEOUT_MS)) {
+                    System.err.println(pipeline.getUnackedCount()
+                            + " changes were not sent before disconnecting, they are sent on the next join");
+                }
                 server.disconnect(username);
                 connected = false;
                 System.out.println("Disconnected from server");
             } catch (RemoteException e) {
                 System.err.println("Error disconnecting: " + e.getMessage());
             } finally {
+                failoverWatch.shutdownNow();
+                reconnector.shutdown();
+                pipeline.shutdown();
+                synchronizer.saveTo(boardCache);
+                synchronizer.shutdown();
                 try {
-                    // Clean up RMI resources
-                    UnicastRemoteObject.unexportObject(this, true);
+                    // Clean up transport resources
+                    transport.unexportClient(this);
                 } catch (Exception ignored) {
                     // Ignore exceptions during cleanup
                 }
@@ -167,16 +472,11 @@ public class WhiteboardClient implements IRemoteClient {
      * @param drawable The drawable element to send
      */
     public void drawShape(IDrawable drawable) {
-        try {
-            if (drawable instanceof Shape) {
-                server.drawShape((Shape) drawable);
-            } else {
-                showError("Error: Invalid shape type");
-            }
-        } catch (RemoteException e) {
-            showError("Error drawing shape: " + e.getMessage());
-        } catch (ClassCastException e) {
-            showError("Error: Shape type mismatch - " + e.getMessage());
+        if (drawable instanceof Shape) {
+            assignId(drawable);
+            pipeline.add(drawable);
+        } else {
+            showError("Error: Invalid shape type");
         }
     }
 
@@ -185,10 +485,13 @@ public class WhiteboardClient implements IRemoteClient {
      * @param text The text element to send
      */
     public void drawText(TextElement text) {
-        try {
-            server.drawText(text);
-        } catch (RemoteException e) {
-            showError("Error adding text: " + e.getMessage());
+        assignId(text);
+        pipeline.add(text);
+    }
+
+    private void assignId(IDrawable drawable) {
+        if (drawable.getId() == 0) {
+            drawable.setId(elementIds.next());
         }
     }
 
@@ -196,11 +499,7 @@ public class WhiteboardClient implements IRemoteClient {
      * Clear the whiteboard canvas
      */
     public void clearCanvas() {
-        try {
-            server.clearCanvas();
-        } catch (RemoteException e) {
-            showError("Error clearing canvas: " + e.getMessage());
-        }
+        pipeline.clear();
     }
 
     /**
@@ -269,6 +568,19 @@ public class WhiteboardClient implements IRemoteClient {
         }
     }
 
+    /**
+     * Answers the join requests the manager was shown
+     * @param approved Users let in
+     * @param denied Users turned away
+     */
+    public void answerJoinRequests(List<String> approved, List<String> denied) {
+        try {
+            server.answerJoinRequests(username, approved, denied);
+        } catch (RemoteException e) {
+            showError("Error answering join requests: " + e.getMessage());
+        }
+    }
+
     /**
      * Get the username of this client
      * @return The username
@@ -277,18 +589,23 @@ public class WhiteboardClient implements IRemoteClient {
         return username;
     }
 
+    /**
+     * Get the coalescer for incoming canvas updates, exposes queue statistics
+     * @return The canvas update coalescer
+     */
+    public CanvasUpdateCoalescer getCanvasCoalescer() {
+        return canvasCoalescer;
+    }
+
     // IRemoteClient implementation
     @Override
-    public void updateCanvas(Map<Integer, IDrawable> state) throws RemoteException {
-        SwingUtilities.invokeLater(() -> {
-            if (gui != null) {
-                gui.updateCanvas(state);
-            }
-        });
+    public void applyOps(List<BoardOp> ops) throws RemoteException {
+        synchronizer.onOps(ops);
     }
 
     @Override
-    public void updateUserList(List<String> users) throws RemoteException {
+    public void updateUserList(long presenceVersion, List<PresenceOp> users) throws RemoteException {
+        this.presenceVersion = presenceVersion;
         SwingUtilities.invokeLater(() -> {
             if (gui != null) {
                 gui.updateUserList(users);
@@ -297,28 +614,46 @@ public class WhiteboardClient implements IRemoteClient {
     }
 
     @Override
-    public void receiveNotification(String message) throws RemoteException {
+    public void presenceChanged(List<PresenceOp> changes) throws RemoteException {
+        List<PresenceOp> fresh = new ArrayList<>(changes.size());
+        for (PresenceOp change : changes) {
+            if (change.getSequence() > presenceVersion) {
+                fresh.add(change);
+            }
+        }
+        if (fresh.isEmpty()) {
+            return;
+        }
+        presenceVersion = fresh.get(fresh.size() - 1).getSequence();
         SwingUtilities.invokeLater(() -> {
             if (gui != null) {
-                boolean approved = gui.showConfirmDialog(message);
-                try {
-                    // In a real application, you would send this approval back to the server
-                    // For simplicity, we're auto-approving in the server
-                } catch (Exception e) {
-                    showError("Error responding to notification: " + e.getMessage());
-                }
+                gui.applyPresence(fresh);
             }
         });
     }
 
+    @Override
+    public void receiveNotification(String message) throws RemoteException {
+        showMessage(message);
+    }
+
     @Override
     public void joinRequestResult(boolean approved) throws RemoteException {
+        CompletableFuture<Boolean> result = joinResult;
+        if (result != null) {
+            // A denial is reported by connect()
+            result.complete(approved);
+        }
+        if (approved) {
+            showMessage("You have joined the whiteboard.");
+        }
+    }
+
+    @Override
+    public void joinRequestsPending(List<String> usernames) throws RemoteException {
         SwingUtilities.invokeLater(() -> {
-            if (approved) {
-                showMessage("You have joined the whiteboard.");
-            } else {
-                showError("Your join request was denied.");
-                System.exit(0);
+            if (gui != null) {
+                gui.showJoinRequests(usernames);
             }
         });
     }
@@ -339,6 +674,20 @@ public class WhiteboardClient implements IRemoteClient {
         });
     }
 
+    @Override
+    public void boardMoved(String boardId, String owner) throws RemoteException {
+        // Rejoined from the reconnect thread, the old node waits for nothing
+        System.out.println("Board " + boardId + " moved to " + owner);
+        CompletableFuture<Boolean> result = joinResult;
+        if (result != null && result.completeExceptionally(new BoardMovedException(boardId, owner))) {
+            // Still waiting to be let in, the request is made again on the new owner
+            return;
+        }
+        host = owner.substring(0, owner.lastIndexOf(':'));
+        port = Integer.parseInt(owner.substring(owner.lastIndexOf(':') + 1));
+        reconnector.connectionLost();
+    }
+
     @Override
     public String getUsername() throws RemoteException {
         return username;
@@ -0,0 +1,162 @@
+package com.jaiswal.cluster;
+
+import java.rmi.NotBoundException;
+import java.rmi.RemoteException;
+import java.rmi.registry.LocateRegistry;
+import java.rmi.registry.Registry;
+import java.rmi.server.UnicastRemoteObject;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Lightweight directory of a server cluster. Keeps the node membership and
+ * answers which node owns a board; it holds no board data and is not on the
+ * path of any drawing call. Membership changes are applied one at a time:
+ * the boards that move are handed over first, then every node switches to
+ * the new ring.
+ */
+public class ClusterDirectory implements IClusterDirectory {
+    // System property with the directory address ("host:port") for servers joining and clients routing
+    public static final String DIRECTORY_PROPERTY = "syncboard.directory";
+    // Name the directory is bound under in its RMI registry
+    public static final String BINDING_NAME = "SyncBoardDirectory";
+
+    // Guarded by this
+    private final Map<String, IClusterNode> nodes = new LinkedHashMap<>();
+    private HashRing ring = new HashRing(new ArrayList<>());
+    private long epoch = 0;
+
+    /**
+     * Looks up a running directory
+     * @param address The directory address, "host:port"
+     * @return The directory stub
+     * @throws RemoteException If no directory is reachable there
+     */
+    public static IClusterDirectory lookup(String address) throws RemoteException {
+        int colon = address.lastIndexOf(':');
+        if (colon < 0) {
+            throw new RemoteException("Directory address must be host:port, got " + address);
+        }
+        Registry registry = LocateRegistry.getRegistry(address.substring(0, colon),
+                Integer.parseInt(address.substring(colon + 1)));
+        try {
+            return (IClusterDirectory) registry.lookup(BINDING_NAME);
+        } catch (NotBoundException e) {
+            throw new RemoteException("No cluster directory bound at " + address, e);
+        }
+    }
+
+    @Override
+    public synchronized long register(String node, IClusterNode control) throws RemoteException {
+        Map<String, IClusterNode> next = new LinkedHashMap<>(nodes);
+        next.put(node, control);
+        System.out.println("Node " + node + " joining, rebalancing " + nodes.size() + " nodes");
+        rebalance(next, nodes);
+        return epoch;
+    }
+
+    @Override
+    public synchronized void deregister(String node) throws RemoteException {
+        IClusterNode leaving = nodes.get(node);
+        if (leaving == null) {
+            return;
+        }
+        Map<String, IClusterNode> next = new LinkedHashMap<>(nodes);
+        next.remove(node);
+        System.out.println("Node " + node + " leaving");
+
+        Map<String, IClusterNode> handingOver = new LinkedHashMap<>();
+        handingOver.put(node, leaving);
+        rebalance(next, handingOver);
+
+        // The departed node redirects stragglers to the new owners until it is gone
+        try {
+            leaving.installRing(new ArrayList<>(next.keySet()), epoch);
+        } catch (RemoteException e) {
+            System.err.println("Error updating departed node " + node + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Moves boards to their owners under the next membership, then installs it
+     * @param next The next membership
+     * @param current The nodes currently holding boards that may move
+     */
+    private void rebalance(Map<String, IClusterNode> next, Map<String, IClusterNode> current) {
+        long nextEpoch = epoch + 1;
+        long start = System.currentTimeMillis();
+        int moved = 0;
+        for (Map.Entry<String, IClusterNode> entry : current.entrySet()) {
+            try {
+                moved += entry.getValue().handOff(next, nextEpoch);
+            } catch (RemoteException e) {
+                // Its boards stay unreachable until the node comes back
+                System.err.println("Error handing off boards of " + entry.getKey() + ": " + e.getMessage());
+            }
+        }
+
+        nodes.clear();
+        nodes.putAll(next);
+        ring = new HashRing(new ArrayList<>(nodes.keySet()));
+        epoch = nextEpoch;
+        List<String> members = ring.getMembers();
+        for (Map.Entry<String, IClusterNode> entry : nodes.entrySet()) {
+            try {
+                entry.getValue().installRing(members, epoch);
+            } catch (RemoteException e) {
+                System.err.println("Error updating node " + entry.getKey() + ": " + e.getMessage());
+            }
+        }
+        System.out.println("Cluster epoch " + epoch + ": " + members + ", moved " + moved + " boards in "
+                + (System.currentTimeMillis() - start) + " ms");
+    }
+
+    @Override
+    public synchronized String locate(String boardId) throws RemoteException {
+        String owner = ring.ownerOf(boardId);
+        if (owner == null) {
+            throw new RemoteException("No server nodes registered");
+        }
+        return owner;
+    }
+
+    @Override
+    public synchronized List<String> getMembers() throws RemoteException {
+        return ring.getMembers();
+    }
+
+    /**
+     * Starts a directory in its own RMI registry
+     * @param port Registry port
+     * @return The running directory
+     * @throws RemoteException If the registry cannot be created
+     */
+    public static ClusterDirectory start(int port) throws RemoteException {
+        ClusterDirectory directory = new ClusterDirectory();
+        Registry registry = LocateRegistry.createRegistry(port);
+        registry.rebind(BINDING_NAME, UnicastRemoteObject.exportObject(directory, 0));
+        System.out.println("Cluster directory running on port " + port);
+        return directory;
+    }
+
+    // Main method to run the directory directly
+    public static void main(String[] args) {
+        int port = 9000;
+        if (args.length >= 1) {
+            try {
+                port = Integer.parseInt(args[0]);
+            } catch (NumberFormatException e) {
+                System.err.println("Invalid port number, using default: 9000");
+            }
+        }
+
+        try {
+            start(port);
+        } catch (RemoteException e) {
+            System.err.println("Directory exception: " + e.toString());
+            e.printStackTrace();
+        }
+    }
+}
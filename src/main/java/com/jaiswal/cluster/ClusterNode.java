@@ -0,0 +1,173 @@
+package com.jaiswal.cluster;
+
+import com.jaiswal.server.BoardHandoff;
+import com.jaiswal.server.BoardOwnership;
+import com.jaiswal.server.BoardRegistry;
+
+import java.io.IOException;
+import java.rmi.NoSuchObjectException;
+import java.rmi.RemoteException;
+import java.rmi.server.UnicastRemoteObject;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Cluster membership of one server node. Tells its {@link BoardRegistry}
+ * which boards it owns under the current ring and carries out handoffs when
+ * the membership changes.
+ */
+public class ClusterNode implements IClusterNode, BoardOwnership {
+    // How long a node that is still joining holds client calls before refusing them
+    private static final long RING_WAIT_MS = 10_000;
+
+    private final BoardRegistry registry;
+    private final String address;
+    private IClusterDirectory directory;
+
+    // Guarded by this
+    private HashRing ring;
+    private HashRing pendingRing;
+    private long epoch;
+    // Boards handed to us before the ring placing them here is installed
+    private final Set<String> adopted = new HashSet<>();
+    // Boards that failed to move and stay here despite the ring, until the next rebalance
+    private final Set<String> retained = new HashSet<>();
+
+    private ClusterNode(BoardRegistry registry) {
+        this.registry = registry;
+        this.address = registry.getAddress();
+    }
+
+    /**
+     * Registers a server node with a cluster directory. Returns once the
+     * boards placed on the node have been handed over to it.
+     * @param registry The node's boards
+     * @param directoryAddress The directory, "host:port"
+     * @return The node's membership, to leave the cluster with
+     * @throws RemoteException If the directory cannot be reached
+     */
+    public static ClusterNode join(BoardRegistry registry, String directoryAddress) throws RemoteException {
+        ClusterNode node = new ClusterNode(registry);
+        registry.setOwnership(node);
+        IClusterNode stub = (IClusterNode) UnicastRemoteObject.exportObject(node, 0);
+        node.directory = ClusterDirectory.lookup(directoryAddress);
+        long epoch = node.directory.register(node.address, stub);
+        System.out.println("Joined cluster at " + directoryAddress + " as " + node.address + " (epoch " + epoch + ")");
+        return node;
+    }
+
+    /**
+     * Hands all boards to the remaining nodes and leaves the cluster
+     */
+    public void leave() {
+        try {
+            directory.deregister(address);
+            System.out.println("Left cluster as " + address);
+        } catch (RemoteException e) {
+            System.err.println("Error leaving cluster: " + e.getMessage());
+        }
+        try {
+            UnicastRemoteObject.unexportObject(this, true);
+        } catch (NoSuchObjectException ignored) {
+            // Already unexported
+        }
+    }
+
+    // BoardOwnership, asked by the registry for every board opened
+    @Override
+    public synchronized String ownerOf(String boardId) throws RemoteException {
+        long deadline = System.currentTimeMillis() + RING_WAIT_MS;
+        while (ring == null && !adopted.contains(boardId)) {
+            long remaining = deadline - System.currentTimeMillis();
+            if (remaining <= 0) {
+                throw new RemoteException("Node " + address + " has not joined the cluster yet");
+            }
+            try {
+                wait(remaining);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RemoteException("Interrupted while joining the cluster", e);
+            }
+        }
+        if (adopted.contains(boardId) || retained.contains(boardId)) {
+            return address;
+        }
+        return (pendingRing != null ? pendingRing : ring).ownerOf(boardId);
+    }
+
+    // IClusterNode
+    @Override
+    public synchronized void installRing(List<String> members, long epoch) {
+        if (epoch < this.epoch) {
+            return;
+        }
+        ring = new HashRing(members);
+        pendingRing = null;
+        this.epoch = epoch;
+        adopted.clear();
+        notifyAll();
+        System.out.println("Cluster epoch " + epoch + " installed: " + members);
+    }
+
+    @Override
+    public int handOff(Map<String, IClusterNode> members, long epoch) throws RemoteException {
+        HashRing next = new HashRing(new ArrayList<>(members.keySet()));
+        synchronized (this) {
+            // Redirect clients for boards about to move from now on
+            pendingRing = next;
+            retained.clear();
+        }
+
+        int moved = 0;
+        for (String boardId : registry.listBoards()) {
+            String owner = next.ownerOf(boardId);
+            if (owner == null || owner.equals(address)) {
+                continue;
+            }
+            BoardHandoff handoff;
+            try {
+                handoff = registry.beginHandoff(boardId, owner);
+            } catch (IOException e) {
+                System.err.println("Error capturing board " + boardId + ": " + e.getMessage());
+                retain(boardId);
+                continue;
+            }
+            if (handoff == null) {
+                continue;
+            }
+            try {
+                members.get(owner).acceptBoard(handoff);
+            } catch (RemoteException e) {
+                System.err.println("Error handing board " + boardId + " to " + owner + ": " + e.getMessage());
+                registry.abortHandoff(boardId);
+                retain(boardId);
+                continue;
+            }
+            registry.completeHandoff(boardId);
+            moved++;
+        }
+        System.out.println("Handed " + moved + " boards over for epoch " + epoch);
+        return moved;
+    }
+
+    private synchronized void retain(String boardId) {
+        retained.add(boardId);
+    }
+
+    @Override
+    public void acceptBoard(BoardHandoff handoff) throws RemoteException {
+        try {
+            registry.importBoard(handoff);
+        } catch (IOException e) {
+            throw new RemoteException("Cannot store board " + handoff.getBoardId(), e);
+        }
+        synchronized (this) {
+            adopted.add(handoff.getBoardId());
+            notifyAll();
+        }
+        System.out.println("Took over board " + handoff.getBoardId() + " at v" + handoff.getVersion());
+    }
+}
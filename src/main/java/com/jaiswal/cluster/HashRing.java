@@ -0,0 +1,66 @@
+package com.jaiswal.cluster;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Consistent hash ring placing boards on server nodes. Every node appears at
+ * many points on the ring and a board belongs to the first node point at or
+ * after the board's own hash, so adding or removing a node only moves the
+ * boards next to its points.
+ */
+public final class HashRing {
+    private static final int POINTS_PER_NODE = 128;
+
+    private final List<String> members;
+    private final TreeMap<Long, String> points = new TreeMap<>();
+
+    /**
+     * @param members Node addresses, "host:port"
+     */
+    public HashRing(List<String> members) {
+        List<String> sorted = new ArrayList<>(members);
+        Collections.sort(sorted);
+        this.members = Collections.unmodifiableList(sorted);
+        for (String member : sorted) {
+            for (int i = 0; i < POINTS_PER_NODE; i++) {
+                points.put(hash(member + "#" + i), member);
+            }
+        }
+    }
+
+    /**
+     * @return Node addresses on the ring, sorted
+     */
+    public List<String> getMembers() {
+        return members;
+    }
+
+    /**
+     * @param boardId The board
+     * @return Address of the node owning the board, or null if the ring is empty
+     */
+    public String ownerOf(String boardId) {
+        if (points.isEmpty()) {
+            return null;
+        }
+        Map.Entry<Long, String> point = points.ceilingEntry(hash(boardId));
+        return point != null ? point.getValue() : points.firstEntry().getValue();
+    }
+
+    private static long hash(String key) {
+        try {
+            byte[] digest = MessageDigest.getInstance("MD5").digest(key.getBytes(StandardCharsets.UTF_8));
+            return ByteBuffer.wrap(digest).getLong();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("MD5 not available", e);
+        }
+    }
+}
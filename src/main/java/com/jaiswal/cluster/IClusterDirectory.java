@@ -0,0 +1,39 @@
+package com.jaiswal.cluster;
+
+import java.rmi.Remote;
+import java.rmi.RemoteException;
+import java.util.List;
+
+/**
+ * Membership and board placement of a cluster of server nodes. Nodes register
+ * when they start and deregister when they stop; clients ask which node
+ * serves a board.
+ */
+public interface IClusterDirectory extends Remote {
+    /**
+     * Adds a node. Boards the new membership places on it are handed over by
+     * their current owners before the call returns.
+     * @param node Address clients reach the node at, "host:port"
+     * @param control The node's control interface
+     * @return The new membership epoch
+     */
+    long register(String node, IClusterNode control) throws RemoteException;
+
+    /**
+     * Removes a node after it has handed its boards to the remaining nodes
+     * @param node Address of the node
+     */
+    void deregister(String node) throws RemoteException;
+
+    /**
+     * @param boardId The board
+     * @return Address of the node serving the board, "host:port"
+     * @throws RemoteException If no node is registered
+     */
+    String locate(String boardId) throws RemoteException;
+
+    /**
+     * @return Addresses of the registered nodes
+     */
+    List<String> getMembers() throws RemoteException;
+}
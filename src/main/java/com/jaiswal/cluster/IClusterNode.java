@@ -0,0 +1,36 @@
+package com.jaiswal.cluster;
+
+import com.jaiswal.server.BoardHandoff;
+
+import java.rmi.Remote;
+import java.rmi.RemoteException;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Control interface of one server node, called by the cluster directory and
+ * by other nodes handing boards over.
+ */
+public interface IClusterNode extends Remote {
+    /**
+     * Starts routing boards by a new membership
+     * @param members Node addresses
+     * @param epoch Membership version, increases with every change
+     */
+    void installRing(List<String> members, long epoch) throws RemoteException;
+
+    /**
+     * Hands every local board the given membership places elsewhere to its new
+     * owner. Boards are redirected from the start of the call.
+     * @param members Upcoming membership, node address to control stub
+     * @param epoch Version of the upcoming membership
+     * @return Number of boards handed over
+     */
+    int handOff(Map<String, IClusterNode> members, long epoch) throws RemoteException;
+
+    /**
+     * Takes over a board from another node
+     * @param handoff The board as captured by its previous owner
+     */
+    void acceptBoard(BoardHandoff handoff) throws RemoteException;
+}
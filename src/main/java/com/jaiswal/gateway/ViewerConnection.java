@@ -0,0 +1,274 @@
+package com.jaiswal.gateway;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Locale;
+
+/**
+ * One viewer's WebSocket connection. Reads are handled on the gateway's loop
+ * thread: first the HTTP upgrade request, then control frames (viewers are
+ * read-only, anything else they send is ignored). Frames for the viewer are
+ * shared, read-only buffers and are written straight to the socket when
+ * nothing is queued. A viewer that falls too far behind is disconnected and
+ * can reconnect for a fresh snapshot.
+ */
+final class ViewerConnection {
+    private static final int MAX_REQUEST_BYTES = 8 * 1024;
+    private static final int MAX_CLIENT_FRAME_BYTES = 64 * 1024;
+    private static final long MAX_QUEUED_BYTES = 8L * 1024 * 1024;
+
+    private final WebSocketGateway gateway;
+    private final SocketChannel channel;
+    private final SelectionKey key;
+
+    // Only touched on the loop thread
+    private ByteBuffer readBuffer = ByteBuffer.allocate(1024);
+    private boolean upgraded;
+
+    // Guarded by writeQueue
+    private final Deque<ByteBuffer> writeQueue = new ArrayDeque<>();
+    private long queuedBytes;
+    private boolean closed;
+
+    ViewerConnection(WebSocketGateway gateway, SocketChannel channel, SelectionKey key) {
+        this.gateway = gateway;
+        this.channel = channel;
+        this.key = key;
+    }
+
+    /**
+     * Queues a frame. Safe to call from any thread.
+     * @param frame Frame to send; the caller's buffer position is not changed
+     * @return false if the viewer is gone
+     */
+    boolean send(ByteBuffer frame) {
+        ByteBuffer data = frame.duplicate();
+        boolean overflow;
+        synchronized (writeQueue) {
+            if (closed) {
+                return false;
+            }
+            if (writeQueue.isEmpty()) {
+                try {
+                    channel.write(data);
+                } catch (IOException e) {
+                    gateway.execute(this::close);
+                    return false;
+                }
+                if (!data.hasRemaining()) {
+                    return true;
+                }
+                gateway.execute(this::enableWrites);
+            }
+            writeQueue.add(data);
+            queuedBytes += data.remaining();
+            overflow = queuedBytes > MAX_QUEUED_BYTES;
+        }
+        if (overflow) {
+            System.err.println("Dropping slow viewer " + describe());
+            gateway.execute(this::close);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Handles readiness, runs on the loop thread
+     */
+    void handle() {
+        try {
+            if (key.isReadable()) {
+                read();
+            }
+            if (key.isValid() && key.isWritable()) {
+                flushQueue();
+            }
+        } catch (IOException e) {
+            close();
+        }
+    }
+
+    /**
+     * Closes the connection and detaches it from the gateway
+     */
+    void close() {
+        synchronized (writeQueue) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            writeQueue.clear();
+        }
+        key.cancel();
+        try {
+            channel.close();
+        } catch (IOException ignored) {
+            // Closing anyway
+        }
+        if (upgraded) {
+            gateway.viewerClosed(this);
+        }
+    }
+
+    String describe() {
+        try {
+            return String.valueOf(channel.getRemoteAddress());
+        } catch (IOException e) {
+            return "viewer";
+        }
+    }
+
+    private void enableWrites() {
+        if (key.isValid()) {
+            key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
+        }
+    }
+
+    private void flushQueue() throws IOException {
+        synchronized (writeQueue) {
+            while (!writeQueue.isEmpty()) {
+                ByteBuffer data = writeQueue.peek();
+                int before = data.remaining();
+                channel.write(data);
+                queuedBytes -= before - data.remaining();
+                if (data.hasRemaining()) {
+                    return;
+                }
+                writeQueue.poll();
+            }
+            key.interestOps(SelectionKey.OP_READ);
+        }
+    }
+
+    private void read() throws IOException {
+        if (channel.read(readBuffer) < 0) {
+            close();
+            return;
+        }
+        readBuffer.flip();
+        if (!upgraded) {
+            readHandshake();
+        }
+        while (upgraded && !closed && readFrame()) {
+            // Keep consuming complete frames
+        }
+        readBuffer.compact();
+        if (!readBuffer.hasRemaining()) {
+            int limit = upgraded ? MAX_CLIENT_FRAME_BYTES + 14 : MAX_REQUEST_BYTES;
+            if (readBuffer.capacity() >= limit) {
+                throw new IOException("Viewer sent an oversized message");
+            }
+            ByteBuffer larger = ByteBuffer.allocate(Math.min(limit, readBuffer.capacity() * 2));
+            readBuffer.flip();
+            larger.put(readBuffer);
+            readBuffer = larger;
+        }
+    }
+
+    /**
+     * Answers the HTTP upgrade request once it is complete
+     */
+    private void readHandshake() throws IOException {
+        String request = StandardCharsets.ISO_8859_1.decode(readBuffer.duplicate()).toString();
+        int end = request.indexOf("\r\n\r\n");
+        if (end < 0) {
+            return;
+        }
+        readBuffer.position(readBuffer.position() + end + 4);
+
+        String key = null;
+        boolean upgrade = false;
+        for (String line : request.substring(0, end).split("\r\n")) {
+            int colon = line.indexOf(':');
+            if (colon < 0) {
+                continue;
+            }
+            String name = line.substring(0, colon).trim().toLowerCase(Locale.ROOT);
+            String value = line.substring(colon + 1).trim();
+            if (name.equals("sec-websocket-key")) {
+                key = value;
+            } else if (name.equals("upgrade") && value.equalsIgnoreCase("websocket")) {
+                upgrade = true;
+            }
+        }
+
+        if (!request.startsWith("GET ") || !upgrade || key == null) {
+            writeRaw("HTTP/1.1 400 Bad Request\r\nContent-Length: 0\r\nConnection: close\r\n\r\n");
+            close();
+            return;
+        }
+
+        writeRaw("HTTP/1.1 101 Switching Protocols\r\n"
+                + "Upgrade: websocket\r\n"
+                + "Connection: Upgrade\r\n"
+                + "Sec-WebSocket-Accept: " + ViewerMessages.acceptKey(key) + "\r\n\r\n");
+        upgraded = true;
+        gateway.viewerOpened(this);
+    }
+
+    /**
+     * Consumes one client frame if it is complete
+     * @return true if a frame was consumed
+     */
+    private boolean readFrame() throws IOException {
+        if (readBuffer.remaining() < 2) {
+            return false;
+        }
+        int start = readBuffer.position();
+        int opcode = readBuffer.get(start) & 0x0F;
+        boolean masked = (readBuffer.get(start + 1) & 0x80) != 0;
+        long length = readBuffer.get(start + 1) & 0x7F;
+        int header = 2;
+        if (length == 126) {
+            if (readBuffer.remaining() < 4) {
+                return false;
+            }
+            length = readBuffer.getShort(start + 2) & 0xFFFF;
+            header = 4;
+        } else if (length == 127) {
+            if (readBuffer.remaining() < 10) {
+                return false;
+            }
+            length = readBuffer.getLong(start + 2);
+            header = 10;
+        }
+        if (!masked || length > MAX_CLIENT_FRAME_BYTES) {
+            throw new IOException("Protocol violation by viewer");
+        }
+        if (readBuffer.remaining() < header + 4 + length) {
+            return false;
+        }
+
+        byte[] mask = new byte[4];
+        readBuffer.position(start + header);
+        readBuffer.get(mask);
+        byte[] payload = new byte[(int) length];
+        readBuffer.get(payload);
+        for (int i = 0; i < payload.length; i++) {
+            payload[i] ^= mask[i & 3];
+        }
+
+        switch (opcode) {
+            case ViewerMessages.OPCODE_CLOSE:
+                send(ViewerMessages.frame(ViewerMessages.OPCODE_CLOSE, payload));
+                close();
+                break;
+            case ViewerMessages.OPCODE_PING:
+                send(ViewerMessages.frame(ViewerMessages.OPCODE_PONG, payload));
+                break;
+            default:
+                // Viewers are read-only
+                break;
+        }
+        return true;
+    }
+
+    private void writeRaw(String response) {
+        send(ByteBuffer.wrap(response.getBytes(StandardCharsets.ISO_8859_1)));
+    }
+}
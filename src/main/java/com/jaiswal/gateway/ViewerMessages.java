@@ -0,0 +1,196 @@
+package com.jaiswal.gateway;
+
+import com.jaiswal.shared.BoardOp;
+import com.jaiswal.shared.ElementCodec;
+import com.jaiswal.shared.IDrawable;
+import com.jaiswal.shared.TextElement;
+import com.jaiswal.shared.shapes.Circle;
+import com.jaiswal.shared.shapes.FreehandShape;
+import com.jaiswal.shared.shapes.Line;
+import com.jaiswal.shared.shapes.Rectangle;
+
+import java.awt.Font;
+import java.awt.Point;
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.List;
+
+/**
+ * JSON messages sent to viewers, already wrapped in WebSocket frames.
+ * <pre>
+ * {"type":"snapshot","version":V,"chunk":i,"chunks":n,"elements":[...]}
+ * {"type":"op","seq":S,"kind":"add","element":{...}}
+ * {"type":"op","seq":S,"kind":"clear"}
+ * {"type":"op","seq":S,"kind":"reset"}    followed by a new snapshot
+ * </pre>
+ * Elements are {"id","type","color" (#RRGGBBAA),"stroke"} plus the geometry
+ * of their type. The 64-bit ID is sent as a decimal string, as JavaScript
+ * numbers cannot hold it exactly. Each element is encoded once and the bytes reused for every
+ * viewer and every snapshot that contains it.
+ */
+final class ViewerMessages {
+    private static final String HANDSHAKE_GUID = "258EAFA5-E914-47DA-95CA-C5AB0DC85B11";
+
+    static final int OPCODE_TEXT = 0x1;
+    static final int OPCODE_CLOSE = 0x8;
+    static final int OPCODE_PING = 0x9;
+    static final int OPCODE_PONG = 0xA;
+
+    private ViewerMessages() {
+    }
+
+    /**
+     * @param drawable The element
+     * @return The element as a JSON object
+     */
+    static byte[] element(IDrawable drawable) {
+        StringBuilder json = new StringBuilder(96);
+        int argb = ElementCodec.colorOf(drawable);
+        json.append("{\"id\":\"").append(drawable.getId())
+                .append("\",\"color\":\"").append(String.format("#%06X%02X", argb & 0xFFFFFF, argb >>> 24))
+                .append("\",\"stroke\":").append(ElementCodec.strokeOf(drawable));
+
+        if (drawable instanceof Line) {
+            Line line = (Line) drawable;
+            json.append(",\"type\":\"line\",\"x1\":").append(line.getX1()).append(",\"y1\":").append(line.getY1())
+                    .append(",\"x2\":").append(line.getX2()).append(",\"y2\":").append(line.getY2());
+        } else if (drawable instanceof Rectangle) {
+            Rectangle rect = (Rectangle) drawable;
+            json.append(",\"type\":\"rectangle\",\"x\":").append(rect.getX()).append(",\"y\":").append(rect.getY())
+                    .append(",\"width\":").append(rect.getWidth()).append(",\"height\":").append(rect.getHeight());
+        } else if (drawable instanceof Circle) {
+            Circle circle = (Circle) drawable;
+            json.append(",\"type\":\"circle\",\"cx\":").append(circle.getCenterX())
+                    .append(",\"cy\":").append(circle.getCenterY()).append(",\"r\":").append(circle.getRadius());
+        } else if (drawable instanceof FreehandShape) {
+            json.append(",\"type\":\"freehand\",\"points\":[");
+            List<Point> points = ((FreehandShape) drawable).getPoints();
+            for (int i = 0; i < points.size(); i++) {
+                if (i > 0) {
+                    json.append(',');
+                }
+                json.append('[').append(points.get(i).x).append(',').append(points.get(i).y).append(']');
+            }
+            json.append(']');
+        } else if (drawable instanceof TextElement) {
+            TextElement text = (TextElement) drawable;
+            Font font = text.getFont();
+            json.append(",\"type\":\"text\",\"x\":").append(text.getPosition().x)
+                    .append(",\"y\":").append(text.getPosition().y)
+                    .append(",\"text\":").append(quote(text.getText()))
+                    .append(",\"font\":").append(quote(font.getName()))
+                    .append(",\"bold\":").append(font.isBold())
+                    .append(",\"italic\":").append(font.isItalic())
+                    .append(",\"size\":").append(font.getSize2D());
+        } else {
+            // Unknown element types are shown as their bounds
+            java.awt.Rectangle bounds = drawable.getBounds();
+            json.append(",\"type\":\"unknown\"");
+            if (bounds != null) {
+                json.append(",\"x\":").append(bounds.x).append(",\"y\":").append(bounds.y)
+                        .append(",\"width\":").append(bounds.width).append(",\"height\":").append(bounds.height);
+            }
+        }
+        return json.append('}').toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @param op The op
+     * @param element The op's element as encoded by element(), null for ops without one
+     * @return Text frame carrying the op
+     */
+    static ByteBuffer op(BoardOp op, byte[] element) {
+        ByteArrayOutputStream json = new ByteArrayOutputStream(element != null ? element.length + 64 : 64);
+        write(json, "{\"type\":\"op\",\"seq\":" + op.getSequence()
+                + ",\"kind\":\"" + op.getKind().name().toLowerCase() + "\"");
+        if (element != null) {
+            write(json, ",\"element\":");
+            json.writeBytes(element);
+        }
+        write(json, "}");
+        return frame(OPCODE_TEXT, json.toByteArray());
+    }
+
+    /**
+     * @param version Board version the snapshot is taken at
+     * @param chunk Chunk index
+     * @param chunks Number of chunks in the snapshot
+     * @param elements Encoded elements in creation order
+     * @return Text frame carrying one snapshot chunk
+     */
+    static ByteBuffer snapshot(long version, int chunk, int chunks, List<byte[]> elements) {
+        ByteArrayOutputStream json = new ByteArrayOutputStream(64 + elements.size() * 96);
+        write(json, "{\"type\":\"snapshot\",\"version\":" + version + ",\"chunk\":" + chunk
+                + ",\"chunks\":" + chunks + ",\"elements\":[");
+        for (int i = 0; i < elements.size(); i++) {
+            if (i > 0) {
+                json.write(',');
+            }
+            json.writeBytes(elements.get(i));
+        }
+        write(json, "]}");
+        return frame(OPCODE_TEXT, json.toByteArray());
+    }
+
+    /**
+     * Wraps a payload in an unmasked, unfragmented server frame
+     * @param opcode Frame opcode
+     * @param payload Frame payload
+     * @return The frame, read-only so that it can be shared between viewers
+     */
+    static ByteBuffer frame(int opcode, byte[] payload) {
+        int headerLength = payload.length < 126 ? 2 : payload.length <= 0xFFFF ? 4 : 10;
+        ByteBuffer frame = ByteBuffer.allocate(headerLength + payload.length);
+        frame.put((byte) (0x80 | opcode));
+        if (payload.length < 126) {
+            frame.put((byte) payload.length);
+        } else if (payload.length <= 0xFFFF) {
+            frame.put((byte) 126);
+            frame.putShort((short) payload.length);
+        } else {
+            frame.put((byte) 127);
+            frame.putLong(payload.length);
+        }
+        frame.put(payload);
+        frame.flip();
+        return frame.asReadOnlyBuffer();
+    }
+
+    /**
+     * @param key The client's Sec-WebSocket-Key header
+     * @return The matching Sec-WebSocket-Accept value
+     */
+    static String acceptKey(String key) {
+        try {
+            MessageDigest sha1 = MessageDigest.getInstance("SHA-1");
+            byte[] digest = sha1.digest((key + HANDSHAKE_GUID).getBytes(StandardCharsets.US_ASCII));
+            return Base64.getEncoder().encodeToString(digest);
+        } catch (NoSuchAlgorithmException e) {
+            // Every JRE is required to provide SHA-1
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String quote(String value) {
+        StringBuilder quoted = new StringBuilder(value.length() + 2).append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                quoted.append('\\').append(c);
+            } else if (c < 0x20) {
+                quoted.append(String.format("\\u%04x", (int) c));
+            } else {
+                quoted.append(c);
+            }
+        }
+        return quoted.append('"').toString();
+    }
+
+    private static void write(ByteArrayOutputStream out, String text) {
+        out.writeBytes(text.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,321 @@
+package com.jaiswal.gateway;
+
+import com.jaiswal.server.BoardListener;
+import com.jaiswal.server.WhiteboardServer;
+import com.jaiswal.shared.BoardOp;
+import com.jaiswal.shared.IDrawable;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Feeds a board's op stream to read-only viewers over WebSocket, so large
+ * audiences can watch without running the Swing client or exporting a
+ * callback object. Enabled by setting the {@value #PORT_PROPERTY} system property.
+ * <p>
+ * Viewers get the same sequencing as regular clients: a snapshot tagged with
+ * the board version, then every op with a higher sequence number, and after a
+ * RESET a fresh snapshot. The gateway keeps its own mirror of the board as
+ * encoded elements, so a joining viewer costs the server nothing, and every
+ * op is encoded once into a frame shared by all viewers; ops arriving in a
+ * burst go out to each viewer in one write. All board state is
+ * confined to a single dispatch thread; socket I/O runs on a selector thread.
+ * See {@link ViewerMessages} for the message format.
+ */
+public class WebSocketGateway implements BoardListener {
+    // System property holding the port to accept viewers on
+    public static final String PORT_PROPERTY = "syncboard.gateway.port";
+
+    private static final int SNAPSHOT_CHUNK_SIZE = 500;
+    private static final int MAX_BATCH_BYTES = 256 * 1024;
+
+    private final WhiteboardServer server;
+    private final ExecutorService dispatcher = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "gateway-dispatch");
+        t.setDaemon(true);
+        return t;
+    });
+
+    // Socket I/O
+    private Selector selector;
+    private ServerSocketChannel acceptor;
+    private Thread loopThread;
+    private final Queue<Runnable> loopTasks = new ConcurrentLinkedQueue<>();
+    private volatile boolean running = false;
+
+    // Ops and snapshots from the server, waiting for the dispatch thread
+    private final Queue<Object> events = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean drainScheduled = new AtomicBoolean(false);
+
+    // Board mirror and live viewers, only touched on the dispatch thread
+    // Encoded elements in stacking order; the server broadcasts each element ID once
+    private final List<byte[]> mirror = new ArrayList<>();
+    private long mirrorVersion = 0;
+    private List<ByteBuffer> snapshotFrames;
+    private final List<ViewerConnection> viewers = new ArrayList<>();
+    private volatile int viewerCount = 0;
+
+    /**
+     * Constructor for WebSocketGateway
+     * @param server The server whose board is exposed
+     */
+    public WebSocketGateway(WhiteboardServer server) {
+        this.server = server;
+    }
+
+    /**
+     * Starts accepting viewers and following the board
+     * @param port Port to listen on
+     * @throws IOException If the port cannot be bound
+     */
+    public void start(int port) throws IOException {
+        selector = Selector.open();
+        acceptor = ServerSocketChannel.open();
+        acceptor.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+        acceptor.bind(new InetSocketAddress(port));
+        acceptor.configureBlocking(false);
+        acceptor.register(selector, SelectionKey.OP_ACCEPT);
+
+        running = true;
+        loopThread = new Thread(this::runLoop, "gateway-io");
+        loopThread.setDaemon(true);
+        loopThread.start();
+
+        server.addBoardListener(this);
+        System.out.println("WebSocket gateway accepting viewers on port " + port);
+    }
+
+    /**
+     * Disconnects all viewers and stops following the board
+     */
+    public void stop() {
+        server.removeBoardListener(this);
+        running = false;
+        if (selector != null) {
+            selector.wakeup();
+        }
+        dispatcher.shutdown();
+    }
+
+    /**
+     * @return Number of connected viewers
+     */
+    public int getViewerCount() {
+        return viewerCount;
+    }
+
+    // BoardListener, called under the server monitor: hand off only
+    @Override
+    public void onSnapshot(long version, List<IDrawable> elements) {
+        enqueue(new Snapshot(version, elements));
+    }
+
+    @Override
+    public void onOp(BoardOp op) {
+        enqueue(op);
+    }
+
+    private void enqueue(Object event) {
+        events.add(event);
+        if (drainScheduled.compareAndSet(false, true)) {
+            dispatcher.execute(this::drainEvents);
+        }
+    }
+
+    /**
+     * Applies queued ops and snapshots in order, runs on the dispatch thread.
+     * Consecutive ops are sent as one batch, so a burst costs each viewer a
+     * single write rather than one per op.
+     */
+    private void drainEvents() {
+        drainScheduled.set(false);
+
+        ByteArrayOutputStream batch = new ByteArrayOutputStream();
+        Object event;
+        while ((event = events.poll()) != null) {
+            if (event instanceof BoardOp) {
+                BoardOp op = (BoardOp) event;
+                byte[] element = null;
+                switch (op.getKind()) {
+                    case ADD:
+                        element = ViewerMessages.element(op.getElement());
+                        mirror.add(element);
+                        break;
+                    case CLEAR:
+                    case RESET:
+                        mirror.clear();
+                        break;
+                }
+                mirrorVersion = op.getSequence();
+                snapshotFrames = null;
+
+                ByteBuffer frame = ViewerMessages.op(op, element);
+                byte[] bytes = new byte[frame.remaining()];
+                frame.get(bytes);
+                batch.writeBytes(bytes);
+                if (batch.size() >= MAX_BATCH_BYTES) {
+                    flush(batch);
+                }
+            } else {
+                Snapshot snapshot = (Snapshot) event;
+                flush(batch);
+                mirror.clear();
+                for (IDrawable drawable : snapshot.elements) {
+                    mirror.add(ViewerMessages.element(drawable));
+                }
+                mirrorVersion = snapshot.version;
+                snapshotFrames = null;
+
+                // Viewers already connected were just sent the RESET, give them the new board
+                if (!viewers.isEmpty()) {
+                    for (ByteBuffer frame : snapshotFrames()) {
+                        broadcast(frame);
+                    }
+                }
+            }
+        }
+        flush(batch);
+    }
+
+    private void flush(ByteArrayOutputStream batch) {
+        if (batch.size() > 0) {
+            broadcast(ByteBuffer.wrap(batch.toByteArray()).asReadOnlyBuffer());
+            batch.reset();
+        }
+    }
+
+    private static final class Snapshot {
+        final long version;
+        final List<IDrawable> elements;
+
+        Snapshot(long version, List<IDrawable> elements) {
+            this.version = version;
+            this.elements = elements;
+        }
+    }
+
+    // Viewer lifecycle, called on the loop thread
+    void viewerOpened(ViewerConnection viewer) {
+        dispatcher.execute(() -> {
+            // Snapshot and live ops leave from this thread, so nothing is missed or repeated
+            for (ByteBuffer frame : snapshotFrames()) {
+                if (!viewer.send(frame)) {
+                    return;
+                }
+            }
+            viewers.add(viewer);
+            viewerCount = viewers.size();
+            System.out.println("Viewer connected: " + viewer.describe() + " (" + viewers.size() + " watching)");
+        });
+    }
+
+    void viewerClosed(ViewerConnection viewer) {
+        dispatcher.execute(() -> {
+            viewers.remove(viewer);
+            viewerCount = viewers.size();
+        });
+    }
+
+    /**
+     * Runs a task on the loop thread
+     */
+    void execute(Runnable task) {
+        loopTasks.add(task);
+        selector.wakeup();
+    }
+
+    private void broadcast(ByteBuffer frame) {
+        if (viewers.removeIf(viewer -> !viewer.send(frame))) {
+            viewerCount = viewers.size();
+        }
+    }
+
+    /**
+     * @return Frames carrying the mirror as of mirrorVersion, built once per version
+     */
+    private List<ByteBuffer> snapshotFrames() {
+        if (snapshotFrames != null) {
+            return snapshotFrames;
+        }
+
+        int chunks = Math.max(1, (mirror.size() + SNAPSHOT_CHUNK_SIZE - 1) / SNAPSHOT_CHUNK_SIZE);
+        List<ByteBuffer> frames = new ArrayList<>(chunks);
+        for (int chunk = 0; chunk < chunks; chunk++) {
+            int from = chunk * SNAPSHOT_CHUNK_SIZE;
+            int to = Math.min(mirror.size(), from + SNAPSHOT_CHUNK_SIZE);
+            frames.add(ViewerMessages.snapshot(mirrorVersion, chunk, chunks, mirror.subList(from, to)));
+        }
+        snapshotFrames = frames;
+        return frames;
+    }
+
+    private void runLoop() {
+        try {
+            while (running) {
+                selector.select();
+                Runnable task;
+                while ((task = loopTasks.poll()) != null) {
+                    task.run();
+                }
+
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if (!key.isValid()) {
+                        continue;
+                    }
+                    if (key.isAcceptable()) {
+                        accept();
+                    } else {
+                        ((ViewerConnection) key.attachment()).handle();
+                    }
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("WebSocket gateway failed: " + e.getMessage());
+        } finally {
+            for (SelectionKey key : selector.keys()) {
+                if (key.attachment() instanceof ViewerConnection) {
+                    ((ViewerConnection) key.attachment()).close();
+                }
+            }
+            try {
+                acceptor.close();
+                selector.close();
+            } catch (IOException ignored) {
+                // Shutting down anyway
+            }
+        }
+    }
+
+    private void accept() {
+        try {
+            SocketChannel channel = acceptor.accept();
+            if (channel == null) {
+                return;
+            }
+            channel.configureBlocking(false);
+            channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            SelectionKey key = channel.register(selector, SelectionKey.OP_READ);
+            key.attach(new ViewerConnection(this, channel, key));
+        } catch (IOException e) {
+            System.err.println("Error accepting viewer: " + e.getMessage());
+        }
+    }
+}
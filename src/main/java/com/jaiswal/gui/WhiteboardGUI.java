@@ -2,19 +2,20 @@ package com.jaiswal.gui;
 
 import com.jaiswal.client.WhiteboardClient;
 import com.jaiswal.gui.components.CanvasPanel;
+import com.jaiswal.gui.components.CanvasScene;
 import com.jaiswal.gui.components.StatusBarPanel;
 import com.jaiswal.gui.components.ToolbarPanel;
 import com.jaiswal.gui.components.UserListPanel;
+import com.jaiswal.gui.dialogs.JoinRequestDialog;
 import com.jaiswal.gui.utils.IconLoader;
 import com.jaiswal.gui.utils.UIConstants;
-import com.jaiswal.shared.IDrawable;
+import com.jaiswal.shared.PresenceOp;
 
 import javax.swing.*;
 import java.awt.*;
 import java.awt.event.WindowAdapter;
 import java.awt.event.WindowEvent;
 import java.util.List;
-import java.util.Map;
 
 /**
  * Main entry point for the Whiteboard GUI application.
@@ -29,6 +30,8 @@ public class WhiteboardGUI extends JFrame {
     private UserListPanel userListPanel;
     private ToolbarPanel toolbarPanel;
     private StatusBarPanel statusBarPanel;
+    // Created when the first join request arrives
+    private JoinRequestDialog joinRequestDialog;
 
     // Menu components
     private JMenuBar menuBar;
@@ -257,19 +260,47 @@ public class WhiteboardGUI extends JFrame {
     }
 
     /**
-     * Update the canvas with new drawing elements
-     * @param elements Map of drawing elements to display
+     * Update the canvas with a prepared scene
+     * @param scene Render-ready scene to display
      */
-    public void updateCanvas(Map<Integer, IDrawable> elements) {
-        SwingUtilities.invokeLater(() -> canvasPanel.setElements(elements));
+    public void updateCanvas(CanvasScene scene) {
+        if (SwingUtilities.isEventDispatchThread()) {
+            canvasPanel.setScene(scene);
+        } else {
+            SwingUtilities.invokeLater(() -> canvasPanel.setScene(scene));
+        }
+    }
+
+    /**
+     * Get the part of the canvas on screen, safe to call from any thread
+     * @return Visible region in canvas coordinates, or null before the first paint
+     */
+    public Rectangle getCanvasViewport() {
+        return canvasPanel != null ? canvasPanel.getVisibleRegion() : null;
+    }
+
+    /**
+     * Replace the user list display, at once when called on the event dispatch thread
+     * @param users Everyone on the board
+     */
+    public void updateUserList(List<PresenceOp> users) {
+        if (SwingUtilities.isEventDispatchThread()) {
+            userListPanel.updateUsers(users);
+        } else {
+            SwingUtilities.invokeLater(() -> userListPanel.updateUsers(users));
+        }
     }
 
     /**
-     * Update the user list display
-     * @param users List of users to display
+     * Apply changes to the user list display, at once when called on the event dispatch thread
+     * @param changes Changes in order, at most one per user
      */
-    public void updateUserList(List<String> users) {
-        SwingUtilities.invokeLater(() -> userListPanel.updateUsers(users));
+    public void applyPresence(List<PresenceOp> changes) {
+        if (SwingUtilities.isEventDispatchThread()) {
+            userListPanel.applyChanges(changes);
+        } else {
+            SwingUtilities.invokeLater(() -> userListPanel.applyChanges(changes));
+        }
     }
 
     /**
@@ -294,6 +325,21 @@ public class WhiteboardGUI extends JFrame {
         });
     }
 
+    /**
+     * Show the users waiting for the manager to let them in, without blocking
+     * drawing. Must be called on the event dispatch thread.
+     * @param usernames Users waiting to join, an empty list hides the prompt
+     */
+    public void showJoinRequests(List<String> usernames) {
+        if (joinRequestDialog == null) {
+            if (usernames.isEmpty()) {
+                return;
+            }
+            joinRequestDialog = new JoinRequestDialog(this, client::answerJoinRequests);
+        }
+        joinRequestDialog.setRequests(usernames);
+    }
+
     /**
      * Show a confirmation dialog
      * @param message The message to display
@@ -3,7 +3,6 @@ package com.jaiswal.gui.components;
 import com.jaiswal.client.WhiteboardClient;
 import com.jaiswal.gui.dialogs.TextInputDialog;
 import com.jaiswal.gui.utils.UIConstants;
-import com.jaiswal.shared.IDrawable;
 import com.jaiswal.shared.TextElement;
 import com.jaiswal.shared.shapes.Shape;
 import com.jaiswal.shared.shapes.Line;
@@ -17,9 +16,7 @@ import java.awt.event.*;
 import java.awt.geom.AffineTransform;
 import java.awt.geom.Point2D;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 
 /**
  * Canvas panel for the whiteboard application.
@@ -29,7 +26,9 @@ public class CanvasPanel extends JPanel {
 
     // Drawing and canvas state
     private final WhiteboardClient client;
-    private Map<Integer, IDrawable> elements = new HashMap<>();
+    private CanvasScene scene = CanvasScene.EMPTY;
+    // Visible part of the canvas in model coordinates, read by the snapshot transfer thread
+    private volatile java.awt.Rectangle visibleRegion;
     private Point startPoint;
     private Point currentPoint;
     private String selectedTool = "PENCIL";
@@ -455,15 +454,26 @@ public class CanvasPanel extends JPanel {
     }
 
     /**
-     * Sets the drawing elements to be displayed
+     * Swaps in a new scene to be displayed. The scene is immutable and fully
+     * prepared, so this is cheap enough to run on every frame.
      *
-     * @param elements Map of drawable elements
+     * @param scene Render-ready scene
      */
-    public void setElements(Map<Integer, IDrawable> elements) {
-        this.elements = new HashMap<>(elements);
+    public void setScene(CanvasScene scene) {
+        this.scene = scene != null ? scene : CanvasScene.EMPTY;
         repaint();
     }
 
+    /**
+     * Gets the part of the canvas currently on screen, as of the last paint.
+     * Safe to call from any thread.
+     *
+     * @return Visible region in model coordinates, or null if not yet painted
+     */
+    public java.awt.Rectangle getVisibleRegion() {
+        return visibleRegion;
+    }
+
     /**
      * Sets the selected drawing tool
      *
@@ -541,6 +551,12 @@ public class CanvasPanel extends JPanel {
         g2d.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
         g2d.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
 
+        // Remember what is on screen so progressive loading can start there
+        java.awt.Rectangle visible = getVisibleRect();
+        visibleRegion = new java.awt.Rectangle(
+                (int) (visible.x / zoomFactor), (int) (visible.y / zoomFactor),
+                (int) Math.ceil(visible.width / zoomFactor), (int) Math.ceil(visible.height / zoomFactor));
+
         // Apply zoom transformation
         AffineTransform originalTransform = g2d.getTransform();
         g2d.scale(zoomFactor, zoomFactor);
@@ -548,10 +564,8 @@ public class CanvasPanel extends JPanel {
         // Draw grid background for better spatial awareness
         drawGrid(g2d);
 
-        // Draw all elements from the map
-        for (IDrawable drawable : elements.values()) {
-            drawable.draw(g2d);
-        }
+        // Draw elements intersecting the repaint area, clip is in model coordinates here
+        scene.paint(g2d, g2d.getClipBounds());
 
         // Draw preview of the current drawing operation
         if (isDragging && startPoint != null && currentPoint != null) {
@@ -0,0 +1,92 @@
+package com.jaiswal.gui.components;
+
+import com.jaiswal.shared.IDrawable;
+
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+
+/**
+ * Immutable, render-ready snapshot of the canvas contents.
+ * Scenes are built away from the event dispatch thread so that painting only
+ * has to walk a flat array and cull against precomputed bounds.
+ */
+public final class CanvasScene {
+
+    public static final CanvasScene EMPTY = new CanvasScene(new IDrawable[0], new Rectangle[0]);
+
+    // Draw list in stacking order with bounds at matching indices
+    private final IDrawable[] drawables;
+    private final Rectangle[] bounds;
+
+    private CanvasScene(IDrawable[] drawables, Rectangle[] bounds) {
+        this.drawables = drawables;
+        this.bounds = bounds;
+    }
+
+    /**
+     * Builds a scene from elements already in stacking order. This touches every
+     * element to warm its geometry caches and should be called off the event
+     * dispatch thread.
+     *
+     * @param drawables Elements in stacking order; the array is taken over
+     * @return The prepared scene
+     */
+    static CanvasScene of(IDrawable[] drawables) {
+        if (drawables.length == 0) {
+            return EMPTY;
+        }
+
+        Rectangle[] bounds = new Rectangle[drawables.length];
+        for (int i = 0; i < drawables.length; i++) {
+            bounds[i] = drawables[i].getBounds();
+        }
+
+        return new CanvasScene(drawables, bounds);
+    }
+
+    /**
+     * Builds a scene with more elements stacked on top of this one's. Only the
+     * added elements are measured, so this is cheap to repeat over a large scene.
+     *
+     * @param added Elements to stack on top, in stacking order
+     * @return The prepared scene
+     */
+    CanvasScene with(IDrawable[] added) {
+        if (added.length == 0) {
+            return this;
+        }
+
+        IDrawable[] combined = new IDrawable[drawables.length + added.length];
+        Rectangle[] combinedBounds = new Rectangle[combined.length];
+        System.arraycopy(drawables, 0, combined, 0, drawables.length);
+        System.arraycopy(bounds, 0, combinedBounds, 0, bounds.length);
+        for (int i = 0; i < added.length; i++) {
+            combined[drawables.length + i] = added[i];
+            combinedBounds[drawables.length + i] = added[i].getBounds();
+        }
+
+        return new CanvasScene(combined, combinedBounds);
+    }
+
+    /**
+     * Paints every element intersecting the clip, in stacking order
+     *
+     * @param g2d The graphics context, already in model coordinates
+     * @param clip The visible area in model coordinates, or null to paint everything
+     */
+    public void paint(Graphics2D g2d, Rectangle clip) {
+        for (int i = 0; i < drawables.length; i++) {
+            Rectangle b = bounds[i];
+            if (clip == null || b == null || clip.intersects(b)) {
+                drawables[i].draw(g2d);
+            }
+        }
+    }
+
+    /**
+     * @return Number of elements in the scene
+     */
+    public int size() {
+        return drawables.length;
+    }
+}
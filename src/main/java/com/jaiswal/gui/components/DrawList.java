@@ -0,0 +1,153 @@
+package com.jaiswal.gui.components;
+
+import com.jaiswal.shared.IDrawable;
+import com.jaiswal.shared.LongIntMap;
+
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+/**
+ * Creation-ordered, array-backed list of drawable elements keyed by element ID.
+ * Appending is O(1) amortized, removal leaves a tombstone in place, and the
+ * array is compacted once tombstones outnumber live elements.
+ * Not thread-safe; owned by a single thread.
+ */
+public final class DrawList {
+    private static final int INITIAL_CAPACITY = 64;
+    private static final int MIN_COMPACT_SIZE = 64;
+
+    // Slots in stacking order, null marks a removed element
+    private IDrawable[] slots = new IDrawable[INITIAL_CAPACITY];
+    private int slotCount = 0;
+    private int liveCount = 0;
+
+    // Element ID to slot index
+    private final LongIntMap slotById = new LongIntMap();
+
+    /**
+     * Adds an element on top of the stack. If the ID is already present the
+     * element is replaced in place and keeps its stacking position.
+     *
+     * @param drawable The element to add
+     */
+    public void add(IDrawable drawable) {
+        int slot = slotById.get(drawable.getId(), -1);
+        if (slot >= 0) {
+            slots[slot] = drawable;
+            return;
+        }
+
+        if (slotCount == slots.length) {
+            slots = Arrays.copyOf(slots, slots.length * 2);
+        }
+        slots[slotCount] = drawable;
+        slotById.put(drawable.getId(), slotCount);
+        slotCount++;
+        liveCount++;
+    }
+
+    /**
+     * Removes an element, leaving a tombstone until the next compaction
+     *
+     * @param id The element ID
+     * @return true if the element was present
+     */
+    public boolean remove(long id) {
+        int slot = slotById.remove(id, -1);
+        if (slot < 0) {
+            return false;
+        }
+
+        slots[slot] = null;
+        liveCount--;
+        if (slotCount >= MIN_COMPACT_SIZE && slotCount - liveCount > liveCount) {
+            compact();
+        }
+        return true;
+    }
+
+    /**
+     * @param id The element ID
+     * @return true if an element with this ID is present
+     */
+    public boolean contains(long id) {
+        return slotById.containsKey(id);
+    }
+
+    /**
+     * @param id The element ID
+     * @return The element, or null if absent
+     */
+    public IDrawable get(long id) {
+        int slot = slotById.get(id, -1);
+        return slot < 0 ? null : slots[slot];
+    }
+
+    /**
+     * Removes all elements
+     */
+    public void clear() {
+        Arrays.fill(slots, 0, slotCount, null);
+        slotById.clear();
+        slotCount = 0;
+        liveCount = 0;
+    }
+
+    /**
+     * @return Number of live elements
+     */
+    public int size() {
+        return liveCount;
+    }
+
+    /**
+     * Visits every live slot in stacking order
+     *
+     * @param visitor Receives each element
+     */
+    public void forEach(Consumer<IDrawable> visitor) {
+        for (int i = 0; i < slotCount; i++) {
+            if (slots[i] != null) {
+                visitor.accept(slots[i]);
+            }
+        }
+    }
+
+    /**
+     * @return Live elements in stacking order, without tombstones
+     */
+    public IDrawable[] toArray() {
+        IDrawable[] result = new IDrawable[liveCount];
+        int n = 0;
+        for (int i = 0; i < slotCount; i++) {
+            if (slots[i] != null) {
+                result[n++] = slots[i];
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Squeezes out tombstones, preserving stacking order
+     */
+    public void compact() {
+        int n = 0;
+        for (int i = 0; i < slotCount; i++) {
+            IDrawable drawable = slots[i];
+            if (drawable != null) {
+                if (n != i) {
+                    slots[n] = drawable;
+                    slotById.put(drawable.getId(), n);
+                }
+                n++;
+            }
+        }
+        Arrays.fill(slots, n, slotCount, null);
+        slotCount = n;
+
+        // Give memory back after a large board was cleared
+        if (slots.length > INITIAL_CAPACITY && slotCount < slots.length / 4) {
+            slots = Arrays.copyOf(slots, Math.max(INITIAL_CAPACITY, slotCount * 2));
+        }
+    }
+}
@@ -0,0 +1,207 @@
+package com.jaiswal.gui.components;
+
+import com.jaiswal.shared.BoardDigest;
+import com.jaiswal.shared.BoardOp;
+import com.jaiswal.shared.ClientOp;
+import com.jaiswal.shared.IDrawable;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Maintains the client's draw list as board ops and snapshots arrive, and
+ * produces immutable scenes from it. Elements are stacked in the order they
+ * are applied, which is the server's creation order. Ops drawn locally that
+ * the server has not confirmed yet are laid over the draw list in each scene.
+ * A {@link BoardDigest} of the draw list is kept alongside, to check it
+ * against the server's board.
+ * Not thread-safe; intended for a single preparation thread.
+ */
+public class SceneBuilder {
+    // Recent additions kept so that a repair can be compared at an older version
+    private static final int RECENT_ADDS = 10_000;
+
+    private final DrawList drawList = new DrawList();
+    private final BoardDigest digest = new BoardDigest();
+    // Board version the draw list reflects
+    private long version = 0;
+    // Scene of the draw list alone, kept until the draw list changes
+    private CanvasScene base;
+    // Additions since loggedFrom, oldest first; nothing else changed the draw list since
+    private final ArrayDeque<BoardOp> recentAdds = new ArrayDeque<>();
+    private long loggedFrom = 0;
+
+    /**
+     * Applies one sequenced op to the draw list
+     *
+     * @param op The op
+     */
+    public void apply(BoardOp op) {
+        version = Math.max(version, op.getSequence());
+        switch (op.getKind()) {
+            case ADD:
+                add(op.getElement());
+                if (recentAdds.size() == RECENT_ADDS) {
+                    loggedFrom = recentAdds.removeFirst().getSequence();
+                }
+                recentAdds.addLast(op);
+                break;
+            case CLEAR:
+            case RESET:
+                // After a reset the canvas stays empty until the new snapshot lands
+                drawList.clear();
+                digest.clear();
+                base = null;
+                recentAdds.clear();
+                loggedFrom = op.getSequence();
+                break;
+        }
+    }
+
+    /**
+     * Replaces the draw list with a snapshot
+     *
+     * @param version The snapshot's board version
+     * @param elements Snapshot elements in stacking order
+     */
+    public void reset(long version, List<IDrawable> elements) {
+        this.version = version;
+        drawList.clear();
+        digest.clear();
+        base = null;
+        recentAdds.clear();
+        loggedFrom = version;
+        for (IDrawable drawable : elements) {
+            add(drawable);
+        }
+    }
+
+    /**
+     * Adds one chunk of a snapshot that is still arriving
+     *
+     * @param elements Chunk elements in stacking order
+     */
+    public void append(List<IDrawable> elements) {
+        for (IDrawable drawable : elements) {
+            add(drawable);
+        }
+    }
+
+    /**
+     * Replaces the content of some digest buckets with the server's as of an
+     * earlier version, then adds back the elements added in those buckets
+     * since. The replacements are stacked on top. Ignored if the draw list
+     * was cleared or replaced since that version, or its additions since are
+     * no longer logged.
+     *
+     * @param at Board version the buckets were compared at
+     * @param buckets The buckets that differ from the server's
+     * @param elements The server's elements in those buckets at that version, in stacking order
+     */
+    public void repair(long at, int[] buckets, List<IDrawable> elements) {
+        if (at < loggedFrom || at > version) {
+            return;
+        }
+        boolean[] repaired = new boolean[BoardDigest.BUCKETS];
+        for (int bucket : buckets) {
+            repaired[bucket] = true;
+        }
+        List<IDrawable> stale = new ArrayList<>();
+        drawList.forEach(drawable -> {
+            if (repaired[BoardDigest.bucketOf(drawable.getId())]) {
+                stale.add(drawable);
+            }
+        });
+        for (IDrawable drawable : stale) {
+            drawList.remove(drawable.getId());
+            digest.remove(drawable);
+        }
+        base = null;
+        for (IDrawable drawable : elements) {
+            add(drawable);
+        }
+        for (BoardOp op : recentAdds) {
+            if (op.getSequence() > at && repaired[BoardDigest.bucketOf(op.getElement().getId())]) {
+                add(op.getElement());
+            }
+        }
+    }
+
+    private void add(IDrawable drawable) {
+        IDrawable replaced = drawList.get(drawable.getId());
+        if (replaced != null) {
+            digest.remove(replaced);
+        }
+        drawList.add(drawable);
+        digest.add(drawable);
+        base = null;
+    }
+
+    /**
+     * @return Board version the draw list reflects
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * @return Bucket hashes of the draw list's digest, a copy
+     */
+    public long[] getDigestBuckets() {
+        return digest.getBuckets();
+    }
+
+    /**
+     * @return The draw list's elements in stacking order
+     */
+    public List<IDrawable> getElements() {
+        return Arrays.asList(drawList.toArray());
+    }
+
+    /**
+     * @return A scene of the current draw list
+     */
+    public CanvasScene build() {
+        return build(Collections.emptyList());
+    }
+
+    /**
+     * @param local Ops drawn locally and not in the draw list yet, in the order they were drawn
+     * @return A scene of the current draw list with the local ops applied on top
+     */
+    public CanvasScene build(List<ClientOp> local) {
+        // Only what was drawn after the last local clear remains
+        int from = 0;
+        for (int i = local.size() - 1; i >= 0; i--) {
+            if (local.get(i).getKind() == ClientOp.Kind.CLEAR) {
+                from = i + 1;
+                break;
+            }
+        }
+        boolean cleared = from > 0;
+        if (!cleared && local.isEmpty()) {
+            return baseScene();
+        }
+
+        List<IDrawable> added = new ArrayList<>(local.size() - from);
+        for (ClientOp op : local.subList(from, local.size())) {
+            if (cleared || !drawList.contains(op.getElement().getId())) {
+                added.add(op.getElement());
+            }
+        }
+        if (cleared) {
+            return CanvasScene.of(added.toArray(new IDrawable[0]));
+        }
+        return baseScene().with(added.toArray(new IDrawable[0]));
+    }
+
+    private CanvasScene baseScene() {
+        if (base == null) {
+            base = CanvasScene.of(drawList.toArray());
+        }
+        return base;
+    }
+}
@@ -3,6 +3,7 @@ package com.jaiswal.gui.components;
 import com.jaiswal.client.WhiteboardClient;
 import com.jaiswal.gui.utils.IconLoader;
 import com.jaiswal.gui.utils.UIConstants;
+import com.jaiswal.shared.PresenceOp;
 
 import javax.swing.*;
 import javax.swing.border.EmptyBorder;
@@ -10,8 +11,9 @@ import java.awt.*;
 import java.awt.event.ActionEvent;
 import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
-import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Panel displaying the list of connected users in the whiteboard session.
@@ -22,7 +24,8 @@ public class UserListPanel extends JPanel {
     // Data and state
     private final WhiteboardClient client;
     private final boolean isManager;
-    private final List<String> users = new ArrayList<>();
+    // Each listed user's latest state, by username
+    private final Map<String, PresenceOp> users = new HashMap<>();
 
     // UI Components
     private final JList<String> userList;
@@ -71,7 +74,7 @@ public class UserListPanel extends JPanel {
         add(buttonPanel, BorderLayout.SOUTH);
 
         // Load initial data
-        refreshUserList();
+        refreshControls();
     }
 
     /**
@@ -267,30 +270,51 @@ public class UserListPanel extends JPanel {
     }
 
     /**
-     * Updates the user list with the current connected users
+     * Replaces the user list with everyone on the board
      *
-     * @param users List of usernames
+     * @param users One JOINED op per user
      */
-    public void updateUsers(List<String> users) {
+    public void updateUsers(List<PresenceOp> users) {
         this.users.clear();
-        this.users.addAll(users);
-        refreshUserList();
+        userListModel.clear();
+        for (PresenceOp user : users) {
+            this.users.put(user.getUsername(), user);
+            userListModel.addElement(user.getUsername());
+        }
+        refreshControls();
     }
 
     /**
-     * Refreshes the user list display
+     * Applies changes to the user list in place, so the selection and
+     * scroll position survive users coming and going
+     *
+     * @param changes Changes in order, at most one per user
      */
-    private void refreshUserList() {
-        userListModel.clear();
+    public void applyChanges(List<PresenceOp> changes) {
+        for (PresenceOp change : changes) {
+            String username = change.getUsername();
+            if (change.getKind() == PresenceOp.Kind.LEFT) {
+                if (users.remove(username) != null) {
+                    userListModel.removeElement(username);
+                }
+            } else if (users.put(username, change) == null) {
+                userListModel.addElement(username);
+            } else {
+                // Same element again, so the row repaints with the new state
+                int index = userListModel.indexOf(username);
+                userListModel.set(index, username);
+            }
+        }
+        refreshControls();
+    }
 
+    /**
+     * Refreshes the user count and button states
+     */
+    private void refreshControls() {
         // Update count in title
         titleLabel.setText("Connected Users (" + users.size() + ")");
 
-        // Add all users to list model
-        for (String user : users) {
-            userListModel.addElement(user);
-        }
-
         // Disable buttons if no users are selected
         if (kickButton != null) {
             kickButton.setEnabled(!userList.isSelectionEmpty());
@@ -336,12 +360,18 @@ public class UserListPanel extends JPanel {
                 usernameLabel.setFont(usernameLabel.getFont().deriveFont(Font.BOLD));
             }
 
-            // Check if this user is the manager (this is a simplified check - actual implementation would depend on client data)
-            if (index == 0 && isManager && username.equals(clientUsername)) {
+            PresenceOp presence = users.get(username);
+            if (presence != null && presence.isManager()) {
                 iconLabel.setIcon(IconLoader.loadIcon("manager.png"));
                 statusLabel.setText("Manager");
                 statusLabel.setForeground(new Color(0, 100, 0));
             }
+            // Connection dropped, the user may still resume
+            if (presence != null && presence.isAway()) {
+                statusLabel.setText("Away");
+                statusLabel.setForeground(new Color(150, 150, 150));
+                usernameLabel.setEnabled(false);
+            }
 
             // Add components to panel
             panel.add(iconLabel, BorderLayout.WEST);
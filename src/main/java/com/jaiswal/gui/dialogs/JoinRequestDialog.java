@@ -0,0 +1,112 @@
+package com.jaiswal.gui.dialogs;
+
+import javax.swing.*;
+import javax.swing.border.EmptyBorder;
+import java.awt.*;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiConsumer;
+
+/**
+ * Non-modal dialog listing the users waiting to join, so the manager can
+ * admit several at once and keep drawing while it is open. The list is
+ * replaced whenever the server reports the pending requests; ticks on users
+ * still listed are kept.
+ */
+public class JoinRequestDialog extends JDialog {
+
+    private final BiConsumer<List<String>, List<String>> answer;
+    // Users in arrival order with their checkbox
+    private final Map<String, JCheckBox> requests = new LinkedHashMap<>();
+    private final JPanel requestPanel = new JPanel();
+    private final JLabel headingLabel = new JLabel();
+    private final JButton admitButton = new JButton("Admit Selected");
+    private final JButton denyButton = new JButton("Deny All");
+
+    /**
+     * Creates a new JoinRequestDialog
+     *
+     * @param parent The parent window
+     * @param answer Given the users admitted and the users denied once the manager decides
+     */
+    public JoinRequestDialog(Window parent, BiConsumer<List<String>, List<String>> answer) {
+        super(parent, "Join Requests", ModalityType.MODELESS);
+        this.answer = answer;
+
+        requestPanel.setLayout(new BoxLayout(requestPanel, BoxLayout.Y_AXIS));
+        JScrollPane scrollPane = new JScrollPane(requestPanel);
+        scrollPane.setPreferredSize(new Dimension(280, 160));
+
+        JPanel buttonPanel = new JPanel(new FlowLayout(FlowLayout.RIGHT));
+        buttonPanel.add(admitButton);
+        buttonPanel.add(denyButton);
+
+        JPanel contentPanel = new JPanel(new BorderLayout(10, 10));
+        contentPanel.setBorder(new EmptyBorder(10, 10, 10, 10));
+        contentPanel.add(headingLabel, BorderLayout.NORTH);
+        contentPanel.add(scrollPane, BorderLayout.CENTER);
+
+        setLayout(new BorderLayout());
+        add(contentPanel, BorderLayout.CENTER);
+        add(buttonPanel, BorderLayout.SOUTH);
+
+        admitButton.addActionListener(e -> decide(true));
+        denyButton.addActionListener(e -> decide(false));
+        // Closing without deciding leaves the requests waiting until they time out
+        setDefaultCloseOperation(HIDE_ON_CLOSE);
+
+        pack();
+        setLocationRelativeTo(parent);
+    }
+
+    /**
+     * Shows the users now waiting, or hides the dialog if there are none
+     *
+     * @param usernames Users waiting to join, in arrival order
+     */
+    public void setRequests(List<String> usernames) {
+        Map<String, JCheckBox> previous = new LinkedHashMap<>(requests);
+        requests.clear();
+        requestPanel.removeAll();
+        for (String username : usernames) {
+            JCheckBox checkBox = previous.get(username);
+            if (checkBox == null) {
+                checkBox = new JCheckBox(username, true);
+            }
+            requests.put(username, checkBox);
+            requestPanel.add(checkBox);
+        }
+        requestPanel.revalidate();
+        requestPanel.repaint();
+
+        if (requests.isEmpty()) {
+            setVisible(false);
+            return;
+        }
+        headingLabel.setText(requests.size() == 1 ? "1 user wants to join:" : requests.size() + " users want to join:");
+        if (!isVisible()) {
+            setVisible(true);
+        }
+    }
+
+    /**
+     * Answers every listed request
+     *
+     * @param admit true to admit the ticked users and deny the rest, false to deny everyone
+     */
+    private void decide(boolean admit) {
+        List<String> approved = new ArrayList<>();
+        List<String> denied = new ArrayList<>();
+        for (Map.Entry<String, JCheckBox> entry : requests.entrySet()) {
+            if (admit && entry.getValue().isSelected()) {
+                approved.add(entry.getKey());
+            } else {
+                denied.add(entry.getKey());
+            }
+        }
+        setRequests(new ArrayList<>());
+        answer.accept(approved, denied);
+    }
+}
@@ -0,0 +1,27 @@
+package com.jaiswal.replication;
+
+import com.jaiswal.shared.BoardOp;
+
+import java.rmi.Remote;
+import java.rmi.RemoteException;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Receiving side of a follower node, called by its primary
+ */
+public interface IReplica extends Remote {
+    /**
+     * Applies ops sequenced on the primary. Returns once they are applied.
+     * @param ops Ops per board, in sequence order
+     * @param managers Manager of each board in the batch, boards without one are absent
+     */
+    void replicate(Map<String, List<BoardOp>> ops, Map<String, String> managers) throws RemoteException;
+
+    /**
+     * Updates the replication group, in failover order
+     * @param nodes Addresses clients reach the nodes at, the primary first
+     * @param sources Addresses of the nodes' replication endpoints, in the same order
+     */
+    void updateGroup(List<String> nodes, List<String> sources) throws RemoteException;
+}
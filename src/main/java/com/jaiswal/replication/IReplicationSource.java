@@ -0,0 +1,33 @@
+package com.jaiswal.replication;
+
+import com.jaiswal.server.BoardHandoff;
+
+import java.rmi.Remote;
+import java.rmi.RemoteException;
+import java.util.List;
+
+/**
+ * Replication endpoint of a primary node, called by its followers
+ */
+public interface IReplicationSource extends Remote {
+    /**
+     * Adds a follower. Every op sequenced from now on is shipped to it.
+     * @param node Address clients reach the follower at, "host:port"
+     * @param source Address of the follower's own replication endpoint, "host:port"
+     * @param replica The follower's receiving interface
+     * @return IDs of the boards on the primary, to be copied by the follower
+     */
+    List<String> subscribe(String node, String source, IReplica replica) throws RemoteException;
+
+    /**
+     * @param boardId The board
+     * @return A full copy of the board, or null if the primary has no such board
+     */
+    BoardHandoff fetchBoard(String boardId) throws RemoteException;
+
+    /**
+     * @param node Address of the asking follower
+     * @return true if the follower is still being fed, false if it must subscribe again
+     */
+    boolean heartbeat(String node) throws RemoteException;
+}
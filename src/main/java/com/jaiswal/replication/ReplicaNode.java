@@ -0,0 +1,249 @@
+package com.jaiswal.replication;
+
+import com.jaiswal.server.BoardHandoff;
+import com.jaiswal.server.BoardRegistry;
+import com.jaiswal.shared.BoardOp;
+
+import java.io.IOException;
+import java.rmi.NoSuchObjectException;
+import java.rmi.NotBoundException;
+import java.rmi.RemoteException;
+import java.rmi.registry.LocateRegistry;
+import java.rmi.registry.Registry;
+import java.rmi.server.UnicastRemoteObject;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Follower side of replication. Keeps read-only copies of the primary's
+ * boards, which viewers may join, and watches the primary. When the primary
+ * stops answering, the first live follower in the group's failover order
+ * promotes itself and the others follow it.
+ */
+public class ReplicaNode implements IReplica {
+    // System property with the replication endpoint of the primary to follow, "host:port"
+    public static final String PRIMARY_PROPERTY = "syncboard.replicaOf";
+
+    private static final long HEARTBEAT_MS = 250;
+    // Missed heartbeats before the primary is considered gone
+    private static final int MAX_MISSED_HEARTBEATS = 3;
+    // How long to wait for the next node in line to take over
+    private static final long PROMOTION_WAIT_MS = 3_000;
+
+    private final BoardRegistry registry;
+    private final Registry rmiRegistry;
+    private final String source;
+    private IReplica stub;
+
+    private volatile IReplicationSource primary;
+    private volatile String primarySource;
+    private volatile List<String> groupNodes = Collections.emptyList();
+    private volatile List<String> groupSources = Collections.emptyList();
+    private int missedHeartbeats;
+    private ReplicationSource promoted;
+
+    private final ScheduledExecutorService watchdog = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "replication-watchdog");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private ReplicaNode(BoardRegistry registry, Registry rmiRegistry, String source) {
+        this.registry = registry;
+        this.rmiRegistry = rmiRegistry;
+        this.source = source;
+    }
+
+    /**
+     * Starts replication for a node: as the primary, or as a follower of the
+     * primary given by {@value #PRIMARY_PROPERTY}
+     * @param registry The node's boards
+     * @param host Host the replication endpoint is reached at
+     * @param port Port of the node's replication endpoint
+     * @return The node's replication role, {@link #getSource()} is set while it is the primary
+     * @throws RemoteException If the endpoint cannot be created or the primary cannot be reached
+     */
+    public static ReplicaNode start(BoardRegistry registry, String host, int port) throws RemoteException {
+        Registry rmiRegistry = LocateRegistry.createRegistry(port);
+        String source = host + ":" + port;
+        String primary = System.getProperty(PRIMARY_PROPERTY);
+        if (primary == null) {
+            ReplicaNode leader = new ReplicaNode(registry, rmiRegistry, source);
+            leader.promoted = ReplicationSource.lead(registry, rmiRegistry, source);
+            return leader;
+        }
+
+        ReplicaNode follower = new ReplicaNode(registry, rmiRegistry, source);
+        follower.stub = (IReplica) UnicastRemoteObject.exportObject(follower, 0);
+        follower.follow(primary);
+        follower.watchdog.scheduleWithFixedDelay(follower::checkPrimary, HEARTBEAT_MS, HEARTBEAT_MS,
+                TimeUnit.MILLISECONDS);
+        return follower;
+    }
+
+    /**
+     * @return The source feeding followers once this node is the primary, null while following
+     */
+    public synchronized ReplicationSource getSource() {
+        return promoted;
+    }
+
+    /**
+     * Stops replicating
+     */
+    public synchronized void stop() {
+        watchdog.shutdownNow();
+        if (promoted != null) {
+            promoted.stop();
+        }
+        try {
+            UnicastRemoteObject.unexportObject(this, true);
+        } catch (NoSuchObjectException ignored) {
+            // The primary never exports its follower side
+        }
+        try {
+            UnicastRemoteObject.unexportObject(rmiRegistry, true);
+        } catch (NoSuchObjectException ignored) {
+            // Already unexported
+        }
+    }
+
+    /**
+     * Subscribes to a primary and copies all its boards
+     * @param address The primary's replication endpoint, "host:port"
+     */
+    private void follow(String address) throws RemoteException {
+        IReplicationSource candidate = lookup(address);
+        synchronized (this) {
+            // Ops shipped meanwhile wait for the copies, older ones are then skipped
+            long start = System.nanoTime();
+            List<String> boardIds = candidate.subscribe(registry.getAddress(), source, stub);
+            primary = candidate;
+            primarySource = address;
+            registry.setPrimary(address);
+            for (String boardId : boardIds) {
+                copyBoard(boardId);
+            }
+            missedHeartbeats = 0;
+            System.out.printf("Following %s, copied %d boards in %.0f ms%n", address, boardIds.size(),
+                    (System.nanoTime() - start) / 1e6);
+        }
+    }
+
+    private void copyBoard(String boardId) throws RemoteException {
+        BoardHandoff copy = primary.fetchBoard(boardId);
+        if (copy == null) {
+            return;
+        }
+        try {
+            registry.installReplica(copy);
+        } catch (IOException e) {
+            throw new RemoteException("Cannot store copy of board " + boardId, e);
+        }
+    }
+
+    private static IReplicationSource lookup(String address) throws RemoteException {
+        int colon = address.lastIndexOf(':');
+        Registry registry = LocateRegistry.getRegistry(address.substring(0, colon),
+                Integer.parseInt(address.substring(colon + 1)));
+        try {
+            return (IReplicationSource) registry.lookup(ReplicationSource.BINDING_NAME);
+        } catch (NotBoundException e) {
+            throw new RemoteException("No replication primary at " + address, e);
+        }
+    }
+
+    // IReplica
+    @Override
+    public synchronized void replicate(Map<String, List<BoardOp>> ops, Map<String, String> managers)
+            throws RemoteException {
+        for (Map.Entry<String, List<BoardOp>> entry : ops.entrySet()) {
+            String boardId = entry.getKey();
+            if (!registry.applyReplicated(boardId, entry.getValue(), managers.get(boardId))) {
+                // Missed ops or a reloaded board, start over from a full copy
+                copyBoard(boardId);
+            }
+        }
+    }
+
+    @Override
+    public void updateGroup(List<String> nodes, List<String> sources) {
+        groupNodes = new ArrayList<>(nodes);
+        groupSources = new ArrayList<>(sources);
+        registry.setReplicationGroup(groupNodes);
+    }
+
+    // Runs on the watchdog thread
+    private void checkPrimary() {
+        try {
+            if (!primary.heartbeat(registry.getAddress())) {
+                System.out.println("Dropped by primary " + primarySource + ", copying the boards again");
+                follow(primarySource);
+            }
+            missedHeartbeats = 0;
+        } catch (RemoteException e) {
+            if (++missedHeartbeats >= MAX_MISSED_HEARTBEATS) {
+                failOver();
+            }
+        }
+    }
+
+    /**
+     * Finds the next primary in failover order, promoting this node if it is first in line
+     */
+    private void failOver() {
+        long start = System.nanoTime();
+        List<String> nodes = groupNodes;
+        List<String> sources = groupSources;
+        System.out.println("Primary " + primarySource + " is gone, failing over");
+        for (int i = 0; i < sources.size(); i++) {
+            String candidate = sources.get(i);
+            if (candidate.equals(primarySource)) {
+                continue;
+            }
+            if (candidate.equals(source)) {
+                promote(nodes, start);
+                return;
+            }
+            long deadline = System.currentTimeMillis() + PROMOTION_WAIT_MS;
+            while (System.currentTimeMillis() < deadline) {
+                try {
+                    follow(candidate);
+                    System.out.printf("Now following %s after %.0f ms%n", candidate, (System.nanoTime() - start) / 1e6);
+                    return;
+                } catch (RemoteException e) {
+                    // Not promoted yet
+                    sleep(HEARTBEAT_MS);
+                }
+            }
+            System.err.println("Node " + nodes.get(i) + " did not take over, trying the next one");
+        }
+        System.err.println("No node left to fail over to, promoting " + registry.getAddress());
+        promote(nodes, start);
+    }
+
+    private synchronized void promote(List<String> nodes, long start) {
+        try {
+            registry.promote();
+            promoted = ReplicationSource.lead(registry, rmiRegistry, source);
+            watchdog.shutdown();
+            System.out.printf("Promoted %s to primary after %.0f ms (was %s)%n", registry.getAddress(),
+                    (System.nanoTime() - start) / 1e6, nodes);
+        } catch (RemoteException e) {
+            System.err.println("Error promoting to primary: " + e.getMessage());
+        }
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package com.jaiswal.replication;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counters for ops shipped from a primary to its followers. Lag is the time
+ * from an op being sequenced on the primary to a follower confirming it has
+ * applied it.
+ */
+public class ReplicationMetrics {
+    private final AtomicLong ops = new AtomicLong();
+    private final AtomicLong batches = new AtomicLong();
+    private final AtomicLong totalLagNanos = new AtomicLong();
+    private final AtomicLong maxLagNanos = new AtomicLong();
+
+    void recordBatch(int opCount, long lagNanosSum, long maxLagNanos) {
+        batches.incrementAndGet();
+        ops.addAndGet(opCount);
+        totalLagNanos.addAndGet(lagNanosSum);
+        this.maxLagNanos.accumulateAndGet(maxLagNanos, Math::max);
+    }
+
+    /**
+     * @return Number of ops applied by followers, counted once per follower
+     */
+    public long getOpCount() {
+        return ops.get();
+    }
+
+    /**
+     * @return Number of batches shipped
+     */
+    public long getBatchCount() {
+        return batches.get();
+    }
+
+    /**
+     * @return Mean replication lag per op, in milliseconds
+     */
+    public double getAverageLagMillis() {
+        long count = ops.get();
+        return count == 0 ? 0 : totalLagNanos.get() / 1e6 / count;
+    }
+
+    /**
+     * @return Longest replication lag of any op, in milliseconds
+     */
+    public double getMaxLagMillis() {
+        return maxLagNanos.get() / 1e6;
+    }
+}
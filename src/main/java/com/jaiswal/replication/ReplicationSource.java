@@ -0,0 +1,272 @@
+package com.jaiswal.replication;
+
+import com.jaiswal.server.BoardHandoff;
+import com.jaiswal.server.BoardRegistry;
+import com.jaiswal.server.ReplicationSink;
+import com.jaiswal.shared.BoardOp;
+
+import java.io.IOException;
+import java.rmi.NoSuchObjectException;
+import java.rmi.NotBoundException;
+import java.rmi.RemoteException;
+import java.rmi.registry.Registry;
+import java.rmi.server.UnicastRemoteObject;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Primary side of replication. Queues every op its boards sequence and ships
+ * them to each follower in batches, one call in flight per follower, so a
+ * slow follower only delays itself. Followers copy whole boards when they
+ * subscribe or fall out of step.
+ */
+public class ReplicationSource implements IReplicationSource, ReplicationSink {
+    // System property with the port of a node's replication endpoint; replication is off without it
+    public static final String PORT_PROPERTY = "syncboard.replication.port";
+    // Name the source is bound under in the node's replication registry
+    public static final String BINDING_NAME = "SyncBoardReplication";
+
+    private static final int MAX_BATCH_OPS = 5_000;
+    // A follower this far behind is dropped and has to copy the boards again
+    private static final int MAX_QUEUED_OPS = 200_000;
+
+    private final BoardRegistry registry;
+    private final Registry rmiRegistry;
+    private final String source;
+    private final List<Follower> followers = new CopyOnWriteArrayList<>();
+    private final ReplicationMetrics metrics = new ReplicationMetrics();
+
+    // Batches are shipped off the board monitors, at most one thread per follower
+    private final ExecutorService shipper = Executors.newCachedThreadPool(r -> {
+        Thread t = new Thread(r, "replication-ship");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private ReplicationSource(BoardRegistry registry, Registry rmiRegistry, String source) {
+        this.registry = registry;
+        this.rmiRegistry = rmiRegistry;
+        this.source = source;
+    }
+
+    /**
+     * Makes a node the primary of its replication group and starts feeding
+     * followers as they subscribe
+     * @param registry The node's boards
+     * @param rmiRegistry Registry of the node's replication endpoint
+     * @param source Address of the replication endpoint, "host:port"
+     * @return The running source
+     * @throws RemoteException If the source cannot be exported
+     */
+    public static ReplicationSource lead(BoardRegistry registry, Registry rmiRegistry, String source)
+            throws RemoteException {
+        ReplicationSource replication = new ReplicationSource(registry, rmiRegistry, source);
+        rmiRegistry.rebind(BINDING_NAME, UnicastRemoteObject.exportObject(replication, 0));
+        registry.setReplicationSink(replication);
+        replication.groupChanged();
+        System.out.println("Replication primary at " + source);
+        return replication;
+    }
+
+    /**
+     * Stops feeding followers and withdraws the endpoint
+     */
+    public void stop() {
+        registry.setReplicationSink(null);
+        try {
+            rmiRegistry.unbind(BINDING_NAME);
+        } catch (RemoteException | NotBoundException ignored) {
+            // Already gone
+        }
+        try {
+            UnicastRemoteObject.unexportObject(this, true);
+        } catch (NoSuchObjectException ignored) {
+            // Already unexported
+        }
+        shipper.shutdownNow();
+    }
+
+    /**
+     * @return Lag and throughput of shipping ops to followers
+     */
+    public ReplicationMetrics getMetrics() {
+        return metrics;
+    }
+
+    // ReplicationSink, called under a board monitor
+    @Override
+    public void opSequenced(String boardId, BoardOp op, String manager) {
+        if (followers.isEmpty()) {
+            return;
+        }
+        Shipment shipment = new Shipment(boardId, op, manager, System.nanoTime());
+        for (Follower follower : followers) {
+            follower.enqueue(shipment);
+        }
+    }
+
+    // IReplicationSource
+    @Override
+    public synchronized List<String> subscribe(String node, String source, IReplica replica)
+            throws RemoteException {
+        followers.removeIf(follower -> follower.node.equals(node));
+        followers.add(new Follower(node, source, replica));
+        System.out.println("Follower " + node + " subscribed, " + followers.size() + " followers");
+        groupChanged();
+        return registry.listBoards();
+    }
+
+    @Override
+    public BoardHandoff fetchBoard(String boardId) throws RemoteException {
+        try {
+            return registry.captureBoard(boardId);
+        } catch (IOException e) {
+            throw new RemoteException("Cannot copy board " + boardId, e);
+        }
+    }
+
+    @Override
+    public boolean heartbeat(String node) {
+        for (Follower follower : followers) {
+            if (follower.node.equals(node)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private synchronized void drop(Follower follower, String reason) {
+        if (followers.remove(follower)) {
+            System.err.println("Dropped follower " + follower.node + ": " + reason);
+            groupChanged();
+        }
+    }
+
+    /**
+     * Publishes the group in failover order: this node, then followers by subscription
+     */
+    private synchronized void groupChanged() {
+        List<String> nodes = new ArrayList<>();
+        List<String> sources = new ArrayList<>();
+        nodes.add(registry.getAddress());
+        sources.add(source);
+        for (Follower follower : followers) {
+            nodes.add(follower.node);
+            sources.add(follower.source);
+        }
+        registry.setReplicationGroup(nodes);
+        for (Follower follower : followers) {
+            shipper.execute(() -> {
+                try {
+                    follower.replica.updateGroup(nodes, sources);
+                } catch (RemoteException e) {
+                    System.err.println("Error updating follower " + follower.node + ": " + e.getMessage());
+                }
+            });
+        }
+    }
+
+    /**
+     * One sequenced op on its way to the followers
+     */
+    private static final class Shipment {
+        final String boardId;
+        final BoardOp op;
+        final String manager;
+        final long sequencedAt;
+
+        Shipment(String boardId, BoardOp op, String manager, long sequencedAt) {
+            this.boardId = boardId;
+            this.op = op;
+            this.manager = manager;
+            this.sequencedAt = sequencedAt;
+        }
+    }
+
+    /**
+     * A subscribed follower and the ops not yet shipped to it
+     */
+    private final class Follower {
+        final String node;
+        final String source;
+        final IReplica replica;
+        private final Queue<Shipment> queue = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger queued = new AtomicInteger();
+        private final AtomicBoolean shipping = new AtomicBoolean();
+
+        Follower(String node, String source, IReplica replica) {
+            this.node = node;
+            this.source = source;
+            this.replica = replica;
+        }
+
+        void enqueue(Shipment shipment) {
+            if (queued.incrementAndGet() > MAX_QUEUED_OPS) {
+                queue.clear();
+                drop(this, "more than " + MAX_QUEUED_OPS + " ops behind");
+                return;
+            }
+            queue.add(shipment);
+            if (shipping.compareAndSet(false, true)) {
+                shipper.execute(this::ship);
+            }
+        }
+
+        private void ship() {
+            while (true) {
+                Map<String, List<BoardOp>> ops = new LinkedHashMap<>();
+                Map<String, String> managers = new HashMap<>();
+                List<Shipment> batch = new ArrayList<>();
+                Shipment next;
+                while (batch.size() < MAX_BATCH_OPS && (next = queue.poll()) != null) {
+                    batch.add(next);
+                    ops.computeIfAbsent(next.boardId, id -> new ArrayList<>()).add(next.op);
+                    if (next.manager != null) {
+                        managers.put(next.boardId, next.manager);
+                    } else {
+                        managers.remove(next.boardId);
+                    }
+                }
+
+                if (batch.isEmpty()) {
+                    shipping.set(false);
+                    // An op queued after the poll but before the flag was cleared
+                    if (queue.isEmpty() || !shipping.compareAndSet(false, true)) {
+                        return;
+                    }
+                    continue;
+                }
+
+                queued.addAndGet(-batch.size());
+                try {
+                    replica.replicate(ops, managers);
+                } catch (RemoteException e) {
+                    queue.clear();
+                    shipping.set(false);
+                    drop(this, e.getMessage());
+                    return;
+                }
+
+                long now = System.nanoTime();
+                long lagSum = 0;
+                long maxLag = 0;
+                for (Shipment shipment : batch) {
+                    long lag = now - shipment.sequencedAt;
+                    lagSum += lag;
+                    maxLag = Math.max(maxLag, lag);
+                }
+                metrics.recordBatch(batch.size(), lagSum, maxLag);
+            }
+        }
+    }
+}
@@ -0,0 +1,374 @@
+package com.jaiswal.server;
+
+import com.jaiswal.shared.ElementCodec;
+import com.jaiswal.shared.IDrawable;
+import com.jaiswal.shared.LongIntMap;
+
+import java.awt.Rectangle;
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Field;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Indexed board file read through a memory mapping.
+ * <pre>
+ * header   magic, version, element count, style count, section offsets
+ * records  one fixed-size record per element, in stacking order:
+ *          id, type, bounds, style index, payload offset, payload length
+ * payload  encoded element geometry, see {@link ElementCodec}
+ * styles   (argb, stroke width) pairs referenced by the records
+ * index    (id, record index) pairs sorted by element ID
+ * </pre>
+ * Opening a file only reads the header and style table; elements are decoded
+ * when asked for, and region queries are answered from the record bounds.
+ * Version 1 files, written when IDs were sequential ints assigned by the
+ * server, have 32-bit IDs and no index: their records are sorted by ID, which
+ * was also stacking order.
+ * <p>
+ * Some platforms, Windows among them, refuse to replace or delete a file
+ * while it is mapped, so a file about to be replaced is {@link #close()}d first.
+ */
+public final class BoardFile {
+    private static final int MAGIC = 0x53424446; // "SBDF"
+    private static final short VERSION = 2;
+    private static final int HEADER_BYTES = 48;
+    private static final int RECORD_BYTES = 48;
+    private static final int INDEX_ENTRY_BYTES = 12;
+    // Version 1 layout, read only
+    private static final int V1_HEADER_BYTES = 40;
+    private static final int V1_RECORD_BYTES = 40;
+
+    private final Path path;
+    private final MappedByteBuffer buffer;
+    private boolean closed = false;
+    private final short version;
+    private final int recordBytes;
+    // Record fields after the ID start this much later than in version 1
+    private final int fieldShift;
+    private final int elementCount;
+    private final int[] styleColors;
+    private final float[] styleStrokes;
+    private final long recordsOffset;
+    private final long payloadOffset;
+    private final long indexOffset;
+
+    private BoardFile(Path path, MappedByteBuffer buffer) throws IOException {
+        this.path = path;
+        this.buffer = buffer;
+        if (buffer.capacity() < V1_HEADER_BYTES || buffer.getInt(0) != MAGIC) {
+            throw new IOException("Not a board file");
+        }
+        version = buffer.getShort(4);
+        if (version == 1) {
+            recordBytes = V1_RECORD_BYTES;
+            fieldShift = 0;
+            indexOffset = -1;
+        } else if (version == VERSION && buffer.capacity() >= HEADER_BYTES) {
+            recordBytes = RECORD_BYTES;
+            fieldShift = 4;
+            indexOffset = buffer.getLong(40);
+        } else {
+            throw new IOException("Unsupported board file version " + version);
+        }
+
+        elementCount = buffer.getInt(8);
+        int styleCount = buffer.getInt(12);
+        recordsOffset = buffer.getLong(16);
+        payloadOffset = buffer.getLong(24);
+        long stylesOffset = buffer.getLong(32);
+
+        styleColors = new int[styleCount];
+        styleStrokes = new float[styleCount];
+        for (int i = 0; i < styleCount; i++) {
+            styleColors[i] = buffer.getInt((int) stylesOffset + i * 8);
+            styleStrokes[i] = buffer.getFloat((int) stylesOffset + i * 8 + 4);
+        }
+    }
+
+    /**
+     * Maps a board file. Runs in constant time regardless of the number of elements.
+     *
+     * @param path The file
+     * @return The opened file
+     * @throws IOException If the file cannot be mapped or is not a board file
+     */
+    public static BoardFile open(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("Board file too large to map: " + channel.size() + " bytes");
+            }
+            // The mapping stays valid after the channel is closed
+            return new BoardFile(path, channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    /**
+     * Releases the mapping now rather than when the garbage collector gets to
+     * it, so the file can be replaced or deleted. The file must not be read afterwards.
+     */
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            // The supported way to unmap at once, outside the public API
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Field field = unsafeClass.getDeclaredField("theUnsafe");
+            field.setAccessible(true);
+            unsafeClass.getMethod("invokeCleaner", ByteBuffer.class).invoke(field.get(null), buffer);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            System.err.println("Board file " + path + " stays mapped until collected: " + e);
+        }
+    }
+
+    /**
+     * @return The file this was opened from
+     */
+    public Path getPath() {
+        return path;
+    }
+
+    /**
+     * Writes the contents of a store as a board file. The file is written next to
+     * the target and moved into place, so readers never see a partial file.
+     *
+     * @param path The target file
+     * @param store The elements to write
+     * @throws IOException If writing fails
+     */
+    public static void write(Path path, BoardStore store) throws IOException {
+        long[] ids = store.ids();
+
+        Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+        List<int[]> styles = new ArrayList<>();
+        Map<Long, Integer> styleIndex = new HashMap<>();
+        ByteBuffer records = ByteBuffer.allocate(ids.length * RECORD_BYTES);
+
+        long recordsOffset = HEADER_BYTES;
+        long payloadOffset = recordsOffset + (long) ids.length * RECORD_BYTES;
+        long stylesOffset;
+        long indexOffset;
+
+        try (RandomAccessFile file = new RandomAccessFile(temp.toFile(), "rw");
+             FileChannel channel = file.getChannel()) {
+            file.setLength(0);
+
+            // Stream payloads first, collecting the fixed records as we go
+            channel.position(payloadOffset);
+            DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(Channels.newOutputStream(channel), 64 * 1024));
+            long payloadSize = 0;
+            LongIntMap recordOf = new LongIntMap();
+            for (int record = 0; record < ids.length; record++) {
+                long id = ids[record];
+                IDrawable drawable = store.get(id);
+                byte[] payload = ElementCodec.encodePayload(drawable);
+                int argb = ElementCodec.colorOf(drawable);
+                float stroke = ElementCodec.strokeOf(drawable);
+                long key = ((long) argb << 32) | (Float.floatToIntBits(stroke) & 0xFFFFFFFFL);
+                Integer style = styleIndex.get(key);
+                if (style == null) {
+                    style = styles.size();
+                    styles.add(new int[]{argb, Float.floatToIntBits(stroke)});
+                    styleIndex.put(key, style);
+                }
+
+                Rectangle bounds = drawable.getBounds();
+                records.putLong(id);
+                records.put(ElementCodec.typeOf(drawable));
+                records.put(new byte[3]);
+                records.putInt(bounds != null ? bounds.x : 0);
+                records.putInt(bounds != null ? bounds.y : 0);
+                records.putInt(bounds != null ? bounds.width : 0);
+                records.putInt(bounds != null ? bounds.height : 0);
+                records.putInt(style);
+                records.putLong(payloadSize);
+                records.putInt(payload.length);
+                records.putInt(0);
+                recordOf.put(id, record);
+
+                out.write(payload);
+                payloadSize += payload.length;
+            }
+
+            stylesOffset = payloadOffset + payloadSize;
+            for (int[] style : styles) {
+                out.writeInt(style[0]);
+                out.writeInt(style[1]);
+            }
+
+            indexOffset = stylesOffset + styles.size() * 8L;
+            long[] sorted = ids.clone();
+            Arrays.sort(sorted);
+            for (long id : sorted) {
+                out.writeLong(id);
+                out.writeInt(recordOf.get(id, -1));
+            }
+            out.flush();
+
+            records.flip();
+            writeFully(channel, records, recordsOffset);
+
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+            header.putInt(MAGIC);
+            header.putShort(VERSION);
+            header.putShort((short) 0);
+            header.putInt(ids.length);
+            header.putInt(styles.size());
+            header.putLong(recordsOffset);
+            header.putLong(payloadOffset);
+            header.putLong(stylesOffset);
+            header.putLong(indexOffset);
+            header.flip();
+            writeFully(channel, header, 0);
+            channel.force(true);
+        }
+
+        moveIntoPlace(temp, path);
+    }
+
+    /**
+     * Writes board file bytes captured elsewhere, such as on another node,
+     * through a temporary file as {@link #write(Path, BoardStore)} does
+     *
+     * @param path The target file
+     * @param content Complete board file
+     * @throws IOException If writing fails
+     */
+    public static void write(Path path, byte[] content) throws IOException {
+        Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            writeFully(channel, ByteBuffer.wrap(content), 0);
+            channel.force(true);
+        }
+        moveIntoPlace(temp, path);
+    }
+
+    private static void moveIntoPlace(Path temp, Path path) throws IOException {
+        try {
+            Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer data, long position) throws IOException {
+        while (data.hasRemaining()) {
+            position += channel.write(data, position);
+        }
+    }
+
+    /**
+     * @return Number of elements in the file
+     */
+    public int size() {
+        return elementCount;
+    }
+
+    /**
+     * @param record Record index
+     * @return Element ID of the record
+     */
+    public long idAt(int record) {
+        int pos = recordPosition(record);
+        return version == 1 ? buffer.getInt(pos) : buffer.getLong(pos);
+    }
+
+    /**
+     * Finds the record for an element by binary search over the ID index, or
+     * over the records themselves in version 1 files
+     *
+     * @param id Element ID
+     * @return Record index, or -1 if absent
+     */
+    public int find(long id) {
+        int low = 0;
+        int high = elementCount - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            long midId = version == 1 ? idAt(mid) : buffer.getLong(indexPosition(mid));
+            if (midId < id) {
+                low = mid + 1;
+            } else if (midId > id) {
+                high = mid - 1;
+            } else {
+                return version == 1 ? mid : buffer.getInt(indexPosition(mid) + 8);
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Checks a record against a region without decoding the element
+     *
+     * @param record Record index
+     * @param region Region in canvas coordinates
+     * @return true if the element bounds intersect the region
+     */
+    public boolean intersects(int record, Rectangle region) {
+        int pos = recordPosition(record) + fieldShift + 8;
+        int x = buffer.getInt(pos);
+        int y = buffer.getInt(pos + 4);
+        int width = buffer.getInt(pos + 8);
+        int height = buffer.getInt(pos + 12);
+        return region.intersects(x, y, width, height);
+    }
+
+    /**
+     * Decodes one element
+     *
+     * @param record Record index
+     * @return The materialized element
+     */
+    public IDrawable decode(int record) {
+        long id = idAt(record);
+        int pos = recordPosition(record) + fieldShift;
+        byte type = buffer.get(pos + 4);
+        int style = buffer.getInt(pos + 24);
+        long offset = payloadOffset + buffer.getLong(pos + 28);
+        int length = buffer.getInt(pos + 36);
+
+        ByteBuffer payload = buffer.duplicate();
+        payload.limit((int) (offset + length)).position((int) offset);
+        try {
+            return ElementCodec.decode(type, id, styleColors[style], styleStrokes[style], payload);
+        } catch (IOException e) {
+            throw new IllegalStateException("Corrupt element " + id + " in board file", e);
+        }
+    }
+
+    private int recordPosition(int record) {
+        checkOpen();
+        return (int) (recordsOffset + (long) record * recordBytes);
+    }
+
+    private int indexPosition(int entry) {
+        checkOpen();
+        return (int) (indexOffset + (long) entry * INDEX_ENTRY_BYTES);
+    }
+
+    private void checkOpen() {
+        // Reading an unmapped buffer would crash the JVM
+        if (closed) {
+            throw new IllegalStateException("Board file " + path + " is closed");
+        }
+    }
+}
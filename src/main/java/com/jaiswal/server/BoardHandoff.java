@@ -0,0 +1,74 @@
+package com.jaiswal.server;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * A board on its way from one server node to another: its content as a
+ * {@link BoardFile}, the op sequence to continue from and the manager who
+ * may reclaim the board on the new node.
+ */
+public final class BoardHandoff implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private final String boardId;
+    private final byte[] content;
+    private final long version;
+    private final String manager;
+
+    BoardHandoff(String boardId, byte[] content, long version, String manager) {
+        this.boardId = boardId;
+        this.content = content;
+        this.version = version;
+        this.manager = manager;
+    }
+
+    /**
+     * Captures a store in board file format
+     * @param store The content
+     * @return The file bytes, empty for an empty board
+     * @throws IOException If the content cannot be written
+     */
+    static byte[] encode(BoardStore store) throws IOException {
+        if (store.size() == 0) {
+            return new byte[0];
+        }
+        Path temp = Files.createTempFile("syncboard-handoff", ".sbd");
+        try {
+            BoardFile.write(temp, store);
+            return Files.readAllBytes(temp);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * @return The board
+     */
+    public String getBoardId() {
+        return boardId;
+    }
+
+    /**
+     * @return Board file bytes, empty for an empty board
+     */
+    public byte[] getContent() {
+        return content;
+    }
+
+    /**
+     * @return Sequence number of the last op applied to the board
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * @return Username of the board's manager, or null if it had none
+     */
+    public String getManager() {
+        return manager;
+    }
+}
@@ -0,0 +1,27 @@
+package com.jaiswal.server;
+
+import com.jaiswal.shared.BoardOp;
+import com.jaiswal.shared.IDrawable;
+
+import java.util.List;
+
+/**
+ * In-process observer of a board's op stream, for components hosted next to
+ * the server such as the WebSocket gateway. Sees the same sequence numbers as
+ * remote clients. Called while holding the server monitor, so implementations
+ * should only hand the data off to their own thread.
+ */
+public interface BoardListener {
+    /**
+     * Delivers the whole board, on registration and after every RESET op
+     * @param version Sequence number of the last op included
+     * @param elements Elements in creation order
+     */
+    void onSnapshot(long version, List<IDrawable> elements);
+
+    /**
+     * Delivers one op, in sequence order
+     * @param op The op
+     */
+    void onOp(BoardOp op);
+}
@@ -0,0 +1,16 @@
+package com.jaiswal.server;
+
+import java.rmi.RemoteException;
+
+/**
+ * Decides which server node owns a board when several nodes share the
+ * boards between them. A {@link BoardRegistry} without one owns every board.
+ */
+public interface BoardOwnership {
+    /**
+     * @param boardId The board
+     * @return Address of the owning node, "host:port"
+     * @throws RemoteException If the owner cannot be determined yet
+     */
+    String ownerOf(String boardId) throws RemoteException;
+}
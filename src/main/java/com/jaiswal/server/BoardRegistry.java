@@ -0,0 +1,540 @@
+package com.jaiswal.server;
+
+import com.jaiswal.cluster.ClusterDirectory;
+import com.jaiswal.cluster.ClusterNode;
+import com.jaiswal.gateway.WebSocketGateway;
+import com.jaiswal.replication.ReplicaNode;
+import com.jaiswal.replication.ReplicationMetrics;
+import com.jaiswal.replication.ReplicationSource;
+import com.jaiswal.shared.BoardOp;
+import com.jaiswal.shared.BoardMovedException;
+import com.jaiswal.shared.IRemoteBoardDirectory;
+import com.jaiswal.shared.IRemoteWhiteboard;
+import com.jaiswal.transport.Transport;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.rmi.RemoteException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+/**
+ * Hosts any number of independent boards in one server process.
+ * Boards are created on first use. Each has its own monitor, op sequence,
+ * clients and snapshot transfers, and broadcasts through its own lane on a
+ * shared thread pool, so boards never wait on each other. A board nobody
+ * uses holds no threads and only its (empty) state.
+ * <p>
+ * Boards without clients for {@value #HIBERNATE_IDLE_PROPERTY} seconds are
+ * hibernated: their content is written to a board file in
+ * {@value #HIBERNATE_DIR_PROPERTY} and dropped from memory until the next join
+ * maps it back.
+ * <p>
+ * With {@value ClusterDirectory#DIRECTORY_PROPERTY} set, the registry joins a
+ * cluster of nodes sharing the boards by consistent hashing, serves only the
+ * boards it owns and redirects clients for the others.
+ * <p>
+ * With {@value ReplicationSource#PORT_PROPERTY} set, the registry replicates
+ * its boards to follower processes, or with {@value ReplicaNode#PRIMARY_PROPERTY}
+ * also set follows a primary as a read-only hot standby.
+ */
+public class BoardRegistry implements IRemoteBoardDirectory {
+    // System properties: idle time before hibernating (0 disables it) and the directory for board files
+    public static final String HIBERNATE_IDLE_PROPERTY = "syncboard.hibernate.idleSeconds";
+    public static final String HIBERNATE_DIR_PROPERTY = "syncboard.hibernate.dir";
+
+    private static final Pattern BOARD_ID = Pattern.compile("[A-Za-z0-9._-]{1,64}");
+    private static final long DEFAULT_IDLE_SECONDS = 600;
+    // RMI waits this long for a callback's reply before failing it, so a hung client gets dropped
+    private static final String RMI_RESPONSE_TIMEOUT_PROPERTY = "sun.rmi.transport.tcp.responseTimeout";
+    private static final String DEFAULT_RMI_RESPONSE_TIMEOUT_MS = "30000";
+    private static final long MAX_SWEEP_INTERVAL_MS = 60_000;
+
+    private final String host;
+    private final int port;
+    private Closeable endpoint;
+    private boolean isRunning = false;
+
+    private final Map<String, WhiteboardServer> boards = new ConcurrentHashMap<>();
+
+    // Threads are only borrowed while a board has callbacks to deliver
+    private final ExecutorService broadcastPool = Executors.newCachedThreadPool(r -> {
+        Thread t = new Thread(r, "board-broadcast");
+        t.setDaemon(true);
+        return t;
+    });
+
+    // Delayed work of the boards, such as expiring join requests
+    private final ScheduledExecutorService boardTimer = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "board-timer");
+        t.setDaemon(true);
+        return t;
+    });
+
+    // Hibernation of idle boards
+    private final long idleMillis;
+    private final Path hibernationDir;
+    private final HibernationMetrics metrics = new HibernationMetrics();
+    private ScheduledExecutorService hibernator;
+
+    // Cluster membership, only when a directory is configured
+    private final String clusterDirectory;
+    private volatile BoardOwnership ownership;
+    private ClusterNode clusterNode;
+
+    // Replication, only when a replication port is configured
+    private final Integer replicationPort;
+    private volatile ReplicaNode replication;
+    // Replication endpoint of the primary while this node follows one
+    private volatile String primary;
+    private volatile ReplicationSink replicationSink;
+    private volatile List<String> replicationGroup = Collections.emptyList();
+
+    // Optional WebSocket gateway feeding viewers of the default board
+    private WebSocketGateway gateway;
+
+    /**
+     * Constructor for BoardRegistry
+     * @param host The host address to bind to
+     * @param port The port to run on
+     */
+    public BoardRegistry(String host, int port) {
+        this.host = host;
+        this.port = port;
+        this.idleMillis = Long.getLong(HIBERNATE_IDLE_PROPERTY, DEFAULT_IDLE_SECONDS) * 1000;
+        this.clusterDirectory = System.getProperty(ClusterDirectory.DIRECTORY_PROPERTY);
+        this.replicationPort = Integer.getInteger(ReplicationSource.PORT_PROPERTY);
+        if (replicationPort != null) {
+            // Boards of a follower stay read-only until it is promoted
+            this.primary = System.getProperty(ReplicaNode.PRIMARY_PROPERTY);
+        }
+        // Nodes of a cluster or replication group sharing a machine must not share board files
+        String defaultDir = clusterDirectory != null || replicationPort != null
+                ? "boards/" + host + "_" + port : "boards";
+        this.hibernationDir = Paths.get(System.getProperty(HIBERNATE_DIR_PROPERTY, defaultDir));
+        // Read once by RMI, before its first outgoing call
+        if (System.getProperty(RMI_RESPONSE_TIMEOUT_PROPERTY) == null) {
+            System.setProperty(RMI_RESPONSE_TIMEOUT_PROPERTY, DEFAULT_RMI_RESPONSE_TIMEOUT_MS);
+        }
+    }
+
+    /**
+     * @return Address clients reach this node at, "host:port"
+     */
+    public String getAddress() {
+        return host + ":" + port;
+    }
+
+    /**
+     * Starts serving boards over the configured transport
+     */
+    public void start() {
+        if (isRunning) {
+            System.out.println("Server is already running");
+            return;
+        }
+
+        try {
+            // Create and set security policy if it doesn't exist
+            createSecurityPolicyIfNeeded();
+
+            // Set security manager if not already set
+            if (System.getSecurityManager() == null) {
+                System.setSecurityManager(new SecurityManager());
+            }
+
+            // Make the boards reachable over the configured transport
+            Transport transport = Transport.create();
+            endpoint = transport.serve(this, host, port);
+            isRunning = true;
+
+            System.out.println("WhiteboardServer is running on " + host + ":" + port + " (" + transport.getName() + ")");
+
+            if (idleMillis > 0) {
+                startHibernator();
+            }
+
+            if (replicationPort != null) {
+                replication = ReplicaNode.start(this, host, replicationPort);
+            }
+
+            if (clusterDirectory != null) {
+                clusterNode = ClusterNode.join(this, clusterDirectory);
+                // A node stopped with Ctrl+C still hands its boards over
+                Runtime.getRuntime().addShutdownHook(new Thread(this::stop, "cluster-leave"));
+            }
+
+            // Read-only viewers over WebSocket, only when a port is configured
+            Integer gatewayPort = Integer.getInteger(WebSocketGateway.PORT_PROPERTY);
+            if (gatewayPort != null) {
+                gateway = new WebSocketGateway(getBoard(DEFAULT_BOARD));
+                gateway.start(gatewayPort);
+            }
+        } catch (Exception e) {
+            System.err.println("Server exception: " + e.toString());
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Stops accepting calls from clients
+     */
+    public void stop() {
+        if (!isRunning) {
+            return;
+        }
+        try {
+            if (clusterNode != null) {
+                // Hand our boards to the remaining nodes before going away
+                clusterNode.leave();
+                clusterNode = null;
+            }
+            if (replication != null) {
+                replication.stop();
+                replication = null;
+            }
+            if (gateway != null) {
+                gateway.stop();
+                gateway = null;
+            }
+            endpoint.close();
+        } catch (IOException e) {
+            System.err.println("Error stopping server: " + e.getMessage());
+        }
+        if (hibernator != null) {
+            hibernator.shutdownNow();
+            hibernator = null;
+        }
+        broadcastPool.shutdown();
+        isRunning = false;
+        System.out.println("WhiteboardServer stopped");
+    }
+
+    /**
+     * Creates a security policy file if it doesn't exist
+     */
+    private void createSecurityPolicyIfNeeded() {
+        try {
+            File securityPolicy = new File("security.policy");
+            if (!securityPolicy.exists()) {
+                try (PrintWriter writer = new PrintWriter(securityPolicy)) {
+                    writer.println("grant {");
+                    writer.println("    permission java.net.SocketPermission \"*:1024-65535\", \"connect,accept,resolve\";");
+                    writer.println("    permission java.net.SocketPermission \"*:80\", \"connect\";");
+                    writer.println("    permission java.net.SocketPermission \"*:8001\", \"connect,accept,resolve\";");
+                    writer.println("    permission java.net.SocketPermission \"*:1099\", \"connect,accept,resolve\";");
+                    writer.println("    permission java.io.FilePermission \"<<ALL FILES>>\", \"read,write,execute,delete\";");
+                    writer.println("    permission java.util.PropertyPermission \"*\", \"read,write\";");
+                    writer.println("    permission java.security.AllPermission;");
+                    writer.println("};");
+                }
+                System.out.println("Created security policy file");
+            }
+            System.setProperty("java.security.policy", securityPolicy.getAbsolutePath());
+        } catch (Exception e) {
+            System.err.println("Error creating security policy: " + e.getMessage());
+        }
+    }
+
+    private void startHibernator() throws IOException {
+        Files.createDirectories(hibernationDir);
+        hibernator = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "board-hibernator");
+            t.setDaemon(true);
+            return t;
+        });
+        long interval = Math.max(1000, Math.min(idleMillis / 4, MAX_SWEEP_INTERVAL_MS));
+        hibernator.scheduleWithFixedDelay(this::hibernateIdleBoards, interval, interval, TimeUnit.MILLISECONDS);
+        System.out.println("Hibernating boards idle for " + idleMillis / 1000 + "s to " + hibernationDir.toAbsolutePath());
+    }
+
+    /**
+     * Hibernates every board that has had no clients for the configured idle time
+     * @return Number of boards hibernated
+     */
+    public int hibernateIdleBoards() {
+        long now = System.currentTimeMillis();
+        int count = 0;
+        for (WhiteboardServer board : boards.values()) {
+            try {
+                if (board.hibernateIfIdle(idleMillis, now)) {
+                    count++;
+                }
+            } catch (RuntimeException e) {
+                System.err.println("Error hibernating board " + board.getBoardId() + ": " + e.getMessage());
+            }
+        }
+        if (count > 0) {
+            System.out.println("Hibernated " + count + " idle boards (" + getResidentBoardCount() + " resident, "
+                    + getHibernatedBoardCount() + " hibernated)");
+        }
+        return count;
+    }
+
+    /**
+     * @return Number of boards whose content is in memory
+     */
+    public int getResidentBoardCount() {
+        return boards.size() - getHibernatedBoardCount();
+    }
+
+    /**
+     * @return Number of boards whose content is on disk
+     */
+    public int getHibernatedBoardCount() {
+        int count = 0;
+        for (WhiteboardServer board : boards.values()) {
+            if (board.isHibernated()) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * @return Hibernation and reactivation counters, including reactivation latency
+     */
+    public HibernationMetrics getHibernationMetrics() {
+        return metrics;
+    }
+
+    /**
+     * @return Lag and throughput of shipping ops to followers, or null unless this node is a replication primary
+     */
+    public ReplicationMetrics getReplicationMetrics() {
+        ReplicaNode node = replication;
+        ReplicationSource source = node != null ? node.getSource() : null;
+        return source != null ? source.getMetrics() : null;
+    }
+
+    /**
+     * Looks up a board in this process, creating it if needed
+     * @param boardId The board ID
+     * @return The board
+     * @throws IllegalArgumentException If the ID is not a valid board ID
+     */
+    public WhiteboardServer getBoard(String boardId) {
+        if (boardId == null || !BOARD_ID.matcher(boardId).matches()) {
+            throw new IllegalArgumentException("Invalid board ID: " + boardId);
+        }
+        return boards.computeIfAbsent(boardId, id -> {
+            System.out.println("Creating board " + id);
+            Path file = idleMillis > 0 || clusterDirectory != null || replicationPort != null ? boardFile(id) : null;
+            return newBoard(id, file);
+        });
+    }
+
+    private WhiteboardServer newBoard(String boardId, Path file) {
+        WhiteboardServer board = new WhiteboardServer(boardId, broadcastPool, boardTimer, file,
+                metrics);
+        board.setReplication(primary, replicationSink, this::getReplicationGroup);
+        return board;
+    }
+
+    /**
+     * @return The replication group in failover order, "host:port" client addresses with
+     *         the primary first; empty when not replicating
+     */
+    public List<String> getReplicationGroup() {
+        return replicationGroup;
+    }
+
+    /**
+     * @param nodes The replication group in failover order, the primary first
+     */
+    public void setReplicationGroup(List<String> nodes) {
+        replicationGroup = Collections.unmodifiableList(new ArrayList<>(nodes));
+    }
+
+    /**
+     * Feeds the ops of all boards to followers
+     * @param sink Receives every sequenced op, null to stop
+     */
+    public void setReplicationSink(ReplicationSink sink) {
+        replicationSink = sink;
+        for (WhiteboardServer board : boards.values()) {
+            board.setReplicationSink(sink);
+        }
+    }
+
+    /**
+     * Makes all boards read-only copies of a primary's boards
+     * @param address Replication endpoint of the primary
+     */
+    public void setPrimary(String address) {
+        primary = address;
+        for (WhiteboardServer board : boards.values()) {
+            board.setReplication(address, replicationSink, this::getReplicationGroup);
+        }
+    }
+
+    /**
+     * Turns all follower copies into primary boards
+     */
+    public void promote() {
+        primary = null;
+        for (WhiteboardServer board : boards.values()) {
+            board.promote();
+        }
+    }
+
+    /**
+     * Captures a board for a follower without interrupting its clients
+     * @param boardId The board
+     * @return The captured board, or null if it is not hosted here
+     * @throws IOException If the board cannot be captured
+     */
+    public BoardHandoff captureBoard(String boardId) throws IOException {
+        WhiteboardServer board = boards.get(boardId);
+        return board != null ? board.captureReplica() : null;
+    }
+
+    /**
+     * Replaces the follower copy of a board with a full copy from the primary
+     * @param copy The board as captured by the primary
+     * @throws IOException If the copy cannot be stored
+     */
+    public void installReplica(BoardHandoff copy) throws IOException {
+        getBoard(copy.getBoardId()).installReplica(copy);
+    }
+
+    /**
+     * Applies ops shipped by the primary to the follower copy of a board
+     * @param boardId The board
+     * @param ops Ops in sequence order
+     * @param manager The board's manager on the primary
+     * @return false if the copy has to be replaced with a full copy
+     */
+    public boolean applyReplicated(String boardId, List<BoardOp> ops, String manager) {
+        return getBoard(boardId).applyReplicated(ops, manager);
+    }
+
+    private Path boardFile(String boardId) {
+        return hibernationDir.resolve(boardId + ".sbd");
+    }
+
+    /**
+     * Makes this registry serve only the boards a cluster places on it
+     * @param ownership Decides the owner of each board
+     */
+    public void setOwnership(BoardOwnership ownership) {
+        this.ownership = ownership;
+    }
+
+    /**
+     * Freezes a local board and captures it for another node
+     * @param boardId The board
+     * @param owner Address of the node taking over
+     * @return The captured board, or null if it is not hosted here
+     * @throws IOException If the board cannot be captured
+     */
+    public BoardHandoff beginHandoff(String boardId, String owner) throws IOException {
+        WhiteboardServer board = boards.get(boardId);
+        return board != null ? board.beginHandoff(owner) : null;
+    }
+
+    /**
+     * Drops a board the new owner has accepted, redirecting its clients there
+     * @param boardId The board
+     */
+    public void completeHandoff(String boardId) {
+        WhiteboardServer board = boards.remove(boardId);
+        if (board != null) {
+            board.completeHandoff();
+        }
+    }
+
+    /**
+     * Keeps serving a board whose handoff failed
+     * @param boardId The board
+     */
+    public void abortHandoff(String boardId) {
+        WhiteboardServer board = boards.get(boardId);
+        if (board != null) {
+            board.abortHandoff();
+        }
+    }
+
+    /**
+     * Takes over a board from another node. The board starts out hibernated
+     * and is loaded by the first client rejoining it.
+     * @param handoff The board as captured by the previous owner
+     * @throws IOException If the board cannot be stored
+     */
+    public void importBoard(BoardHandoff handoff) throws IOException {
+        String boardId = handoff.getBoardId();
+        WhiteboardServer stale = boards.remove(boardId);
+        if (stale != null) {
+            System.err.println("Replacing local copy of board " + boardId + " with the one handed over");
+        }
+
+        Path file = boardFile(boardId);
+        Files.createDirectories(hibernationDir);
+        if (handoff.getContent().length > 0) {
+            Files.write(file, handoff.getContent());
+        } else {
+            Files.deleteIfExists(file);
+        }
+        WhiteboardServer board = newBoard(boardId, file);
+        board.adoptHandoff(handoff);
+        boards.put(boardId, board);
+    }
+
+    @Override
+    public IRemoteWhiteboard openBoard(String boardId) throws RemoteException {
+        BoardOwnership placement = ownership;
+        if (placement != null) {
+            String owner = placement.ownerOf(boardId);
+            if (!owner.equals(getAddress())) {
+                throw new BoardMovedException(boardId, owner);
+            }
+        }
+        try {
+            return getBoard(boardId);
+        } catch (IllegalArgumentException e) {
+            throw new RemoteException(e.getMessage());
+        }
+    }
+
+    @Override
+    public List<String> listBoards() throws RemoteException {
+        List<String> ids = new ArrayList<>(boards.keySet());
+        Collections.sort(ids);
+        return ids;
+    }
+
+    // Main method to run the server directly
+    public static void main(String[] args) {
+        String host = "localhost";
+        int port = 1099;
+
+        // Parse command line arguments if provided
+        if (args.length >= 1) {
+            host = args[0];
+        }
+        if (args.length >= 2) {
+            try {
+                port = Integer.parseInt(args[1]);
+            } catch (NumberFormatException e) {
+                System.err.println("Invalid port number, using default: 1099");
+                port = 1099;
+            }
+        }
+
+        BoardRegistry server = new BoardRegistry(host, port);
+        server.start();
+    }
+}
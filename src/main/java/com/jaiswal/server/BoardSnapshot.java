@@ -0,0 +1,142 @@
+package com.jaiswal.server;
+
+import com.jaiswal.shared.IDrawable;
+import com.jaiswal.shared.SnapshotChunk;
+
+import java.awt.Rectangle;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A board snapshot being pulled by one joining client, chunk by chunk.
+ * Only element IDs are captured up front; elements are read from the store as
+ * each chunk is requested, so taking a snapshot is cheap even for large boards.
+ * Elements never change once drawn, and anything removed or replaced after the
+ * snapshot version is corrected by the ops the client replays afterwards.
+ * <p>
+ * When the client reports its viewport, IDs are ordered by tier so that what
+ * the user is looking at arrives first: elements intersecting the viewport,
+ * then elements within one viewport's width and height of it, then the rest.
+ * Element bounds are checked through the store, without decoding where the
+ * engine allows it. Every element carries its stacking position so the client
+ * can restore the stacking once all tiers are in.
+ */
+class BoardSnapshot {
+    private final long version;
+    private final BoardStore store;
+    // IDs in transfer order with their stacking positions, and where each chunk starts
+    private final long[] ids;
+    private final int[] positions;
+    private final int[] chunkStarts;
+    private final int[] chunkTiers;
+    private long lastAccess;
+
+    /**
+     * @param version Board version the snapshot is taken at
+     * @param store The store to read elements from
+     * @param viewport Client viewport in canvas coordinates, or null for stacking order
+     * @param chunkSize Maximum number of elements per chunk
+     */
+    BoardSnapshot(long version, BoardStore store, Rectangle viewport, int chunkSize) {
+        this.version = version;
+        this.store = store;
+
+        long[] all = store.ids();
+
+        // Positions in stacking order, per tier
+        int[][] tiers = new int[3][];
+        if (viewport == null || viewport.isEmpty()) {
+            tiers[SnapshotChunk.TIER_VISIBLE] = new int[0];
+            tiers[SnapshotChunk.TIER_NEARBY] = new int[0];
+            tiers[SnapshotChunk.TIER_REMAINDER] = new int[all.length];
+            Arrays.setAll(tiers[SnapshotChunk.TIER_REMAINDER], i -> i);
+        } else {
+            Rectangle nearby = new Rectangle(viewport);
+            nearby.grow(viewport.width, viewport.height);
+            int[] counts = new int[3];
+            int[] tierOf = new int[all.length];
+            for (int i = 0; i < all.length; i++) {
+                int tier = store.intersects(all[i], viewport) ? SnapshotChunk.TIER_VISIBLE
+                        : store.intersects(all[i], nearby) ? SnapshotChunk.TIER_NEARBY
+                        : SnapshotChunk.TIER_REMAINDER;
+                tierOf[i] = tier;
+                counts[tier]++;
+            }
+            for (int tier = 0; tier < 3; tier++) {
+                tiers[tier] = new int[counts[tier]];
+                counts[tier] = 0;
+            }
+            for (int i = 0; i < all.length; i++) {
+                tiers[tierOf[i]][counts[tierOf[i]]++] = i;
+            }
+        }
+
+        // Lay the tiers out back to back, starting a new chunk at each tier boundary
+        ids = new long[all.length];
+        positions = new int[all.length];
+        List<int[]> chunks = new ArrayList<>();
+        int position = 0;
+        for (int tier = 0; tier < 3; tier++) {
+            int[] tierPositions = tiers[tier];
+            for (int i = 0; i < tierPositions.length; i++) {
+                ids[position + i] = all[tierPositions[i]];
+                positions[position + i] = tierPositions[i];
+            }
+            for (int from = 0; from < tierPositions.length; from += chunkSize) {
+                chunks.add(new int[]{position + from, tier});
+            }
+            position += tierPositions.length;
+        }
+        if (chunks.isEmpty()) {
+            chunks.add(new int[]{0, SnapshotChunk.TIER_REMAINDER});
+        }
+
+        chunkStarts = new int[chunks.size() + 1];
+        chunkTiers = new int[chunks.size()];
+        for (int i = 0; i < chunks.size(); i++) {
+            chunkStarts[i] = chunks.get(i)[0];
+            chunkTiers[i] = chunks.get(i)[1];
+        }
+        chunkStarts[chunks.size()] = ids.length;
+        this.lastAccess = System.currentTimeMillis();
+    }
+
+    long getVersion() {
+        return version;
+    }
+
+    int getChunkCount() {
+        return chunkTiers.length;
+    }
+
+    boolean isExpired(long now, long ttlMs) {
+        return now - lastAccess > ttlMs;
+    }
+
+    /**
+     * Reads one chunk. Must be called while holding the owning server's monitor.
+     * @param index Chunk index
+     * @return The chunk, or null if the index is out of range
+     */
+    SnapshotChunk chunk(int index) {
+        if (index < 0 || index >= getChunkCount()) {
+            return null;
+        }
+        lastAccess = System.currentTimeMillis();
+
+        int from = chunkStarts[index];
+        int to = chunkStarts[index + 1];
+        List<IDrawable> elements = new ArrayList<>(to - from);
+        int[] chunkPositions = new int[to - from];
+        for (int i = from; i < to; i++) {
+            IDrawable drawable = store.get(ids[i]);
+            if (drawable != null) {
+                chunkPositions[elements.size()] = positions[i];
+                elements.add(drawable);
+            }
+        }
+        return new SnapshotChunk(version, index, getChunkCount(), chunkTiers[index], elements,
+                Arrays.copyOf(chunkPositions, elements.size()));
+    }
+}
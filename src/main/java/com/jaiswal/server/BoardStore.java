@@ -0,0 +1,86 @@
+package com.jaiswal.server;
+
+import com.jaiswal.shared.IDrawable;
+import com.jaiswal.shared.LongObjectMap;
+
+import java.awt.Rectangle;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Storage engine for the elements of one board. Elements are kept in stacking
+ * order, the order they were first stored in; element IDs are assigned by
+ * clients and say nothing about it.
+ * Implementations are not thread-safe; the owning server synchronizes access.
+ */
+public interface BoardStore {
+    // System property selecting the engine: "heap" (default) or "offheap"
+    String ENGINE_PROPERTY = "syncboard.store";
+
+    /**
+     * Stores an element under its ID, replacing any previous element with that ID
+     * @param drawable The element
+     */
+    void put(IDrawable drawable);
+
+    /**
+     * @param id The element ID
+     * @return The element, or null if absent
+     */
+    IDrawable get(long id);
+
+    /**
+     * Removes all elements
+     */
+    void clear();
+
+    /**
+     * @return Number of stored elements
+     */
+    int size();
+
+    /**
+     * @return IDs of all stored elements in stacking order, without decoding elements
+     */
+    long[] ids();
+
+    /**
+     * Visits every element in stacking order
+     * @param visitor Receives each ID and element
+     */
+    void forEach(LongObjectMap.EntryConsumer<IDrawable> visitor);
+
+    /**
+     * Checks an element against a region. Engines that keep bounds apart from
+     * the element data override this to avoid decoding the element.
+     * @param id The element ID
+     * @param region Region in canvas coordinates
+     * @return true if the element exists and its bounds intersect the region
+     */
+    default boolean intersects(long id, Rectangle region) {
+        IDrawable drawable = get(id);
+        Rectangle bounds = drawable != null ? drawable.getBounds() : null;
+        return bounds != null && bounds.intersects(region);
+    }
+
+    /**
+     * @return A boxed copy of the contents, for handing across the RMI boundary
+     */
+    default Map<Long, IDrawable> toMap() {
+        Map<Long, IDrawable> map = new HashMap<>(Math.max(16, (int) (size() / 0.75f) + 1));
+        forEach(map::put);
+        return map;
+    }
+
+    /**
+     * Creates the engine selected by the {@value #ENGINE_PROPERTY} system property
+     * @return A new, empty store
+     */
+    static BoardStore create() {
+        String engine = System.getProperty(ENGINE_PROPERTY, "heap");
+        if ("offheap".equalsIgnoreCase(engine)) {
+            return new OffHeapBoardStore();
+        }
+        return new HeapBoardStore();
+    }
+}
@@ -0,0 +1,60 @@
+package com.jaiswal.server;
+
+import com.jaiswal.shared.IDrawable;
+import com.jaiswal.shared.LongObjectMap;
+
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * Default storage engine keeping elements as live objects on the heap.
+ */
+public class HeapBoardStore implements BoardStore {
+    private final LongObjectMap<IDrawable> elements = new LongObjectMap<>();
+    // IDs in stacking order, a replaced element keeps its place
+    private long[] order = new long[64];
+
+    @Override
+    public void put(IDrawable drawable) {
+        if (elements.put(drawable.getId(), drawable) == null) {
+            int n = elements.size() - 1;
+            if (n == order.length) {
+                order = Arrays.copyOf(order, order.length * 2);
+            }
+            order[n] = drawable.getId();
+        }
+    }
+
+    @Override
+    public IDrawable get(long id) {
+        return elements.get(id);
+    }
+
+    @Override
+    public void clear() {
+        elements.clear();
+        order = new long[64];
+    }
+
+    @Override
+    public int size() {
+        return elements.size();
+    }
+
+    @Override
+    public long[] ids() {
+        return Arrays.copyOf(order, elements.size());
+    }
+
+    @Override
+    public void forEach(LongObjectMap.EntryConsumer<IDrawable> visitor) {
+        for (int i = 0; i < elements.size(); i++) {
+            visitor.accept(order[i], elements.get(order[i]));
+        }
+    }
+
+    @Override
+    public Map<Long, IDrawable> toMap() {
+        return elements.toMap();
+    }
+}
@@ -0,0 +1,53 @@
+package com.jaiswal.server;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counters for boards being hibernated and brought back, shared by all boards
+ * of a {@link BoardRegistry}.
+ */
+public class HibernationMetrics {
+    private final AtomicLong hibernations = new AtomicLong();
+    private final AtomicLong reactivations = new AtomicLong();
+    private final AtomicLong totalReactivationNanos = new AtomicLong();
+    private final AtomicLong maxReactivationNanos = new AtomicLong();
+
+    void recordHibernation() {
+        hibernations.incrementAndGet();
+    }
+
+    void recordReactivation(long nanos) {
+        reactivations.incrementAndGet();
+        totalReactivationNanos.addAndGet(nanos);
+        maxReactivationNanos.accumulateAndGet(nanos, Math::max);
+    }
+
+    /**
+     * @return Number of times a board was written to disk and evicted
+     */
+    public long getHibernationCount() {
+        return hibernations.get();
+    }
+
+    /**
+     * @return Number of times a hibernated board was loaded again
+     */
+    public long getReactivationCount() {
+        return reactivations.get();
+    }
+
+    /**
+     * @return Mean time to bring a board back, in milliseconds
+     */
+    public double getAverageReactivationMillis() {
+        long count = reactivations.get();
+        return count == 0 ? 0 : totalReactivationNanos.get() / 1e6 / count;
+    }
+
+    /**
+     * @return Longest time taken to bring a board back, in milliseconds
+     */
+    public double getMaxReactivationMillis() {
+        return maxReactivationNanos.get() / 1e6;
+    }
+}
@@ -0,0 +1,210 @@
+package com.jaiswal.server;
+
+import com.jaiswal.shared.IDrawable;
+import com.jaiswal.shared.TextElement;
+import com.jaiswal.shared.shapes.Circle;
+import com.jaiswal.shared.shapes.FreehandShape;
+import com.jaiswal.shared.shapes.Line;
+import com.jaiswal.shared.shapes.Rectangle;
+
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.Point;
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InvalidClassException;
+import java.io.ObjectInputFilter;
+import java.io.ObjectInputStream;
+import java.io.ObjectStreamClass;
+import java.io.ObjectStreamConstants;
+import java.io.ObjectStreamField;
+import java.io.Serializable;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Read-only support for boards saved before {@link BoardFile}: a Java-serialized
+ * {@code Map<Integer, IDrawable>}. The elements of that time had int IDs, which the
+ * current classes cannot be deserialized from, so the stream is read into mirrors
+ * of the old classes and converted. IDs are kept as replica 0 IDs, like those of
+ * version 1 board files, and the stacking order follows them as it did then.
+ * The file itself is never rewritten; saving the board writes a board file.
+ */
+final class LegacyBoardFile {
+    // Old class name -> mirror with the same serialized fields
+    private static final Map<String, Class<?>> MIRRORS = new HashMap<>();
+    static {
+        MIRRORS.put("com.jaiswal.shared.shapes.Shape", OldShape.class);
+        MIRRORS.put("com.jaiswal.shared.shapes.Line", OldLine.class);
+        MIRRORS.put("com.jaiswal.shared.shapes.Rectangle", OldRectangle.class);
+        MIRRORS.put("com.jaiswal.shared.shapes.Circle", OldCircle.class);
+        MIRRORS.put("com.jaiswal.shared.shapes.FreehandShape", OldFreehandShape.class);
+        MIRRORS.put("com.jaiswal.shared.TextElement", OldTextElement.class);
+    }
+
+    // Only what old boards contain: collections, boxed IDs, AWT values and the mirrors
+    private static final ObjectInputFilter FILTER = ObjectInputFilter.Config.createFilter(
+            "maxdepth=20;java.lang.*;java.util.*;java.awt.**;" + LegacyBoardFile.class.getName() + "$*;!*");
+
+    private LegacyBoardFile() {
+    }
+
+    /**
+     * @param path The file
+     * @return true if the file starts like a Java serialization stream
+     * @throws IOException If the file cannot be read
+     */
+    static boolean isLegacy(Path path) throws IOException {
+        try (DataInputStream in = new DataInputStream(Files.newInputStream(path))) {
+            return in.readShort() == ObjectStreamConstants.STREAM_MAGIC;
+        } catch (EOFException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Reads an old board into a new store
+     * @param path The file
+     * @return A store holding the board's elements in their old stacking order
+     * @throws IOException If the file cannot be read or holds something other than an old board
+     */
+    static BoardStore read(Path path) throws IOException {
+        Object board;
+        try (ObjectInputStream in = new MirrorInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+            in.setObjectInputFilter(FILTER);
+            board = in.readObject();
+        } catch (ClassNotFoundException e) {
+            throw new IOException("Unknown class in old board file: " + e.getMessage(), e);
+        }
+        if (!(board instanceof Map)) {
+            throw new IOException("Not an old board file");
+        }
+
+        // Old IDs were handed out in drawing order
+        TreeMap<Integer, Object> ordered = new TreeMap<>();
+        for (Map.Entry<?, ?> entry : ((Map<?, ?>) board).entrySet()) {
+            if (!(entry.getKey() instanceof Integer) || (Integer) entry.getKey() < 1) {
+                throw new IOException("Bad element ID in old board file: " + entry.getKey());
+            }
+            ordered.put((Integer) entry.getKey(), entry.getValue());
+        }
+        BoardStore store = BoardStore.create();
+        for (Map.Entry<Integer, Object> entry : ordered.entrySet()) {
+            IDrawable drawable = convert(entry.getValue());
+            drawable.setId(entry.getKey());
+            store.put(drawable);
+        }
+        return store;
+    }
+
+    private static IDrawable convert(Object old) throws IOException {
+        if (old instanceof OldLine) {
+            OldLine line = (OldLine) old;
+            return new Line(line.x1, line.y1, line.x2, line.y2, line.color, line.strokeWidth);
+        } else if (old instanceof OldRectangle) {
+            OldRectangle rect = (OldRectangle) old;
+            return new Rectangle(rect.x, rect.y, rect.width, rect.height, rect.color, rect.strokeWidth);
+        } else if (old instanceof OldCircle) {
+            OldCircle circle = (OldCircle) old;
+            return new Circle(circle.centerX, circle.centerY, circle.radius, circle.color, circle.strokeWidth);
+        } else if (old instanceof OldFreehandShape) {
+            OldFreehandShape freehand = (OldFreehandShape) old;
+            return new FreehandShape(freehand.points, freehand.color, freehand.strokeWidth);
+        } else if (old instanceof OldTextElement) {
+            OldTextElement text = (OldTextElement) old;
+            return new TextElement(text.text, text.position, text.color, text.font);
+        }
+        throw new IOException("Unexpected element in old board file: "
+                + (old == null ? "null" : old.getClass().getSimpleName()));
+    }
+
+    /**
+     * Reads the old element classes as their mirrors
+     */
+    private static final class MirrorInputStream extends ObjectInputStream {
+        MirrorInputStream(InputStream in) throws IOException {
+            super(in);
+        }
+
+        @Override
+        protected ObjectStreamClass readClassDescriptor() throws IOException, ClassNotFoundException {
+            ObjectStreamClass desc = super.readClassDescriptor();
+            Class<?> mirror = MIRRORS.get(desc.getName());
+            if (mirror == null) {
+                return desc;
+            }
+            // The stream's field data is read with the mirror's layout, so it has to be the same
+            ObjectStreamClass local = ObjectStreamClass.lookup(mirror);
+            if (!sameFields(desc.getFields(), local.getFields())) {
+                throw new InvalidClassException(desc.getName(), "unknown version in old board file");
+            }
+            return local;
+        }
+
+        private static boolean sameFields(ObjectStreamField[] stream, ObjectStreamField[] local) {
+            return Arrays.equals(signatures(stream), signatures(local));
+        }
+
+        private static String[] signatures(ObjectStreamField[] fields) {
+            String[] signatures = new String[fields.length];
+            for (int i = 0; i < fields.length; i++) {
+                signatures[i] = fields[i].getName() + ":" + fields[i].getTypeCode();
+            }
+            return signatures;
+        }
+    }
+
+    // Serialized forms of the element classes before IDs became long
+
+    private abstract static class OldShape implements Serializable {
+        private static final long serialVersionUID = 1L;
+        int id;
+        Color color;
+        float strokeWidth;
+    }
+
+    private static final class OldLine extends OldShape {
+        private static final long serialVersionUID = 1L;
+        int x1;
+        int y1;
+        int x2;
+        int y2;
+    }
+
+    private static final class OldRectangle extends OldShape {
+        private static final long serialVersionUID = 1L;
+        int x;
+        int y;
+        int width;
+        int height;
+    }
+
+    private static final class OldCircle extends OldShape {
+        private static final long serialVersionUID = 1L;
+        int centerX;
+        int centerY;
+        int radius;
+    }
+
+    private static final class OldFreehandShape extends OldShape {
+        private static final long serialVersionUID = 1L;
+        List<Point> points;
+    }
+
+    private static final class OldTextElement implements Serializable {
+        private static final long serialVersionUID = 1L;
+        int id;
+        String text;
+        Point position;
+        Color color;
+        Font font;
+    }
+}
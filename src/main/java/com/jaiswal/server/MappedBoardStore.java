@@ -0,0 +1,142 @@
+package com.jaiswal.server;
+
+import com.jaiswal.shared.IDrawable;
+import com.jaiswal.shared.LongObjectMap;
+
+import java.awt.Rectangle;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Board store backed by a memory-mapped {@link BoardFile}. Elements from the
+ * file are decoded only when read; elements drawn after loading go to an
+ * overlay store stacked above the file's. An element replacing one from the
+ * file keeps that element's place in the stacking order.
+ */
+public class MappedBoardStore implements BoardStore {
+    private BoardFile base;
+    private BoardStore overlay;
+
+    // Elements replacing file elements, by ID; shown at the replaced record's position
+    private final LongObjectMap<IDrawable> replaced = new LongObjectMap<>();
+
+    /**
+     * @param base The opened board file
+     * @param overlay Empty store receiving elements added after loading
+     */
+    public MappedBoardStore(BoardFile base, BoardStore overlay) {
+        this.base = base;
+        this.overlay = overlay;
+    }
+
+    @Override
+    public void put(IDrawable drawable) {
+        if (base != null && base.find(drawable.getId()) >= 0) {
+            replaced.put(drawable.getId(), drawable);
+        } else {
+            overlay.put(drawable);
+        }
+    }
+
+    @Override
+    public IDrawable get(long id) {
+        if (base != null) {
+            IDrawable replacement = replaced.get(id);
+            if (replacement != null) {
+                return replacement;
+            }
+            int record = base.find(id);
+            if (record >= 0) {
+                return base.decode(record);
+            }
+        }
+        return overlay.get(id);
+    }
+
+    @Override
+    public boolean intersects(long id, Rectangle region) {
+        if (base != null) {
+            IDrawable replacement = replaced.get(id);
+            if (replacement != null) {
+                Rectangle bounds = replacement.getBounds();
+                return bounds != null && bounds.intersects(region);
+            }
+            int record = base.find(id);
+            if (record >= 0) {
+                return base.intersects(record, region);
+            }
+        }
+        return overlay.intersects(id, region);
+    }
+
+    @Override
+    public void clear() {
+        if (base != null) {
+            base.close();
+            base = null;
+        }
+        replaced.clear();
+        overlay.clear();
+    }
+
+    /**
+     * @param path A board file
+     * @return true if elements are still read from that file
+     */
+    public boolean isMappedFrom(Path path) {
+        try {
+            return base != null && Files.exists(path) && Files.isSameFile(base.getPath(), path);
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Copies the file's elements into memory and closes the file, so it can
+     * be replaced. The contents and their stacking order stay as they were.
+     */
+    public void detach() {
+        if (base == null) {
+            return;
+        }
+        BoardStore memory = BoardStore.create();
+        forEach((id, drawable) -> memory.put(drawable));
+        base.close();
+        base = null;
+        replaced.clear();
+        overlay = memory;
+    }
+
+    @Override
+    public int size() {
+        return (base != null ? base.size() : 0) + overlay.size();
+    }
+
+    @Override
+    public long[] ids() {
+        if (base == null) {
+            return overlay.ids();
+        }
+        long[] overlayIds = overlay.ids();
+        long[] ids = new long[size()];
+        int n = 0;
+        for (int record = 0; record < base.size(); record++) {
+            ids[n++] = base.idAt(record);
+        }
+        System.arraycopy(overlayIds, 0, ids, n, overlayIds.length);
+        return ids;
+    }
+
+    @Override
+    public void forEach(LongObjectMap.EntryConsumer<IDrawable> visitor) {
+        if (base != null) {
+            for (int record = 0; record < base.size(); record++) {
+                long id = base.idAt(record);
+                IDrawable replacement = replaced.get(id);
+                visitor.accept(id, replacement != null ? replacement : base.decode(record));
+            }
+        }
+        overlay.forEach(visitor);
+    }
+}
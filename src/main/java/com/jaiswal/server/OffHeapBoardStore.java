@@ -0,0 +1,279 @@
+package com.jaiswal.server;
+
+import com.jaiswal.shared.ElementCodec;
+import com.jaiswal.shared.IDrawable;
+import com.jaiswal.shared.LongObjectMap;
+
+import java.awt.Rectangle;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Storage engine keeping element data in off-heap columns so that very large
+ * boards do not grow the Java heap. Each element is a row across fixed-width
+ * columns (ID, type, bounds, style index, payload offset and length) with its
+ * geometry in a shared payload column. Elements are only materialized as
+ * {@link IDrawable} objects when read. Rows are appended in stacking order;
+ * a replaced element moves to the top and the space of its old row is only
+ * reclaimed when the board is cleared.
+ */
+public class OffHeapBoardStore implements BoardStore {
+    private static final int INITIAL_ROWS = 1024;
+    private static final int INITIAL_PAYLOAD_BYTES = 64 * 1024;
+    // Index slot: element ID (long), row + 1 (int)
+    private static final int INDEX_SLOT_BYTES = 12;
+
+    // Row columns
+    private ByteBuffer idColumn;
+    private ByteBuffer typeColumn;
+    private ByteBuffer boundsColumn;
+    private ByteBuffer styleColumn;
+    private ByteBuffer offsetColumn;
+    private ByteBuffer lengthColumn;
+    private ByteBuffer payloadColumn;
+    private int rowCount;
+    private int liveCount;
+    private int payloadSize;
+
+    // Open-addressing ID to row index, entries are (id, row + 1) with 0 marking a free slot
+    private ByteBuffer index;
+    private int indexMask;
+
+    // Distinct (color, stroke) pairs, tiny compared to the element count
+    private final List<int[]> styles = new ArrayList<>();
+    private final Map<Long, Integer> styleIndex = new HashMap<>();
+
+    public OffHeapBoardStore() {
+        allocate();
+    }
+
+    @Override
+    public void put(IDrawable drawable) {
+        byte[] payload;
+        try {
+            payload = ElementCodec.encodePayload(drawable);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Cannot encode element " + drawable.getId(), e);
+        }
+
+        // Retire the previous row for this ID, if any
+        int existing = findRow(drawable.getId());
+        if (existing >= 0) {
+            typeColumn.put(existing, ElementCodec.TYPE_NONE);
+            liveCount--;
+        }
+
+        ensureRowCapacity(rowCount + 1);
+        ensurePayloadCapacity(payloadSize + payload.length);
+
+        int row = rowCount++;
+        Rectangle bounds = drawable.getBounds();
+        idColumn.putLong(row * 8, drawable.getId());
+        typeColumn.put(row, ElementCodec.typeOf(drawable));
+        if (bounds != null) {
+            boundsColumn.putInt(row * 16, bounds.x);
+            boundsColumn.putInt(row * 16 + 4, bounds.y);
+            boundsColumn.putInt(row * 16 + 8, bounds.width);
+            boundsColumn.putInt(row * 16 + 12, bounds.height);
+        }
+        styleColumn.putInt(row * 4, styleFor(ElementCodec.colorOf(drawable), ElementCodec.strokeOf(drawable)));
+        offsetColumn.putInt(row * 4, payloadSize);
+        lengthColumn.putInt(row * 4, payload.length);
+
+        payloadColumn.position(payloadSize);
+        payloadColumn.put(payload);
+        payloadColumn.position(0);
+        payloadSize += payload.length;
+
+        indexPut(drawable.getId(), row);
+        liveCount++;
+    }
+
+    @Override
+    public IDrawable get(long id) {
+        int row = findRow(id);
+        return row < 0 ? null : materialize(row);
+    }
+
+    @Override
+    public void clear() {
+        // Drop the old buffers so their native memory is released
+        allocate();
+    }
+
+    @Override
+    public int size() {
+        return liveCount;
+    }
+
+    @Override
+    public long[] ids() {
+        long[] ids = new long[liveCount];
+        int n = 0;
+        for (int row = 0; row < rowCount; row++) {
+            if (typeColumn.get(row) != ElementCodec.TYPE_NONE) {
+                ids[n++] = idColumn.getLong(row * 8);
+            }
+        }
+        return ids;
+    }
+
+    @Override
+    public void forEach(LongObjectMap.EntryConsumer<IDrawable> visitor) {
+        for (int row = 0; row < rowCount; row++) {
+            if (typeColumn.get(row) != ElementCodec.TYPE_NONE) {
+                visitor.accept(idColumn.getLong(row * 8), materialize(row));
+            }
+        }
+    }
+
+    @Override
+    public boolean intersects(long id, Rectangle region) {
+        int row = findRow(id);
+        if (row < 0) {
+            return false;
+        }
+        return region.intersects(boundsColumn.getInt(row * 16), boundsColumn.getInt(row * 16 + 4),
+                boundsColumn.getInt(row * 16 + 8), boundsColumn.getInt(row * 16 + 12));
+    }
+
+    /**
+     * @return Native memory currently reserved by this store, in bytes
+     */
+    public long getOffHeapBytes() {
+        return (long) idColumn.capacity() + typeColumn.capacity() + boundsColumn.capacity()
+                + styleColumn.capacity() + offsetColumn.capacity() + lengthColumn.capacity()
+                + payloadColumn.capacity() + index.capacity();
+    }
+
+    private IDrawable materialize(int row) {
+        int[] style = styles.get(styleColumn.getInt(row * 4));
+        ByteBuffer payload = payloadColumn.duplicate();
+        int offset = offsetColumn.getInt(row * 4);
+        payload.limit(offset + lengthColumn.getInt(row * 4)).position(offset);
+
+        try {
+            return ElementCodec.decode(typeColumn.get(row), idColumn.getLong(row * 8),
+                    style[0], Float.intBitsToFloat(style[1]), payload);
+        } catch (IOException e) {
+            throw new IllegalStateException("Corrupt element in row " + row, e);
+        }
+    }
+
+    private int styleFor(int argb, float strokeWidth) {
+        long key = ((long) argb << 32) | (Float.floatToIntBits(strokeWidth) & 0xFFFFFFFFL);
+        Integer existing = styleIndex.get(key);
+        if (existing != null) {
+            return existing;
+        }
+        styles.add(new int[]{argb, Float.floatToIntBits(strokeWidth)});
+        styleIndex.put(key, styles.size() - 1);
+        return styles.size() - 1;
+    }
+
+    private int findRow(long id) {
+        int slot = mix(id) & indexMask;
+        while (true) {
+            int rowPlusOne = index.getInt(slot * INDEX_SLOT_BYTES + 8);
+            if (rowPlusOne == 0) {
+                return -1;
+            }
+            if (index.getLong(slot * INDEX_SLOT_BYTES) == id) {
+                return rowPlusOne - 1;
+            }
+            slot = (slot + 1) & indexMask;
+        }
+    }
+
+    private void indexPut(long id, int row) {
+        int slot = mix(id) & indexMask;
+        while (index.getInt(slot * INDEX_SLOT_BYTES + 8) != 0 && index.getLong(slot * INDEX_SLOT_BYTES) != id) {
+            slot = (slot + 1) & indexMask;
+        }
+        boolean added = index.getInt(slot * INDEX_SLOT_BYTES + 8) == 0;
+        index.putLong(slot * INDEX_SLOT_BYTES, id);
+        index.putInt(slot * INDEX_SLOT_BYTES + 8, row + 1);
+
+        // Keep the table at most half full
+        if (added && liveCount + 1 > (indexMask + 1) / 2) {
+            rebuildIndex((indexMask + 1) * 2);
+        }
+    }
+
+    private void rebuildIndex(int slots) {
+        index = ByteBuffer.allocateDirect(slots * INDEX_SLOT_BYTES);
+        indexMask = slots - 1;
+        for (int row = 0; row < rowCount; row++) {
+            if (typeColumn.get(row) != ElementCodec.TYPE_NONE) {
+                long id = idColumn.getLong(row * 8);
+                int slot = mix(id) & indexMask;
+                while (index.getInt(slot * INDEX_SLOT_BYTES + 8) != 0) {
+                    slot = (slot + 1) & indexMask;
+                }
+                index.putLong(slot * INDEX_SLOT_BYTES, id);
+                index.putInt(slot * INDEX_SLOT_BYTES + 8, row + 1);
+            }
+        }
+    }
+
+    private void ensureRowCapacity(int rows) {
+        int capacity = typeColumn.capacity();
+        if (rows <= capacity) {
+            return;
+        }
+        int newCapacity = Math.max(rows, capacity * 2);
+        idColumn = grow(idColumn, newCapacity * 8);
+        typeColumn = grow(typeColumn, newCapacity);
+        boundsColumn = grow(boundsColumn, newCapacity * 16);
+        styleColumn = grow(styleColumn, newCapacity * 4);
+        offsetColumn = grow(offsetColumn, newCapacity * 4);
+        lengthColumn = grow(lengthColumn, newCapacity * 4);
+    }
+
+    private void ensurePayloadCapacity(int bytes) {
+        int capacity = payloadColumn.capacity();
+        if (bytes > capacity) {
+            payloadColumn = grow(payloadColumn, Math.max(bytes, capacity * 2));
+        }
+    }
+
+    private static ByteBuffer grow(ByteBuffer column, int capacity) {
+        ByteBuffer grown = ByteBuffer.allocateDirect(capacity);
+        ByteBuffer source = column.duplicate();
+        source.clear();
+        grown.put(source);
+        grown.clear();
+        return grown;
+    }
+
+    private void allocate() {
+        idColumn = ByteBuffer.allocateDirect(INITIAL_ROWS * 8);
+        typeColumn = ByteBuffer.allocateDirect(INITIAL_ROWS);
+        boundsColumn = ByteBuffer.allocateDirect(INITIAL_ROWS * 16);
+        styleColumn = ByteBuffer.allocateDirect(INITIAL_ROWS * 4);
+        offsetColumn = ByteBuffer.allocateDirect(INITIAL_ROWS * 4);
+        lengthColumn = ByteBuffer.allocateDirect(INITIAL_ROWS * 4);
+        payloadColumn = ByteBuffer.allocateDirect(INITIAL_PAYLOAD_BYTES);
+        index = ByteBuffer.allocateDirect(INITIAL_ROWS * 2 * INDEX_SLOT_BYTES);
+        indexMask = INITIAL_ROWS * 2 - 1;
+        rowCount = 0;
+        liveCount = 0;
+        payloadSize = 0;
+        styles.clear();
+        styleIndex.clear();
+    }
+
+    // Finalizer of MurmurHash3, so sequential IDs do not fill runs of index slots
+    private static int mix(long key) {
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        key *= 0xc4ceb9fe1a85ec53L;
+        key ^= key >>> 33;
+        return (int) key;
+    }
+}
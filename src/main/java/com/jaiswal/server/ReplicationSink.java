@@ -0,0 +1,17 @@
+package com.jaiswal.server;
+
+import com.jaiswal.shared.BoardOp;
+
+/**
+ * Receives every op sequenced by the boards of a primary node, to ship them
+ * to its followers. Called while holding the board monitor, in sequence
+ * order per board, so implementations should only queue the op.
+ */
+public interface ReplicationSink {
+    /**
+     * @param boardId The board the op was applied to
+     * @param op The op
+     * @param manager Username of the board's manager, or null if it has none
+     */
+    void opSequenced(String boardId, BoardOp op, String manager);
+}
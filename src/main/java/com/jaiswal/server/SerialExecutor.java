@@ -0,0 +1,77 @@
+package com.jaiswal.server;
+
+import com.jaiswal.shared.DeliveryLane;
+import com.jaiswal.shared.LaneScheduler;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Runs tasks one at a time on a shared pool. Each client of a board gets its
+ * own executor, so a client whose callbacks block stalls only itself, while
+ * an idle executor holds no thread at all. Tasks are queued by
+ * {@link DeliveryLane} and run in submission order per lane, so urgent ones
+ * such as a kick overtake queued broadcasts.
+ */
+final class SerialExecutor implements Executor {
+    private final Executor pool;
+    private final Map<DeliveryLane, Queue<Runnable>> tasks = new EnumMap<>(DeliveryLane.class);
+    private final AtomicBoolean draining = new AtomicBoolean(false);
+    // Only used by the draining thread
+    private final LaneScheduler scheduler = new LaneScheduler();
+
+    SerialExecutor(Executor pool) {
+        this.pool = pool;
+        for (DeliveryLane lane : DeliveryLane.values()) {
+            tasks.put(lane, new ConcurrentLinkedQueue<>());
+        }
+    }
+
+    /**
+     * Runs a task in the live lane
+     */
+    @Override
+    public void execute(Runnable task) {
+        execute(DeliveryLane.LIVE, task);
+    }
+
+    void execute(DeliveryLane lane, Runnable task) {
+        tasks.get(lane).add(task);
+        if (draining.compareAndSet(false, true)) {
+            pool.execute(this::drain);
+        }
+    }
+
+    private void drain() {
+        while (true) {
+            DeliveryLane lane;
+            while ((lane = scheduler.next(waiting())) != null) {
+                Runnable task = tasks.get(lane).poll();
+                try {
+                    task.run();
+                } catch (RuntimeException e) {
+                    System.err.println("Error in board task: " + e.getMessage());
+                }
+            }
+            draining.set(false);
+            // A task may have arrived after the last poll
+            if (waiting() == 0 || !draining.compareAndSet(false, true)) {
+                return;
+            }
+        }
+    }
+
+    private int waiting() {
+        int waiting = 0;
+        for (Map.Entry<DeliveryLane, Queue<Runnable>> entry : tasks.entrySet()) {
+            if (!entry.getValue().isEmpty()) {
+                waiting |= 1 << entry.getKey().ordinal();
+            }
+        }
+        return waiting;
+    }
+}
@@ -35,7 +35,7 @@ public class Server {
         }
 
         // Create and start the server
-        WhiteboardServer server = new WhiteboardServer(host, port);
+        BoardRegistry server = new BoardRegistry(host, port);
         server.start();
     }
 
@@ -0,0 +1,69 @@
+package com.jaiswal.server;
+
+import com.jaiswal.shared.ClientOp;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeMap;
+
+/**
+ * Dedup and reorder window for the ops of one client session. Ops at or
+ * below the cumulative ack are duplicates and dropped; ops further ahead wait
+ * here until the gap before them is filled, as pipelined calls may overtake
+ * each other. Guarded by the owning server's monitor.
+ */
+final class SubmissionWindow {
+    // Ops held beyond the cumulative ack; the client never has more in flight
+    static final int MAX_AHEAD = 4_096;
+
+    private final String username;
+    private long acked;
+    private final TreeMap<Long, ClientOp> early = new TreeMap<>();
+    private long lastUsed = System.currentTimeMillis();
+
+    /**
+     * @param username The session's user
+     * @param acked Sequence number the session continues after
+     */
+    SubmissionWindow(String username, long acked) {
+        this.username = username;
+        this.acked = acked;
+    }
+
+    String getUsername() {
+        return username;
+    }
+
+    /**
+     * @return Highest sequence number up to which every op has been released
+     */
+    long getAcked() {
+        return acked;
+    }
+
+    boolean isExpired(long now, long ttlMs) {
+        return now - lastUsed > ttlMs;
+    }
+
+    /**
+     * Takes in submitted ops
+     * @param ops Ops in any order, possibly seen before
+     * @return Ops now ready to apply, in sequence order; the ack moves past them
+     */
+    List<ClientOp> accept(List<ClientOp> ops) {
+        lastUsed = System.currentTimeMillis();
+        for (ClientOp op : ops) {
+            long sequence = op.getSequence();
+            if (sequence > acked && sequence <= acked + MAX_AHEAD) {
+                early.putIfAbsent(sequence, op);
+            }
+        }
+
+        List<ClientOp> ready = new ArrayList<>();
+        while (!early.isEmpty() && early.firstKey() == acked + 1) {
+            ready.add(early.pollFirstEntry().getValue());
+            acked++;
+        }
+        return ready;
+    }
+}
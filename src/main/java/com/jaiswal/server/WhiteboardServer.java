@@ -1,166 +1,627 @@
 package com.jaiswal.server;
+import com.jaiswal.shared.BoardDigest;
+import com.jaiswal.shared.BoardMovedException;
+import com.jaiswal.shared.BoardOp;
+import com.jaiswal.shared.DeliveryLane;
+import com.jaiswal.shared.ClientOp;
+import com.jaiswal.shared.ElementCodec;
+import com.jaiswal.shared.ElementId;
 import com.jaiswal.shared.IDrawable;
 import com.jaiswal.shared.IRemoteClient;
 import com.jaiswal.shared.IRemoteWhiteboard;
+import com.jaiswal.shared.LongObjectMap;
+import com.jaiswal.shared.OpAck;
+import com.jaiswal.shared.PresenceOp;
+import com.jaiswal.shared.SnapshotChunk;
 import com.jaiswal.shared.TextElement;
 import com.jaiswal.shared.shapes.Shape;
 
+import java.awt.Rectangle;
 import java.rmi.RemoteException;
-import java.rmi.registry.LocateRegistry;
-import java.rmi.registry.Registry;
-import java.rmi.server.UnicastRemoteObject;
+import java.security.SecureRandom;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
 import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 
+/**
+ * One board hosted by a {@link BoardRegistry}: its clients, content and op
+ * sequence. Board state is guarded by this object's monitor; callbacks to
+ * clients are delivered in order through each client's own queue, so a
+ * client that stops answering holds up only its own callbacks.
+ */
 public class WhiteboardServer implements IRemoteWhiteboard {
-    private final String host;
-    private final int port;
-    private Registry registry;
-    private boolean isRunning = false;
+    private final String boardId;
+    private final Executor callbackPool;
+    private final ScheduledExecutorService timer;
 
     // Store connected clients
     private IRemoteClient managerClient;
     private final Map<String, IRemoteClient> clients = new ConcurrentHashMap<>();
+    // Callback queue per client, guarded by the monitor; an entry goes once its client is unreferenced
+    private final Map<IRemoteClient, SerialExecutor> outboxes = new WeakHashMap<>();
 
-    // Store whiteboard content
-    private final Map<Integer, IDrawable> canvasState = new ConcurrentHashMap<>();
-    private int nextElementId = 1;
+    // Store whiteboard content, guarded by the server monitor; null while hibernated
+    private BoardStore canvasState = BoardStore.create();
+
+    // Hibernation: the content is written to the file and dropped while nobody uses the board
+    private final Path hibernationFile;
+    private final HibernationMetrics metrics;
+    private boolean hibernated = false;
+    // Content changed since it was last written to the hibernation file
+    private boolean modified = false;
+    private long lastActivity = System.currentTimeMillis();
+
+    // Set once the board is handed to another node, every call is then redirected there
+    private volatile String movedTo;
+    // Manager of a board handed over from another node, gets the role back on rejoining
+    private String reservedManager;
+
+    // Replication: set while this board is a read-only follower copy, the primary's address
+    private volatile String primary;
+    // Where a primary's ops go to reach the followers, null when not replicating
+    private volatile ReplicationSink replicationSink;
+    private volatile Supplier<List<String>> replicationGroup = Collections::emptyList;
+
+    // Board version, the sequence number of the last op broadcast to clients
+    private long version = 0;
+    // Identifies the history versions count in; those of another copy or an earlier run mean nothing here
+    private final long epoch = new SecureRandom().nextLong();
+    // Digest of the board at digestVersion, built when first asked for and then kept up op by op
+    private BoardDigest digest;
+    private long digestVersion;
+
+    // Join snapshots being pulled by clients, keyed by username
+    private static final int SNAPSHOT_CHUNK_SIZE = 500;
+    private static final long SNAPSHOT_TTL_MS = 120_000;
+    private final Map<String, BoardSnapshot> snapshots = new HashMap<>();
+
+    // Recent ops, replayed to clients resuming after a dropped connection
+    private static final int RECENT_OPS = 10_000;
+    private final ArrayDeque<BoardOp> recentOps = new ArrayDeque<>();
+
+    // Session token of each joined user, kept for a while after its callbacks fail so it can resume
+    private static final long RESUME_TTL_MS = 120_000;
+    private final Map<String, Long> sessionTokens = new HashMap<>();
+    private final Map<String, Departure> departures = new HashMap<>();
+
+    // Pipelined submissions, keyed by client session; kept across dropped callbacks so resent ops stay deduplicated
+    private static final long SUBMISSION_TTL_MS = 600_000;
+    private final Map<Long, SubmissionWindow> submissions = new HashMap<>();
+
+    // In-process observers of the op stream
+    private final List<BoardListener> boardListeners = new CopyOnWriteArrayList<>();
+
+    // Join requests waiting for the manager, in arrival order; refused once they time out
+    private static final long JOIN_TIMEOUT_MS = 60_000;
+    // Requests arriving within this delay reach the manager in one prompt
+    private static final long JOIN_PROMPT_DELAY_MS = 200;
+    private final Map<String, PendingJoin> pendingJoins = new LinkedHashMap<>();
+    private boolean promptScheduled = false;
+
+    // Who is on the board, pushed to clients as changes once per window
+    private static final long PRESENCE_WINDOW_MS = 100;
+    private long presenceVersion = 0;
+    // Latest change per user not sent yet, in order of change
+    private final Map<String, PresenceOp> presenceChanges = new LinkedHashMap<>();
+    // Users who get the whole list with the next window instead of the changes
+    private final Set<String> presenceNewcomers = new HashSet<>();
+    private boolean presenceScheduled = false;
 
     /**
      * Constructor for WhiteboardServer
-     * @param host The host address to bind to
-     * @param port The port to run on
+     * @param boardId The ID clients open this board by
+     * @param callbackPool Lends threads to deliver client callbacks, one at a time per client
+     * @param timer Runs delayed work: prompting the manager and expiring join requests
+     * @param hibernationFile Where the content goes while hibernated, or null to never hibernate.
+     *                        A board whose file already exists starts out hibernated.
+     * @param metrics Records hibernation and reactivation
      */
-    public WhiteboardServer(String host, int port) {
-        this.host = host;
-        this.port = port;
+    public WhiteboardServer(String boardId, Executor callbackPool, ScheduledExecutorService timer,
+                            Path hibernationFile, HibernationMetrics metrics) {
+        this.boardId = boardId;
+        this.callbackPool = callbackPool;
+        this.timer = timer;
+        this.hibernationFile = hibernationFile;
+        this.metrics = metrics;
+
+        if (hibernationFile != null && Files.exists(hibernationFile)) {
+            // Left behind by an earlier run, load it when first used
+            canvasState = null;
+            hibernated = true;
+        }
     }
 
     /**
-     * Starts the RMI server
+     * @return The ID clients open this board by
      */
-    public void start() {
-        if (isRunning) {
-            System.out.println("Server is already running");
-            return;
+    public String getBoardId() {
+        return boardId;
+    }
+
+    /**
+     * @return true if the content is on disk rather than in memory
+     */
+    public synchronized boolean isHibernated() {
+        return hibernated;
+    }
+
+    /**
+     * Writes the content to the hibernation file and drops it from memory,
+     * provided no client has used the board for the given time
+     * @param idleMillis Minimum time since the board was last used
+     * @param now Current time in milliseconds
+     * @return true if the board was hibernated
+     */
+    public synchronized boolean hibernateIfIdle(long idleMillis, long now) {
+        if (hibernationFile == null || hibernated || !clients.isEmpty() || now - lastActivity < idleMillis) {
+            return false;
         }
 
         try {
-            // Create and set security policy if it doesn't exist
-            createSecurityPolicyIfNeeded();
+            if (canvasState.size() == 0) {
+                releaseBoardFile(false);
+                Files.deleteIfExists(hibernationFile);
+            } else if (modified || !Files.exists(hibernationFile)) {
+                // Unchanged since the last reactivation means the file is still current
+                releaseBoardFile(true);
+                BoardFile.write(hibernationFile, canvasState);
+            }
+        } catch (IOException e) {
+            System.err.println("Error hibernating board " + boardId + ": " + e.getMessage());
+            return false;
+        }
+
+        releaseBoardFile(false);
+        canvasState = null;
+        snapshots.clear();
+        recentOps.clear();
+        hibernated = true;
+        modified = false;
+        metrics.recordHibernation();
+        return true;
+    }
+
+    /**
+     * @return The board content, loaded back first if the board is hibernated
+     */
+    private BoardStore canvas() {
+        lastActivity = System.currentTimeMillis();
+        if (hibernated) {
+            reactivate();
+        }
+        return canvasState;
+    }
 
-            // Set security manager if not already set
-            if (System.getSecurityManager() == null) {
-                System.setSecurityManager(new SecurityManager());
+    /**
+     * Lets go of the board file the content is mapped from, if any, so that
+     * file can be replaced or deleted
+     * @param keep true to copy the content into memory first, false if the content is being dropped
+     */
+    private void releaseBoardFile(boolean keep) {
+        if (canvasState instanceof MappedBoardStore) {
+            MappedBoardStore mapped = (MappedBoardStore) canvasState;
+            if (keep) {
+                mapped.detach();
+            } else {
+                mapped.clear();
             }
+        }
+    }
+
+    private void reactivate() {
+        long start = System.nanoTime();
+        try {
+            // Mapping is constant time, elements are decoded as clients pull them
+            canvasState = Files.exists(hibernationFile)
+                    ? new MappedBoardStore(BoardFile.open(hibernationFile), BoardStore.create())
+                    : BoardStore.create();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot reactivate board " + boardId, e);
+        }
+        hibernated = false;
 
-            // Set hostname property
-            System.setProperty("java.rmi.server.hostname", host);
+        long nanos = System.nanoTime() - start;
+        metrics.recordReactivation(nanos);
+        System.out.printf("Reactivated board %s (%d elements) in %.2f ms%n", boardId, canvasState.size(), nanos / 1e6);
+    }
 
-            // Create registry
+    /**
+     * Freezes the board for a handoff to another node and captures its content.
+     * Calls arriving from now on are redirected to the new owner.
+     * @param owner Address of the node taking over, "host:port"
+     * @return The board's content and state
+     * @throws IOException If the content cannot be captured, the board is then unfrozen
+     */
+    public synchronized BoardHandoff beginHandoff(String owner) throws IOException {
+        movedTo = owner;
+        try {
+            return new BoardHandoff(boardId, BoardHandoff.encode(canvas()), version, getManagerUsername());
+        } catch (IOException e) {
+            movedTo = null;
+            throw e;
+        } catch (UncheckedIOException e) {
+            movedTo = null;
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Unfreezes the board after a handoff the new owner did not accept
+     */
+    public synchronized void abortHandoff() {
+        movedTo = null;
+    }
+
+    /**
+     * Finishes a handoff accepted by the new owner: clients are sent there and
+     * the local content is released.
+     */
+    public synchronized void completeHandoff() {
+        String owner = movedTo;
+        Map<String, IRemoteClient> recipients = new HashMap<>(clients);
+        // Requests still waiting are made on the new owner instead
+        for (Map.Entry<String, PendingJoin> entry : pendingJoins.entrySet()) {
+            recipients.put(entry.getKey(), entry.getValue().client);
+        }
+        pendingJoins.clear();
+        // In the live lane, so each client gets the ops queued for it before leaving for the new owner
+        for (Map.Entry<String, IRemoteClient> entry : recipients.entrySet()) {
+            send(entry.getValue(), DeliveryLane.LIVE, () -> {
+                try {
+                    entry.getValue().boardMoved(boardId, owner);
+                } catch (RemoteException e) {
+                    System.err.println("Error redirecting client " + entry.getKey() + ": " + e.getMessage());
+                }
+            });
+        }
+
+        clients.clear();
+        managerClient = null;
+        snapshots.clear();
+        forgetSessions();
+        releaseBoardFile(false);
+        canvasState = null;
+        digest = null;
+        hibernated = false;
+        if (hibernationFile != null) {
             try {
-                System.out.println("Creating RMI registry on port " + port);
-                registry = LocateRegistry.createRegistry(port);
-                System.out.println("RMI registry created on port " + port);
-            } catch (RemoteException e) {
-                System.out.println("RMI registry already exists, getting existing registry");
-                registry = LocateRegistry.getRegistry(host, port);
-                System.out.println("RMI registry found on port " + port);
+                Files.deleteIfExists(hibernationFile);
+            } catch (IOException e) {
+                System.err.println("Error removing moved board " + boardId + ": " + e.getMessage());
             }
+        }
+        System.out.println("Board " + boardId + " handed off to " + owner + ", redirected "
+                + recipients.size() + " clients");
+    }
+
+    /**
+     * Continues a board received from another node
+     * @param handoff The board as captured by the previous owner
+     */
+    public synchronized void adoptHandoff(BoardHandoff handoff) {
+        version = Math.max(version, handoff.getVersion());
+        digest = null;
+        reservedManager = handoff.getManager();
+    }
 
-            // Export this object
-            IRemoteWhiteboard stub = (IRemoteWhiteboard) UnicastRemoteObject.exportObject(this, 0);
+    /**
+     * Configures the board's part in replication
+     * @param primary Address of the primary if this board is a follower copy, null on the primary
+     * @param sink Receives the ops of a primary, null if there are no followers to feed
+     * @param group Supplies the failover nodes reported to clients
+     */
+    void setReplication(String primary, ReplicationSink sink, Supplier<List<String>> group) {
+        this.primary = primary;
+        this.replicationSink = sink;
+        this.replicationGroup = group;
+    }
 
-            // Bind to registry
-            registry.rebind("WhiteboardServer", stub);
-            isRunning = true;
+    /**
+     * @param sink Receives the ops of a primary, null if there are no followers to feed
+     */
+    void setReplicationSink(ReplicationSink sink) {
+        this.replicationSink = sink;
+    }
 
-            System.out.println("WhiteboardServer is running on " + host + ":" + port);
-        } catch (Exception e) {
-            System.err.println("Server exception: " + e.toString());
-            e.printStackTrace();
-        }
+    /**
+     * Turns a follower copy into the primary board, accepting changes from now on.
+     * The replicated manager gets the role back on rejoining.
+     */
+    synchronized void promote() {
+        primary = null;
     }
 
     /**
-     * Creates a security policy file if it doesn't exist
+     * Applies ops shipped by the primary to a follower copy
+     * @param ops Ops in sequence order, ops already applied are skipped
+     * @param manager The board's manager on the primary
+     * @return false if the ops do not follow on from this copy, which then needs a full copy
      */
-    private void createSecurityPolicyIfNeeded() {
+    synchronized boolean applyReplicated(List<BoardOp> ops, String manager) {
+        reservedManager = manager;
+        if (version == 0 && hibernated) {
+            // Content left from an earlier run, its version is unknown
+            return false;
+        }
+        List<BoardOp> applied = new ArrayList<>(ops.size());
         try {
-            File securityPolicy = new File("security.policy");
-            if (!securityPolicy.exists()) {
-                try (PrintWriter writer = new PrintWriter(securityPolicy)) {
-                    writer.println("grant {");
-                    writer.println("    permission java.net.SocketPermission \"*:1024-65535\", \"connect,accept,resolve\";");
-                    writer.println("    permission java.net.SocketPermission \"*:80\", \"connect\";");
-                    writer.println("    permission java.net.SocketPermission \"*:8001\", \"connect,accept,resolve\";");
-                    writer.println("    permission java.net.SocketPermission \"*:1099\", \"connect,accept,resolve\";");
-                    writer.println("    permission java.io.FilePermission \"<<ALL FILES>>\", \"read,write,execute,delete\";");
-                    writer.println("    permission java.util.PropertyPermission \"*\", \"read,write\";");
-                    writer.println("    permission java.security.AllPermission;");
-                    writer.println("};");
-                }
-                System.out.println("Created security policy file");
+            return applyInOrder(ops, applied);
+        } finally {
+            // Viewers get the ops applied so far in one callback
+            if (!applied.isEmpty()) {
+                broadcastOps(applied);
             }
-            System.setProperty("java.security.policy", securityPolicy.getAbsolutePath());
-        } catch (Exception e) {
-            System.err.println("Error creating security policy: " + e.getMessage());
         }
     }
 
+    private boolean applyInOrder(List<BoardOp> ops, List<BoardOp> applied) {
+        for (BoardOp op : ops) {
+            if (op.getSequence() <= version) {
+                continue;
+            }
+            if (op.getSequence() != version + 1 || op.getKind() == BoardOp.Kind.RESET) {
+                return false;
+            }
+            BoardStore canvas = canvas();
+            if (op.getKind() == BoardOp.Kind.ADD) {
+                canvas.put(op.getElement());
+            } else {
+                canvas.clear();
+            }
+            modified = true;
+            version = op.getSequence();
+            updateDigest(op.getElement());
+            applied.add(op);
+        }
+        return true;
+    }
+
+    /**
+     * Captures the board for a follower without interrupting clients
+     * @return The board's content and state
+     * @throws IOException If the content cannot be captured
+     */
+    synchronized BoardHandoff captureReplica() throws IOException {
+        byte[] content;
+        if (hibernated) {
+            // The file is the content, no need to load it
+            content = Files.exists(hibernationFile) ? Files.readAllBytes(hibernationFile) : new byte[0];
+        } else {
+            content = BoardHandoff.encode(canvasState);
+        }
+        return new BoardHandoff(boardId, content, version, getManagerUsername());
+    }
+
+    /**
+     * Replaces a follower copy with a full copy from the primary. The copy is
+     * stored hibernated and loaded when next used.
+     * @param copy The board as captured by the primary
+     * @throws IOException If the copy cannot be stored
+     */
+    synchronized void installReplica(BoardHandoff copy) throws IOException {
+        // The copy being replaced may be mapped from the file
+        releaseBoardFile(false);
+        if (copy.getContent().length > 0) {
+            Files.createDirectories(hibernationFile.getParent());
+            BoardFile.write(hibernationFile, copy.getContent());
+        } else {
+            Files.deleteIfExists(hibernationFile);
+        }
+        canvasState = null;
+        digest = null;
+        hibernated = true;
+        modified = false;
+        snapshots.clear();
+        // The ops logged so far do not lead up to the copy's version
+        recentOps.clear();
+        version = copy.getVersion();
+        reservedManager = copy.getManager();
+        if (!clients.isEmpty()) {
+            // Viewers of this copy fetch it again
+            broadcastOp(BoardOp.reset(version));
+        }
+    }
+
+    private void checkWritable() throws RemoteException {
+        String owner = primary;
+        if (owner != null) {
+            throw new RemoteException("Board " + boardId + " is a read-only replica, changes go to " + owner);
+        }
+    }
+
+    private void checkNotMoved() throws BoardMovedException {
+        String owner = movedTo;
+        if (owner != null) {
+            throw new BoardMovedException(boardId, owner);
+        }
+    }
+
+    /**
+     * Registers an in-process observer. It first receives the current board,
+     * then every op broadcast after it.
+     * @param listener The observer
+     */
+    public synchronized void addBoardListener(BoardListener listener) {
+        listener.onSnapshot(version, currentElements());
+        boardListeners.add(listener);
+    }
+
+    /**
+     * @param listener An observer registered with addBoardListener
+     */
+    public void removeBoardListener(BoardListener listener) {
+        boardListeners.remove(listener);
+    }
+
     @Override
-    public synchronized boolean requestJoin(String username, IRemoteClient client) throws RemoteException {
-        System.out.println("Join request from: " + username);
+    public synchronized boolean requestJoin(String username, long sessionToken, IRemoteClient client)
+            throws RemoteException {
+        checkNotMoved();
+        System.out.println("Join request from: " + username + " on board " + boardId);
+        expireDepartures(System.currentTimeMillis());
+
+        // Bring a hibernated board back before anyone starts pulling it
+        try {
+            canvas();
+        } catch (UncheckedIOException e) {
+            throw new RemoteException(e.getMessage(), e.getCause());
+        }
 
         // Check if username already exists
-        if (clients.containsKey(username)) {
+        if (clients.containsKey(username) || pendingJoins.containsKey(username)) {
             System.out.println("Username already exists: " + username);
             return false;
         }
 
+        // Follower copies only have viewers, roles are decided on the primary
+        if (primary != null) {
+            admit(username, sessionToken, client);
+            sendJoinResult(username, client, true);
+            System.out.println(username + " joined read-only replica of board " + boardId);
+            return true;
+        }
+
         // If this is the first client, make them the manager
-        if (clients.isEmpty() && managerClient == null) {
+        if (managerClient == null && (reservedManager == null ? clients.isEmpty() : reservedManager.equals(username))) {
             managerClient = client;
-            clients.put(username, client);
+            reservedManager = null;
+            admit(username, sessionToken, client);
             System.out.println(username + " joined as manager");
 
-            // Update the new manager with current state
-            client.updateCanvas(new HashMap<>(canvasState));
-            client.updateUserList(new ArrayList<>(clients.keySet()));
-            client.joinRequestResult(true);
+            // The canvas is pulled by the client through openSnapshot
+            sendJoinResult(username, client, true);
             return true;
         }
 
-        // Ask manager for approval
-        try {
-            managerClient.receiveNotification("User " + username + " wants to join. Do you approve?");
+        // Board handed over from another node, let clients back in until its manager returns
+        if (managerClient == null) {
+            admit(username, sessionToken, client);
+            sendJoinResult(username, client, true);
+            System.out.println(username + " rejoined moved board " + boardId);
+            return true;
+        }
 
-            // For simplicity in this example, we auto-approve
-            // In a real implementation, you would need to handle the manager's response
-            clients.put(username, client);
+        // The manager answers later, nothing waits for it here
+        PendingJoin request = new PendingJoin(sessionToken, client);
+        pendingJoins.put(username, request);
+        timer.schedule(() -> expireJoin(username, request), JOIN_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        schedulePrompt();
+        System.out.println(username + " is waiting for the manager's approval");
+        return true;
+    }
 
-            // Update all clients with the new user list
-            updateAllClientsUserList();
+    @Override
+    public synchronized void answerJoinRequests(String username, List<String> approved, List<String> denied)
+            throws RemoteException {
+        checkNotMoved();
+        if (managerClient == null || clients.get(username) != managerClient) {
+            throw new RemoteException("Only the manager can answer join requests");
+        }
+        for (String name : approved) {
+            PendingJoin request = pendingJoins.remove(name);
+            // Requests that timed out or were withdrawn meanwhile are ignored
+            if (request != null) {
+                admit(name, request.sessionToken, request.client);
+                sendJoinResult(name, request.client, true);
+                // The canvas is pulled by the client through openSnapshot
+                System.out.println(name + " joined as client");
+            }
+        }
+        for (String name : denied) {
+            PendingJoin request = pendingJoins.remove(name);
+            if (request != null) {
+                sendJoinResult(name, request.client, false);
+                System.out.println(name + " was denied by the manager");
+            }
+        }
+        schedulePrompt();
+    }
 
-            // Update the new client with current canvas state
-            client.updateCanvas(new HashMap<>(canvasState));
-            client.joinRequestResult(true);
+    /**
+     * Shows the manager the requests now pending, shortly, so a burst of
+     * requests makes one prompt
+     */
+    private void schedulePrompt() {
+        if (!promptScheduled) {
+            promptScheduled = true;
+            timer.schedule(this::promptManager, JOIN_PROMPT_DELAY_MS, TimeUnit.MILLISECONDS);
+        }
+    }
 
-            System.out.println(username + " joined as client");
-            return true;
+    // Runs on the timer
+    private synchronized void promptManager() {
+        promptScheduled = false;
+        IRemoteClient manager = managerClient;
+        if (manager == null) {
+            return;
+        }
+        List<String> waiting = new ArrayList<>(pendingJoins.keySet());
+        send(manager, DeliveryLane.CONTROL, () -> {
+            try {
+                manager.joinRequestsPending(waiting);
+            } catch (RemoteException e) {
+                System.err.println("Error asking manager to approve " + waiting + ": " + e.getMessage());
+            }
+        });
+    }
 
-        } catch (RemoteException e) {
-            System.err.println("Error contacting manager: " + e.getMessage());
-            return false;
+    // Runs on the timer
+    private synchronized void expireJoin(String username, PendingJoin request) {
+        if (pendingJoins.remove(username, request)) {
+            sendJoinResult(username, request.client, false);
+            System.out.println("Join request from " + username + " timed out");
+            schedulePrompt();
+        }
+    }
+
+    /**
+     * Refuses every join request still waiting, as when the manager leaves
+     */
+    private void denyPendingJoins() {
+        for (Map.Entry<String, PendingJoin> entry : pendingJoins.entrySet()) {
+            sendJoinResult(entry.getKey(), entry.getValue().client, false);
         }
+        pendingJoins.clear();
+    }
+
+    private void sendJoinResult(String username, IRemoteClient client, boolean approved) {
+        send(client, DeliveryLane.CONTROL, () -> {
+            try {
+                client.joinRequestResult(approved);
+            } catch (RemoteException e) {
+                System.err.println("Error sending join result to " + username + ": " + e.getMessage());
+                if (approved) {
+                    handleDisconnectedClient(username, client);
+                }
+            }
+        });
     }
 
     @Override
     public synchronized void disconnect(String username) throws RemoteException {
+        if (pendingJoins.remove(username) != null) {
+            System.out.println(username + " withdrew the join request");
+            schedulePrompt();
+        }
         if (clients.containsKey(username)) {
             IRemoteClient client = clients.get(username);
             clients.remove(username);
+            snapshots.remove(username);
+            dropSubmissions(username);
+            sessionTokens.remove(username);
+            lastActivity = System.currentTimeMillis();
+            if (clients.isEmpty() && primary == null) {
+                // Nobody left to hold the role for
+                reservedManager = null;
+            }
             System.out.println(username + " disconnected");
 
             // If manager left, close the whiteboard
@@ -169,12 +630,204 @@ public class WhiteboardServer implements IRemoteWhiteboard {
                 notifyManagerClosed();
                 // In a real application, you might want to choose a new manager instead
             } else {
-                // Update all clients with new user list
-                updateAllClientsUserList();
+                userLeft(username);
             }
         }
     }
 
+    /**
+     * Puts a user on the board under its session token
+     */
+    private void admit(String username, long sessionToken, IRemoteClient client) {
+        clients.put(username, client);
+        sessionTokens.put(username, sessionToken);
+        boolean departed = departures.remove(username) != null;
+        presenceChanged(departed ? PresenceOp.updated(++presenceVersion, username, client.equals(managerClient), false)
+                : PresenceOp.joined(++presenceVersion, username, client.equals(managerClient), false));
+        presenceNewcomers.add(username);
+    }
+
+    @Override
+    public synchronized List<BoardOp> resumeSession(String username, long sessionToken, long version,
+                                                    IRemoteClient client) throws RemoteException {
+        checkNotMoved();
+        long now = System.currentTimeMillis();
+        expireDepartures(now);
+        Long token = sessionTokens.get(username);
+        if (token == null || token != sessionToken) {
+            // Unknown here: never joined, left for good, or away too long
+            return null;
+        }
+        try {
+            canvas();
+        } catch (UncheckedIOException e) {
+            throw new RemoteException(e.getMessage(), e.getCause());
+        }
+
+        // The user may still be listed if the server has not noticed the connection drop
+        IRemoteClient previous = clients.get(username);
+        Departure departure = departures.remove(username);
+        if (previous == null && departure != null) {
+            previous = departure.client;
+        }
+        if (previous == null) {
+            return null;
+        }
+        clients.put(username, client);
+        if (previous.equals(managerClient)) {
+            managerClient = client;
+        }
+        lastActivity = now;
+        if (departure != null) {
+            userUpdated(username, false);
+        }
+        // The client may come from another node, whose presence versions mean nothing here
+        presenceNewcomers.add(username);
+        schedulePresence();
+
+        List<BoardOp> missed = opsSince(version);
+        System.out.println(username + " resumed on board " + boardId + " at v" + version + ", "
+                + missed.size() + " ops behind");
+        return missed;
+    }
+
+    @Override
+    public long getEpoch() throws RemoteException {
+        checkNotMoved();
+        return epoch;
+    }
+
+    @Override
+    public synchronized List<BoardOp> fetchOpsSince(String username, long epoch, long version)
+            throws RemoteException {
+        checkNotMoved();
+        if (!clients.containsKey(username) || epoch != this.epoch) {
+            return null;
+        }
+        List<BoardOp> ops = loggedOpsSince(version);
+        System.out.println(username + " rejoined board " + boardId + " from a cached v" + version + ", "
+                + (ops != null ? ops.size() + " ops behind" : "too old"));
+        return ops;
+    }
+
+    @Override
+    public synchronized long[] getDigestNodes(String username, long version, int[] nodes) throws RemoteException {
+        checkNotMoved();
+        LongObjectMap<IDrawable> added = clients.containsKey(username) ? addedSince(version) : null;
+        if (added == null) {
+            return null;
+        }
+        // The digest at that version is the current one without the elements added since
+        long[] buckets = digest().getBuckets();
+        added.forEach((id, element) -> buckets[BoardDigest.bucketOf(id)] -= BoardDigest.hash(element));
+        try {
+            return BoardDigest.children(buckets, nodes);
+        } catch (IllegalArgumentException e) {
+            throw new RemoteException(e.getMessage());
+        }
+    }
+
+    @Override
+    public synchronized List<IDrawable> fetchBuckets(String username, long version, int[] buckets)
+            throws RemoteException {
+        checkNotMoved();
+        LongObjectMap<IDrawable> added = clients.containsKey(username) ? addedSince(version) : null;
+        if (added == null) {
+            return null;
+        }
+        boolean[] wanted = new boolean[BoardDigest.BUCKETS];
+        for (int bucket : buckets) {
+            if (bucket < 0 || bucket >= BoardDigest.BUCKETS) {
+                throw new RemoteException("No such bucket: " + bucket);
+            }
+            wanted[bucket] = true;
+        }
+        BoardStore canvas = canvas();
+        List<IDrawable> elements = new ArrayList<>();
+        for (long id : canvas.ids()) {
+            if (wanted[BoardDigest.bucketOf(id)] && !added.containsKey(id)) {
+                elements.add(canvas.get(id));
+            }
+        }
+        System.out.println(username + " repaired " + buckets.length + " buckets (" + elements.size()
+                + " elements) of board " + boardId + " at v" + version);
+        return elements;
+    }
+
+    /**
+     * @param since Version a client last applied
+     * @return The ops after it, or a RESET if they are no longer all logged
+     */
+    private List<BoardOp> opsSince(long since) {
+        List<BoardOp> missed = loggedOpsSince(since);
+        // Too far behind, or ahead of a board that lost ops: the client fetches it again
+        return missed != null ? missed : Collections.singletonList(BoardOp.reset(version));
+    }
+
+    /**
+     * Elements added after a recent version, so the board can be checked as it was then
+     * @param since A version of this board
+     * @return The elements by ID, or null if the ops since are no longer all logged or include a clear
+     */
+    private LongObjectMap<IDrawable> addedSince(long since) {
+        List<BoardOp> ops = loggedOpsSince(since);
+        if (ops == null) {
+            return null;
+        }
+        LongObjectMap<IDrawable> added = new LongObjectMap<>(ops.size());
+        for (BoardOp op : ops) {
+            if (op.getKind() != BoardOp.Kind.ADD) {
+                return null;
+            }
+            added.put(op.getElement().getId(), op.getElement());
+        }
+        return added;
+    }
+
+    /**
+     * @param since A version of this board
+     * @return The ops after it, or null if they are no longer all logged
+     */
+    private List<BoardOp> loggedOpsSince(long since) {
+        BoardOp oldest = recentOps.peekFirst();
+        if (since == version) {
+            return new ArrayList<>(0);
+        }
+        if (since > version || oldest == null || oldest.getSequence() > since + 1) {
+            return null;
+        }
+        List<BoardOp> missed = new ArrayList<>((int) (version - since));
+        Iterator<BoardOp> newestFirst = recentOps.descendingIterator();
+        while (newestFirst.hasNext()) {
+            BoardOp op = newestFirst.next();
+            if (op.getSequence() <= since) {
+                break;
+            }
+            missed.add(op);
+        }
+        Collections.reverse(missed);
+        return missed;
+    }
+
+    private void expireDepartures(long now) {
+        Iterator<Map.Entry<String, Departure>> it = departures.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<String, Departure> entry = it.next();
+            if (now - entry.getValue().at > RESUME_TTL_MS) {
+                sessionTokens.remove(entry.getKey());
+                dropSubmissions(entry.getKey());
+                it.remove();
+                userLeft(entry.getKey());
+            }
+        }
+    }
+
+    private void forgetSessions() {
+        sessionTokens.clear();
+        departures.clear();
+        submissions.clear();
+    }
+
     private String getManagerUsername() {
         try {
             for (Map.Entry<String, IRemoteClient> entry : clients.entrySet()) {
@@ -190,65 +843,188 @@ public class WhiteboardServer implements IRemoteWhiteboard {
 
     @Override
     public synchronized void kickUser(String username) throws RemoteException {
+        checkNotMoved();
+        checkWritable();
         if (clients.containsKey(username)) {
             IRemoteClient client = clients.get(username);
             clients.remove(username);
+            snapshots.remove(username);
+            dropSubmissions(username);
+            sessionTokens.remove(username);
+            lastActivity = System.currentTimeMillis();
 
-            try {
-                client.kickedFromServer();
-            } catch (RemoteException e) {
-                System.err.println("Error notifying kicked user: " + e.getMessage());
-            }
+            send(client, DeliveryLane.CONTROL, () -> {
+                try {
+                    client.kickedFromServer();
+                } catch (RemoteException e) {
+                    System.err.println("Error notifying kicked user: " + e.getMessage());
+                }
+            });
 
             System.out.println(username + " was kicked");
-            updateAllClientsUserList();
+            userLeft(username);
         }
     }
 
     @Override
     public synchronized List<String> getConnectedUsers() throws RemoteException {
+        checkNotMoved();
         return new ArrayList<>(clients.keySet());
     }
 
     @Override
-    public synchronized int drawShape(Shape shape) throws RemoteException {
-        // Assign ID and add to canvas state
-        int id = nextElementId++;
-        shape.setId(id);
-        canvasState.put(id, shape);
+    public synchronized void drawShape(Shape shape) throws RemoteException {
+        checkNotMoved();
+        checkWritable();
+        broadcastAdded(addElement(shape));
+    }
 
-        // Update all clients
-        updateAllClientsCanvas();
+    @Override
+    public synchronized void drawText(TextElement text) throws RemoteException {
+        checkNotMoved();
+        checkWritable();
+        broadcastAdded(addElement(text));
+    }
+
+    /**
+     * Adds an element under the ID its client minted. An element already on
+     * the board with the same ID and content is a retried call and ignored.
+     * @param element The element
+     * @return The op to broadcast, null if the element was already there
+     * @throws RemoteException If the ID is invalid or taken by a different element
+     */
+    private BoardOp addElement(IDrawable element) throws RemoteException {
+        long id = element.getId();
+        // Replica 0 is reserved for the sequential IDs of boards saved before IDs were minted by clients
+        if (ElementId.replica(id) == 0 || ElementId.counter(id) == 0) {
+            throw new RemoteException("Element has no valid client ID: " + ElementId.toString(id));
+        }
+        BoardStore canvas = canvas();
+        IDrawable existing = canvas.get(id);
+        if (existing != null) {
+            if (ElementCodec.sameContent(existing, element)) {
+                return null;
+            }
+            throw new RemoteException("Element ID " + ElementId.toString(id) + " is already in use on board " + boardId);
+        }
+        canvas.put(element);
+        modified = true;
+        BoardOp op = BoardOp.add(++version, element);
+        updateDigest(element);
+        return op;
+    }
 
-        return id;
+    private void broadcastAdded(BoardOp op) {
+        if (op != null) {
+            // Update all clients
+            broadcastOp(op);
+        }
     }
 
     @Override
-    public synchronized int drawText(TextElement text) throws RemoteException {
-        // Assign ID and add to canvas state
-        int id = nextElementId++;
-        text.setId(id);
-        canvasState.put(id, text);
+    public synchronized void clearCanvas() throws RemoteException {
+        checkNotMoved();
+        checkWritable();
 
         // Update all clients
-        updateAllClientsCanvas();
+        broadcastOp(clearElements());
+    }
+
+    private BoardOp clearElements() {
+        canvas().clear();
+        modified = true;
+        BoardOp op = BoardOp.clear(++version);
+        updateDigest(null);
+        return op;
+    }
+
+    /**
+     * Carries the digest over the op that just raised the version
+     * @param added The element added, null if the board was cleared
+     */
+    private void updateDigest(IDrawable added) {
+        if (digest == null || digestVersion != version - 1) {
+            // Rebuilt when next asked for
+            return;
+        }
+        if (added != null) {
+            digest.add(added);
+        } else {
+            digest.clear();
+        }
+        digestVersion = version;
+    }
 
-        return id;
+    private BoardDigest digest() {
+        if (digest == null || digestVersion != version) {
+            long start = System.nanoTime();
+            BoardStore canvas = canvas();
+            digest = new BoardDigest();
+            for (long id : canvas.ids()) {
+                digest.add(canvas.get(id));
+            }
+            digestVersion = version;
+            System.out.printf("Built digest of board %s v%d (%d elements) in %.2f ms%n", boardId, version,
+                    canvas.size(), (System.nanoTime() - start) / 1e6);
+        }
+        return digest;
     }
 
     @Override
-    public synchronized void clearCanvas() throws RemoteException {
-        canvasState.clear();
-        nextElementId = 1;
+    public synchronized OpAck submitOps(String username, long session, long base, List<ClientOp> ops)
+            throws RemoteException {
+        checkNotMoved();
+        checkWritable();
+        Long token = sessionTokens.get(username);
+        if (!clients.containsKey(username) || token == null || token != session) {
+            throw new RemoteException(username + " has not joined board " + boardId + " in this session");
+        }
 
-        // Update all clients
-        updateAllClientsCanvas();
+        // Drop sessions of clients that went away without disconnecting
+        long now = System.currentTimeMillis();
+        submissions.values().removeIf(window -> window.isExpired(now, SUBMISSION_TTL_MS));
+
+        SubmissionWindow window = submissions.get(session);
+        if (window == null || !window.getUsername().equals(username)) {
+            // New session, or one this node never saw: it continues from the client's ack
+            window = new SubmissionWindow(username, base);
+            submissions.put(session, window);
+        }
+
+        // One broadcast for everything the batch made ready
+        List<BoardOp> applied = new ArrayList<>();
+        List<String> rejections = new ArrayList<>(0);
+        for (ClientOp op : window.accept(ops)) {
+            try {
+                BoardOp result = op.getKind() == ClientOp.Kind.CLEAR ? clearElements() : addElement(op.getElement());
+                if (result != null) {
+                    applied.add(result);
+                }
+            } catch (RemoteException e) {
+                rejections.add(e.getMessage());
+            }
+        }
+        if (!applied.isEmpty()) {
+            broadcastOps(applied);
+        }
+        return new OpAck(window.getAcked(), version, rejections);
+    }
+
+    private void dropSubmissions(String username) {
+        submissions.values().removeIf(window -> window.getUsername().equals(username));
     }
 
     @Override
     public synchronized boolean saveWhiteboard(String filename) throws RemoteException {
-        try (ObjectOutputStream oos = new ObjectOutputStream(new FileOutputStream(filename))) {
-            oos.writeObject(new HashMap<>(canvasState));
+        checkNotMoved();
+        try {
+            Path path = Paths.get(filename);
+            BoardStore canvas = canvas();
+            if (canvas instanceof MappedBoardStore && ((MappedBoardStore) canvas).isMappedFrom(path)) {
+                // Saved over the file it was loaded from
+                releaseBoardFile(true);
+            }
+            BoardFile.write(path, canvas);
             System.out.println("Whiteboard saved to " + filename);
             return true;
         } catch (IOException e) {
@@ -258,110 +1034,333 @@ public class WhiteboardServer implements IRemoteWhiteboard {
     }
 
     @Override
-    public synchronized boolean loadWhiteboard(String filename) throws RemoteException {
-        try (ObjectInputStream ois = new ObjectInputStream(new FileInputStream(filename))) {
-            @SuppressWarnings("unchecked")
-            Map<Integer, IDrawable> loaded = (Map<Integer, IDrawable>) ois.readObject();
-
-            // Update canvas state
-            canvasState.clear();
-            canvasState.putAll(loaded);
-
-            // Set nextElementId to max ID + 1
-            nextElementId = 1;
-            for (Integer id : canvasState.keySet()) {
-                if (id >= nextElementId) {
-                    nextElementId = id + 1;
-                }
+    public boolean loadWhiteboard(String filename) throws RemoteException {
+        checkNotMoved();
+        checkWritable();
+        // Open the file without holding the server monitor, only the swap is synchronized
+        BoardStore loaded;
+        try {
+            Path path = Paths.get(filename);
+            if (LegacyBoardFile.isLegacy(path)) {
+                // Saved before board files, decoded in full; saving writes a board file
+                loaded = LegacyBoardFile.read(path);
+            } else {
+                // Mapped and decoded lazily
+                loaded = new MappedBoardStore(BoardFile.open(path), BoardStore.create());
             }
-
-            // Update all clients
-            updateAllClientsCanvas();
-
-            System.out.println("Whiteboard loaded from " + filename);
-            return true;
-        } catch (IOException | ClassNotFoundException e) {
+        } catch (IOException e) {
             System.err.println("Error loading whiteboard: " + e.getMessage());
             return false;
         }
+
+        synchronized (this) {
+            releaseBoardFile(false);
+            canvasState = loaded;
+            digest = null;
+            hibernated = false;
+            modified = true;
+            lastActivity = System.currentTimeMillis();
+
+            // Clients fetch the new board as a fresh snapshot
+            broadcastOp(BoardOp.reset(++version));
+        }
+
+        System.out.println("Whiteboard loaded from " + filename);
+        return true;
+    }
+
+    @Override
+    public synchronized Map<Long, IDrawable> getCurrentState() throws RemoteException {
+        checkNotMoved();
+        return canvas().toMap();
+    }
+
+    @Override
+    public synchronized SnapshotChunk openSnapshot(String username, Rectangle viewport)
+            throws RemoteException {
+        checkNotMoved();
+        if (!clients.containsKey(username)) {
+            return null;
+        }
+
+        // Drop transfers abandoned by clients that never finished
+        long now = System.currentTimeMillis();
+        snapshots.values().removeIf(snapshot -> snapshot.isExpired(now, SNAPSHOT_TTL_MS));
+
+        BoardSnapshot snapshot = new BoardSnapshot(version, canvas(), viewport, SNAPSHOT_CHUNK_SIZE);
+        snapshots.put(username, snapshot);
+        System.out.println("Snapshot v" + version + " opened for " + username
+                + " (" + snapshot.getChunkCount() + " chunks)");
+        return nextChunk(username, snapshot, 0);
+    }
+
+    @Override
+    public synchronized SnapshotChunk fetchSnapshotChunk(String username, long snapshotVersion, int index)
+            throws RemoteException {
+        checkNotMoved();
+        BoardSnapshot snapshot = snapshots.get(username);
+        if (snapshot == null || snapshot.getVersion() != snapshotVersion) {
+            // Unknown or superseded snapshot, the client starts over with openSnapshot
+            return null;
+        }
+        return nextChunk(username, snapshot, index);
     }
 
     @Override
-    public synchronized Map<Integer, IDrawable> getCurrentState() throws RemoteException {
-        return new HashMap<>(canvasState);
+    public List<String> getFailoverNodes() throws RemoteException {
+        return new ArrayList<>(replicationGroup.get());
+    }
+
+    private SnapshotChunk nextChunk(String username, BoardSnapshot snapshot, int index) {
+        SnapshotChunk chunk = snapshot.chunk(index);
+        if (chunk != null && index == snapshot.getChunkCount() - 1) {
+            snapshots.remove(username);
+        }
+        return chunk;
     }
 
     // Helper methods
-    private void updateAllClientsCanvas() {
-        Map<Integer, IDrawable> stateCopy = new HashMap<>(canvasState);
-        for (Map.Entry<String, IRemoteClient> entry : new HashMap<>(clients).entrySet()) {
-            try {
-                entry.getValue().updateCanvas(stateCopy);
-            } catch (RemoteException e) {
-                System.err.println("Error updating client " + entry.getKey() + ": " + e.getMessage());
-                // Remove disconnected client
-                handleDisconnectedClient(entry.getKey());
-            }
+    private List<IDrawable> currentElements() {
+        BoardStore canvas = canvas();
+        long[] ids = canvas.ids();
+        List<IDrawable> elements = new ArrayList<>(ids.length);
+        for (long id : ids) {
+            elements.add(canvas.get(id));
         }
+        return Collections.unmodifiableList(elements);
     }
 
-    private void updateAllClientsUserList() {
-        List<String> userList = new ArrayList<>(clients.keySet());
-        for (Map.Entry<String, IRemoteClient> entry : new HashMap<>(clients).entrySet()) {
-            try {
-                entry.getValue().updateUserList(userList);
-            } catch (RemoteException e) {
-                System.err.println("Error updating client " + entry.getKey() + " user list: " + e.getMessage());
-                // Remove disconnected client
-                handleDisconnectedClient(entry.getKey());
+    private void broadcastOp(BoardOp op) {
+        broadcastOps(Collections.singletonList(op));
+    }
+
+    private void broadcastOps(List<BoardOp> ops) {
+        for (BoardOp op : ops) {
+            if (recentOps.size() == RECENT_OPS) {
+                recentOps.removeFirst();
+            }
+            recentOps.addLast(op);
+        }
+
+        ReplicationSink sink = replicationSink;
+        if (sink != null) {
+            String manager = getManagerUsername();
+            for (BoardOp op : ops) {
+                sink.opSequenced(boardId, op, manager);
+            }
+        }
+
+        if (!boardListeners.isEmpty()) {
+            for (BoardOp op : ops) {
+                List<IDrawable> resetElements = op.getKind() == BoardOp.Kind.RESET ? currentElements() : null;
+                for (BoardListener listener : boardListeners) {
+                    listener.onOp(op);
+                    if (resetElements != null) {
+                        listener.onSnapshot(version, resetElements);
+                    }
+                }
             }
         }
+
+        if (clients.isEmpty()) {
+            return;
+        }
+
+        // Recipients are fixed now, delivery happens off the monitor in sequence order
+        for (Map.Entry<String, IRemoteClient> entry : clients.entrySet()) {
+            String username = entry.getKey();
+            IRemoteClient client = entry.getValue();
+            send(client, DeliveryLane.LIVE, () -> {
+                try {
+                    client.applyOps(ops);
+                } catch (RemoteException e) {
+                    System.err.println("Error updating client " + username + ": " + e.getMessage());
+                    // Remove disconnected client
+                    handleDisconnectedClient(username, client);
+                }
+            });
+        }
     }
 
-    private void handleDisconnectedClient(String username) {
-        try {
-            clients.remove(username);
+    private void userLeft(String username) {
+        presenceNewcomers.remove(username);
+        presenceChanged(PresenceOp.left(++presenceVersion, username));
+    }
+
+    /**
+     * @param away true if the user's connection dropped, false once it resumed
+     */
+    private void userUpdated(String username, boolean away) {
+        IRemoteClient client = away ? departures.get(username).client : clients.get(username);
+        presenceChanged(PresenceOp.updated(++presenceVersion, username, client.equals(managerClient), away));
+    }
+
+    private void presenceChanged(PresenceOp change) {
+        PresenceOp previous = presenceChanges.remove(change.getUsername());
+        if (previous != null && previous.getKind() == PresenceOp.Kind.JOINED
+                && change.getKind() == PresenceOp.Kind.UPDATED) {
+            // Clients have not been told of the user yet
+            change = PresenceOp.joined(change.getSequence(), change.getUsername(), change.isManager(), change.isAway());
+        }
+        presenceChanges.put(change.getUsername(), change);
+        schedulePresence();
+    }
+
+    private void schedulePresence() {
+        if (!presenceScheduled) {
+            presenceScheduled = true;
+            timer.schedule(this::sendPresence, PRESENCE_WINDOW_MS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Sends the presence changes of the window: the whole list to users who
+     * just came onto the board, the changes to everyone else. Runs on the timer.
+     */
+    private synchronized void sendPresence() {
+        presenceScheduled = false;
+        List<PresenceOp> changes = new ArrayList<>(presenceChanges.values());
+        presenceChanges.clear();
+        List<PresenceOp> everyone = presenceNewcomers.isEmpty() ? null : currentPresence();
+        Map<String, IRemoteClient> newcomers = new HashMap<>();
+        Map<String, IRemoteClient> others = new HashMap<>();
+        for (Map.Entry<String, IRemoteClient> entry : clients.entrySet()) {
+            (presenceNewcomers.contains(entry.getKey()) ? newcomers : others).put(entry.getKey(), entry.getValue());
+        }
+        presenceNewcomers.clear();
+        long version = presenceVersion;
+        if (newcomers.isEmpty() && (changes.isEmpty() || others.isEmpty())) {
+            return;
+        }
+
+        for (Map.Entry<String, IRemoteClient> entry : newcomers.entrySet()) {
+            send(entry.getValue(), DeliveryLane.PRESENCE, () -> {
+                try {
+                    entry.getValue().updateUserList(version, everyone);
+                } catch (RemoteException e) {
+                    System.err.println("Error updating client " + entry.getKey() + " user list: " + e.getMessage());
+                    handleDisconnectedClient(entry.getKey(), entry.getValue());
+                }
+            });
+        }
+        if (changes.isEmpty()) {
+            return;
+        }
+        for (Map.Entry<String, IRemoteClient> entry : others.entrySet()) {
+            send(entry.getValue(), DeliveryLane.PRESENCE, () -> {
+                try {
+                    entry.getValue().presenceChanged(changes);
+                } catch (RemoteException e) {
+                    System.err.println("Error updating client " + entry.getKey() + " user list: " + e.getMessage());
+                    // Remove disconnected client
+                    handleDisconnectedClient(entry.getKey(), entry.getValue());
+                }
+            });
+        }
+    }
+
+    /**
+     * @return Everyone on the board, including users whose connection dropped, as JOINED ops
+     */
+    private List<PresenceOp> currentPresence() {
+        List<PresenceOp> everyone = new ArrayList<>(clients.size() + departures.size());
+        for (Map.Entry<String, IRemoteClient> entry : clients.entrySet()) {
+            everyone.add(PresenceOp.joined(presenceVersion, entry.getKey(), entry.getValue().equals(managerClient), false));
+        }
+        for (Map.Entry<String, Departure> entry : departures.entrySet()) {
+            everyone.add(PresenceOp.joined(presenceVersion, entry.getKey(),
+                    entry.getValue().client.equals(managerClient), true));
+        }
+        return everyone;
+    }
+
+    // Runs on the timer
+    private synchronized void sweepDepartures() {
+        expireDepartures(System.currentTimeMillis());
+    }
+
+    /**
+     * Queues a callback to one client, behind the earlier ones of its lane
+     * @param client The client called back
+     * @param lane Priority of the callback
+     * @param callback Makes the call
+     */
+    private void send(IRemoteClient client, DeliveryLane lane, Runnable callback) {
+        outboxes.computeIfAbsent(client, key -> new SerialExecutor(callbackPool)).execute(lane, callback);
+    }
+
+    @Override
+    public synchronized void connectionLost(String username, IRemoteClient client) {
+        PendingJoin pending = pendingJoins.get(username);
+        if (pending != null && pending.client.equals(client)) {
+            pendingJoins.remove(username);
+            return;
+        }
+        handleDisconnectedClient(username, client);
+    }
+
+    private synchronized void handleDisconnectedClient(String username, IRemoteClient client) {
+        // The name may have been taken by a new connection since the failed callback
+        if (clients.remove(username, client)) {
+            snapshots.remove(username);
+            lastActivity = System.currentTimeMillis();
+            if (sessionTokens.containsKey(username)) {
+                // Probably a dropped connection, the client may resume
+                departures.put(username, new Departure(client, lastActivity));
+                userUpdated(username, true);
+                timer.schedule(this::sweepDepartures, RESUME_TTL_MS + 1_000, TimeUnit.MILLISECONDS);
+            } else {
+                userLeft(username);
+            }
             System.out.println("Removed disconnected client: " + username);
-        } catch (Exception e) {
-            System.err.println("Error removing disconnected client: " + e.getMessage());
         }
     }
 
     private void notifyManagerClosed() {
-        for (Map.Entry<String, IRemoteClient> entry : new HashMap<>(clients).entrySet()) {
-            if (!entry.getValue().equals(managerClient)) {
+        Map<String, IRemoteClient> recipients = new HashMap<>(clients);
+        recipients.values().remove(managerClient);
+        for (IRemoteClient client : recipients.values()) {
+            send(client, DeliveryLane.CONTROL, () -> {
                 try {
-                    entry.getValue().managerClosedWhiteboard();
+                    client.managerClosedWhiteboard();
                 } catch (RemoteException e) {
                     System.err.println("Error notifying client of manager close: " + e.getMessage());
                 }
-            }
+            });
         }
 
         // Clear all clients
         clients.clear();
         managerClient = null;
+        forgetSessions();
+        denyPendingJoins();
     }
 
-    // Main method to run the server directly
-    public static void main(String[] args) {
-        String host = "localhost";
-        int port = 1099;
+    /**
+     * A join request waiting for the manager's approval
+     */
+    private static final class PendingJoin {
+        final long sessionToken;
+        final IRemoteClient client;
 
-        // Parse command line arguments if provided
-        if (args.length >= 1) {
-            host = args[0];
+        PendingJoin(long sessionToken, IRemoteClient client) {
+            this.sessionToken = sessionToken;
+            this.client = client;
         }
-        if (args.length >= 2) {
-            try {
-                port = Integer.parseInt(args[1]);
-            } catch (NumberFormatException e) {
-                System.err.println("Invalid port number, using default: 1099");
-                port = 1099;
-            }
+    }
+
+    private static final class Departure {
+        final IRemoteClient client;
+        final long at;
+
+        Departure(IRemoteClient client, long at) {
+            this.client = client;
+            this.at = at;
         }
+    }
 
-        WhiteboardServer server = new WhiteboardServer(host, port);
-        server.start();
+    // Kept so existing launch scripts keep working, hosts all boards
+    public static void main(String[] args) {
+        BoardRegistry.main(args);
     }
-}
\ No newline at end of file
+}
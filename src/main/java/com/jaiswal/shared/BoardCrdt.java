@@ -0,0 +1,396 @@
+package com.jaiswal.shared;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.LongPredicate;
+
+/**
+ * Conflict-free replicated board. Every replica, server or client, edits its
+ * own copy and exchanges {@link CrdtOp ops} or whole states with the others;
+ * copies that have seen the same ops are equal no matter the order they
+ * arrived in, without any replica assigning IDs or sequence numbers.
+ * <ul>
+ * <li>Elements form an add-wins set. An element is keyed by the ID of the op
+ * that drew it. REMOVE and CLEAR only erase elements their origin had seen, so
+ * an element drawn concurrently with a clear survives it.</li>
+ * <li>Element properties are last-writer-wins registers ordered by Lamport
+ * stamp, ties broken by replica ID.</li>
+ * <li>Elements are listed in stamp order, which respects causality: an element
+ * drawn after seeing another is listed after it.</li>
+ * </ul>
+ * Ops from one origin must be applied in the order it made them, as any
+ * ordered transport delivers them; ops from different origins may interleave
+ * freely. Not thread-safe; the owner synchronizes access.
+ * <p>
+ * A standalone building block: the server and client still share the board
+ * through the sequenced op log, and nothing in them uses this class yet.
+ */
+public class BoardCrdt implements Serializable {
+    private static final long serialVersionUID = 2L;
+
+    private static final int STAMP_REPLICA_BITS = ElementId.REPLICA_BITS;
+
+    private final int replica;
+    // Lamport clock, advanced past every stamp applied
+    private long clock;
+    // Highest op counter applied per origin replica
+    private final LongObjectMap<Counter> seen = new LongObjectMap<>();
+    // Merged seen-vectors of all clears: an element at or below it is erased
+    private final LongObjectMap<Counter> cleared = new LongObjectMap<>();
+    // Live elements by ID
+    private final LongObjectMap<Entry> elements = new LongObjectMap<>();
+    // Elements removed one by one and not yet covered by a clear, used as a set
+    private final LongObjectMap<Boolean> removed = new LongObjectMap<>();
+    // Properties set on elements whose ADD has not arrived yet
+    private final LongObjectMap<Map<String, Register>> orphans = new LongObjectMap<>();
+
+    /**
+     * @param replica ID of this replica, unique among all replicas of the board
+     */
+    public BoardCrdt(int replica) {
+        if (replica < 0 || replica > ElementId.MAX_REPLICA) {
+            throw new IllegalArgumentException("Replica ID out of range: " + replica);
+        }
+        this.replica = replica;
+    }
+
+    /**
+     * @param time Lamport time
+     * @param replica Replica stamping the op
+     * @return Stamp ordering ops by time, then replica
+     */
+    public static long stamp(long time, int replica) {
+        return (time << STAMP_REPLICA_BITS) | replica;
+    }
+
+    /**
+     * @return ID of this replica
+     */
+    public int getReplica() {
+        return replica;
+    }
+
+    // Local edits, applied here and returned for sending to the other replicas
+
+    /**
+     * Draws an element
+     * @param element The element
+     * @return The op, its ID is the new element's ID
+     */
+    public CrdtOp add(IDrawable element) {
+        return local(CrdtOp.add(nextId(), nextStamp(), element));
+    }
+
+    /**
+     * Erases an element
+     * @param elementId The element
+     * @return The op
+     */
+    public CrdtOp remove(long elementId) {
+        return local(CrdtOp.remove(nextId(), nextStamp(), elementId));
+    }
+
+    /**
+     * Erases every element this replica has seen
+     * @return The op
+     */
+    public CrdtOp clear() {
+        long id = nextId();
+        // The clear covers itself so the vector stays contiguous for this replica
+        Map<Integer, Long> vector = getSeen();
+        vector.put(replica, ElementId.counter(id));
+        return local(CrdtOp.clear(id, nextStamp(), vector));
+    }
+
+    /**
+     * Sets a property of an element
+     * @param elementId The element
+     * @param key Property name
+     * @param value New value, may be null
+     * @return The op
+     */
+    public CrdtOp set(long elementId, String key, Serializable value) {
+        return local(CrdtOp.set(nextId(), nextStamp(), elementId, key, value));
+    }
+
+    private CrdtOp local(CrdtOp op) {
+        apply(op);
+        return op;
+    }
+
+    private long nextId() {
+        return ElementId.of(replica, counterOf(seen, replica) + 1);
+    }
+
+    private long nextStamp() {
+        return stamp(clock + 1, replica);
+    }
+
+    // Remote edits
+
+    /**
+     * Applies an op made by any replica. Ops already applied are ignored, so
+     * ops may be delivered more than once.
+     * @param op The op
+     * @return true if the op was new
+     */
+    public boolean apply(CrdtOp op) {
+        int origin = ElementId.replica(op.getId());
+        long counter = ElementId.counter(op.getId());
+        if (counter <= counterOf(seen, origin)) {
+            return false;
+        }
+        advance(seen, origin, counter);
+        clock = Math.max(clock, op.getStamp() >>> STAMP_REPLICA_BITS);
+
+        switch (op.getKind()) {
+            case ADD:
+                if (!isErased(op.getId())) {
+                    Entry entry = new Entry(op.getId(), op.getElement(), op.getStamp());
+                    Map<String, Register> early = orphans.remove(op.getId());
+                    if (early != null) {
+                        entry.properties.putAll(early);
+                    }
+                    elements.put(op.getId(), entry);
+                }
+                break;
+            case REMOVE:
+                elements.remove(op.getTarget());
+                orphans.remove(op.getTarget());
+                if (!isCleared(op.getTarget())) {
+                    removed.put(op.getTarget(), Boolean.TRUE);
+                }
+                break;
+            case CLEAR:
+                for (Map.Entry<Integer, Long> entry : op.getSeen().entrySet()) {
+                    advance(cleared, entry.getKey(), entry.getValue());
+                }
+                dropCleared();
+                break;
+            case SET:
+                setProperty(op.getTarget(), op.getKey(), new Register(op.getValue(), op.getStamp()));
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown op kind " + op.getKind());
+        }
+        return true;
+    }
+
+    /**
+     * Merges the whole state of another replica into this one, as if every op
+     * it has applied had been applied here
+     * @param other Another replica of the same board
+     */
+    public void merge(BoardCrdt other) {
+        other.cleared.forEach((origin, upTo) -> advance(cleared, origin, upTo.value));
+        other.removed.forEach(removed::put);
+
+        other.elements.forEach((id, theirs) -> {
+            Entry mine = elements.get(id);
+            if (mine == null) {
+                // Unseen here and not erased here, or erased here and dropped below
+                if (ElementId.counter(id) <= counterOf(seen, ElementId.replica(id))) {
+                    return;
+                }
+                mine = new Entry(id, theirs.element, theirs.stamp);
+                Map<String, Register> early = orphans.remove(id);
+                if (early != null) {
+                    mine.properties.putAll(early);
+                }
+                elements.put(id, mine);
+            }
+            mergeRegisters(mine.properties, theirs.properties);
+        });
+        other.orphans.forEach((id, properties) -> {
+            Entry target = elements.get(id);
+            if (target != null) {
+                mergeRegisters(target.properties, properties);
+            } else if (!isErased(id)) {
+                Map<String, Register> early = orphans.get(id);
+                if (early == null) {
+                    early = new HashMap<>();
+                    orphans.put(id, early);
+                }
+                mergeRegisters(early, properties);
+            }
+        });
+
+        removed.forEach((id, tombstone) -> {
+            elements.remove(id);
+            orphans.remove(id);
+        });
+        dropCleared();
+        other.seen.forEach((origin, counter) -> advance(seen, origin, counter.value));
+        clock = Math.max(clock, other.clock);
+    }
+
+    // Reads
+
+    /**
+     * @return Number of live elements
+     */
+    public int size() {
+        return elements.size();
+    }
+
+    /**
+     * @param elementId An element ID
+     * @return The element, or null if it is absent or erased
+     */
+    public IDrawable get(long elementId) {
+        Entry entry = elements.get(elementId);
+        return entry != null ? entry.element : null;
+    }
+
+    /**
+     * @param elementId An element ID
+     * @param key Property name
+     * @return The winning value, or null if never set
+     */
+    public Serializable getProperty(long elementId, String key) {
+        Entry entry = elements.get(elementId);
+        Register register = entry != null ? entry.properties.get(key) : null;
+        return register != null ? register.value : null;
+    }
+
+    /**
+     * @return IDs of the live elements in display order, the same on every replica that saw the same ops
+     */
+    public long[] ids() {
+        Entry[] ordered = new Entry[elements.size()];
+        int[] count = {0};
+        elements.forEach((id, entry) -> ordered[count[0]++] = entry);
+        Arrays.sort(ordered, (a, b) -> Long.compare(a.stamp, b.stamp));
+        long[] ids = new long[ordered.length];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = ordered[i].id;
+        }
+        return ids;
+    }
+
+    /**
+     * @return Highest op counter applied per origin replica
+     */
+    public Map<Integer, Long> getSeen() {
+        Map<Integer, Long> vector = new HashMap<>();
+        seen.forEach((origin, counter) -> vector.put((int) origin, counter.value));
+        return vector;
+    }
+
+    private boolean isCleared(long elementId) {
+        return ElementId.counter(elementId) <= counterOf(cleared, ElementId.replica(elementId));
+    }
+
+    private boolean isErased(long elementId) {
+        return isCleared(elementId) || removed.containsKey(elementId);
+    }
+
+    private void dropCleared() {
+        if (cleared.isEmpty()) {
+            return;
+        }
+        removeKeys(elements, this::isCleared);
+        removeKeys(orphans, this::isCleared);
+        // Tombstones under a clear are implied by it
+        removeKeys(removed, this::isCleared);
+    }
+
+    private void setProperty(long elementId, String key, Register value) {
+        Entry entry = elements.get(elementId);
+        Map<String, Register> properties;
+        if (entry != null) {
+            properties = entry.properties;
+        } else if (!isErased(elementId)) {
+            properties = orphans.get(elementId);
+            if (properties == null) {
+                properties = new HashMap<>();
+                orphans.put(elementId, properties);
+            }
+        } else {
+            return;
+        }
+        properties.merge(key, value, Register::later);
+    }
+
+    private static long counterOf(LongObjectMap<Counter> vector, long origin) {
+        Counter counter = vector.get(origin);
+        return counter != null ? counter.value : 0;
+    }
+
+    // Raises a replica's counter in a vector, never lowers it
+    private static void advance(LongObjectMap<Counter> vector, long origin, long value) {
+        Counter counter = vector.get(origin);
+        if (counter == null) {
+            counter = new Counter();
+            vector.put(origin, counter);
+        }
+        counter.value = Math.max(counter.value, value);
+    }
+
+    private static void removeKeys(LongObjectMap<?> map, LongPredicate erased) {
+        long[] doomed = new long[map.size()];
+        int[] count = {0};
+        map.forEach((key, value) -> {
+            if (erased.test(key)) {
+                doomed[count[0]++] = key;
+            }
+        });
+        for (int i = 0; i < count[0]; i++) {
+            map.remove(doomed[i]);
+        }
+    }
+
+    private static void mergeRegisters(Map<String, Register> into, Map<String, Register> from) {
+        for (Map.Entry<String, Register> entry : from.entrySet()) {
+            into.merge(entry.getKey(), entry.getValue(), Register::later);
+        }
+    }
+
+    /**
+     * A live element and its properties
+     */
+    private static final class Entry implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        final long id;
+        final IDrawable element;
+        final long stamp;
+        final Map<String, Register> properties = new HashMap<>(2);
+
+        Entry(long id, IDrawable element, long stamp) {
+            this.id = id;
+            this.element = element;
+            this.stamp = stamp;
+        }
+    }
+
+    /**
+     * An op counter in a seen-vector, updated in place
+     */
+    private static final class Counter implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        long value;
+    }
+
+    /**
+     * A last-writer-wins value
+     */
+    private static final class Register implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        final Serializable value;
+        final long stamp;
+
+        Register(Serializable value, long stamp) {
+            this.value = value;
+            this.stamp = stamp;
+        }
+
+        static Register later(Register a, Register b) {
+            return b.stamp > a.stamp ? b : a;
+        }
+    }
+}
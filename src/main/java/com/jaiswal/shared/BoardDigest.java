@@ -0,0 +1,131 @@
+package com.jaiswal.shared;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+
+/**
+ * Hash tree over a board's elements, used to check that a client's copy
+ * matches the server's without transferring it.
+ * <pre>
+ * root     node 0
+ * groups   nodes 1 to {@value #FANOUT}, each covering {@value #FANOUT} buckets
+ * buckets  nodes after the groups, {@value #BUCKETS} in all
+ * </pre>
+ * Element IDs are spread over the buckets by ranges of their mixed value, as
+ * one client's IDs differ only in their low bits. A bucket's hash is the sum
+ * of its elements' hashes, so adding and removing an element is O(1) and the
+ * order elements arrive in does not matter; only stacking order is not
+ * covered. Group and root hashes are derived when asked for.
+ * Not thread-safe.
+ */
+public final class BoardDigest {
+    public static final int FANOUT = 32;
+    public static final int BUCKETS = FANOUT * FANOUT;
+    // Node number of the first group and the first bucket
+    public static final int FIRST_GROUP = 1;
+    public static final int FIRST_BUCKET = FIRST_GROUP + FANOUT;
+
+    private final long[] buckets = new long[BUCKETS];
+
+    /**
+     * @param id An element ID
+     * @return Index of the bucket the element falls into, 0 to {@value #BUCKETS} - 1
+     */
+    public static int bucketOf(long id) {
+        return (int) (mix(id) >>> (64 - Integer.numberOfTrailingZeros(BUCKETS)));
+    }
+
+    /**
+     * @param drawable An element
+     * @return Hash of its ID and content
+     */
+    public static long hash(IDrawable drawable) {
+        long h = 0xcbf29ce484222325L;
+        try {
+            for (byte b : ElementCodec.encodePayload(drawable)) {
+                h = (h ^ b) * 0x100000001b3L;
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        h = h * 31 + ElementCodec.typeOf(drawable);
+        h = h * 31 + ElementCodec.colorOf(drawable);
+        h = h * 31 + Float.floatToIntBits(ElementCodec.strokeOf(drawable));
+        return mix(drawable.getId() ^ mix(h));
+    }
+
+    /**
+     * @param drawable An element now on the board
+     */
+    public void add(IDrawable drawable) {
+        buckets[bucketOf(drawable.getId())] += hash(drawable);
+    }
+
+    /**
+     * @param drawable An element no longer on the board
+     */
+    public void remove(IDrawable drawable) {
+        buckets[bucketOf(drawable.getId())] -= hash(drawable);
+    }
+
+    /**
+     * Empties the digest, as for a cleared board
+     */
+    public void clear() {
+        Arrays.fill(buckets, 0);
+    }
+
+    /**
+     * @return Copy of the bucket hashes
+     */
+    public long[] getBuckets() {
+        return buckets.clone();
+    }
+
+    /**
+     * @param nodes Group node numbers, or the root
+     * @return Hashes of the children of each node, {@value #FANOUT} per node
+     */
+    public long[] children(int[] nodes) {
+        return children(buckets, nodes);
+    }
+
+    /**
+     * @param buckets Bucket hashes of a digest
+     * @param nodes Group node numbers, or the root
+     * @return Hashes of the children of each node, {@value #FANOUT} per node
+     */
+    public static long[] children(long[] buckets, int[] nodes) {
+        long[] children = new long[nodes.length * FANOUT];
+        for (int n = 0; n < nodes.length; n++) {
+            int node = nodes[n];
+            if (node < 0 || node >= FIRST_BUCKET) {
+                throw new IllegalArgumentException("Not an inner node: " + node);
+            }
+            for (int child = 0; child < FANOUT; child++) {
+                children[n * FANOUT + child] = node == 0
+                        ? groupHash(buckets, child) : buckets[(node - FIRST_GROUP) * FANOUT + child];
+            }
+        }
+        return children;
+    }
+
+    private static long groupHash(long[] buckets, int group) {
+        long h = group;
+        for (int i = group * FANOUT; i < (group + 1) * FANOUT; i++) {
+            h = mix(h * 31 + buckets[i]);
+        }
+        return h;
+    }
+
+    // Finalizer of MurmurHash3
+    private static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
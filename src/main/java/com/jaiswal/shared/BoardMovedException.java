@@ -0,0 +1,68 @@
+package com.jaiswal.shared;
+
+import java.rmi.RemoteException;
+
+/**
+ * Thrown by a server node for a board it does not own, either because the
+ * board is placed on another node or because it is being handed off.
+ * The caller should reconnect to the owner and retry.
+ */
+public class BoardMovedException extends RemoteException {
+    private static final long serialVersionUID = 1L;
+
+    private final String boardId;
+    private final String owner;
+
+    /**
+     * @param boardId The board
+     * @param owner Address of the owning node, "host:port"
+     */
+    public BoardMovedException(String boardId, String owner) {
+        super("Board " + boardId + " is served by " + owner);
+        this.boardId = boardId;
+        this.owner = owner;
+    }
+
+    /**
+     * Finds a redirect in a failed call. RMI wraps exceptions thrown by the
+     * server in a {@link java.rmi.ServerException}.
+     * @param failure The failure of a remote call
+     * @return The redirect, or null if the call failed for another reason
+     */
+    public static BoardMovedException find(Throwable failure) {
+        for (Throwable cause = failure; cause != null; cause = cause.getCause()) {
+            if (cause instanceof BoardMovedException) {
+                return (BoardMovedException) cause;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return The board
+     */
+    public String getBoardId() {
+        return boardId;
+    }
+
+    /**
+     * @return Address of the owning node, "host:port"
+     */
+    public String getOwner() {
+        return owner;
+    }
+
+    /**
+     * @return Host part of the owner address
+     */
+    public String getOwnerHost() {
+        return owner.substring(0, owner.lastIndexOf(':'));
+    }
+
+    /**
+     * @return Port part of the owner address
+     */
+    public int getOwnerPort() {
+        return Integer.parseInt(owner.substring(owner.lastIndexOf(':') + 1));
+    }
+}
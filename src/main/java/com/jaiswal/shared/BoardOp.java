@@ -0,0 +1,63 @@
+package com.jaiswal.shared;
+
+import java.io.Serializable;
+
+/**
+ * A single sequenced change to the board, broadcast by the server in the order
+ * it was applied. Sequence numbers increase by one per op and double as the
+ * board version a client has caught up to.
+ */
+public class BoardOp implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    public enum Kind {
+        // An element was drawn
+        ADD,
+        // The canvas was cleared
+        CLEAR,
+        // The whole board was replaced, clients must fetch a new snapshot
+        RESET
+    }
+
+    private final long sequence;
+    private final Kind kind;
+    private final IDrawable element;
+
+    private BoardOp(long sequence, Kind kind, IDrawable element) {
+        this.sequence = sequence;
+        this.kind = kind;
+        this.element = element;
+    }
+
+    public static BoardOp add(long sequence, IDrawable element) {
+        return new BoardOp(sequence, Kind.ADD, element);
+    }
+
+    public static BoardOp clear(long sequence) {
+        return new BoardOp(sequence, Kind.CLEAR, null);
+    }
+
+    public static BoardOp reset(long sequence) {
+        return new BoardOp(sequence, Kind.RESET, null);
+    }
+
+    public long getSequence() {
+        return sequence;
+    }
+
+    public Kind getKind() {
+        return kind;
+    }
+
+    /**
+     * @return The drawn element for ADD ops, null otherwise
+     */
+    public IDrawable getElement() {
+        return element;
+    }
+
+    @Override
+    public String toString() {
+        return "BoardOp[" + sequence + ", " + kind + (element != null ? ", id=" + element.getId() : "") + "]";
+    }
+}
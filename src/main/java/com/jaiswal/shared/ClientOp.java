@@ -0,0 +1,58 @@
+package com.jaiswal.shared;
+
+import java.io.Serializable;
+
+/**
+ * A change submitted by a client, numbered by the client. Sequence numbers
+ * increase by one per op within a client session, so the server can apply a
+ * session's ops once each and in order however often and in whatever order
+ * they arrive.
+ */
+public class ClientOp implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    public enum Kind {
+        // Draw an element
+        ADD,
+        // Clear the canvas
+        CLEAR
+    }
+
+    private final long sequence;
+    private final Kind kind;
+    private final IDrawable element;
+
+    private ClientOp(long sequence, Kind kind, IDrawable element) {
+        this.sequence = sequence;
+        this.kind = kind;
+        this.element = element;
+    }
+
+    public static ClientOp add(long sequence, IDrawable element) {
+        return new ClientOp(sequence, Kind.ADD, element);
+    }
+
+    public static ClientOp clear(long sequence) {
+        return new ClientOp(sequence, Kind.CLEAR, null);
+    }
+
+    public long getSequence() {
+        return sequence;
+    }
+
+    public Kind getKind() {
+        return kind;
+    }
+
+    /**
+     * @return The element for ADD ops, null otherwise
+     */
+    public IDrawable getElement() {
+        return element;
+    }
+
+    @Override
+    public String toString() {
+        return "ClientOp[" + sequence + ", " + kind + (element != null ? ", id=" + ElementId.toString(element.getId()) : "") + "]";
+    }
+}
@@ -0,0 +1,245 @@
+package com.jaiswal.shared;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Socket whose streams exchange frames written by {@link CompressingSocketFactory}.
+ * <pre>
+ * frame  kind (0 stored, 1 deflated), raw length, [deflated length], data
+ * </pre>
+ * Output is buffered until flushed or the buffer fills, then written as one
+ * frame. Deflated frames end with a sync flush, so the receiver can inflate
+ * each one completely while the dictionary carries over to the next.
+ */
+class CompressedSocket extends Socket {
+    private static final int FRAME_STORED = 0;
+    private static final int FRAME_DEFLATED = 1;
+    private static final int FRAME_BUFFER_BYTES = 64 * 1024;
+    // A frame never holds more than one output buffer; deflating it grows the output buffer at most once
+    private static final int MAX_DEFLATED_BYTES = 2 * FRAME_BUFFER_BYTES;
+
+    private final boolean compress;
+    private final int threshold;
+    private final int level;
+
+    private FrameInputStream in;
+    private FrameOutputStream out;
+
+    CompressedSocket(boolean compress, int threshold, int level) {
+        this.compress = compress;
+        this.threshold = threshold;
+        this.level = level;
+    }
+
+    @Override
+    public synchronized InputStream getInputStream() throws IOException {
+        if (in == null) {
+            in = new FrameInputStream(super.getInputStream());
+        }
+        return in;
+    }
+
+    @Override
+    public synchronized OutputStream getOutputStream() throws IOException {
+        if (out == null) {
+            out = new FrameOutputStream(super.getOutputStream());
+        }
+        return out;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        try {
+            super.close();
+        } finally {
+            // Release native zlib state now rather than when collected
+            if (in != null) {
+                in.inflater.end();
+            }
+            if (out != null) {
+                out.deflater.end();
+            }
+        }
+    }
+
+    private final class FrameOutputStream extends OutputStream {
+        private final DataOutputStream target;
+        private final Deflater deflater = new Deflater(level, true);
+        private final byte[] buffer = new byte[FRAME_BUFFER_BYTES];
+        private int count;
+        private byte[] deflated = new byte[FRAME_BUFFER_BYTES];
+
+        FrameOutputStream(OutputStream raw) {
+            this.target = new DataOutputStream(new BufferedOutputStream(raw, FRAME_BUFFER_BYTES));
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            if (count == buffer.length) {
+                writeFrame();
+            }
+            buffer[count++] = (byte) b;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            while (len > 0) {
+                if (count == buffer.length) {
+                    writeFrame();
+                }
+                int n = Math.min(len, buffer.length - count);
+                System.arraycopy(b, off, buffer, count, n);
+                count += n;
+                off += n;
+                len -= n;
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            writeFrame();
+            target.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            flush();
+            target.close();
+        }
+
+        private void writeFrame() throws IOException {
+            if (count == 0) {
+                return;
+            }
+            if (!compress || count < threshold) {
+                target.writeByte(FRAME_STORED);
+                target.writeInt(count);
+                target.write(buffer, 0, count);
+            } else {
+                deflater.setInput(buffer, 0, count);
+                int length = 0;
+                while (true) {
+                    int n = deflater.deflate(deflated, length, deflated.length - length, Deflater.SYNC_FLUSH);
+                    length += n;
+                    if (length < deflated.length) {
+                        break;
+                    }
+                    // Output filled up, there may be more pending
+                    deflated = Arrays.copyOf(deflated, deflated.length * 2);
+                }
+                target.writeByte(FRAME_DEFLATED);
+                target.writeInt(count);
+                target.writeInt(length);
+                target.write(deflated, 0, length);
+            }
+            count = 0;
+        }
+    }
+
+    private final class FrameInputStream extends InputStream {
+        private final DataInputStream source;
+        private final Inflater inflater = new Inflater(true);
+        private byte[] frame = new byte[FRAME_BUFFER_BYTES];
+        private byte[] deflated = new byte[FRAME_BUFFER_BYTES];
+        private int position;
+        private int limit;
+
+        FrameInputStream(InputStream raw) {
+            this.source = new DataInputStream(new BufferedInputStream(raw, FRAME_BUFFER_BYTES));
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (position == limit && !nextFrame()) {
+                return -1;
+            }
+            return frame[position++] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            if (position == limit && !nextFrame()) {
+                return -1;
+            }
+            int n = Math.min(len, limit - position);
+            System.arraycopy(frame, position, b, off, n);
+            position += n;
+            return n;
+        }
+
+        @Override
+        public int available() {
+            return limit - position;
+        }
+
+        @Override
+        public void close() throws IOException {
+            source.close();
+        }
+
+        private boolean nextFrame() throws IOException {
+            do {
+                int kind = source.read();
+                if (kind < 0) {
+                    return false;
+                }
+                int rawLength = source.readInt();
+                if (rawLength < 0 || rawLength > FRAME_BUFFER_BYTES) {
+                    throw new IOException("Bad frame length " + rawLength);
+                }
+                if (frame.length < rawLength) {
+                    frame = new byte[rawLength];
+                }
+
+                if (kind == FRAME_STORED) {
+                    source.readFully(frame, 0, rawLength);
+                } else if (kind == FRAME_DEFLATED) {
+                    int length = source.readInt();
+                    if (length < 0 || length > MAX_DEFLATED_BYTES) {
+                        throw new IOException("Bad compressed frame length " + length);
+                    }
+                    if (deflated.length < length) {
+                        deflated = new byte[length];
+                    }
+                    source.readFully(deflated, 0, length);
+                    inflate(length, rawLength);
+                } else {
+                    throw new IOException("Unknown frame kind " + kind);
+                }
+                position = 0;
+                limit = rawLength;
+            } while (limit == 0);
+            return true;
+        }
+
+        private void inflate(int length, int rawLength) throws IOException {
+            inflater.setInput(deflated, 0, length);
+            int produced = 0;
+            try {
+                while (produced < rawLength) {
+                    int n = inflater.inflate(frame, produced, rawLength - produced);
+                    if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                        throw new IOException("Truncated compressed frame");
+                    }
+                    produced += n;
+                }
+            } catch (DataFormatException e) {
+                throw new IOException("Corrupt compressed frame: " + e.getMessage(), e);
+            }
+        }
+    }
+}
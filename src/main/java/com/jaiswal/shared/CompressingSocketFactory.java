@@ -0,0 +1,115 @@
+package com.jaiswal.shared;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.rmi.server.RMIClientSocketFactory;
+import java.rmi.server.RMIServerSocketFactory;
+import java.util.Objects;
+import java.util.zip.Deflater;
+
+/**
+ * RMI socket factory for exporting the whiteboard server and clients.
+ * Connections disable Nagle's algorithm, use larger socket buffers and can
+ * deflate their traffic. RMI flushes once per call, so each call is written as
+ * one frame; frames below the size threshold (single ops, acks) go out as is,
+ * larger ones (snapshots, op batches) are compressed. The deflate dictionary
+ * carries over between frames of a connection, so repeated class descriptors
+ * compress well even in mid-sized calls.
+ * <p>
+ * The factory is serialized into the exported stub, so callers always connect
+ * with the settings of the side that exported the object.
+ */
+public final class CompressingSocketFactory implements RMIClientSocketFactory, RMIServerSocketFactory, Serializable {
+    private static final long serialVersionUID = 1L;
+
+    // System properties: compression "on" (default) or "off", and the frame size threshold in bytes
+    public static final String COMPRESSION_PROPERTY = "syncboard.rmi.compression";
+    public static final String THRESHOLD_PROPERTY = "syncboard.rmi.compressThreshold";
+
+    private static final int DEFAULT_THRESHOLD = 512;
+    private static final int SOCKET_BUFFER_BYTES = 256 * 1024;
+
+    private final boolean compress;
+    private final int threshold;
+    private final int level;
+
+    /**
+     * @param compress Whether to deflate frames at all
+     * @param threshold Minimum frame size in bytes that is compressed
+     * @param level Deflate level, 1 (fastest) to 9 (smallest)
+     */
+    public CompressingSocketFactory(boolean compress, int threshold, int level) {
+        this.compress = compress;
+        this.threshold = threshold;
+        this.level = level;
+    }
+
+    /**
+     * Creates a factory configured by the {@value #COMPRESSION_PROPERTY} and
+     * {@value #THRESHOLD_PROPERTY} system properties
+     * @return The factory
+     */
+    public static CompressingSocketFactory fromSystemProperties() {
+        boolean compress = !"off".equalsIgnoreCase(System.getProperty(COMPRESSION_PROPERTY, "on"));
+        int threshold = Integer.getInteger(THRESHOLD_PROPERTY, DEFAULT_THRESHOLD);
+        return new CompressingSocketFactory(compress, threshold, Deflater.BEST_SPEED);
+    }
+
+    @Override
+    public Socket createSocket(String host, int port) throws IOException {
+        CompressedSocket socket = new CompressedSocket(compress, threshold, level);
+        configure(socket);
+        socket.connect(new InetSocketAddress(host, port));
+        return socket;
+    }
+
+    @Override
+    public ServerSocket createServerSocket(int port) throws IOException {
+        ServerSocket serverSocket = new ServerSocket() {
+            @Override
+            public Socket accept() throws IOException {
+                CompressedSocket socket = new CompressedSocket(compress, threshold, level);
+                implAccept(socket);
+                configure(socket);
+                return socket;
+            }
+        };
+        // Accepted sockets inherit the receive buffer, which must be set before binding
+        serverSocket.setReceiveBufferSize(SOCKET_BUFFER_BYTES);
+        serverSocket.bind(new InetSocketAddress(port));
+        return serverSocket;
+    }
+
+    private static void configure(Socket socket) throws IOException {
+        socket.setTcpNoDelay(true);
+        socket.setKeepAlive(true);
+        socket.setSendBufferSize(SOCKET_BUFFER_BYTES);
+        socket.setReceiveBufferSize(SOCKET_BUFFER_BYTES);
+    }
+
+    // RMI reuses connections only between equal factories
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        CompressingSocketFactory that = (CompressingSocketFactory) o;
+        return compress == that.compress && threshold == that.threshold && level == that.level;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(compress, threshold, level);
+    }
+
+    @Override
+    public String toString() {
+        return "CompressingSocketFactory{compress=" + compress + ", threshold=" + threshold + ", level=" + level + "}";
+    }
+}
@@ -0,0 +1,125 @@
+package com.jaiswal.shared;
+
+import java.io.Serializable;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * One change to a {@link BoardCrdt}, made by a replica and applied by every
+ * other replica in any order relative to other replicas' ops. Each op is
+ * identified by its origin replica and that replica's op counter, packed as
+ * an {@link ElementId}, and carries a Lamport stamp ordering it against
+ * concurrent ops.
+ */
+public final class CrdtOp implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    public enum Kind {
+        // An element was drawn, its ID is the op's ID
+        ADD,
+        // An element was erased
+        REMOVE,
+        // Every element the origin had seen was erased
+        CLEAR,
+        // A property of an element was set, the latest stamp wins
+        SET
+    }
+
+    private final Kind kind;
+    private final long id;
+    private final long stamp;
+    private final IDrawable element;
+    private final long target;
+    private final String key;
+    private final Serializable value;
+    private final Map<Integer, Long> seen;
+
+    private CrdtOp(Kind kind, long id, long stamp, IDrawable element, long target, String key,
+                   Serializable value, Map<Integer, Long> seen) {
+        this.kind = kind;
+        this.id = id;
+        this.stamp = stamp;
+        this.element = element;
+        this.target = target;
+        this.key = key;
+        this.value = value;
+        this.seen = seen;
+    }
+
+    static CrdtOp add(long id, long stamp, IDrawable element) {
+        return new CrdtOp(Kind.ADD, id, stamp, element, id, null, null, null);
+    }
+
+    static CrdtOp remove(long id, long stamp, long target) {
+        return new CrdtOp(Kind.REMOVE, id, stamp, null, target, null, null, null);
+    }
+
+    static CrdtOp clear(long id, long stamp, Map<Integer, Long> seen) {
+        return new CrdtOp(Kind.CLEAR, id, stamp, null, 0, null, null,
+                Collections.unmodifiableMap(new HashMap<>(seen)));
+    }
+
+    static CrdtOp set(long id, long stamp, long target, String key, Serializable value) {
+        return new CrdtOp(Kind.SET, id, stamp, null, target, key, value, null);
+    }
+
+    public Kind getKind() {
+        return kind;
+    }
+
+    /**
+     * @return Origin replica and its op counter, packed as an {@link ElementId}
+     */
+    public long getId() {
+        return id;
+    }
+
+    /**
+     * @return Lamport time in the high bits and origin replica in the low bits, see {@link BoardCrdt#stamp}
+     */
+    public long getStamp() {
+        return stamp;
+    }
+
+    /**
+     * @return The drawn element for ADD ops, null otherwise
+     */
+    public IDrawable getElement() {
+        return element;
+    }
+
+    /**
+     * @return The element an ADD, REMOVE or SET applies to
+     */
+    public long getTarget() {
+        return target;
+    }
+
+    /**
+     * @return Property name for SET ops
+     */
+    public String getKey() {
+        return key;
+    }
+
+    /**
+     * @return Property value for SET ops, may be null
+     */
+    public Serializable getValue() {
+        return value;
+    }
+
+    /**
+     * @return For CLEAR ops, the highest op counter per replica the origin had applied
+     */
+    public Map<Integer, Long> getSeen() {
+        return seen;
+    }
+
+    @Override
+    public String toString() {
+        return "CrdtOp[" + ElementId.toString(id) + ", " + kind
+                + (kind == Kind.REMOVE || kind == Kind.SET ? ", target=" + ElementId.toString(target) : "") + "]";
+    }
+}
@@ -0,0 +1,39 @@
+package com.jaiswal.shared;
+
+/**
+ * Priority classes of the messages a server sends to a client, most urgent
+ * first. Each lane is queued separately, so a kick never waits behind a
+ * snapshot to the same client. A waiting lane lets at most its starvation
+ * limit of sends from more urgent lanes pass before it gets a turn (see
+ * {@link LaneScheduler}); control is served first whenever it has something.
+ */
+public enum DeliveryLane {
+    // Kicks, closed boards, join requests and answers
+    CONTROL(0),
+    // User list snapshots and changes
+    PRESENCE(16),
+    // Board ops as they happen, moved boards, which must not overtake them, and replies to ordinary calls
+    LIVE(16),
+    // Snapshots and other catch-up transfers
+    BULK(4);
+
+    // System property, with the lane's name in lower case: sends from more urgent lanes a waiting lane lets pass
+    public static final String STARVATION_LIMIT_PROPERTY = "syncboard.lanes.%s.starvationLimit";
+
+    private final int defaultStarvationLimit;
+
+    DeliveryLane(int defaultStarvationLimit) {
+        this.defaultStarvationLimit = defaultStarvationLimit;
+    }
+
+    /**
+     * @return Sends from more urgent lanes this lane lets pass while it waits
+     */
+    public int getStarvationLimit() {
+        if (this == CONTROL) {
+            return 0;
+        }
+        String property = String.format(STARVATION_LIMIT_PROPERTY, name().toLowerCase());
+        return Math.max(0, Integer.getInteger(property, defaultStarvationLimit));
+    }
+}
@@ -0,0 +1,292 @@
+package com.jaiswal.shared;
+
+import com.jaiswal.shared.shapes.Circle;
+import com.jaiswal.shared.shapes.FreehandShape;
+import com.jaiswal.shared.shapes.Line;
+import com.jaiswal.shared.shapes.Rectangle;
+import com.jaiswal.shared.shapes.Shape;
+
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.Point;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Compact binary encoding of drawable elements, used by the server's storage
+ * engines and by the binary socket transport.
+ * An element is split into a type tag, a style (color and stroke width) and a
+ * geometry payload. Unknown element types fall back to Java serialization.
+ */
+public final class ElementCodec {
+    public static final byte TYPE_NONE = 0;
+    public static final byte TYPE_LINE = 1;
+    public static final byte TYPE_RECTANGLE = 2;
+    public static final byte TYPE_CIRCLE = 3;
+    public static final byte TYPE_FREEHAND = 4;
+    public static final byte TYPE_TEXT = 5;
+    public static final byte TYPE_SERIALIZED = 6;
+
+    private ElementCodec() {
+    }
+
+    /**
+     * @param drawable The element
+     * @return The type tag used to encode it
+     */
+    public static byte typeOf(IDrawable drawable) {
+        if (drawable instanceof Line) {
+            return TYPE_LINE;
+        } else if (drawable instanceof Rectangle) {
+            return TYPE_RECTANGLE;
+        } else if (drawable instanceof Circle) {
+            return TYPE_CIRCLE;
+        } else if (drawable instanceof FreehandShape) {
+            return TYPE_FREEHAND;
+        } else if (drawable instanceof TextElement) {
+            return TYPE_TEXT;
+        }
+        return TYPE_SERIALIZED;
+    }
+
+    /**
+     * @param drawable The element
+     * @return The element color as ARGB
+     */
+    public static int colorOf(IDrawable drawable) {
+        Color color = null;
+        if (drawable instanceof Shape) {
+            color = ((Shape) drawable).getColor();
+        } else if (drawable instanceof TextElement) {
+            color = ((TextElement) drawable).getColor();
+        }
+        return color != null ? color.getRGB() : Color.BLACK.getRGB();
+    }
+
+    /**
+     * @param drawable The element
+     * @return The stroke width, zero for elements without one
+     */
+    public static float strokeOf(IDrawable drawable) {
+        return drawable instanceof Shape ? ((Shape) drawable).getStrokeWidth() : 0f;
+    }
+
+    /**
+     * Encodes the geometry of an element, everything except ID and style
+     *
+     * @param drawable The element
+     * @return The payload bytes
+     * @throws IOException If a fallback element cannot be serialized
+     */
+    public static byte[] encodePayload(IDrawable drawable) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(32);
+        DataOutputStream out = new DataOutputStream(bytes);
+
+        switch (typeOf(drawable)) {
+            case TYPE_LINE: {
+                Line line = (Line) drawable;
+                out.writeInt(line.getX1());
+                out.writeInt(line.getY1());
+                out.writeInt(line.getX2());
+                out.writeInt(line.getY2());
+                break;
+            }
+            case TYPE_RECTANGLE: {
+                Rectangle rect = (Rectangle) drawable;
+                out.writeInt(rect.getX());
+                out.writeInt(rect.getY());
+                out.writeInt(rect.getWidth());
+                out.writeInt(rect.getHeight());
+                break;
+            }
+            case TYPE_CIRCLE: {
+                Circle circle = (Circle) drawable;
+                out.writeInt(circle.getCenterX());
+                out.writeInt(circle.getCenterY());
+                out.writeInt(circle.getRadius());
+                break;
+            }
+            case TYPE_FREEHAND: {
+                List<Point> points = ((FreehandShape) drawable).getPoints();
+                out.writeInt(points.size());
+                for (Point p : points) {
+                    out.writeInt(p.x);
+                    out.writeInt(p.y);
+                }
+                break;
+            }
+            case TYPE_TEXT: {
+                TextElement text = (TextElement) drawable;
+                Font font = text.getFont();
+                writeString(out, font.getName());
+                out.writeInt(font.getStyle());
+                out.writeFloat(font.getSize2D());
+                out.writeInt(text.getPosition().x);
+                out.writeInt(text.getPosition().y);
+                writeString(out, text.getText());
+                break;
+            }
+            default: {
+                out.flush();
+                try (ObjectOutputStream oos = new ObjectOutputStream(bytes)) {
+                    oos.writeObject(drawable);
+                }
+                break;
+            }
+        }
+
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Compares two elements by everything except ID
+     *
+     * @param a An element
+     * @param b Another element
+     * @return true if both encode to the same type, style and payload
+     */
+    public static boolean sameContent(IDrawable a, IDrawable b) {
+        if (typeOf(a) != typeOf(b) || colorOf(a) != colorOf(b) || strokeOf(a) != strokeOf(b)) {
+            return false;
+        }
+        try {
+            return Arrays.equals(encodePayload(a), encodePayload(b));
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Rebuilds an element from its encoded parts
+     *
+     * @param type The type tag
+     * @param id The element ID
+     * @param argb The color as ARGB
+     * @param strokeWidth The stroke width
+     * @param payload Buffer positioned at the start of the payload
+     * @return The materialized element
+     * @throws IOException If the payload is malformed
+     */
+    public static IDrawable decode(byte type, long id, int argb, float strokeWidth, ByteBuffer payload) throws IOException {
+        Color color = new Color(argb, true);
+        IDrawable drawable;
+
+        switch (type) {
+            case TYPE_LINE:
+                drawable = new Line(payload.getInt(), payload.getInt(), payload.getInt(), payload.getInt(),
+                        color, strokeWidth);
+                break;
+            case TYPE_RECTANGLE:
+                drawable = new Rectangle(payload.getInt(), payload.getInt(), payload.getInt(), payload.getInt(),
+                        color, strokeWidth);
+                break;
+            case TYPE_CIRCLE:
+                drawable = new Circle(payload.getInt(), payload.getInt(), payload.getInt(), color, strokeWidth);
+                break;
+            case TYPE_FREEHAND: {
+                int count = payload.getInt();
+                List<Point> points = new ArrayList<>(count);
+                for (int i = 0; i < count; i++) {
+                    points.add(new Point(payload.getInt(), payload.getInt()));
+                }
+                drawable = new FreehandShape(points, color, strokeWidth);
+                break;
+            }
+            case TYPE_TEXT: {
+                String fontName = readString(payload);
+                int style = payload.getInt();
+                float size = payload.getFloat();
+                Point position = new Point(payload.getInt(), payload.getInt());
+                String text = readString(payload);
+                Font font = new Font(fontName, style, 1).deriveFont(size);
+                drawable = new TextElement(text, position, color, font);
+                break;
+            }
+            case TYPE_SERIALIZED: {
+                byte[] bytes = new byte[payload.remaining()];
+                payload.get(bytes);
+                try (ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(bytes))) {
+                    drawable = (IDrawable) ois.readObject();
+                } catch (ClassNotFoundException e) {
+                    throw new IOException("Unknown element class: " + e.getMessage(), e);
+                }
+                break;
+            }
+            default:
+                throw new IOException("Unknown element type: " + type);
+        }
+
+        drawable.setId(id);
+        return drawable;
+    }
+
+    /**
+     * Writes a whole element as one record: type tag, ID, style, payload length and payload
+     *
+     * @param out The destination
+     * @param drawable The element, may be null
+     * @throws IOException If writing fails
+     */
+    public static void write(DataOutput out, IDrawable drawable) throws IOException {
+        if (drawable == null) {
+            out.writeByte(TYPE_NONE);
+            return;
+        }
+        byte[] payload = encodePayload(drawable);
+        out.writeByte(typeOf(drawable));
+        out.writeLong(drawable.getId());
+        out.writeInt(colorOf(drawable));
+        out.writeFloat(strokeOf(drawable));
+        out.writeInt(payload.length);
+        out.write(payload);
+    }
+
+    /**
+     * Reads an element record written by {@link #write}
+     *
+     * @param in Buffer positioned at the record, left after it
+     * @return The element, or null
+     * @throws IOException If the record is malformed
+     */
+    public static IDrawable read(ByteBuffer in) throws IOException {
+        byte type = in.get();
+        if (type == TYPE_NONE) {
+            return null;
+        }
+        long id = in.getLong();
+        int argb = in.getInt();
+        float stroke = in.getFloat();
+        int length = in.getInt();
+        if (length < 0 || length > in.remaining()) {
+            throw new IOException("Element record cut short: " + length + " payload bytes, " + in.remaining() + " left");
+        }
+
+        ByteBuffer payload = in.slice();
+        payload.limit(length);
+        in.position(in.position() + length);
+        return decode(type, id, argb, stroke, payload);
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(ByteBuffer in) {
+        byte[] bytes = new byte[in.getInt()];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
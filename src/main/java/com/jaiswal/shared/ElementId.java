@@ -0,0 +1,55 @@
+package com.jaiswal.shared;
+
+/**
+ * Globally unique 64-bit IDs minted by replicas without coordination: the
+ * minting replica's ID in the top {@value #REPLICA_BITS} bits and that
+ * replica's own counter below. IDs of one replica increase with its counter.
+ */
+public final class ElementId {
+    public static final int REPLICA_BITS = 24;
+    public static final int COUNTER_BITS = 64 - REPLICA_BITS;
+    public static final int MAX_REPLICA = (1 << REPLICA_BITS) - 1;
+    public static final long MAX_COUNTER = (1L << COUNTER_BITS) - 1;
+
+    private ElementId() {
+    }
+
+    /**
+     * @param replica ID of the minting replica, 0 to {@value #MAX_REPLICA}
+     * @param counter The replica's counter, from 1
+     * @return The packed ID
+     */
+    public static long of(int replica, long counter) {
+        if (replica < 0 || replica > MAX_REPLICA) {
+            throw new IllegalArgumentException("Replica ID out of range: " + replica);
+        }
+        if (counter < 1 || counter > MAX_COUNTER) {
+            throw new IllegalArgumentException("Counter out of range: " + counter);
+        }
+        return ((long) replica << COUNTER_BITS) | counter;
+    }
+
+    /**
+     * @param id A packed ID
+     * @return The replica that minted it
+     */
+    public static int replica(long id) {
+        return (int) (id >>> COUNTER_BITS);
+    }
+
+    /**
+     * @param id A packed ID
+     * @return The minting replica's counter
+     */
+    public static long counter(long id) {
+        return id & MAX_COUNTER;
+    }
+
+    /**
+     * @param id A packed ID
+     * @return "replica:counter", for logs
+     */
+    public static String toString(long id) {
+        return replica(id) + ":" + counter(id);
+    }
+}
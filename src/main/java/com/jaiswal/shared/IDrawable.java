@@ -1,10 +1,15 @@
 package com.jaiswal.shared;
 
 import java.awt.Graphics2D;
+import java.awt.Rectangle;
 import java.io.Serializable;
 
 public interface IDrawable extends Serializable {
     void draw(Graphics2D g);
-    int getId();
-    void setId(int id);
+    // Globally unique, assigned by the drawing client, see ElementId
+    long getId();
+    void setId(long id);
+
+    // Area covered by the element, including stroke width, in canvas coordinates
+    Rectangle getBounds();
 }
\ No newline at end of file
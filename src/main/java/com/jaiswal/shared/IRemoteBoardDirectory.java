@@ -0,0 +1,28 @@
+package com.jaiswal.shared;
+
+import java.rmi.Remote;
+import java.rmi.RemoteException;
+import java.util.List;
+
+/**
+ * Entry point of a server hosting several boards. Clients open a board by ID
+ * and then talk to the returned whiteboard as before.
+ */
+public interface IRemoteBoardDirectory extends Remote {
+    // Board used by clients that do not name one
+    String DEFAULT_BOARD = "default";
+
+    /**
+     * Opens a board, creating it empty if it does not exist yet
+     * @param boardId Letters, digits, '.', '_' or '-', at most 64 characters
+     * @return The board
+     * @throws RemoteException If the ID is invalid or the call fails
+     */
+    IRemoteWhiteboard openBoard(String boardId) throws RemoteException;
+
+    /**
+     * @return IDs of the boards currently hosted
+     * @throws RemoteException If the call fails
+     */
+    List<String> listBoards() throws RemoteException;
+}
@@ -2,15 +2,22 @@ package com.jaiswal.shared;
 import java.rmi.Remote;
 import java.rmi.RemoteException;
 import java.util.List;
-import java.util.Map;
 
 public interface IRemoteClient extends Remote {
     // Update methods to be called by server
-    void updateCanvas(Map<Integer, IDrawable> state) throws RemoteException;
-    void updateUserList(List<String> users) throws RemoteException;
+    void applyOps(List<BoardOp> ops) throws RemoteException;
+    // Who is on the board as of a presence version, one JOINED op per user; replaces the user list
+    void updateUserList(long presenceVersion, List<PresenceOp> users) throws RemoteException;
+    // Changes since, in presence version order, at most one per user
+    void presenceChanged(List<PresenceOp> changes) throws RemoteException;
     void receiveNotification(String message) throws RemoteException;
     void joinRequestResult(boolean approved) throws RemoteException;
+    // To the manager: every join request now waiting for an answer, an empty list when none is left
+    void joinRequestsPending(List<String> usernames) throws RemoteException;
     void kickedFromServer() throws RemoteException;
     void managerClosedWhiteboard() throws RemoteException;
+
+    // The board now lives on another server node ("host:port"), rejoin it there
+    void boardMoved(String boardId, String owner) throws RemoteException;
     String getUsername() throws RemoteException;
 }
\ No newline at end of file
@@ -1,26 +1,64 @@
 package com.jaiswal.shared;
 import com.jaiswal.shared.shapes.Shape;
+import java.awt.Rectangle;
 import java.rmi.Remote;
 import java.rmi.RemoteException;
 import java.util.List;
 import java.util.Map;
 
 public interface IRemoteWhiteboard extends Remote {
-    // User management
-    boolean requestJoin(String username, IRemoteClient client) throws RemoteException;
+    // User management. The session token is minted by the client and lets it resume the session.
+    // requestJoin returns false if the request is refused outright; otherwise the outcome follows through
+    // IRemoteClient.joinRequestResult, at once or after the manager answered through answerJoinRequests.
+    boolean requestJoin(String username, long sessionToken, IRemoteClient client) throws RemoteException;
+    void answerJoinRequests(String username, List<String> approved, List<String> denied) throws RemoteException;
+    // Rejoins after a dropped connection without fetching the board again. Returns the ops after the
+    // given version, a lone RESET if they are gone, or null if the session is unknown and the client
+    // has to join afresh.
+    List<BoardOp> resumeSession(String username, long sessionToken, long version, IRemoteClient client)
+            throws RemoteException;
     void disconnect(String username) throws RemoteException;
+    // For server-side transports: the connection of the given client is gone, the user shows as away and
+    // may resume. Has no effect unless that client is the one joined, or waiting to join, under the name.
+    void connectionLost(String username, IRemoteClient client) throws RemoteException;
     void kickUser(String username) throws RemoteException;
     List<String> getConnectedUsers() throws RemoteException;
 
-    // Drawing operations
-    int drawShape(Shape shape) throws RemoteException;
-    int drawText(TextElement text) throws RemoteException;
+    // Drawing operations. Elements carry IDs minted by the client (see ElementId); sending
+    // an element again under the same ID has no further effect, so failed calls may be retried
+    void drawShape(Shape shape) throws RemoteException;
+    void drawText(TextElement text) throws RemoteException;
     void clearCanvas() throws RemoteException;
 
+    // Pipelined drawing: ops numbered per client session (see ClientOp), applied once each and in order.
+    // base is the session's cumulative ack as last seen by the client, the starting point for a server
+    // that does not know the session. Returns the session's cumulative ack.
+    OpAck submitOps(String username, long session, long base, List<ClientOp> ops) throws RemoteException;
+
     // File operations
     boolean saveWhiteboard(String filename) throws RemoteException;
     boolean loadWhiteboard(String filename) throws RemoteException;
 
     // Get current state
-    Map<Integer, IDrawable> getCurrentState() throws RemoteException;
+    Map<Long, IDrawable> getCurrentState() throws RemoteException;
+
+    // Chunked snapshot transfer for joining clients, elements in the viewport come first
+    SnapshotChunk openSnapshot(String username, Rectangle viewport) throws RemoteException;
+    SnapshotChunk fetchSnapshotChunk(String username, long version, int index) throws RemoteException;
+
+    // Joining with a copy of the board cached from an earlier visit. The epoch identifies the version
+    // history of this copy of the board; fetchOpsSince returns the ops after a version of that history, or
+    // null if it is not this copy's or its ops are no longer all logged, and the client fetches a snapshot.
+    long getEpoch() throws RemoteException;
+    List<BoardOp> fetchOpsSince(String username, long epoch, long version) throws RemoteException;
+
+    // Checking a client's copy against the board (see BoardDigest). getDigestNodes returns the hashes of
+    // the children of the given inner nodes, fetchBuckets the elements in the given buckets in stacking
+    // order, both as the board was at the given version; null if that version is no longer logged or the
+    // board was cleared since.
+    long[] getDigestNodes(String username, long version, int[] nodes) throws RemoteException;
+    List<IDrawable> fetchBuckets(String username, long version, int[] buckets) throws RemoteException;
+
+    // Nodes holding a copy of the board for failover, "host:port", the one accepting changes first; empty if not replicated
+    List<String> getFailoverNodes() throws RemoteException;
 }
\ No newline at end of file
@@ -0,0 +1,56 @@
+package com.jaiswal.shared;
+
+/**
+ * Picks the delivery lane that sends next: control if it has something,
+ * otherwise the most urgent lane with something waiting, unless a less
+ * urgent one has been passed over as often as its starvation limit allows,
+ * in which case that lane gets one turn.
+ * Not thread-safe; the caller serializes its sends anyway.
+ */
+public final class LaneScheduler {
+    private static final DeliveryLane[] LANES = DeliveryLane.values();
+
+    private final int[] limits = new int[LANES.length];
+    // Sends from more urgent lanes since each waiting lane last had a turn
+    private final int[] passedOver = new int[LANES.length];
+
+    /**
+     * Creates a scheduler with the configured starvation limits
+     */
+    public LaneScheduler() {
+        for (DeliveryLane lane : LANES) {
+            limits[lane.ordinal()] = lane.getStarvationLimit();
+        }
+    }
+
+    /**
+     * Picks a lane and counts the send against the others waiting
+     *
+     * @param waiting Bit {@code 1 << ordinal} set for each lane with something to send
+     * @return The lane to send from, or null if none is waiting
+     */
+    public DeliveryLane next(int waiting) {
+        if (waiting == 0) {
+            return null;
+        }
+        int chosen = Integer.numberOfTrailingZeros(waiting);
+        // Control never waits; its sends still count against the lanes passed over
+        if (chosen != DeliveryLane.CONTROL.ordinal()) {
+            for (int i = chosen + 1; i < LANES.length; i++) {
+                if ((waiting & (1 << i)) != 0 && passedOver[i] >= limits[i]) {
+                    chosen = i;
+                    break;
+                }
+            }
+        }
+
+        for (int i = 0; i < LANES.length; i++) {
+            if ((waiting & (1 << i)) == 0 || i == chosen) {
+                passedOver[i] = 0;
+            } else if (i > chosen) {
+                passedOver[i]++;
+            }
+        }
+        return LANES[chosen];
+    }
+}
@@ -0,0 +1,148 @@
+package com.jaiswal.shared;
+
+import java.util.Arrays;
+
+/**
+ * Open-addressing hash map from primitive long keys to primitive int values,
+ * the unboxed counterpart of {@link LongObjectMap} for index lookups.
+ * Uses linear probing with backward-shift deletion.
+ * Not thread-safe; callers synchronize externally.
+ */
+public class LongIntMap {
+    private static final int MIN_CAPACITY = 16;
+    private static final float LOAD_FACTOR = 0.6f;
+
+    private long[] keys;
+    private int[] values;
+    private boolean[] used;
+    private int size;
+    private int mask;
+    private int resizeAt;
+
+    public LongIntMap() {
+        allocate(MIN_CAPACITY);
+    }
+
+    /**
+     * @param key The key
+     * @param missing Value returned when the key is absent
+     * @return The value, or missing
+     */
+    public int get(long key, int missing) {
+        int i = slotOf(key);
+        return i < 0 ? missing : values[i];
+    }
+
+    /**
+     * @param key The key
+     * @return true if the key is present
+     */
+    public boolean containsKey(long key) {
+        return slotOf(key) >= 0;
+    }
+
+    /**
+     * Associates a value with a key, replacing any previous value
+     *
+     * @param key The key
+     * @param value The value
+     */
+    public void put(long key, int value) {
+        int i = LongObjectMap.mix(key) & mask;
+        while (used[i]) {
+            if (keys[i] == key) {
+                values[i] = value;
+                return;
+            }
+            i = (i + 1) & mask;
+        }
+
+        keys[i] = key;
+        values[i] = value;
+        used[i] = true;
+        if (++size >= resizeAt) {
+            rehash(used.length * 2);
+        }
+    }
+
+    /**
+     * Removes a key
+     *
+     * @param key The key
+     * @param missing Value returned when the key is absent
+     * @return The removed value, or missing
+     */
+    public int remove(long key, int missing) {
+        int i = slotOf(key);
+        if (i < 0) {
+            return missing;
+        }
+
+        int previous = values[i];
+        size--;
+
+        // Shift later entries of the probe chain back so lookups never hit a hole
+        int gap = i;
+        int j = (i + 1) & mask;
+        while (used[j]) {
+            int home = LongObjectMap.mix(keys[j]) & mask;
+            if (((j - home) & mask) >= ((j - gap) & mask)) {
+                keys[gap] = keys[j];
+                values[gap] = values[j];
+                gap = j;
+            }
+            j = (j + 1) & mask;
+        }
+        used[gap] = false;
+        return previous;
+    }
+
+    /**
+     * Removes all entries, keeping the current capacity
+     */
+    public void clear() {
+        Arrays.fill(used, false);
+        size = 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    private int slotOf(long key) {
+        int i = LongObjectMap.mix(key) & mask;
+        while (used[i]) {
+            if (keys[i] == key) {
+                return i;
+            }
+            i = (i + 1) & mask;
+        }
+        return -1;
+    }
+
+    private void rehash(int capacity) {
+        long[] oldKeys = keys;
+        int[] oldValues = values;
+        boolean[] oldUsed = used;
+        allocate(capacity);
+        for (int i = 0; i < oldUsed.length; i++) {
+            if (oldUsed[i]) {
+                int j = LongObjectMap.mix(oldKeys[i]) & mask;
+                while (used[j]) {
+                    j = (j + 1) & mask;
+                }
+                keys[j] = oldKeys[i];
+                values[j] = oldValues[i];
+                used[j] = true;
+            }
+        }
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        values = new int[capacity];
+        used = new boolean[capacity];
+        mask = capacity - 1;
+        resizeAt = (int) (capacity * LOAD_FACTOR);
+    }
+}
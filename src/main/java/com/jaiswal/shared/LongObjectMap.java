@@ -0,0 +1,231 @@
+package com.jaiswal.shared;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Open-addressing hash map from primitive long keys to object values.
+ * Keys are stored unboxed in a flat array alongside the values, so there is no
+ * per-entry node or Long allocation. Uses linear probing with backward-shift
+ * deletion; null values are not permitted and mark empty slots.
+ * Not thread-safe; callers synchronize externally. Serializable if the values are.
+ *
+ * @param <V> The value type
+ */
+public class LongObjectMap<V> implements Serializable {
+    private static final long serialVersionUID = 1L;
+    private static final int MIN_CAPACITY = 16;
+    private static final float LOAD_FACTOR = 0.6f;
+
+    private long[] keys;
+    private Object[] values;
+    private int size;
+    private int mask;
+    private int resizeAt;
+
+    /**
+     * Visitor for map entries
+     *
+     * @param <V> The value type
+     */
+    @FunctionalInterface
+    public interface EntryConsumer<V> {
+        void accept(long key, V value);
+    }
+
+    public LongObjectMap() {
+        this(MIN_CAPACITY);
+    }
+
+    /**
+     * @param expectedSize Number of entries to hold without resizing
+     */
+    public LongObjectMap(int expectedSize) {
+        allocate(tableSizeFor(expectedSize));
+    }
+
+    /**
+     * @param key The key
+     * @return The value, or null if absent
+     */
+    @SuppressWarnings("unchecked")
+    public V get(long key) {
+        int i = slotOf(key);
+        return i < 0 ? null : (V) values[i];
+    }
+
+    /**
+     * @param key The key
+     * @return true if the key is present
+     */
+    public boolean containsKey(long key) {
+        return slotOf(key) >= 0;
+    }
+
+    /**
+     * Associates a value with a key
+     *
+     * @param key The key
+     * @param value The value, must not be null
+     * @return The previous value, or null
+     */
+    @SuppressWarnings("unchecked")
+    public V put(long key, V value) {
+        if (value == null) {
+            throw new IllegalArgumentException("Null values are not supported");
+        }
+
+        int i = mix(key) & mask;
+        while (values[i] != null) {
+            if (keys[i] == key) {
+                V previous = (V) values[i];
+                values[i] = value;
+                return previous;
+            }
+            i = (i + 1) & mask;
+        }
+
+        keys[i] = key;
+        values[i] = value;
+        if (++size >= resizeAt) {
+            rehash(values.length * 2);
+        }
+        return null;
+    }
+
+    /**
+     * Copies all entries of a boxed map into this one
+     *
+     * @param map The source map
+     */
+    public void putAll(Map<Long, ? extends V> map) {
+        for (Map.Entry<Long, ? extends V> entry : map.entrySet()) {
+            put(entry.getKey(), entry.getValue());
+        }
+    }
+
+    /**
+     * Removes a key
+     *
+     * @param key The key
+     * @return The removed value, or null if absent
+     */
+    @SuppressWarnings("unchecked")
+    public V remove(long key) {
+        int i = slotOf(key);
+        if (i < 0) {
+            return null;
+        }
+
+        V previous = (V) values[i];
+        size--;
+
+        // Shift later entries of the probe chain back so lookups never hit a hole
+        int gap = i;
+        int j = (i + 1) & mask;
+        while (values[j] != null) {
+            int home = mix(keys[j]) & mask;
+            if (((j - home) & mask) >= ((j - gap) & mask)) {
+                keys[gap] = keys[j];
+                values[gap] = values[j];
+                gap = j;
+            }
+            j = (j + 1) & mask;
+        }
+        values[gap] = null;
+        return previous;
+    }
+
+    /**
+     * Removes all entries, keeping the current capacity
+     */
+    public void clear() {
+        Arrays.fill(values, null);
+        size = 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Visits every entry in unspecified order
+     *
+     * @param visitor Receives each key and value
+     */
+    @SuppressWarnings("unchecked")
+    public void forEach(EntryConsumer<? super V> visitor) {
+        Object[] vals = values;
+        long[] ks = keys;
+        for (int i = 0; i < vals.length; i++) {
+            if (vals[i] != null) {
+                visitor.accept(ks[i], (V) vals[i]);
+            }
+        }
+    }
+
+    /**
+     * @return A boxed copy, for handing the contents across API boundaries
+     */
+    public Map<Long, V> toMap() {
+        Map<Long, V> map = new HashMap<>(Math.max(MIN_CAPACITY, (int) (size / 0.75f) + 1));
+        forEach(map::put);
+        return map;
+    }
+
+    private int slotOf(long key) {
+        int i = mix(key) & mask;
+        while (values[i] != null) {
+            if (keys[i] == key) {
+                return i;
+            }
+            i = (i + 1) & mask;
+        }
+        return -1;
+    }
+
+    private void rehash(int capacity) {
+        long[] oldKeys = keys;
+        Object[] oldValues = values;
+        allocate(capacity);
+        for (int i = 0; i < oldValues.length; i++) {
+            if (oldValues[i] != null) {
+                int j = mix(oldKeys[i]) & mask;
+                while (values[j] != null) {
+                    j = (j + 1) & mask;
+                }
+                keys[j] = oldKeys[i];
+                values[j] = oldValues[i];
+            }
+        }
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        values = new Object[capacity];
+        mask = capacity - 1;
+        resizeAt = (int) (capacity * LOAD_FACTOR);
+    }
+
+    private static int tableSizeFor(int expectedSize) {
+        int needed = (int) Math.ceil(Math.max(1, expectedSize) / LOAD_FACTOR) + 1;
+        return Math.max(MIN_CAPACITY, Integer.highestOneBit(needed - 1) << 1);
+    }
+
+    // Finalizer of MurmurHash3. Every key bit affects every slot bit, so runs of
+    // sequential IDs scatter instead of filling runs of slots that others probe through
+    static int mix(long key) {
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        key *= 0xc4ceb9fe1a85ec53L;
+        key ^= key >>> 33;
+        return (int) key;
+    }
+}
@@ -0,0 +1,44 @@
+package com.jaiswal.shared;
+
+import java.io.Serializable;
+import java.util.List;
+
+/**
+ * The server's answer to submitted ops: the session's cumulative
+ * acknowledgement, the board version that includes them and any ops that
+ * were refused.
+ */
+public class OpAck implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private final long acked;
+    private final long version;
+    private final List<String> rejections;
+
+    public OpAck(long acked, long version, List<String> rejections) {
+        this.acked = acked;
+        this.version = version;
+        this.rejections = rejections;
+    }
+
+    /**
+     * @return Highest sequence number up to which every op of the session has been processed
+     */
+    public long getAcked() {
+        return acked;
+    }
+
+    /**
+     * @return Board version at the time of the ack; a client that has seen the board up to here sees its acked ops
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * @return Why processed ops were refused, usually empty; refused ops are acknowledged all the same
+     */
+    public List<String> getRejections() {
+        return rejections;
+    }
+}
@@ -0,0 +1,91 @@
+package com.jaiswal.shared;
+
+import java.io.Serializable;
+
+/**
+ * A change to who is on a board, numbered by the board's presence version so
+ * a client can skip changes its user list already reflects. A user's state
+ * is carried whole, so only the latest change per user needs to be sent.
+ */
+public class PresenceOp implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    public enum Kind {
+        // A user came onto the board
+        JOINED,
+        // A user is gone from the board
+        LEFT,
+        // A user's role or connection changed
+        UPDATED
+    }
+
+    private final long sequence;
+    private final Kind kind;
+    private final String username;
+    private final boolean manager;
+    private final boolean away;
+
+    private PresenceOp(long sequence, Kind kind, String username, boolean manager, boolean away) {
+        this.sequence = sequence;
+        this.kind = kind;
+        this.username = username;
+        this.manager = manager;
+        this.away = away;
+    }
+
+    public static PresenceOp joined(long sequence, String username, boolean manager, boolean away) {
+        return new PresenceOp(sequence, Kind.JOINED, username, manager, away);
+    }
+
+    public static PresenceOp left(long sequence, String username) {
+        return new PresenceOp(sequence, Kind.LEFT, username, false, false);
+    }
+
+    public static PresenceOp updated(long sequence, String username, boolean manager, boolean away) {
+        return new PresenceOp(sequence, Kind.UPDATED, username, manager, away);
+    }
+
+    /**
+     * @param sequence Presence version
+     * @param kind The kind of change
+     * @param username The user
+     * @param manager Whether the user manages the board
+     * @param away Whether the user's connection dropped and may still resume
+     * @return The op
+     */
+    public static PresenceOp of(long sequence, Kind kind, String username, boolean manager, boolean away) {
+        return new PresenceOp(sequence, kind, username, manager, away);
+    }
+
+    public long getSequence() {
+        return sequence;
+    }
+
+    public Kind getKind() {
+        return kind;
+    }
+
+    public String getUsername() {
+        return username;
+    }
+
+    /**
+     * @return true if the user manages the board
+     */
+    public boolean isManager() {
+        return manager;
+    }
+
+    /**
+     * @return true if the user's connection dropped and the user may still resume
+     */
+    public boolean isAway() {
+        return away;
+    }
+
+    @Override
+    public String toString() {
+        return "PresenceOp[" + sequence + ", " + kind + ", " + username + (manager ? ", manager" : "")
+                + (away ? ", away" : "") + "]";
+    }
+}
@@ -0,0 +1,70 @@
+package com.jaiswal.shared;
+
+import java.io.Serializable;
+import java.util.List;
+
+/**
+ * One bounded piece of a board snapshot sent to a joining client.
+ * All chunks of a snapshot carry the board version it was taken at. Chunks are
+ * sent by tier: elements in the client's viewport, then those in the regions
+ * around it, then the rest. Within a tier elements are in stacking order, and a
+ * chunk never spans two tiers. Each element comes with its position in the
+ * board's stacking order, so the full order can be restored from the chunks.
+ */
+public class SnapshotChunk implements Serializable {
+    private static final long serialVersionUID = 3L;
+
+    public static final int TIER_VISIBLE = 0;
+    public static final int TIER_NEARBY = 1;
+    public static final int TIER_REMAINDER = 2;
+
+    private final long version;
+    private final int index;
+    private final int chunkCount;
+    private final int tier;
+    private final List<IDrawable> elements;
+    private final int[] positions;
+
+    public SnapshotChunk(long version, int index, int chunkCount, int tier, List<IDrawable> elements,
+                         int[] positions) {
+        this.version = version;
+        this.index = index;
+        this.chunkCount = chunkCount;
+        this.tier = tier;
+        this.elements = elements;
+        this.positions = positions;
+    }
+
+    /**
+     * @return Sequence number of the last op included in the snapshot
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    public int getIndex() {
+        return index;
+    }
+
+    public int getChunkCount() {
+        return chunkCount;
+    }
+
+    /**
+     * @return One of the TIER_ constants
+     */
+    public int getTier() {
+        return tier;
+    }
+
+    public List<IDrawable> getElements() {
+        return elements;
+    }
+
+    /**
+     * @return Stacking position of each element on the board, ascending within the chunk
+     */
+    public int[] getPositions() {
+        return positions;
+    }
+}
@@ -1,15 +1,23 @@
 package com.jaiswal.shared;
 import java.awt.*;
+import java.awt.font.FontRenderContext;
+import java.awt.geom.Rectangle2D;
 
 public class TextElement implements IDrawable {
-    private static final long serialVersionUID = 1L;
+    private static final long serialVersionUID = 2L;
 
-    private int id;
+    // Device independent context for measuring text away from the screen
+    private static final FontRenderContext MEASURE_CONTEXT = new FontRenderContext(null, true, true);
+
+    private long id;
     private String text;
     private Point position;
     private Color color;
     private Font font;
 
+    // Measured lazily, text layout is expensive
+    private transient Rectangle cachedBounds;
+
     public TextElement(String text, Point position, Color color, Font font) {
         this.text = text;
         this.position = position;
@@ -25,12 +33,25 @@ public class TextElement implements IDrawable {
     }
 
     @Override
-    public int getId() {
+    public Rectangle getBounds() {
+        if (cachedBounds == null) {
+            Rectangle2D textBounds = font.getStringBounds(text, MEASURE_CONTEXT);
+            cachedBounds = new Rectangle(
+                    position.x + (int) Math.floor(textBounds.getX()),
+                    position.y + (int) Math.floor(textBounds.getY()),
+                    (int) Math.ceil(textBounds.getWidth()) + 1,
+                    (int) Math.ceil(textBounds.getHeight()) + 1);
+        }
+        return cachedBounds;
+    }
+
+    @Override
+    public long getId() {
         return id;
     }
 
     @Override
-    public void setId(int id) {
+    public void setId(long id) {
         this.id = id;
     }
 
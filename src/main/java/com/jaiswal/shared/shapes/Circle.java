@@ -45,6 +45,32 @@ public class Circle extends Shape implements Serializable {
         this.radius = radius;
     }
 
+    /**
+     * @return The x-coordinate of the center point
+     */
+    public int getCenterX() {
+        return centerX;
+    }
+
+    /**
+     * @return The y-coordinate of the center point
+     */
+    public int getCenterY() {
+        return centerY;
+    }
+
+    /**
+     * @return The radius of the circle
+     */
+    public int getRadius() {
+        return radius;
+    }
+
+    @Override
+    public java.awt.Rectangle getBounds() {
+        return strokeBounds(centerX - radius, centerY - radius, radius * 2, radius * 2);
+    }
+
     @Override
     public void draw(Graphics2D g) {
         // Save the original stroke and color
@@ -53,7 +79,7 @@ public class Circle extends Shape implements Serializable {
 
         // Set drawing properties
         g.setColor(getColor());
-        g.setStroke(new BasicStroke(getStrokeWidth(), BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND));
+        g.setStroke(getStroke());
 
         // Draw the circle
         int diameter = radius * 2;
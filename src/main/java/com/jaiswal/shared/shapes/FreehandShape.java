@@ -3,6 +3,7 @@ package com.jaiswal.shared.shapes;
 import com.jaiswal.shared.IDrawable;
 
 import java.awt.*;
+import java.awt.geom.Path2D;
 import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.List;
@@ -20,6 +21,10 @@ public class FreehandShape extends Shape implements Serializable {
     // Collection of points that make up the freehand drawing path
     private final List<Point> points;
 
+    // Geometry caches, rebuilt lazily after deserialization
+    private transient Path2D.Float cachedPath;
+    private transient java.awt.Rectangle cachedBounds;
+
     /**
      * Constructs a new freehand shape with the specified properties.
      *
@@ -127,6 +132,42 @@ public class FreehandShape extends Shape implements Serializable {
         return new ArrayList<>(points);
     }
 
+    /**
+     * Gets the bounding box of the path including stroke width
+     *
+     * @return The bounding box
+     */
+    @Override
+    public java.awt.Rectangle getBounds() {
+        if (cachedBounds == null) {
+            // Measuring the path also builds it, so later paints reuse the same geometry
+            java.awt.Rectangle box = points.size() > 1
+                    ? getPath().getBounds()
+                    : new java.awt.Rectangle(getMinX(points), getMinY(points), 0, 0);
+            cachedBounds = strokeBounds(box.x, box.y, box.width, box.height);
+        }
+        return cachedBounds;
+    }
+
+    /**
+     * Gets the path through all points, built once and reused across paints
+     *
+     * @return The cached path
+     */
+    private Path2D.Float getPath() {
+        if (cachedPath == null) {
+            Path2D.Float path = new Path2D.Float(Path2D.WIND_NON_ZERO, points.size());
+            Point first = points.get(0);
+            path.moveTo(first.x, first.y);
+            for (int i = 1; i < points.size(); i++) {
+                Point p = points.get(i);
+                path.lineTo(p.x, p.y);
+            }
+            cachedPath = path;
+        }
+        return cachedPath;
+    }
+
     /**
      * Draws the freehand shape on the graphics context
      *
@@ -144,15 +185,10 @@ public class FreehandShape extends Shape implements Serializable {
 
         // Set drawing properties
         g.setColor(getColor());
-        g.setStroke(new BasicStroke(getStrokeWidth(), BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND));
-
-        // Draw connected line segments between consecutive points
-        Point prevPoint = points.get(0);
-        for (int i = 1; i < points.size(); i++) {
-            Point currentPoint = points.get(i);
-            g.drawLine(prevPoint.x, prevPoint.y, currentPoint.x, currentPoint.y);
-            prevPoint = currentPoint;
-        }
+        g.setStroke(getStroke());
+
+        // Draw the connected segments as a single path
+        g.draw(getPath());
 
         // Restore original graphics settings
         g.setStroke(originalStroke);
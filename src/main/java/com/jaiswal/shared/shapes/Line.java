@@ -50,6 +50,39 @@ public class Line extends Shape implements Serializable {
         this.y2 = y2;
     }
 
+    /**
+     * @return The x-coordinate of the start point
+     */
+    public int getX1() {
+        return x1;
+    }
+
+    /**
+     * @return The y-coordinate of the start point
+     */
+    public int getY1() {
+        return y1;
+    }
+
+    /**
+     * @return The x-coordinate of the end point
+     */
+    public int getX2() {
+        return x2;
+    }
+
+    /**
+     * @return The y-coordinate of the end point
+     */
+    public int getY2() {
+        return y2;
+    }
+
+    @Override
+    public java.awt.Rectangle getBounds() {
+        return strokeBounds(Math.min(x1, x2), Math.min(y1, y2), Math.abs(x2 - x1), Math.abs(y2 - y1));
+    }
+
     @Override
     public void draw(Graphics2D g) {
         // Save the original stroke and color
@@ -58,7 +91,7 @@ public class Line extends Shape implements Serializable {
 
         // Set drawing properties
         g.setColor(getColor());
-        g.setStroke(new BasicStroke(getStrokeWidth(), BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND));
+        g.setStroke(getStroke());
 
         // Draw the line
         g.drawLine(x1, y1, x2, y2);
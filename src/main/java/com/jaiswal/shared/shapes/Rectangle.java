@@ -50,6 +50,39 @@ public class Rectangle extends Shape implements Serializable {
         this.height = height;
     }
 
+    /**
+     * @return The x-coordinate of the top-left corner
+     */
+    public int getX() {
+        return x;
+    }
+
+    /**
+     * @return The y-coordinate of the top-left corner
+     */
+    public int getY() {
+        return y;
+    }
+
+    /**
+     * @return The width of the rectangle
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * @return The height of the rectangle
+     */
+    public int getHeight() {
+        return height;
+    }
+
+    @Override
+    public java.awt.Rectangle getBounds() {
+        return strokeBounds(x, y, width, height);
+    }
+
     @Override
     public void draw(Graphics2D g) {
         // Save the original stroke and color
@@ -58,7 +91,7 @@ public class Rectangle extends Shape implements Serializable {
 
         // Set drawing properties
         g.setColor(getColor());
-        g.setStroke(new BasicStroke(getStrokeWidth(), BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND));
+        g.setStroke(getStroke());
 
         // Draw the rectangle
         g.drawRect(x, y, width, height);
@@ -11,13 +11,16 @@ import java.io.Serializable;
 public abstract class Shape implements IDrawable, Serializable {
 
     @java.io.Serial
-    private static final long serialVersionUID = 1L;
+    private static final long serialVersionUID = 2L;
 
     // Basic properties common to all shapes
-    protected int id;
+    protected long id;
     protected Color color;
     protected float strokeWidth;
 
+    // Render cache, rebuilt lazily after deserialization
+    private transient BasicStroke cachedStroke;
+
     // Constructor for basic shapes like lines, rectangles, and circles
     public Shape(Color color, int strokeWidth, Point startPoint, Point endPoint) {
         this.color = color;
@@ -31,12 +34,12 @@ public abstract class Shape implements IDrawable, Serializable {
     }
 
     @Override
-    public int getId() {
+    public long getId() {
         return id;
     }
 
     @Override
-    public void setId(int id) {
+    public void setId(long id) {
         this.id = id;
     }
 
@@ -47,4 +50,24 @@ public abstract class Shape implements IDrawable, Serializable {
     public float getStrokeWidth() {
         return strokeWidth;
     }
+
+    /**
+     * Gets the stroke used to draw this shape, created once and reused across paints
+     *
+     * @return The cached stroke
+     */
+    protected BasicStroke getStroke() {
+        if (cachedStroke == null) {
+            cachedStroke = new BasicStroke(strokeWidth, BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND);
+        }
+        return cachedStroke;
+    }
+
+    /**
+     * Builds a bounding box grown by half the stroke width on every side
+     */
+    protected java.awt.Rectangle strokeBounds(int x, int y, int width, int height) {
+        int pad = (int) Math.ceil(strokeWidth / 2) + 1;
+        return new java.awt.Rectangle(x - pad, y - pad, width + pad * 2, height + pad * 2);
+    }
 }
\ No newline at end of file
@@ -0,0 +1,308 @@
+package com.jaiswal.transport;
+
+import com.jaiswal.shared.DeliveryLane;
+import com.jaiswal.shared.LaneScheduler;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * One non-blocking socket exchanging length-prefixed frames.
+ * <pre>
+ * frame  length (int, excluding itself), contents
+ * slice  length | SLICE [| LAST_SLICE] (int), part of the contents
+ * </pre>
+ * Frames are queued by {@link DeliveryLane}, and a frame larger than 32 KB
+ * goes out in slices, so a kick or a user list
+ * change waits at most for one slice of a snapshot to the same peer. Slices
+ * of one frame arrive in order; whole frames of other lanes may come between
+ * them, but never slices of another frame.
+ * <p>
+ * Senders write straight to the socket when nothing is queued, so a frame
+ * normally leaves without a trip through the loop thread; whatever the socket
+ * does not take is queued and flushed by the loop when it becomes writable.
+ * A peer that stops reading is disconnected once too much is queued for it.
+ */
+final class FrameConnection {
+    private static final int MAX_FRAME_BYTES = 64 * 1024 * 1024;
+    private static final long MAX_QUEUED_BYTES = 64L * 1024 * 1024;
+    private static final int READ_BUFFER_BYTES = 64 * 1024;
+    private static final int SLICE_BYTES = 32 * 1024;
+    // Flags in the length prefix of a slice
+    private static final int SLICE = 0x80000000;
+    private static final int LAST_SLICE = 0x40000000;
+
+    private final FrameLoop loop;
+    private final SocketChannel channel;
+    private volatile FrameLoop.Listener listener;
+    private SelectionKey key;
+
+    // Only touched on the loop thread
+    private ByteBuffer readBuffer = ByteBuffer.allocate(READ_BUFFER_BYTES);
+    // Slices of the frame being received
+    private final ByteArrayOutputStream received = new ByteArrayOutputStream();
+
+    // Guarded by lanes
+    private final Map<DeliveryLane, Deque<ByteBuffer>> lanes = new EnumMap<>(DeliveryLane.class);
+    private final LaneScheduler scheduler = new LaneScheduler();
+    // Bytes on their way to the socket: a whole frame, or a slice prefix and the slice
+    private ByteBuffer[] writing;
+    // Frame going out in slices, at the head of its lane
+    private ByteBuffer slicing;
+    private long queuedBytes;
+    private boolean closed;
+
+    FrameConnection(FrameLoop loop, SocketChannel channel, FrameLoop.Listener listener) {
+        this.loop = loop;
+        this.channel = channel;
+        this.listener = listener;
+        for (DeliveryLane lane : DeliveryLane.values()) {
+            lanes.put(lane, new ArrayDeque<>());
+        }
+    }
+
+    void setListener(FrameLoop.Listener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Registers for reads, runs on the loop thread
+     */
+    void register(Selector selector) throws ClosedChannelException {
+        key = channel.register(selector, SelectionKey.OP_READ, this);
+    }
+
+    /**
+     * Sends a frame in the live lane
+     * @param frame Complete frame including the length prefix
+     * @throws IOException If the connection is closed or the peer is not keeping up
+     */
+    void send(ByteBuffer frame) throws IOException {
+        send(frame, DeliveryLane.LIVE);
+    }
+
+    /**
+     * Sends a frame. Safe to call from any thread; frames from one thread in
+     * one lane are sent in order.
+     * @param frame Complete frame including the length prefix
+     * @param lane Priority of the frame
+     * @throws IOException If the connection is closed or the peer is not keeping up
+     */
+    void send(ByteBuffer frame, DeliveryLane lane) throws IOException {
+        boolean overflow;
+        synchronized (lanes) {
+            if (closed) {
+                throw new ClosedChannelException();
+            }
+            boolean idle = writing == null && queuedBytes == 0;
+            lanes.get(lane).add(frame);
+            queuedBytes += frame.remaining();
+            if (idle) {
+                try {
+                    if (!flush()) {
+                        loop.execute(this::enableWrites);
+                    }
+                } catch (IOException e) {
+                    closeLater();
+                    throw e;
+                }
+                return;
+            }
+            overflow = queuedBytes > MAX_QUEUED_BYTES;
+        }
+        if (overflow) {
+            closeLater();
+            throw new IOException("Peer is not reading, " + MAX_QUEUED_BYTES + " bytes queued");
+        }
+    }
+
+    /**
+     * @return true once the connection has been closed from either side
+     */
+    boolean isClosed() {
+        synchronized (lanes) {
+            return closed;
+        }
+    }
+
+    /**
+     * Handles readiness, runs on the loop thread
+     */
+    void handle(SelectionKey key) {
+        try {
+            if (key.isReadable()) {
+                read();
+            }
+            if (key.isValid() && key.isWritable()) {
+                flushQueue();
+            }
+        } catch (IOException e) {
+            close();
+        }
+    }
+
+    /**
+     * Closes the connection and notifies the listener once
+     */
+    void close() {
+        synchronized (lanes) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            for (Deque<ByteBuffer> queue : lanes.values()) {
+                queue.clear();
+            }
+            writing = null;
+            slicing = null;
+            queuedBytes = 0;
+        }
+        if (key != null) {
+            key.cancel();
+        }
+        try {
+            channel.close();
+        } catch (IOException ignored) {
+            // Closing anyway
+        }
+        if (listener != null) {
+            listener.onClosed(this);
+        }
+    }
+
+    private void closeLater() {
+        loop.execute(this::close);
+    }
+
+    private void enableWrites() {
+        if (key != null && key.isValid()) {
+            key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
+        }
+    }
+
+    private void flushQueue() throws IOException {
+        synchronized (lanes) {
+            if (flush()) {
+                key.interestOps(SelectionKey.OP_READ);
+            }
+        }
+    }
+
+    /**
+     * Writes until the socket is full or nothing is left, holding the lanes lock
+     * @return true if nothing is left
+     */
+    private boolean flush() throws IOException {
+        while (true) {
+            if (writing == null) {
+                writing = nextWrite();
+                if (writing == null) {
+                    return true;
+                }
+            }
+            channel.write(writing);
+            if (writing[writing.length - 1].hasRemaining()) {
+                return false;
+            }
+            writing = null;
+        }
+    }
+
+    /**
+     * Takes the next frame or slice off the lanes, holding the lanes lock
+     * @return The buffers to write, or null if nothing is queued
+     */
+    private ByteBuffer[] nextWrite() {
+        int waiting = 0;
+        for (Map.Entry<DeliveryLane, Deque<ByteBuffer>> entry : lanes.entrySet()) {
+            ByteBuffer head = entry.getValue().peek();
+            // A large frame waits while another one is going out in slices
+            if (head != null && (slicing == null || head == slicing || head.remaining() <= 4 + SLICE_BYTES)) {
+                waiting |= 1 << entry.getKey().ordinal();
+            }
+        }
+        DeliveryLane lane = scheduler.next(waiting);
+        if (lane == null) {
+            return null;
+        }
+
+        Deque<ByteBuffer> queue = lanes.get(lane);
+        ByteBuffer frame = queue.peek();
+        if (frame != slicing && frame.remaining() <= 4 + SLICE_BYTES) {
+            queue.poll();
+            queuedBytes -= frame.remaining();
+            return new ByteBuffer[] {frame};
+        }
+        if (slicing == null) {
+            // Slices carry their own length prefixes
+            slicing = frame;
+            frame.position(frame.position() + 4);
+            queuedBytes -= 4;
+        }
+        int length = Math.min(SLICE_BYTES, frame.remaining());
+        boolean last = length == frame.remaining();
+        ByteBuffer prefix = ByteBuffer.allocate(4).putInt(length | SLICE | (last ? LAST_SLICE : 0));
+        prefix.flip();
+        ByteBuffer slice = frame.duplicate();
+        slice.limit(slice.position() + length);
+        frame.position(frame.position() + length);
+        queuedBytes -= length;
+        if (last) {
+            queue.poll();
+            slicing = null;
+        }
+        return new ByteBuffer[] {prefix, slice};
+    }
+
+    private void read() throws IOException {
+        if (channel.read(readBuffer) < 0) {
+            close();
+            return;
+        }
+
+        readBuffer.flip();
+        while (readBuffer.remaining() >= 4) {
+            int prefix = readBuffer.getInt(readBuffer.position());
+            int length = prefix & ~(SLICE | LAST_SLICE);
+            if (length > MAX_FRAME_BYTES || (prefix & LAST_SLICE) != 0 && (prefix & SLICE) == 0) {
+                throw new IOException("Bad frame length " + prefix);
+            }
+            if (readBuffer.remaining() < 4 + length) {
+                if (4 + length > readBuffer.capacity()) {
+                    // Grow to fit the whole frame
+                    ByteBuffer larger = ByteBuffer.allocate(4 + length);
+                    larger.put(readBuffer);
+                    readBuffer = larger;
+                    return;
+                }
+                break;
+            }
+
+            readBuffer.position(readBuffer.position() + 4);
+            byte[] contents = new byte[length];
+            readBuffer.get(contents);
+            if ((prefix & SLICE) != 0) {
+                if (received.size() + length > MAX_FRAME_BYTES) {
+                    throw new IOException("Sliced frame over " + MAX_FRAME_BYTES + " bytes");
+                }
+                received.write(contents);
+                if ((prefix & LAST_SLICE) == 0) {
+                    continue;
+                }
+                contents = received.toByteArray();
+                received.reset();
+            }
+            listener.onFrame(this, ByteBuffer.wrap(contents));
+        }
+        readBuffer.compact();
+    }
+}
@@ -0,0 +1,201 @@
+package com.jaiswal.transport;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Function;
+
+/**
+ * Selector loop driving any number of {@link FrameConnection}s on one thread.
+ * Listeners are called on the loop thread and must hand real work elsewhere.
+ */
+final class FrameLoop implements Closeable {
+    private static final int SOCKET_BUFFER_BYTES = 256 * 1024;
+
+    /**
+     * Receives the frames of one connection
+     */
+    interface Listener {
+        /**
+         * @param connection The connection the frame arrived on
+         * @param frame Frame contents without the length prefix
+         */
+        void onFrame(FrameConnection connection, ByteBuffer frame);
+
+        /**
+         * Called once when the connection closes, from either side
+         * @param connection The closed connection
+         */
+        void onClosed(FrameConnection connection);
+    }
+
+    private final Selector selector;
+    private final Thread thread;
+    private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+    private volatile boolean running = true;
+
+    FrameLoop(String name) throws IOException {
+        this.selector = Selector.open();
+        this.thread = new Thread(this::run, name);
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    /**
+     * Accepts connections on a port
+     * @param address Address to bind
+     * @param acceptor Creates the listener for each accepted connection
+     * @throws IOException If the port cannot be bound
+     */
+    void listen(InetSocketAddress address, Function<FrameConnection, Listener> acceptor) throws IOException {
+        ServerSocketChannel server = ServerSocketChannel.open();
+        server.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+        server.setOption(StandardSocketOptions.SO_RCVBUF, SOCKET_BUFFER_BYTES);
+        server.bind(address);
+        server.configureBlocking(false);
+        await(() -> server.register(selector, SelectionKey.OP_ACCEPT, acceptor));
+    }
+
+    /**
+     * Opens a connection, blocking until it is established
+     * @param address Address to connect to
+     * @param listener Receives the connection's frames
+     * @return The connection
+     * @throws IOException If the connection fails
+     */
+    FrameConnection connect(InetSocketAddress address, Listener listener) throws IOException {
+        SocketChannel channel = SocketChannel.open(address);
+        configure(channel);
+        FrameConnection connection = new FrameConnection(this, channel, listener);
+        await(() -> connection.register(selector));
+        return connection;
+    }
+
+    /**
+     * Runs a task on the loop thread
+     * @param task The task
+     */
+    void execute(Runnable task) {
+        tasks.add(task);
+        selector.wakeup();
+    }
+
+    @Override
+    public void close() {
+        running = false;
+        selector.wakeup();
+    }
+
+    private void run() {
+        try {
+            while (running) {
+                selector.select();
+                Runnable task;
+                while ((task = tasks.poll()) != null) {
+                    task.run();
+                }
+
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if (!key.isValid()) {
+                        continue;
+                    }
+                    if (key.isAcceptable()) {
+                        accept(key);
+                    } else {
+                        FrameConnection connection = (FrameConnection) key.attachment();
+                        connection.handle(key);
+                    }
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Transport loop " + thread.getName() + " failed: " + e.getMessage());
+        } finally {
+            for (SelectionKey key : selector.keys()) {
+                if (key.attachment() instanceof FrameConnection) {
+                    ((FrameConnection) key.attachment()).close();
+                } else {
+                    closeQuietly(key.channel());
+                }
+            }
+            closeQuietly(selector);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void accept(SelectionKey key) {
+        Function<FrameConnection, Listener> acceptor = (Function<FrameConnection, Listener>) key.attachment();
+        try {
+            SocketChannel channel = ((ServerSocketChannel) key.channel()).accept();
+            if (channel == null) {
+                return;
+            }
+            configure(channel);
+            FrameConnection connection = new FrameConnection(this, channel, null);
+            connection.setListener(acceptor.apply(connection));
+            connection.register(selector);
+        } catch (IOException e) {
+            System.err.println("Error accepting connection: " + e.getMessage());
+        }
+    }
+
+    private static void configure(SocketChannel channel) throws IOException {
+        channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+        channel.setOption(StandardSocketOptions.SO_KEEPALIVE, true);
+        channel.setOption(StandardSocketOptions.SO_SNDBUF, SOCKET_BUFFER_BYTES);
+        channel.setOption(StandardSocketOptions.SO_RCVBUF, SOCKET_BUFFER_BYTES);
+        channel.configureBlocking(false);
+    }
+
+    private interface Registration {
+        void run() throws IOException;
+    }
+
+    // Channels must be registered on the loop thread, or register() blocks behind select()
+    private void await(Registration registration) throws IOException {
+        if (!running) {
+            throw new IOException("Transport loop " + thread.getName() + " is closed");
+        }
+        CompletableFuture<Void> done = new CompletableFuture<>();
+        execute(() -> {
+            try {
+                registration.run();
+                done.complete(null);
+            } catch (IOException | RuntimeException e) {
+                done.completeExceptionally(e);
+            }
+        });
+        try {
+            done.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while registering channel", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException(e.getCause());
+        }
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        try {
+            closeable.close();
+        } catch (IOException ignored) {
+            // Shutting down anyway
+        }
+    }
+}
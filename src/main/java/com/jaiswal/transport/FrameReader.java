@@ -0,0 +1,201 @@
+package com.jaiswal.transport;
+
+import com.jaiswal.shared.BoardOp;
+import com.jaiswal.shared.ClientOp;
+import com.jaiswal.shared.ElementCodec;
+import com.jaiswal.shared.IDrawable;
+import com.jaiswal.shared.OpAck;
+import com.jaiswal.shared.PresenceOp;
+import com.jaiswal.shared.SnapshotChunk;
+
+import java.awt.Rectangle;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reads one frame of the NIO transport, the counterpart of {@link FrameWriter}
+ */
+final class FrameReader {
+    private final ByteBuffer in;
+    private final byte kind;
+    private final int callId;
+    private final byte method;
+
+    /**
+     * @param frame Frame contents without the length prefix
+     */
+    FrameReader(ByteBuffer frame) throws IOException {
+        this.in = frame;
+        try {
+            this.kind = in.get();
+            this.callId = in.getInt();
+            this.method = in.get();
+        } catch (BufferUnderflowException e) {
+            throw new IOException("Truncated frame header", e);
+        }
+    }
+
+    byte getKind() {
+        return kind;
+    }
+
+    int getCallId() {
+        return callId;
+    }
+
+    byte getMethod() {
+        return method;
+    }
+
+    boolean readBoolean() {
+        return in.get() != 0;
+    }
+
+    int readInt() {
+        return in.getInt();
+    }
+
+    long readLong() {
+        return in.getLong();
+    }
+
+    String readString() {
+        int length = in.getInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] encoded = new byte[length];
+        in.get(encoded);
+        return new String(encoded, StandardCharsets.UTF_8);
+    }
+
+    List<String> readStrings() {
+        int count = in.getInt();
+        List<String> values = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            values.add(readString());
+        }
+        return values;
+    }
+
+    int[] readInts() {
+        int[] values = new int[in.getInt()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = in.getInt();
+        }
+        return values;
+    }
+
+    long[] readLongs() {
+        long[] values = new long[in.getInt()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = in.getLong();
+        }
+        return values;
+    }
+
+    Rectangle readRectangle() {
+        if (!readBoolean()) {
+            return null;
+        }
+        return new Rectangle(in.getInt(), in.getInt(), in.getInt(), in.getInt());
+    }
+
+    IDrawable readElement() throws IOException {
+        return ElementCodec.read(in);
+    }
+
+    List<IDrawable> readElements() throws IOException {
+        int count = in.getInt();
+        List<IDrawable> elements = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            elements.add(readElement());
+        }
+        return elements;
+    }
+
+    Map<Long, IDrawable> readElementMap() throws IOException {
+        int count = in.getInt();
+        Map<Long, IDrawable> elements = new HashMap<>(Math.max(16, (int) (count / 0.75f) + 1));
+        for (int i = 0; i < count; i++) {
+            IDrawable drawable = readElement();
+            elements.put(drawable.getId(), drawable);
+        }
+        return elements;
+    }
+
+    List<PresenceOp> readPresence() {
+        int count = in.getInt();
+        List<PresenceOp> ops = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            long sequence = in.getLong();
+            PresenceOp.Kind kind = PresenceOp.Kind.values()[in.get()];
+            String username = readString();
+            boolean manager = readBoolean();
+            ops.add(PresenceOp.of(sequence, kind, username, manager, readBoolean()));
+        }
+        return ops;
+    }
+
+    List<BoardOp> readOps() throws IOException {
+        int count = in.getInt();
+        List<BoardOp> ops = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            long sequence = in.getLong();
+            BoardOp.Kind opKind = BoardOp.Kind.values()[in.get()];
+            IDrawable element = readElement();
+            switch (opKind) {
+                case ADD:
+                    ops.add(BoardOp.add(sequence, element));
+                    break;
+                case CLEAR:
+                    ops.add(BoardOp.clear(sequence));
+                    break;
+                case RESET:
+                    ops.add(BoardOp.reset(sequence));
+                    break;
+            }
+        }
+        return ops;
+    }
+
+    List<ClientOp> readClientOps() throws IOException {
+        int count = in.getInt();
+        List<ClientOp> ops = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            long sequence = in.getLong();
+            ClientOp.Kind opKind = ClientOp.Kind.values()[in.get()];
+            IDrawable element = readElement();
+            ops.add(opKind == ClientOp.Kind.ADD ? ClientOp.add(sequence, element) : ClientOp.clear(sequence));
+        }
+        return ops;
+    }
+
+    OpAck readAck() {
+        long acked = in.getLong();
+        long version = in.getLong();
+        return new OpAck(acked, version, readStrings());
+    }
+
+    SnapshotChunk readChunk() throws IOException {
+        if (!readBoolean()) {
+            return null;
+        }
+        long version = in.getLong();
+        int index = in.getInt();
+        int chunkCount = in.getInt();
+        int tier = in.getInt();
+        List<IDrawable> elements = readElements();
+        int[] positions = new int[elements.size()];
+        for (int i = 0; i < positions.length; i++) {
+            positions[i] = in.getInt();
+        }
+        return new SnapshotChunk(version, index, chunkCount, tier, elements, positions);
+    }
+}
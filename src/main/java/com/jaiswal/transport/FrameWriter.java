@@ -0,0 +1,186 @@
+package com.jaiswal.transport;
+
+import com.jaiswal.shared.BoardOp;
+import com.jaiswal.shared.ClientOp;
+import com.jaiswal.shared.ElementCodec;
+import com.jaiswal.shared.IDrawable;
+import com.jaiswal.shared.OpAck;
+import com.jaiswal.shared.PresenceOp;
+import com.jaiswal.shared.SnapshotChunk;
+
+import java.awt.Rectangle;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Builds one frame of the NIO transport. Elements use {@link ElementCodec},
+ * so nothing on the wire goes through Java serialization except element
+ * types the codec does not know.
+ */
+final class FrameWriter {
+    private final ByteArrayOutputStream bytes = new ByteArrayOutputStream(128);
+    private final DataOutputStream out = new DataOutputStream(bytes);
+
+    /**
+     * Starts a frame
+     * @param kind Frame kind
+     * @param callId Call ID, 0 for callbacks
+     * @param method Method code
+     */
+    FrameWriter(byte kind, int callId, byte method) throws IOException {
+        // Length placeholder, filled in by toFrame()
+        out.writeInt(0);
+        out.writeByte(kind);
+        out.writeInt(callId);
+        out.writeByte(method);
+    }
+
+    FrameWriter writeBoolean(boolean value) throws IOException {
+        out.writeBoolean(value);
+        return this;
+    }
+
+    FrameWriter writeInt(int value) throws IOException {
+        out.writeInt(value);
+        return this;
+    }
+
+    FrameWriter writeLong(long value) throws IOException {
+        out.writeLong(value);
+        return this;
+    }
+
+    FrameWriter writeString(String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+        } else {
+            byte[] encoded = value.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(encoded.length);
+            out.write(encoded);
+        }
+        return this;
+    }
+
+    FrameWriter writeStrings(List<String> values) throws IOException {
+        out.writeInt(values.size());
+        for (String value : values) {
+            writeString(value);
+        }
+        return this;
+    }
+
+    FrameWriter writeInts(int[] values) throws IOException {
+        out.writeInt(values.length);
+        for (int value : values) {
+            out.writeInt(value);
+        }
+        return this;
+    }
+
+    FrameWriter writeLongs(long[] values) throws IOException {
+        out.writeInt(values.length);
+        for (long value : values) {
+            out.writeLong(value);
+        }
+        return this;
+    }
+
+    FrameWriter writeRectangle(Rectangle rect) throws IOException {
+        out.writeBoolean(rect != null);
+        if (rect != null) {
+            out.writeInt(rect.x);
+            out.writeInt(rect.y);
+            out.writeInt(rect.width);
+            out.writeInt(rect.height);
+        }
+        return this;
+    }
+
+    FrameWriter writeElement(IDrawable drawable) throws IOException {
+        ElementCodec.write(out, drawable);
+        return this;
+    }
+
+    FrameWriter writeElements(List<IDrawable> elements) throws IOException {
+        out.writeInt(elements.size());
+        for (IDrawable drawable : elements) {
+            writeElement(drawable);
+        }
+        return this;
+    }
+
+    FrameWriter writeElementMap(Map<Long, IDrawable> elements) throws IOException {
+        out.writeInt(elements.size());
+        for (IDrawable drawable : elements.values()) {
+            writeElement(drawable);
+        }
+        return this;
+    }
+
+    FrameWriter writeOps(List<BoardOp> ops) throws IOException {
+        out.writeInt(ops.size());
+        for (BoardOp op : ops) {
+            out.writeLong(op.getSequence());
+            out.writeByte(op.getKind().ordinal());
+            writeElement(op.getElement());
+        }
+        return this;
+    }
+
+    FrameWriter writePresence(List<PresenceOp> ops) throws IOException {
+        out.writeInt(ops.size());
+        for (PresenceOp op : ops) {
+            out.writeLong(op.getSequence());
+            out.writeByte(op.getKind().ordinal());
+            writeString(op.getUsername());
+            out.writeBoolean(op.isManager());
+            out.writeBoolean(op.isAway());
+        }
+        return this;
+    }
+
+    FrameWriter writeClientOps(List<ClientOp> ops) throws IOException {
+        out.writeInt(ops.size());
+        for (ClientOp op : ops) {
+            out.writeLong(op.getSequence());
+            out.writeByte(op.getKind().ordinal());
+            writeElement(op.getElement());
+        }
+        return this;
+    }
+
+    FrameWriter writeAck(OpAck ack) throws IOException {
+        out.writeLong(ack.getAcked());
+        out.writeLong(ack.getVersion());
+        return writeStrings(ack.getRejections());
+    }
+
+    FrameWriter writeChunk(SnapshotChunk chunk) throws IOException {
+        out.writeBoolean(chunk != null);
+        if (chunk != null) {
+            out.writeLong(chunk.getVersion());
+            out.writeInt(chunk.getIndex());
+            out.writeInt(chunk.getChunkCount());
+            out.writeInt(chunk.getTier());
+            writeElements(chunk.getElements());
+            for (int position : chunk.getPositions()) {
+                out.writeInt(position);
+            }
+        }
+        return this;
+    }
+
+    /**
+     * @return The finished frame, ready to send
+     */
+    ByteBuffer toFrame() {
+        ByteBuffer frame = ByteBuffer.wrap(bytes.toByteArray());
+        frame.putInt(0, frame.capacity() - 4);
+        return frame;
+    }
+}
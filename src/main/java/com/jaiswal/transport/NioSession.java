@@ -0,0 +1,317 @@
+package com.jaiswal.transport;
+
+import com.jaiswal.shared.BoardMovedException;
+import com.jaiswal.shared.BoardOp;
+import com.jaiswal.shared.DeliveryLane;
+import com.jaiswal.shared.IDrawable;
+import com.jaiswal.shared.IRemoteBoardDirectory;
+import com.jaiswal.shared.IRemoteClient;
+import com.jaiswal.shared.IRemoteWhiteboard;
+import com.jaiswal.shared.PresenceOp;
+import com.jaiswal.shared.TextElement;
+import com.jaiswal.shared.shapes.Shape;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.rmi.RemoteException;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Server side of one NIO client connection. Decodes calls and runs them
+ * against the board the connection opened, on a shared worker pool, one at a time and in
+ * arrival order per connection, and stands in for the client as its
+ * {@link IRemoteClient} so callbacks go back over the same connection.
+ * Callbacks are one-way: they fail only if the connection is gone.
+ * Callbacks and replies go out in the {@link DeliveryLane} of their kind, so
+ * control messages and user list changes overtake snapshots being sent.
+ */
+final class NioSession implements IRemoteClient, FrameLoop.Listener {
+    private final IRemoteBoardDirectory directory;
+    private final FrameConnection connection;
+    private final Executor workers;
+
+    // Calls waiting to run, and the departure once closed, drained by at most one worker at a time
+    private final Queue<Runnable> calls = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean draining = new AtomicBoolean(false);
+
+    // Set by OPEN_BOARD, only touched by the draining worker
+    private IRemoteWhiteboard board;
+    private volatile String username;
+
+    NioSession(IRemoteBoardDirectory directory, FrameConnection connection, Executor workers) {
+        this.directory = directory;
+        this.connection = connection;
+        this.workers = workers;
+    }
+
+    @Override
+    public void onFrame(FrameConnection source, ByteBuffer frame) {
+        try {
+            FrameReader call = new FrameReader(frame);
+            if (call.getKind() != Protocol.CALL) {
+                throw new IOException("Unexpected frame kind " + call.getKind());
+            }
+            enqueue(() -> dispatch(call));
+        } catch (IOException e) {
+            System.err.println("Dropping malformed frame from " + describe() + ": " + e.getMessage());
+        }
+    }
+
+    @Override
+    public void onClosed(FrameConnection source) {
+        System.out.println("Connection closed: " + describe());
+        // Behind the calls already received, so a join still running is undone too
+        enqueue(this::departed);
+    }
+
+    private void enqueue(Runnable task) {
+        calls.add(task);
+        if (draining.compareAndSet(false, true)) {
+            workers.execute(this::drain);
+        }
+    }
+
+    /**
+     * Tells the board the user's connection is gone, so it shows as away
+     * and can resume over a new connection
+     */
+    private void departed() {
+        if (board == null || username == null) {
+            return;
+        }
+        try {
+            board.connectionLost(username, this);
+        } catch (Exception e) {
+            System.err.println("Error reporting lost connection of " + describe() + ": " + e.getMessage());
+        }
+    }
+
+    private void drain() {
+        while (true) {
+            Runnable call;
+            while ((call = calls.poll()) != null) {
+                call.run();
+            }
+            draining.set(false);
+            // A call may have arrived after the last poll
+            if (calls.isEmpty() || !draining.compareAndSet(false, true)) {
+                return;
+            }
+        }
+    }
+
+    private void dispatch(FrameReader call) {
+        int callId = call.getCallId();
+        byte method = call.getMethod();
+        try {
+            FrameWriter reply = new FrameWriter(Protocol.REPLY, callId, method);
+            if (method != Protocol.OPEN_BOARD && method != Protocol.LIST_BOARDS && board == null) {
+                throw new IOException("No board opened on this connection");
+            }
+            switch (method) {
+                case Protocol.OPEN_BOARD:
+                    board = directory.openBoard(call.readString());
+                    break;
+                case Protocol.LIST_BOARDS:
+                    reply.writeStrings(directory.listBoards());
+                    break;
+                case Protocol.REQUEST_JOIN:
+                    username = call.readString();
+                    reply.writeBoolean(board.requestJoin(username, call.readLong(), this));
+                    break;
+                case Protocol.ANSWER_JOIN_REQUESTS:
+                    board.answerJoinRequests(call.readString(), call.readStrings(), call.readStrings());
+                    break;
+                case Protocol.RESUME_SESSION:
+                    // Callbacks of the resumed session come back over this connection
+                    username = call.readString();
+                    List<BoardOp> missed = board.resumeSession(username, call.readLong(), call.readLong(), this);
+                    reply.writeBoolean(missed != null);
+                    if (missed != null) {
+                        reply.writeOps(missed);
+                    }
+                    break;
+                case Protocol.GET_EPOCH:
+                    reply.writeLong(board.getEpoch());
+                    break;
+                case Protocol.FETCH_OPS_SINCE:
+                    List<BoardOp> behind = board.fetchOpsSince(call.readString(), call.readLong(), call.readLong());
+                    reply.writeBoolean(behind != null);
+                    if (behind != null) {
+                        reply.writeOps(behind);
+                    }
+                    break;
+                case Protocol.GET_DIGEST_NODES:
+                    long[] nodes = board.getDigestNodes(call.readString(), call.readLong(), call.readInts());
+                    reply.writeBoolean(nodes != null);
+                    if (nodes != null) {
+                        reply.writeLongs(nodes);
+                    }
+                    break;
+                case Protocol.FETCH_BUCKETS:
+                    List<IDrawable> buckets = board.fetchBuckets(call.readString(), call.readLong(), call.readInts());
+                    reply.writeBoolean(buckets != null);
+                    if (buckets != null) {
+                        reply.writeElements(buckets);
+                    }
+                    break;
+                case Protocol.DISCONNECT:
+                    board.disconnect(call.readString());
+                    break;
+                case Protocol.KICK_USER:
+                    board.kickUser(call.readString());
+                    break;
+                case Protocol.GET_CONNECTED_USERS:
+                    reply.writeStrings(board.getConnectedUsers());
+                    break;
+                case Protocol.DRAW_SHAPE:
+                    board.drawShape((Shape) call.readElement());
+                    break;
+                case Protocol.DRAW_TEXT:
+                    board.drawText((TextElement) call.readElement());
+                    break;
+                case Protocol.CLEAR_CANVAS:
+                    board.clearCanvas();
+                    break;
+                case Protocol.SUBMIT_OPS:
+                    reply.writeAck(board.submitOps(call.readString(), call.readLong(), call.readLong(),
+                            call.readClientOps()));
+                    break;
+                case Protocol.SAVE_WHITEBOARD:
+                    reply.writeBoolean(board.saveWhiteboard(call.readString()));
+                    break;
+                case Protocol.LOAD_WHITEBOARD:
+                    reply.writeBoolean(board.loadWhiteboard(call.readString()));
+                    break;
+                case Protocol.GET_CURRENT_STATE:
+                    reply.writeElementMap(board.getCurrentState());
+                    break;
+                case Protocol.OPEN_SNAPSHOT:
+                    reply.writeChunk(board.openSnapshot(call.readString(), call.readRectangle()));
+                    break;
+                case Protocol.FETCH_SNAPSHOT_CHUNK:
+                    reply.writeChunk(board.fetchSnapshotChunk(call.readString(), call.readLong(), call.readInt()));
+                    break;
+                case Protocol.GET_FAILOVER_NODES:
+                    reply.writeStrings(board.getFailoverNodes());
+                    break;
+                default:
+                    throw new IOException("Unknown method " + method);
+            }
+            connection.send(reply.toFrame(), replyLane(method));
+        } catch (BoardMovedException e) {
+            try {
+                connection.send(new FrameWriter(Protocol.REDIRECT, callId, method)
+                        .writeString(e.getBoardId()).writeString(e.getOwner()).toFrame(), DeliveryLane.LIVE);
+            } catch (IOException sendFailed) {
+                System.err.println("Error replying to " + describe() + ": " + sendFailed.getMessage());
+            }
+        } catch (Exception e) {
+            try {
+                String message = e.getMessage() != null ? e.getMessage() : e.toString();
+                connection.send(new FrameWriter(Protocol.FAILURE, callId, method).writeString(message).toFrame(),
+                        replyLane(method));
+            } catch (IOException sendFailed) {
+                System.err.println("Error replying to " + describe() + ": " + sendFailed.getMessage());
+            }
+        }
+    }
+
+    /**
+     * @return The lane replies to the method go out in: large transfers in bulk, the rest with live ops
+     */
+    private static DeliveryLane replyLane(byte method) {
+        switch (method) {
+            case Protocol.OPEN_SNAPSHOT:
+            case Protocol.FETCH_SNAPSHOT_CHUNK:
+            case Protocol.GET_CURRENT_STATE:
+            case Protocol.FETCH_OPS_SINCE:
+            case Protocol.FETCH_BUCKETS:
+                return DeliveryLane.BULK;
+            default:
+                return DeliveryLane.LIVE;
+        }
+    }
+
+    // IRemoteClient, forwarded to the remote client as one-way callbacks
+    @Override
+    public void applyOps(List<BoardOp> ops) throws RemoteException {
+        send(callback(Protocol.APPLY_OPS, writer -> writer.writeOps(ops)), DeliveryLane.LIVE);
+    }
+
+    @Override
+    public void updateUserList(long presenceVersion, List<PresenceOp> users) throws RemoteException {
+        send(callback(Protocol.UPDATE_USER_LIST, writer -> writer.writeLong(presenceVersion).writePresence(users)),
+                DeliveryLane.PRESENCE);
+    }
+
+    @Override
+    public void presenceChanged(List<PresenceOp> changes) throws RemoteException {
+        send(callback(Protocol.PRESENCE_CHANGED, writer -> writer.writePresence(changes)), DeliveryLane.PRESENCE);
+    }
+
+    @Override
+    public void receiveNotification(String message) throws RemoteException {
+        send(callback(Protocol.RECEIVE_NOTIFICATION, writer -> writer.writeString(message)), DeliveryLane.CONTROL);
+    }
+
+    @Override
+    public void joinRequestResult(boolean approved) throws RemoteException {
+        send(callback(Protocol.JOIN_REQUEST_RESULT, writer -> writer.writeBoolean(approved)), DeliveryLane.CONTROL);
+    }
+
+    @Override
+    public void joinRequestsPending(List<String> usernames) throws RemoteException {
+        send(callback(Protocol.JOIN_REQUESTS_PENDING, writer -> writer.writeStrings(usernames)), DeliveryLane.CONTROL);
+    }
+
+    @Override
+    public void kickedFromServer() throws RemoteException {
+        send(callback(Protocol.KICKED_FROM_SERVER, writer -> writer), DeliveryLane.CONTROL);
+    }
+
+    @Override
+    public void managerClosedWhiteboard() throws RemoteException {
+        send(callback(Protocol.MANAGER_CLOSED_WHITEBOARD, writer -> writer), DeliveryLane.CONTROL);
+    }
+
+    @Override
+    public void boardMoved(String boardId, String owner) throws RemoteException {
+        // Behind the live ops, which the client must have before it leaves
+        send(callback(Protocol.BOARD_MOVED, writer -> writer.writeString(boardId).writeString(owner)),
+                DeliveryLane.LIVE);
+    }
+
+    @Override
+    public String getUsername() throws RemoteException {
+        return username;
+    }
+
+    private interface Arguments {
+        FrameWriter write(FrameWriter writer) throws IOException;
+    }
+
+    private ByteBuffer callback(byte method, Arguments arguments) throws RemoteException {
+        try {
+            return arguments.write(new FrameWriter(Protocol.CALLBACK, 0, method)).toFrame();
+        } catch (IOException e) {
+            throw new RemoteException("Cannot encode callback for " + describe(), e);
+        }
+    }
+
+    private void send(ByteBuffer frame, DeliveryLane lane) throws RemoteException {
+        try {
+            connection.send(frame, lane);
+        } catch (IOException e) {
+            throw new RemoteException("Connection to " + describe() + " lost", e);
+        }
+    }
+
+    private String describe() {
+        return username != null ? username : "unjoined client";
+    }
+}
@@ -0,0 +1,89 @@
+package com.jaiswal.transport;
+
+import com.jaiswal.shared.IRemoteBoardDirectory;
+import com.jaiswal.shared.IRemoteClient;
+import com.jaiswal.shared.IRemoteWhiteboard;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Binary transport on non-blocking sockets. A single selector thread serves
+ * all connections; each connection multiplexes concurrent calls and one-way
+ * callbacks as length-prefixed frames (see {@link Protocol}). Unlike RMI there
+ * is no registry, no exported callback object and no distributed GC: the
+ * connection a client joins on is also its callback channel.
+ */
+public class NioTransport implements Transport {
+    // Proxies opened by connect(), closed when their client is unexported
+    private final List<NioWhiteboardProxy> proxies = new CopyOnWriteArrayList<>();
+
+    @Override
+    public String getName() {
+        return "nio";
+    }
+
+    @Override
+    public Closeable serve(IRemoteBoardDirectory directory, String host, int port) throws IOException {
+        ExecutorService workers = Executors.newCachedThreadPool(r -> {
+            Thread t = new Thread(r, "nio-worker");
+            t.setDaemon(true);
+            return t;
+        });
+        FrameLoop loop = new FrameLoop("nio-server");
+        try {
+            loop.listen(new InetSocketAddress(port), connection -> new NioSession(directory, connection, workers));
+        } catch (IOException e) {
+            loop.close();
+            workers.shutdown();
+            throw e;
+        }
+        System.out.println("NIO transport listening on port " + port);
+
+        return () -> {
+            loop.close();
+            workers.shutdown();
+        };
+    }
+
+    @Override
+    public IRemoteWhiteboard connect(String host, int port, String boardId) throws IOException {
+        FrameLoop loop = new FrameLoop("nio-client");
+        NioWhiteboardProxy proxy;
+        try {
+            proxy = new NioWhiteboardProxy(loop, new InetSocketAddress(host, port));
+        } catch (IOException e) {
+            loop.close();
+            throw e;
+        }
+        try {
+            proxy.openBoard(boardId);
+        } catch (IOException e) {
+            proxy.close();
+            throw e;
+        }
+        proxies.add(proxy);
+        return proxy;
+    }
+
+    @Override
+    public IRemoteClient exportClient(IRemoteClient client) {
+        // Nothing to export, callbacks arrive on the connection the client joins with
+        return client;
+    }
+
+    @Override
+    public void unexportClient(IRemoteClient client) {
+        for (NioWhiteboardProxy proxy : proxies) {
+            if (proxy.getClient() == client) {
+                proxy.close();
+                proxies.remove(proxy);
+            }
+        }
+    }
+}
@@ -0,0 +1,360 @@
+package com.jaiswal.transport;
+
+import com.jaiswal.shared.BoardMovedException;
+import com.jaiswal.shared.BoardOp;
+import com.jaiswal.shared.ClientOp;
+import com.jaiswal.shared.IDrawable;
+import com.jaiswal.shared.IRemoteClient;
+import com.jaiswal.shared.IRemoteWhiteboard;
+import com.jaiswal.shared.OpAck;
+import com.jaiswal.shared.SnapshotChunk;
+import com.jaiswal.shared.TextElement;
+import com.jaiswal.shared.shapes.Shape;
+
+import java.awt.Rectangle;
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.rmi.ConnectIOException;
+import java.rmi.RemoteException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Client side of the NIO transport. Calls from any number of threads share
+ * one connection and wait for their own reply; callbacks from the server are
+ * delivered to the joined client in order on a dedicated thread.
+ */
+final class NioWhiteboardProxy implements IRemoteWhiteboard, FrameLoop.Listener, Closeable {
+    private static final long CALL_TIMEOUT_MS = 30_000;
+
+    private final FrameLoop loop;
+    private final FrameConnection connection;
+    private final AtomicInteger nextCallId = new AtomicInteger();
+    private final Map<Integer, CompletableFuture<FrameReader>> pending = new ConcurrentHashMap<>();
+    private final ExecutorService callbackThread = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "nio-callbacks");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private volatile IRemoteClient client;
+
+    NioWhiteboardProxy(FrameLoop loop, InetSocketAddress address) throws IOException {
+        this.loop = loop;
+        this.connection = loop.connect(address, this);
+    }
+
+    /**
+     * @return The client receiving callbacks, or null before joining
+     */
+    IRemoteClient getClient() {
+        return client;
+    }
+
+    /**
+     * Selects the board all further calls on this connection go to
+     * @param boardId The board ID
+     * @throws RemoteException If the server refuses the board
+     */
+    void openBoard(String boardId) throws RemoteException {
+        call(Protocol.OPEN_BOARD, writer -> writer.writeString(boardId));
+    }
+
+    @Override
+    public void close() {
+        connection.close();
+        loop.close();
+        callbackThread.shutdown();
+    }
+
+    // IRemoteWhiteboard
+    @Override
+    public boolean requestJoin(String username, long sessionToken, IRemoteClient client) throws RemoteException {
+        // Callbacks for this user come back over this connection
+        this.client = client;
+        return call(Protocol.REQUEST_JOIN, writer -> writer.writeString(username).writeLong(sessionToken))
+                .readBoolean();
+    }
+
+    @Override
+    public void answerJoinRequests(String username, List<String> approved, List<String> denied)
+            throws RemoteException {
+        call(Protocol.ANSWER_JOIN_REQUESTS,
+                writer -> writer.writeString(username).writeStrings(approved).writeStrings(denied));
+    }
+
+    @Override
+    public List<BoardOp> resumeSession(String username, long sessionToken, long version, IRemoteClient client)
+            throws RemoteException {
+        this.client = client;
+        FrameReader reply = call(Protocol.RESUME_SESSION,
+                writer -> writer.writeString(username).writeLong(sessionToken).writeLong(version));
+        try {
+            return reply.readBoolean() ? reply.readOps() : null;
+        } catch (IOException e) {
+            throw new RemoteException("Malformed ops", e);
+        }
+    }
+
+    @Override
+    public long getEpoch() throws RemoteException {
+        return call(Protocol.GET_EPOCH, writer -> writer).readLong();
+    }
+
+    @Override
+    public List<BoardOp> fetchOpsSince(String username, long epoch, long version) throws RemoteException {
+        FrameReader reply = call(Protocol.FETCH_OPS_SINCE,
+                writer -> writer.writeString(username).writeLong(epoch).writeLong(version));
+        try {
+            return reply.readBoolean() ? reply.readOps() : null;
+        } catch (IOException e) {
+            throw new RemoteException("Malformed ops", e);
+        }
+    }
+
+    @Override
+    public long[] getDigestNodes(String username, long version, int[] nodes) throws RemoteException {
+        FrameReader reply = call(Protocol.GET_DIGEST_NODES,
+                writer -> writer.writeString(username).writeLong(version).writeInts(nodes));
+        return reply.readBoolean() ? reply.readLongs() : null;
+    }
+
+    @Override
+    public List<IDrawable> fetchBuckets(String username, long version, int[] buckets) throws RemoteException {
+        FrameReader reply = call(Protocol.FETCH_BUCKETS,
+                writer -> writer.writeString(username).writeLong(version).writeInts(buckets));
+        try {
+            return reply.readBoolean() ? reply.readElements() : null;
+        } catch (IOException e) {
+            throw new RemoteException("Malformed elements", e);
+        }
+    }
+
+    @Override
+    public void disconnect(String username) throws RemoteException {
+        call(Protocol.DISCONNECT, writer -> writer.writeString(username));
+    }
+
+    @Override
+    public void connectionLost(String username, IRemoteClient client) throws RemoteException {
+        // Reported by the server's end of the connection, never sent by a client
+        throw new RemoteException("connectionLost is not a client call");
+    }
+
+    @Override
+    public void kickUser(String username) throws RemoteException {
+        call(Protocol.KICK_USER, writer -> writer.writeString(username));
+    }
+
+    @Override
+    public List<String> getConnectedUsers() throws RemoteException {
+        return call(Protocol.GET_CONNECTED_USERS, writer -> writer).readStrings();
+    }
+
+    @Override
+    public List<String> getFailoverNodes() throws RemoteException {
+        return call(Protocol.GET_FAILOVER_NODES, writer -> writer).readStrings();
+    }
+
+    @Override
+    public void drawShape(Shape shape) throws RemoteException {
+        call(Protocol.DRAW_SHAPE, writer -> writer.writeElement(shape));
+    }
+
+    @Override
+    public void drawText(TextElement text) throws RemoteException {
+        call(Protocol.DRAW_TEXT, writer -> writer.writeElement(text));
+    }
+
+    @Override
+    public void clearCanvas() throws RemoteException {
+        call(Protocol.CLEAR_CANVAS, writer -> writer);
+    }
+
+    @Override
+    public OpAck submitOps(String username, long session, long base, List<ClientOp> ops) throws RemoteException {
+        return call(Protocol.SUBMIT_OPS, writer -> writer.writeString(username).writeLong(session).writeLong(base)
+                .writeClientOps(ops)).readAck();
+    }
+
+    @Override
+    public boolean saveWhiteboard(String filename) throws RemoteException {
+        return call(Protocol.SAVE_WHITEBOARD, writer -> writer.writeString(filename)).readBoolean();
+    }
+
+    @Override
+    public boolean loadWhiteboard(String filename) throws RemoteException {
+        return call(Protocol.LOAD_WHITEBOARD, writer -> writer.writeString(filename)).readBoolean();
+    }
+
+    @Override
+    public Map<Long, IDrawable> getCurrentState() throws RemoteException {
+        FrameReader reply = call(Protocol.GET_CURRENT_STATE, writer -> writer);
+        try {
+            return reply.readElementMap();
+        } catch (IOException e) {
+            throw new RemoteException("Malformed board state", e);
+        }
+    }
+
+    @Override
+    public SnapshotChunk openSnapshot(String username, Rectangle viewport) throws RemoteException {
+        FrameReader reply = call(Protocol.OPEN_SNAPSHOT,
+                writer -> writer.writeString(username).writeRectangle(viewport));
+        return readChunk(reply);
+    }
+
+    @Override
+    public SnapshotChunk fetchSnapshotChunk(String username, long version, int index) throws RemoteException {
+        FrameReader reply = call(Protocol.FETCH_SNAPSHOT_CHUNK,
+                writer -> writer.writeString(username).writeLong(version).writeInt(index));
+        return readChunk(reply);
+    }
+
+    private static SnapshotChunk readChunk(FrameReader reply) throws RemoteException {
+        try {
+            return reply.readChunk();
+        } catch (IOException e) {
+            throw new RemoteException("Malformed snapshot chunk", e);
+        }
+    }
+
+    private interface Arguments {
+        FrameWriter write(FrameWriter writer) throws IOException;
+    }
+
+    /**
+     * Sends a call and waits for its reply
+     */
+    private FrameReader call(byte method, Arguments arguments) throws RemoteException {
+        int callId = nextCallId.incrementAndGet();
+        CompletableFuture<FrameReader> reply = new CompletableFuture<>();
+        pending.put(callId, reply);
+        try {
+            connection.send(arguments.write(new FrameWriter(Protocol.CALL, callId, method)).toFrame());
+            return reply.get(CALL_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        } catch (IOException e) {
+            throw new ConnectIOException("Connection to server lost", e);
+        } catch (TimeoutException e) {
+            throw new RemoteException("Server did not answer within " + CALL_TIMEOUT_MS + " ms");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RemoteException("Interrupted while waiting for server", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RemoteException) {
+                throw (RemoteException) cause;
+            }
+            throw new RemoteException(cause.getMessage(), cause);
+        } finally {
+            pending.remove(callId);
+        }
+    }
+
+    // FrameLoop.Listener, runs on the loop thread
+    @Override
+    public void onFrame(FrameConnection source, ByteBuffer frame) {
+        FrameReader reader;
+        try {
+            reader = new FrameReader(frame);
+        } catch (IOException e) {
+            System.err.println("Dropping malformed frame from server: " + e.getMessage());
+            return;
+        }
+
+        switch (reader.getKind()) {
+            case Protocol.REPLY: {
+                CompletableFuture<FrameReader> reply = pending.get(reader.getCallId());
+                if (reply != null) {
+                    reply.complete(reader);
+                }
+                break;
+            }
+            case Protocol.FAILURE: {
+                CompletableFuture<FrameReader> reply = pending.get(reader.getCallId());
+                if (reply != null) {
+                    reply.completeExceptionally(new RemoteException(reader.readString()));
+                }
+                break;
+            }
+            case Protocol.REDIRECT: {
+                CompletableFuture<FrameReader> reply = pending.get(reader.getCallId());
+                if (reply != null) {
+                    String boardId = reader.readString();
+                    reply.completeExceptionally(new BoardMovedException(boardId, reader.readString()));
+                }
+                break;
+            }
+            case Protocol.CALLBACK:
+                callbackThread.execute(() -> deliver(reader));
+                break;
+            default:
+                System.err.println("Dropping frame of unknown kind " + reader.getKind());
+        }
+    }
+
+    @Override
+    public void onClosed(FrameConnection source) {
+        RemoteException closed = new ConnectIOException("Connection to server closed");
+        for (CompletableFuture<FrameReader> reply : pending.values()) {
+            reply.completeExceptionally(closed);
+        }
+    }
+
+    /**
+     * Hands a callback to the joined client, runs on the callback thread
+     */
+    private void deliver(FrameReader callback) {
+        IRemoteClient target = client;
+        if (target == null) {
+            return;
+        }
+        try {
+            switch (callback.getMethod()) {
+                case Protocol.APPLY_OPS:
+                    target.applyOps(callback.readOps());
+                    break;
+                case Protocol.UPDATE_USER_LIST:
+                    target.updateUserList(callback.readLong(), callback.readPresence());
+                    break;
+                case Protocol.PRESENCE_CHANGED:
+                    target.presenceChanged(callback.readPresence());
+                    break;
+                case Protocol.RECEIVE_NOTIFICATION:
+                    target.receiveNotification(callback.readString());
+                    break;
+                case Protocol.JOIN_REQUEST_RESULT:
+                    target.joinRequestResult(callback.readBoolean());
+                    break;
+                case Protocol.JOIN_REQUESTS_PENDING:
+                    target.joinRequestsPending(callback.readStrings());
+                    break;
+                case Protocol.KICKED_FROM_SERVER:
+                    target.kickedFromServer();
+                    break;
+                case Protocol.MANAGER_CLOSED_WHITEBOARD:
+                    target.managerClosedWhiteboard();
+                    break;
+                case Protocol.BOARD_MOVED: {
+                    String boardId = callback.readString();
+                    target.boardMoved(boardId, callback.readString());
+                    break;
+                }
+                default:
+                    System.err.println("Ignoring unknown callback " + callback.getMethod());
+            }
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Error handling server callback: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package com.jaiswal.transport;
+
+/**
+ * Message layout of the NIO transport. Every frame starts with
+ * <pre>
+ * kind (byte), call ID (int), method (byte)
+ * </pre>
+ * followed by the arguments or result. Calls from one connection may be in
+ * flight concurrently; replies are matched to them by call ID. Callbacks are
+ * one-way and carry call ID 0.
+ * <p>
+ * A connection first opens a board; every whiteboard call after that goes to it.
+ */
+final class Protocol {
+    // Frame kinds
+    static final byte CALL = 1;
+    static final byte REPLY = 2;
+    static final byte FAILURE = 3;
+    static final byte CALLBACK = 4;
+    // Failure because the board lives on another node: board ID and owner address
+    static final byte REDIRECT = 5;
+
+    // IRemoteWhiteboard methods
+    static final byte REQUEST_JOIN = 1;
+    static final byte DISCONNECT = 2;
+    static final byte KICK_USER = 3;
+    static final byte GET_CONNECTED_USERS = 4;
+    static final byte DRAW_SHAPE = 5;
+    static final byte DRAW_TEXT = 6;
+    static final byte CLEAR_CANVAS = 7;
+    static final byte SAVE_WHITEBOARD = 8;
+    static final byte LOAD_WHITEBOARD = 9;
+    static final byte GET_CURRENT_STATE = 10;
+    static final byte OPEN_SNAPSHOT = 11;
+    static final byte FETCH_SNAPSHOT_CHUNK = 12;
+    static final byte GET_FAILOVER_NODES = 15;
+    static final byte SUBMIT_OPS = 16;
+    static final byte RESUME_SESSION = 17;
+    static final byte GET_EPOCH = 18;
+    static final byte FETCH_OPS_SINCE = 19;
+    static final byte GET_DIGEST_NODES = 20;
+    static final byte FETCH_BUCKETS = 21;
+    static final byte ANSWER_JOIN_REQUESTS = 22;
+
+    // IRemoteBoardDirectory methods
+    static final byte OPEN_BOARD = 13;
+    static final byte LIST_BOARDS = 14;
+
+    // IRemoteClient callbacks
+    static final byte APPLY_OPS = 1;
+    static final byte UPDATE_USER_LIST = 2;
+    static final byte RECEIVE_NOTIFICATION = 3;
+    static final byte JOIN_REQUEST_RESULT = 4;
+    static final byte KICKED_FROM_SERVER = 5;
+    static final byte MANAGER_CLOSED_WHITEBOARD = 6;
+    static final byte BOARD_MOVED = 7;
+    static final byte JOIN_REQUESTS_PENDING = 8;
+    static final byte PRESENCE_CHANGED = 9;
+
+    private Protocol() {
+    }
+}
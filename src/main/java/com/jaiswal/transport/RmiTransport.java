@@ -0,0 +1,142 @@
+package com.jaiswal.transport;
+
+import com.jaiswal.shared.CompressingSocketFactory;
+import com.jaiswal.shared.IRemoteBoardDirectory;
+import com.jaiswal.shared.IRemoteClient;
+import com.jaiswal.shared.IRemoteWhiteboard;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.rmi.NoSuchObjectException;
+import java.rmi.NotBoundException;
+import java.rmi.RemoteException;
+import java.rmi.registry.LocateRegistry;
+import java.rmi.registry.Registry;
+import java.rmi.server.UnicastRemoteObject;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Java RMI transport. The board directory is bound in an RMI registry on the
+ * given port; each board is exported the first time a client opens it. All
+ * objects are exported over {@link CompressingSocketFactory} sockets.
+ */
+public class RmiTransport implements Transport {
+    // Names the directory, and the default board for older clients, are bound under
+    public static final String DIRECTORY_NAME = "SyncBoard";
+    public static final String BINDING_NAME = "WhiteboardServer";
+
+    private final CompressingSocketFactory sockets = CompressingSocketFactory.fromSystemProperties();
+
+    @Override
+    public String getName() {
+        return "rmi";
+    }
+
+    @Override
+    public Closeable serve(IRemoteBoardDirectory directory, String host, int port) throws IOException {
+        // Set hostname property
+        System.setProperty("java.rmi.server.hostname", host);
+
+        // Create registry
+        Registry registry;
+        try {
+            System.out.println("Creating RMI registry on port " + port);
+            registry = LocateRegistry.createRegistry(port);
+            System.out.println("RMI registry created on port " + port);
+        } catch (RemoteException e) {
+            System.out.println("RMI registry already exists, getting existing registry");
+            registry = LocateRegistry.getRegistry(host, port);
+            System.out.println("RMI registry found on port " + port);
+        }
+
+        // Export over compressing, low-latency sockets
+        ExportingDirectory exporting = new ExportingDirectory(directory);
+        IRemoteBoardDirectory stub = (IRemoteBoardDirectory) UnicastRemoteObject.exportObject(
+                exporting, 0, sockets, sockets);
+        System.out.println("Exported with " + sockets);
+        registry.rebind(DIRECTORY_NAME, stub);
+        registry.rebind(BINDING_NAME, exporting.openBoard(IRemoteBoardDirectory.DEFAULT_BOARD));
+
+        Registry bound = registry;
+        return () -> {
+            for (String name : new String[]{DIRECTORY_NAME, BINDING_NAME}) {
+                try {
+                    bound.unbind(name);
+                } catch (NotBoundException ignored) {
+                    // Already gone
+                }
+            }
+            UnicastRemoteObject.unexportObject(exporting, true);
+            exporting.unexportAll();
+        };
+    }
+
+    @Override
+    public IRemoteWhiteboard connect(String host, int port, String boardId) throws IOException {
+        // Set important RMI properties
+        System.setProperty("java.rmi.server.hostname", host);
+        System.setProperty("java.rmi.server.useLocalHostname", "true");
+        System.setProperty("java.net.preferIPv4Stack", "true");
+
+        Registry registry = LocateRegistry.getRegistry(host, port);
+        try {
+            IRemoteBoardDirectory directory = (IRemoteBoardDirectory) registry.lookup(DIRECTORY_NAME);
+            return directory.openBoard(boardId);
+        } catch (NotBoundException e) {
+            throw new IOException("No whiteboard server bound at " + host + ":" + port, e);
+        }
+    }
+
+    @Override
+    public IRemoteClient exportClient(IRemoteClient client) throws IOException {
+        // Server callbacks use the same socket settings as our calls
+        return (IRemoteClient) UnicastRemoteObject.exportObject(client, 0, sockets, sockets);
+    }
+
+    @Override
+    public void unexportClient(IRemoteClient client) {
+        try {
+            UnicastRemoteObject.unexportObject(client, true);
+        } catch (NoSuchObjectException ignored) {
+            // Never exported or already unexported
+        }
+    }
+
+    /**
+     * Directory handed out to RMI clients. Exports each board the first time
+     * it is opened and returns its stub.
+     */
+    private final class ExportingDirectory implements IRemoteBoardDirectory {
+        private final IRemoteBoardDirectory directory;
+        private final Map<IRemoteWhiteboard, IRemoteWhiteboard> stubs = new HashMap<>();
+
+        ExportingDirectory(IRemoteBoardDirectory directory) {
+            this.directory = directory;
+        }
+
+        @Override
+        public synchronized IRemoteWhiteboard openBoard(String boardId) throws RemoteException {
+            IRemoteWhiteboard board = directory.openBoard(boardId);
+            IRemoteWhiteboard stub = stubs.get(board);
+            if (stub == null) {
+                stub = (IRemoteWhiteboard) UnicastRemoteObject.exportObject(board, 0, sockets, sockets);
+                stubs.put(board, stub);
+            }
+            return stub;
+        }
+
+        @Override
+        public List<String> listBoards() throws RemoteException {
+            return directory.listBoards();
+        }
+
+        synchronized void unexportAll() throws NoSuchObjectException {
+            for (IRemoteWhiteboard board : stubs.keySet()) {
+                UnicastRemoteObject.unexportObject(board, true);
+            }
+            stubs.clear();
+        }
+    }
+}
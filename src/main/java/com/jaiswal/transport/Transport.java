@@ -0,0 +1,69 @@
+package com.jaiswal.transport;
+
+import com.jaiswal.shared.IRemoteBoardDirectory;
+import com.jaiswal.shared.IRemoteClient;
+import com.jaiswal.shared.IRemoteWhiteboard;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Carries {@link IRemoteWhiteboard} calls from clients to the server and
+ * {@link IRemoteClient} callbacks back. The server and client code only see
+ * these two interfaces; how calls travel is up to the transport.
+ */
+public interface Transport {
+    // System property selecting the transport: "rmi" (default) or "nio"
+    String TRANSPORT_PROPERTY = "syncboard.transport";
+
+    /**
+     * @return Short name of the transport, for logging
+     */
+    String getName();
+
+    /**
+     * Makes the boards of a directory reachable by clients
+     * @param directory The boards to serve
+     * @param host Host name clients use to reach this machine
+     * @param port Port to listen on
+     * @return Handle that stops serving when closed
+     * @throws IOException If the endpoint cannot be set up
+     */
+    Closeable serve(IRemoteBoardDirectory directory, String host, int port) throws IOException;
+
+    /**
+     * Connects to one board of a server
+     * @param host Server host
+     * @param port Server port
+     * @param boardId The board to open, created if it does not exist
+     * @return Proxy forwarding calls to the board
+     * @throws IOException If the server cannot be reached or refuses the board
+     */
+    IRemoteWhiteboard connect(String host, int port, String boardId) throws IOException;
+
+    /**
+     * Prepares a local client to receive callbacks
+     * @param client The local client
+     * @return The reference to pass to {@link IRemoteWhiteboard#requestJoin}
+     * @throws IOException If the client cannot be exported
+     */
+    IRemoteClient exportClient(IRemoteClient client) throws IOException;
+
+    /**
+     * Stops delivering callbacks to a client exported by this transport
+     * @param client The local client
+     */
+    void unexportClient(IRemoteClient client);
+
+    /**
+     * Creates the transport selected by the {@value #TRANSPORT_PROPERTY} system property
+     * @return The transport
+     */
+    static Transport create() {
+        String name = System.getProperty(TRANSPORT_PROPERTY, "rmi");
+        if ("nio".equalsIgnoreCase(name)) {
+            return new NioTransport();
+        }
+        return new RmiTransport();
+    }
+}
@@ -0,0 +1,157 @@
+package com.jaiswal.client;
+
+import com.jaiswal.shared.ClientOp;
+import com.jaiswal.shared.IDrawable;
+import com.jaiswal.shared.shapes.Line;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class OpJournalTest {
+    @TempDir
+    Path dir;
+
+    @Test
+    void recoversUnackedOpsInTheSameSession() throws IOException {
+        Path path = dir.resolve("board-alice.journal");
+        OpJournal journal = OpJournal.open(path);
+        long session = journal.getSession();
+        List<ClientOp> ops = ops(1, 5);
+        ops.forEach(journal::append);
+        journal.acked(2, ops.subList(2, 5));
+        journal.close();
+
+        OpJournal reopened = OpJournal.open(path);
+        assertEquals(session, reopened.getSession());
+        assertEquals(List.of(3L, 4L, 5L), sequences(reopened.getRecovered()));
+        assertEquals(element(4).getBounds(), reopened.getRecovered().get(1).getElement().getBounds());
+        reopened.close();
+    }
+
+    @Test
+    void dropsATornLastRecordWhereverItWasCut() throws IOException {
+        Path path = dir.resolve("board-alice.journal");
+        OpJournal journal = OpJournal.open(path);
+        ops(1, 2).forEach(journal::append);
+        journal.close();
+        byte[] intact = Files.readAllBytes(path);
+        journal = OpJournal.open(path);
+        journal.append(ClientOp.add(3, element(3)));
+        journal.close();
+        byte[] complete = Files.readAllBytes(path);
+
+        // The client stopped after writing any part of the last record
+        for (int length = intact.length; length < complete.length; length++) {
+            Files.write(path, Arrays.copyOf(complete, length));
+            OpJournal reopened = OpJournal.open(path);
+            assertEquals(List.of(1L, 2L), sequences(reopened.getRecovered()), "cut at " + length);
+            reopened.close();
+        }
+    }
+
+    @Test
+    void appendsAfterTheLastIntactRecord() throws IOException {
+        Path path = dir.resolve("board-alice.journal");
+        OpJournal journal = OpJournal.open(path);
+        ops(1, 3).forEach(journal::append);
+        journal.close();
+
+        try (FileChannel file = FileChannel.open(path, StandardOpenOption.WRITE)) {
+            file.truncate(file.size() - 3);
+        }
+        OpJournal reopened = OpJournal.open(path);
+        assertEquals(List.of(1L, 2L), sequences(reopened.getRecovered()));
+
+        // New records follow the last intact one rather than the torn bytes
+        reopened.append(ClientOp.add(3, element(30)));
+        reopened.close();
+        OpJournal again = OpJournal.open(path);
+        assertEquals(List.of(1L, 2L, 3L), sequences(again.getRecovered()));
+        assertEquals(element(30).getBounds(), again.getRecovered().get(2).getElement().getBounds());
+        again.close();
+    }
+
+    @Test
+    void renumberedOpsReplaceEarlierOnes() throws IOException {
+        Path path = dir.resolve("board-alice.journal");
+        OpJournal journal = OpJournal.open(path);
+        ops(1, 4).forEach(journal::append);
+        // A clear took the place of ops 2 to 4, which were never sent
+        journal.append(ClientOp.clear(2));
+        journal.close();
+
+        OpJournal reopened = OpJournal.open(path);
+        List<ClientOp> recovered = reopened.getRecovered();
+        assertEquals(List.of(1L, 2L), sequences(recovered));
+        assertEquals(ClientOp.Kind.CLEAR, recovered.get(1).getKind());
+        reopened.close();
+    }
+
+    @Test
+    void removesTheFileOnceEverythingIsAcked() throws IOException {
+        Path path = dir.resolve("board-alice.journal");
+        OpJournal journal = OpJournal.open(path);
+        long session = journal.getSession();
+        ops(1, 3).forEach(journal::append);
+        journal.acked(3, Collections.emptyList());
+        journal.close();
+        assertFalse(Files.exists(path));
+
+        OpJournal fresh = OpJournal.open(path);
+        assertTrue(fresh.getRecovered().isEmpty());
+        assertNotEquals(session, fresh.getSession());
+        fresh.close();
+    }
+
+    @Test
+    void ignoresAFileWithoutAHeader() throws IOException {
+        Path path = dir.resolve("board-alice.journal");
+        Files.write(path, new byte[]{1, 2, 3});
+        OpJournal journal = OpJournal.open(path);
+        assertTrue(journal.getRecovered().isEmpty());
+        journal.close();
+    }
+
+    @Test
+    void refusesASecondClientOfTheSameUser() throws IOException {
+        Path path = dir.resolve("board-alice.journal");
+        OpJournal journal = OpJournal.open(path);
+        assertThrows(IOException.class, () -> OpJournal.open(path));
+        journal.close();
+    }
+
+    private static IDrawable element(int i) {
+        return new Line(i, i, i + 10, i + 20);
+    }
+
+    private static List<ClientOp> ops(long from, long to) {
+        List<ClientOp> ops = new ArrayList<>();
+        for (long sequence = from; sequence <= to; sequence++) {
+            ops.add(ClientOp.add(sequence, element((int) sequence)));
+        }
+        return ops;
+    }
+
+    private static List<Long> sequences(List<ClientOp> ops) {
+        List<Long> sequences = new ArrayList<>();
+        for (ClientOp op : ops) {
+            sequences.add(op.getSequence());
+        }
+        return sequences;
+    }
+}
@@ -0,0 +1,140 @@
+package com.jaiswal.client;
+
+import com.jaiswal.shared.ClientOp;
+import com.jaiswal.shared.IRemoteWhiteboard;
+import com.jaiswal.shared.OpAck;
+import com.jaiswal.shared.shapes.Line;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.lang.reflect.Proxy;
+import java.nio.file.Path;
+import java.rmi.ConnectException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class OpPipelineTest {
+    @TempDir
+    Path dir;
+
+    private OpPipeline pipeline;
+
+    @AfterEach
+    void shutdown() {
+        if (pipeline != null) {
+            pipeline.shutdown();
+        }
+    }
+
+    @Test
+    void resendsWhatTheServerLost() throws IOException {
+        // Every third call is lost, and ops arriving ahead of a gap are dropped
+        FakeBoard board = new FakeBoard();
+        board.loseEvery = 3;
+        pipeline = new OpPipeline("alice", OpJournal.open(dir.resolve("alice.journal")), board::proxy,
+                lost -> { }, error -> { }, () -> { });
+        pipeline.resume();
+        for (int i = 0; i < 3_000; i++) {
+            pipeline.add(new Line(i, i, i + 1, i + 1));
+        }
+
+        assertTrue(pipeline.awaitAcked(20_000), "unacked " + pipeline.getUnackedCount());
+        assertEquals(3_000, board.applied.size());
+        for (int i = 0; i < board.applied.size(); i++) {
+            assertEquals(i + 1L, (long) board.applied.get(i));
+        }
+        assertTrue(board.calls.get() > 3_000 / 200, "ops went out in batches");
+    }
+
+    @Test
+    void resumesFromTheAckAfterTheConnectionDropped() throws IOException {
+        FakeBoard board = new FakeBoard();
+        board.failCall = 3;
+        List<IRemoteWhiteboard> lost = Collections.synchronizedList(new ArrayList<>());
+        pipeline = new OpPipeline("alice", OpJournal.open(dir.resolve("alice.journal")), board::proxy,
+                lost::add, error -> { }, () -> { });
+        pipeline.resume();
+        for (int i = 0; i < 1_000; i++) {
+            pipeline.add(new Line(i, i, i + 1, i + 1));
+        }
+
+        // Sending stops until the client is back on the board
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (lost.isEmpty() && System.currentTimeMillis() < deadline) {
+            Thread.yield();
+        }
+        assertEquals(1, lost.size());
+        pipeline.resume();
+        assertTrue(pipeline.awaitAcked(20_000), "unacked " + pipeline.getUnackedCount());
+        assertEquals(1_000, board.applied.size());
+        assertEquals(1_000L, (long) board.applied.get(999));
+        assertEquals(1, lost.size());
+    }
+
+    @Test
+    void clearReplacesOpsNotSentYet() throws IOException {
+        FakeBoard board = new FakeBoard();
+        pipeline = new OpPipeline("alice", OpJournal.open(dir.resolve("alice.journal")), board::proxy,
+                lost -> { }, error -> { }, () -> { });
+        // Not joined yet, nothing goes out
+        for (int i = 0; i < 5; i++) {
+            pipeline.add(new Line(i, i, i + 1, i + 1));
+        }
+        pipeline.clear();
+        List<ClientOp> pending = pipeline.pendingOps(0);
+        assertEquals(1, pending.size());
+        assertEquals(ClientOp.Kind.CLEAR, pending.get(0).getKind());
+        assertEquals(1L, pending.get(0).getSequence());
+
+        pipeline.resume();
+        assertTrue(pipeline.awaitAcked(5_000));
+        assertEquals(List.of(1L), board.applied);
+    }
+
+    /**
+     * Server side of submitOps that applies ops strictly in order, without
+     * holding early ones as the real server does, so every gap forces the
+     * client to go back and resend
+     */
+    private static final class FakeBoard {
+        final List<Long> applied = new ArrayList<>();
+        final AtomicInteger calls = new AtomicInteger();
+        int loseEvery;
+        int failCall;
+        private final IRemoteWhiteboard proxy = (IRemoteWhiteboard) Proxy.newProxyInstance(
+                getClass().getClassLoader(), new Class<?>[]{IRemoteWhiteboard.class}, (self, method, args) -> {
+                    if (!method.getName().equals("submitOps")) {
+                        throw new UnsupportedOperationException(method.getName());
+                    }
+                    @SuppressWarnings("unchecked")
+                    List<ClientOp> ops = (List<ClientOp>) args[3];
+                    return submit(ops);
+                });
+
+        IRemoteWhiteboard proxy() {
+            return proxy;
+        }
+
+        synchronized OpAck submit(List<ClientOp> ops) throws ConnectException {
+            int call = calls.incrementAndGet();
+            if (call == failCall) {
+                throw new ConnectException("Connection refused");
+            }
+            if (loseEvery == 0 || call % loseEvery != 0) {
+                for (ClientOp op : ops) {
+                    if (op.getSequence() == applied.size() + 1) {
+                        applied.add(op.getSequence());
+                    }
+                }
+            }
+            return new OpAck(applied.size(), applied.size(), Collections.emptyList());
+        }
+    }
+}
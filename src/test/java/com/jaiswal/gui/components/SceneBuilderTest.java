@@ -0,0 +1,124 @@
+package com.jaiswal.gui.components;
+
+import com.jaiswal.shared.BoardDigest;
+import com.jaiswal.shared.BoardOp;
+import com.jaiswal.shared.ElementCodec;
+import com.jaiswal.shared.ElementId;
+import com.jaiswal.shared.IDrawable;
+import com.jaiswal.shared.shapes.Line;
+import org.junit.jupiter.api.Test;
+
+import java.awt.Color;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SceneBuilderTest {
+
+    @Test
+    void repairAtAnOlderVersionKeepsTheOpsSince() {
+        // Element 1 arrived garbled; element 11, added after the check, falls into the same bucket
+        long garbled = ElementId.of(1, 1);
+        long later = idInBucketOf(garbled, 2);
+        List<IDrawable> board = new ArrayList<>();
+        SceneBuilder builder = new SceneBuilder();
+        for (int i = 0; i < 10; i++) {
+            long id = i == 0 ? garbled : ElementId.of(3, i);
+            board.add(line(id, Color.BLACK));
+            builder.apply(BoardOp.add(i + 1, i == 0 ? line(id, Color.RED) : line(id, Color.BLACK)));
+        }
+        long checkedAt = builder.getVersion();
+        long[] local = builder.getDigestBuckets();
+        long[] server = digestOf(board).getBuckets();
+        int[] differing = differing(server, local);
+        assertArrayEquals(new int[]{BoardDigest.bucketOf(garbled)}, differing);
+
+        // Meanwhile more ops land, before the repair does
+        IDrawable added = line(later, Color.BLUE);
+        builder.apply(BoardOp.add(checkedAt + 1, added));
+        board.add(added);
+        builder.repair(checkedAt, differing, inBuckets(board.subList(0, 10), differing));
+
+        assertArrayEquals(digestOf(board).getBuckets(), builder.getDigestBuckets());
+        assertTrue(ElementCodec.sameContent(board.get(0), find(builder, garbled)));
+        assertTrue(ElementCodec.sameContent(added, find(builder, later)));
+        assertEquals(board.size(), builder.getElements().size());
+    }
+
+    @Test
+    void repairIsDroppedAfterAClear() {
+        SceneBuilder builder = new SceneBuilder();
+        builder.apply(BoardOp.add(1, line(ElementId.of(1, 1), Color.RED)));
+        builder.apply(BoardOp.clear(2));
+        long[] cleared = builder.getDigestBuckets();
+
+        IDrawable fixed = line(ElementId.of(1, 1), Color.BLACK);
+        int[] bucket = {BoardDigest.bucketOf(fixed.getId())};
+        builder.repair(1, bucket, Collections.singletonList(fixed));
+        assertArrayEquals(cleared, builder.getDigestBuckets());
+        assertTrue(builder.getElements().isEmpty());
+
+        // A snapshot starts a new log as well
+        builder.reset(5, Collections.emptyList());
+        builder.repair(3, bucket, Collections.singletonList(fixed));
+        assertTrue(builder.getElements().isEmpty());
+        builder.repair(5, bucket, Collections.singletonList(fixed));
+        assertEquals(1, builder.getElements().size());
+    }
+
+    private static long idInBucketOf(long id, int replica) {
+        for (long counter = 1; ; counter++) {
+            long candidate = ElementId.of(replica, counter);
+            if (BoardDigest.bucketOf(candidate) == BoardDigest.bucketOf(id)) {
+                return candidate;
+            }
+        }
+    }
+
+    private static IDrawable find(SceneBuilder builder, long id) {
+        for (IDrawable drawable : builder.getElements()) {
+            if (drawable.getId() == id) {
+                return drawable;
+            }
+        }
+        throw new AssertionError("No element " + ElementId.toString(id));
+    }
+
+    private static List<IDrawable> inBuckets(List<IDrawable> elements, int[] buckets) {
+        List<IDrawable> found = new ArrayList<>();
+        for (IDrawable drawable : elements) {
+            for (int bucket : buckets) {
+                if (BoardDigest.bucketOf(drawable.getId()) == bucket) {
+                    found.add(drawable);
+                }
+            }
+        }
+        return found;
+    }
+
+    private static int[] differing(long[] a, long[] b) {
+        List<Integer> buckets = new ArrayList<>();
+        for (int i = 0; i < a.length; i++) {
+            if (a[i] != b[i]) {
+                buckets.add(i);
+            }
+        }
+        return buckets.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    private static BoardDigest digestOf(List<IDrawable> elements) {
+        BoardDigest digest = new BoardDigest();
+        elements.forEach(digest::add);
+        return digest;
+    }
+
+    private static IDrawable line(long id, Color color) {
+        IDrawable line = new Line(0, 0, 10, 10, color, 1f);
+        line.setId(id);
+        return line;
+    }
+}
@@ -0,0 +1,136 @@
+package com.jaiswal.server;
+
+import com.jaiswal.shared.ElementCodec;
+import com.jaiswal.shared.ElementId;
+import com.jaiswal.shared.IDrawable;
+import com.jaiswal.shared.shapes.Circle;
+import com.jaiswal.shared.shapes.Line;
+import com.jaiswal.shared.shapes.Rectangle;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.awt.Color;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BoardFileTest {
+    @TempDir
+    Path dir;
+
+    @Test
+    void readsBackWhatItWrote() throws IOException {
+        // Stacking order unrelated to ID order, as with IDs minted by several clients
+        List<IDrawable> elements = new ArrayList<>();
+        elements.add(withId(new Line(0, 0, 10, 10, Color.RED, 2f), ElementId.of(7, 1)));
+        elements.add(withId(new Rectangle(100, 100, 20, 30, Color.BLUE, 1f), ElementId.of(2, 5)));
+        elements.add(withId(new Circle(300, 300, 15, Color.RED, 2f), ElementId.of(7, 2)));
+        elements.add(withId(new Line(5, 5, 6, 6, Color.GREEN, 3f), ElementId.of(2, 1)));
+        BoardStore store = new HeapBoardStore();
+        elements.forEach(store::put);
+
+        Path path = dir.resolve("board.sbd");
+        BoardFile.write(path, store);
+        BoardFile file = BoardFile.open(path);
+
+        assertEquals(elements.size(), file.size());
+        for (int record = 0; record < elements.size(); record++) {
+            IDrawable expected = elements.get(record);
+            assertEquals(expected.getId(), file.idAt(record));
+            assertEquals(record, file.find(expected.getId()));
+            IDrawable decoded = file.decode(record);
+            assertEquals(expected.getId(), decoded.getId());
+            assertTrue(ElementCodec.sameContent(expected, decoded));
+        }
+        assertEquals(-1, file.find(ElementId.of(3, 1)));
+        assertTrue(file.intersects(1, new java.awt.Rectangle(110, 110, 5, 5)));
+        assertFalse(file.intersects(1, new java.awt.Rectangle(0, 0, 50, 50)));
+    }
+
+    @Test
+    void readsVersion1Files() throws IOException {
+        List<IDrawable> elements = new ArrayList<>();
+        for (int i = 1; i <= 50; i++) {
+            elements.add(withId(new Line(i, i, i + 10, i + 10, i % 2 == 0 ? Color.RED : Color.BLACK, 1f), i));
+        }
+        Path path = dir.resolve("old.sbd");
+        writeVersion1(path, elements);
+        BoardFile file = BoardFile.open(path);
+
+        assertEquals(elements.size(), file.size());
+        for (int record = 0; record < elements.size(); record++) {
+            IDrawable expected = elements.get(record);
+            assertEquals(expected.getId(), file.idAt(record));
+            assertEquals(record, file.find(expected.getId()));
+            assertTrue(ElementCodec.sameContent(expected, file.decode(record)));
+        }
+        assertEquals(-1, file.find(0));
+        assertEquals(-1, file.find(51));
+        assertTrue(file.intersects(9, new java.awt.Rectangle(15, 15, 1, 1)));
+        assertFalse(file.intersects(9, new java.awt.Rectangle(40, 0, 5, 5)));
+    }
+
+    @Test
+    void rejectsOtherFiles() throws IOException {
+        Path path = dir.resolve("other.sbd");
+        Files.write(path, new byte[64]);
+        assertThrows(IOException.class, () -> BoardFile.open(path));
+
+        ByteBuffer future = ByteBuffer.allocate(64);
+        future.putInt(0x53424446).putShort((short) 3);
+        Files.write(path, future.array());
+        assertThrows(IOException.class, () -> BoardFile.open(path));
+    }
+
+    private static IDrawable withId(IDrawable drawable, long id) {
+        drawable.setId(id);
+        return drawable;
+    }
+
+    // Version 1 layout: 40-byte header without index offset, 40-byte records with int IDs sorted by ID
+    private static void writeVersion1(Path path, List<IDrawable> elements) throws IOException {
+        List<byte[]> payloads = new ArrayList<>();
+        List<Integer> styles = new ArrayList<>();
+        int payloadSize = 0;
+        for (IDrawable drawable : elements) {
+            byte[] payload = ElementCodec.encodePayload(drawable);
+            payloads.add(payload);
+            payloadSize += payload.length;
+            if (!styles.contains(ElementCodec.colorOf(drawable))) {
+                styles.add(ElementCodec.colorOf(drawable));
+            }
+        }
+        int recordsOffset = 40;
+        int payloadOffset = recordsOffset + elements.size() * 40;
+        int stylesOffset = payloadOffset + payloadSize;
+        ByteBuffer out = ByteBuffer.allocate(stylesOffset + styles.size() * 8);
+        out.putInt(0x53424446).putShort((short) 1).putShort((short) 0);
+        out.putInt(elements.size()).putInt(styles.size());
+        out.putLong(recordsOffset).putLong(payloadOffset).putLong(stylesOffset);
+
+        long offset = 0;
+        for (int i = 0; i < elements.size(); i++) {
+            IDrawable drawable = elements.get(i);
+            java.awt.Rectangle bounds = drawable.getBounds();
+            out.putInt((int) drawable.getId());
+            out.put(ElementCodec.typeOf(drawable)).put(new byte[3]);
+            out.putInt(bounds.x).putInt(bounds.y).putInt(bounds.width).putInt(bounds.height);
+            out.putInt(styles.indexOf(ElementCodec.colorOf(drawable)));
+            out.putLong(offset).putInt(payloads.get(i).length);
+            offset += payloads.get(i).length;
+        }
+        payloads.forEach(out::put);
+        for (int argb : styles) {
+            out.putInt(argb).putFloat(1f);
+        }
+        Files.write(path, out.array());
+    }
+}
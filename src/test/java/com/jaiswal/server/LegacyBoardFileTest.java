@@ -0,0 +1,91 @@
+package com.jaiswal.server;
+
+import com.jaiswal.shared.ElementCodec;
+import com.jaiswal.shared.IDrawable;
+import com.jaiswal.shared.TextElement;
+import com.jaiswal.shared.shapes.Circle;
+import com.jaiswal.shared.shapes.FreehandShape;
+import com.jaiswal.shared.shapes.Line;
+import com.jaiswal.shared.shapes.Rectangle;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.Point;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectOutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LegacyBoardFileTest {
+    @TempDir
+    Path dir;
+
+    @Test
+    void readsBoardsSavedBeforeBoardFiles() throws IOException {
+        // Saved by the element classes of that time, with int IDs 2, 5, 8, 11 and 14
+        Path path = fixture();
+        assertTrue(LegacyBoardFile.isLegacy(path));
+        BoardStore store = LegacyBoardFile.read(path);
+
+        List<IDrawable> expected = new ArrayList<>();
+        expected.add(new Line(1, 2, 30, 40, Color.RED, 2f));
+        expected.add(new Rectangle(5, 5, 50, 60, Color.BLUE, 3f));
+        expected.add(new Circle(100, 100, 20, Color.GREEN, 1f));
+        expected.add(new FreehandShape(Arrays.asList(new Point(1, 1), new Point(5, 9)), Color.BLACK, 4f));
+        expected.add(new TextElement("hello", new Point(10, 20), Color.MAGENTA, new Font("Dialog", Font.BOLD, 14)));
+        assertArrayEquals(new long[]{2, 5, 8, 11, 14}, store.ids());
+        for (int i = 0; i < expected.size(); i++) {
+            assertTrue(ElementCodec.sameContent(expected.get(i), store.get(store.ids()[i])), "element " + i);
+        }
+
+        // Saving writes a board file, the old one is left as it was
+        Path saved = dir.resolve("saved.wb");
+        BoardFile.write(saved, store);
+        assertFalse(LegacyBoardFile.isLegacy(saved));
+        assertEquals(5, BoardFile.open(saved).size());
+    }
+
+    @Test
+    void rejectsOtherSerializedObjects() throws IOException {
+        Map<Integer, Object> board = new HashMap<>();
+        board.put(1, new File("elsewhere"));
+        Path path = dir.resolve("other.wb");
+        try (ObjectOutputStream out = new ObjectOutputStream(Files.newOutputStream(path))) {
+            out.writeObject(board);
+        }
+        assertTrue(LegacyBoardFile.isLegacy(path));
+        assertThrows(IOException.class, () -> LegacyBoardFile.read(path));
+    }
+
+    @Test
+    void boardFilesAreNotLegacy() throws IOException {
+        Path path = dir.resolve("board.wb");
+        BoardFile.write(path, new HeapBoardStore());
+        assertFalse(LegacyBoardFile.isLegacy(path));
+        Path empty = Files.createFile(dir.resolve("empty.wb"));
+        assertFalse(LegacyBoardFile.isLegacy(empty));
+    }
+
+    private Path fixture() throws IOException {
+        Path path = dir.resolve("legacy-board.wb");
+        try (InputStream in = getClass().getResourceAsStream("legacy-board.wb")) {
+            Files.copy(in, path);
+        }
+        return path;
+    }
+}
@@ -0,0 +1,94 @@
+package com.jaiswal.server;
+
+import com.jaiswal.shared.ElementCodec;
+import com.jaiswal.shared.ElementId;
+import com.jaiswal.shared.IDrawable;
+import com.jaiswal.shared.shapes.Line;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.awt.Color;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MappedBoardStoreTest {
+    @TempDir
+    Path dir;
+
+    @Test
+    void replacedElementsKeepTheirStackingPosition() throws IOException {
+        HeapBoardStore heap = new HeapBoardStore();
+        for (int i = 1; i <= 5; i++) {
+            heap.put(line(ElementId.of(4, 6 - i), Color.BLACK, i));
+        }
+        Path path = dir.resolve("board.sbd");
+        BoardFile.write(path, heap);
+        MappedBoardStore mapped = new MappedBoardStore(BoardFile.open(path), new HeapBoardStore());
+
+        // Replace a file element, add one, then replace the added one, on both stores
+        List<IDrawable> changes = new ArrayList<>();
+        changes.add(line(ElementId.of(4, 3), Color.RED, 30));
+        changes.add(line(ElementId.of(2, 1), Color.BLUE, 60));
+        changes.add(line(ElementId.of(2, 1), Color.GREEN, 70));
+        changes.add(line(ElementId.of(4, 5), Color.RED, 10));
+        for (IDrawable change : changes) {
+            heap.put(change);
+            mapped.put(change);
+        }
+
+        assertEquals(heap.size(), mapped.size());
+        assertArrayEquals(heap.ids(), mapped.ids());
+        List<IDrawable> visited = new ArrayList<>();
+        mapped.forEach((id, drawable) -> visited.add(drawable));
+        long[] ids = heap.ids();
+        assertEquals(ids.length, visited.size());
+        for (int i = 0; i < ids.length; i++) {
+            assertEquals(ids[i], visited.get(i).getId());
+            assertTrue(ElementCodec.sameContent(heap.get(ids[i]), visited.get(i)));
+            assertTrue(ElementCodec.sameContent(heap.get(ids[i]), mapped.get(ids[i])));
+        }
+        // Region checks see the replacement's bounds, not the record's
+        assertTrue(mapped.intersects(ElementId.of(4, 3), new java.awt.Rectangle(35, 35, 2, 2)));
+        assertFalse(mapped.intersects(ElementId.of(4, 3), new java.awt.Rectangle(3, 3, 2, 2)));
+    }
+
+    @Test
+    void detachedStoreKeepsItsContentWithoutTheFile() throws IOException {
+        HeapBoardStore heap = new HeapBoardStore();
+        for (int i = 1; i <= 5; i++) {
+            heap.put(line(ElementId.of(1, i), Color.BLACK, i));
+        }
+        Path path = dir.resolve("board.sbd");
+        BoardFile.write(path, heap);
+        BoardFile file = BoardFile.open(path);
+        MappedBoardStore mapped = new MappedBoardStore(file, new HeapBoardStore());
+        IDrawable replacement = line(ElementId.of(1, 2), Color.RED, 20);
+        heap.put(replacement);
+        mapped.put(replacement);
+        assertTrue(mapped.isMappedFrom(path));
+
+        mapped.detach();
+        assertFalse(mapped.isMappedFrom(path));
+        assertThrows(IllegalStateException.class, () -> file.idAt(0));
+        // Nothing maps the file any more, so it can be replaced
+        BoardFile.write(path, new HeapBoardStore());
+        assertArrayEquals(heap.ids(), mapped.ids());
+        for (long id : heap.ids()) {
+            assertTrue(ElementCodec.sameContent(heap.get(id), mapped.get(id)));
+        }
+    }
+
+    private static IDrawable line(long id, Color color, int at) {
+        IDrawable line = new Line(at, at, at + 10, at + 10, color, 1f);
+        line.setId(id);
+        return line;
+    }
+}
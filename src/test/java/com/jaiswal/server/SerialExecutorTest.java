@@ -0,0 +1,56 @@
+package com.jaiswal.server;
+
+import com.jaiswal.shared.DeliveryLane;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Queue;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class SerialExecutorTest {
+
+    @Test
+    void controlOvertakesQueuedLiveTasks() {
+        Queue<Runnable> pool = new ArrayDeque<>();
+        SerialExecutor executor = new SerialExecutor(pool::add);
+        List<String> ran = new ArrayList<>();
+        executor.execute(DeliveryLane.LIVE, () -> {
+            ran.add("live 1");
+            // Arrives while a broadcast is being sent
+            executor.execute(DeliveryLane.CONTROL, () -> ran.add("control"));
+        });
+        executor.execute(DeliveryLane.LIVE, () -> ran.add("live 2"));
+        executor.execute(DeliveryLane.LIVE, () -> ran.add("live 3"));
+        runAll(pool);
+        assertEquals(Arrays.asList("live 1", "control", "live 2", "live 3"), ran);
+    }
+
+    @Test
+    void failedTaskDoesNotStopTheLane() {
+        Queue<Runnable> pool = new ArrayDeque<>();
+        SerialExecutor executor = new SerialExecutor(pool::add);
+        List<String> ran = new ArrayList<>();
+        executor.execute(() -> {
+            throw new IllegalStateException("callback failed");
+        });
+        executor.execute(() -> ran.add("next"));
+        runAll(pool);
+        assertEquals(Arrays.asList("next"), ran);
+        // Draining started once, and starts again for later tasks
+        executor.execute(() -> ran.add("later"));
+        assertEquals(1, pool.size());
+        runAll(pool);
+        assertEquals(Arrays.asList("next", "later"), ran);
+    }
+
+    private static void runAll(Queue<Runnable> pool) {
+        Runnable drain;
+        while ((drain = pool.poll()) != null) {
+            drain.run();
+        }
+    }
+}
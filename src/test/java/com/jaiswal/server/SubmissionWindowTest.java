@@ -0,0 +1,80 @@
+package com.jaiswal.server;
+
+import com.jaiswal.shared.ClientOp;
+import com.jaiswal.shared.shapes.Line;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SubmissionWindowTest {
+
+    @Test
+    void releasesOpsInOrderAndDropsDuplicates() {
+        SubmissionWindow window = new SubmissionWindow("alice", 0);
+        assertEquals(List.of(1L, 2L, 3L), sequences(window.accept(ops(1, 3))));
+        // A retried call after its ack was lost
+        assertTrue(window.accept(ops(1, 3)).isEmpty());
+        assertEquals(List.of(4L), sequences(window.accept(ops(2, 4))));
+        assertEquals(4, window.getAcked());
+    }
+
+    @Test
+    void holdsOpsThatOvertookAGap() {
+        SubmissionWindow window = new SubmissionWindow("alice", 0);
+        assertTrue(window.accept(ops(4, 6)).isEmpty());
+        assertTrue(window.accept(ops(2, 2)).isEmpty());
+        assertEquals(0, window.getAcked());
+        // Filling the gap releases everything held, once
+        assertEquals(List.of(1L, 2L, 3L, 4L, 5L, 6L), sequences(window.accept(ops(1, 3))));
+        assertEquals(6, window.getAcked());
+    }
+
+    @Test
+    void ignoresOpsBeyondTheWindow() {
+        SubmissionWindow window = new SubmissionWindow("alice", 0);
+        long far = SubmissionWindow.MAX_AHEAD + 1;
+        assertTrue(window.accept(ops(far, far)).isEmpty());
+        assertEquals(List.of(1L), sequences(window.accept(ops(1, 1))));
+        // The far op was not kept, the client sends it again
+        assertTrue(window.accept(ops(far - 1, far - 1)).isEmpty());
+        assertEquals(1, window.getAcked());
+    }
+
+    @Test
+    void continuesAfterTheClientsAck() {
+        // A node that never saw the session, say after failover
+        SubmissionWindow window = new SubmissionWindow("alice", 40);
+        assertTrue(window.accept(ops(35, 40)).isEmpty());
+        assertEquals(List.of(41L, 42L), sequences(window.accept(ops(39, 42))));
+    }
+
+    @Test
+    void expiresWhenIdle() {
+        SubmissionWindow window = new SubmissionWindow("alice", 0);
+        long now = System.currentTimeMillis();
+        assertTrue(window.isExpired(now + 60_001, 60_000));
+        window.accept(ops(1, 1));
+        assertFalse(window.isExpired(System.currentTimeMillis(), 60_000));
+    }
+
+    private static List<ClientOp> ops(long from, long to) {
+        List<ClientOp> ops = new ArrayList<>();
+        for (long sequence = from; sequence <= to; sequence++) {
+            ops.add(ClientOp.add(sequence, new Line(0, 0, 1, 1)));
+        }
+        return ops;
+    }
+
+    private static List<Long> sequences(List<ClientOp> ops) {
+        List<Long> sequences = new ArrayList<>();
+        for (ClientOp op : ops) {
+            sequences.add(op.getSequence());
+        }
+        return sequences;
+    }
+}
@@ -0,0 +1,197 @@
+package com.jaiswal.server;
+
+import com.jaiswal.shared.BoardMovedException;
+import com.jaiswal.shared.ElementId;
+import com.jaiswal.shared.IRemoteClient;
+import com.jaiswal.shared.shapes.Line;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.awt.Color;
+import java.lang.reflect.Proxy;
+import java.rmi.RemoteException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class WhiteboardServerBroadcastTest {
+    // Timer tasks queue callbacks too
+    private final Queue<Runnable> pool = new ConcurrentLinkedQueue<>();
+    // Callbacks as "user method", in the order they were made
+    private final List<String> calls = Collections.synchronizedList(new ArrayList<>());
+    private final Map<String, IRemoteClient> joined = new HashMap<>();
+    private final CountDownLatch delivered = new CountDownLatch(5);
+    // Released at the end; until then alice's ops never get through
+    private final CountDownLatch unblock = new CountDownLatch(1);
+    private ScheduledExecutorService timer;
+    private ExecutorService threads;
+    private WhiteboardServer server;
+    private volatile boolean kickDuringApply;
+    private volatile boolean aliceHangs;
+
+    @BeforeEach
+    void startTimer() {
+        timer = Executors.newSingleThreadScheduledExecutor();
+    }
+
+    @AfterEach
+    void shutdown() {
+        unblock.countDown();
+        timer.shutdownNow();
+        if (threads != null) {
+            threads.shutdownNow();
+        }
+    }
+
+    @Test
+    void kickOvertakesTheOpsQueuedForThatClient() throws RemoteException {
+        joinBoard(pool::add);
+        // The manager kicks someone while the first client's ops are being sent
+        kickDuringApply = true;
+        draw(1);
+        runCallbacks();
+        assertEquals(4, calls.size(), calls.toString());
+        assertTrue(calls.get(0).endsWith(" applyOps"), calls.toString());
+        String kicked = calls.get(0).startsWith("carol") ? "bob" : "carol";
+        assertEquals(Arrays.asList("kickedFromServer", "applyOps"), callsOf(kicked));
+    }
+
+    @Test
+    void hungClientDoesNotHoldUpTheOthers() throws Exception {
+        threads = Executors.newCachedThreadPool();
+        joinBoard(threads);
+        aliceHangs = true;
+        draw(1);
+        draw(2);
+        server.kickUser("carol");
+        // Bob gets both ops, carol both and her kick, while alice is stuck in the first call
+        assertTrue(delivered.await(5, TimeUnit.SECONDS), calls.toString());
+        assertEquals(Arrays.asList("applyOps", "applyOps"), callsOf("bob"));
+        assertTrue(callsOf("carol").contains("kickedFromServer"), calls.toString());
+        assertTrue(callsOf("alice").size() <= 1, calls.toString());
+    }
+
+    @Test
+    void boardMovedFollowsTheQueuedOps() throws Exception {
+        joinBoard(pool::add);
+        draw(1);
+        draw(2);
+        server.beginHandoff("other:1099");
+        server.completeHandoff();
+        runCallbacks();
+        for (String user : Arrays.asList("alice", "bob", "carol")) {
+            assertEquals(Arrays.asList("applyOps", "applyOps", "boardMoved"), callsOf(user));
+        }
+    }
+
+    @Test
+    void kickOnAMovedBoardIsRedirected() throws Exception {
+        joinBoard(pool::add);
+        server.beginHandoff("other:1099");
+        assertThrows(BoardMovedException.class, () -> server.kickUser("bob"));
+        runCallbacks();
+        assertEquals(Collections.emptyList(), callsOf("bob"));
+    }
+
+    @Test
+    void lostConnectionLeavesTheUserResumable() throws Exception {
+        joinBoard(pool::add);
+        // A connection that was replaced already is not the user's any more
+        server.connectionLost("bob", client("bob"));
+        assertTrue(server.getConnectedUsers().contains("bob"));
+
+        server.connectionLost("bob", joined.get("bob"));
+        assertFalse(server.getConnectedUsers().contains("bob"));
+        assertNotNull(server.resumeSession("bob", 2, 0, client("bob")));
+        assertTrue(server.getConnectedUsers().contains("bob"));
+    }
+
+    private void joinBoard(Executor callbackPool) throws RemoteException {
+        server = new WhiteboardServer("test", callbackPool, timer, null, new HibernationMetrics());
+        for (String user : Arrays.asList("alice", "bob", "carol")) {
+            joined.put(user, client(user));
+        }
+        assertTrue(server.requestJoin("alice", 1, joined.get("alice")));
+        assertTrue(server.requestJoin("bob", 2, joined.get("bob")));
+        assertTrue(server.requestJoin("carol", 3, joined.get("carol")));
+        server.answerJoinRequests("alice", Arrays.asList("bob", "carol"), Collections.emptyList());
+        runCallbacks();
+    }
+
+    private List<String> callsOf(String user) {
+        List<String> own = new ArrayList<>();
+        synchronized (calls) {
+            for (String call : calls) {
+                if (call.startsWith(user + " ")) {
+                    own.add(call.substring(user.length() + 1));
+                }
+            }
+        }
+        return own;
+    }
+
+    private void draw(int counter) throws RemoteException {
+        Line line = new Line(counter, counter, counter + 10, counter + 10, Color.BLACK, 1f);
+        line.setId(ElementId.of(1, counter));
+        server.drawShape(line);
+    }
+
+    private void runCallbacks() {
+        Runnable drain;
+        while ((drain = pool.poll()) != null) {
+            drain.run();
+        }
+    }
+
+    private IRemoteClient client(String username) {
+        return (IRemoteClient) Proxy.newProxyInstance(IRemoteClient.class.getClassLoader(),
+                new Class<?>[]{IRemoteClient.class},
+                (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "getUsername":
+                            return username;
+                        case "equals":
+                            return proxy == args[0];
+                        case "hashCode":
+                            return System.identityHashCode(proxy);
+                        case "applyOps":
+                            calls.add(username + " applyOps");
+                            if (kickDuringApply) {
+                                kickDuringApply = false;
+                                server.kickUser(username.equals("carol") ? "bob" : "carol");
+                            }
+                            if (aliceHangs && username.equals("alice")) {
+                                // An RMI call to a client that never answers
+                                unblock.await();
+                            }
+                            delivered.countDown();
+                            return null;
+                        case "kickedFromServer":
+                        case "boardMoved":
+                            calls.add(username + " " + method.getName());
+                            delivered.countDown();
+                            return null;
+                        default:
+                            return null;
+                    }
+                });
+    }
+}
@@ -0,0 +1,106 @@
+package com.jaiswal.server;
+
+import com.jaiswal.shared.BoardDigest;
+import com.jaiswal.shared.ElementId;
+import com.jaiswal.shared.IDrawable;
+import com.jaiswal.shared.IRemoteClient;
+import com.jaiswal.shared.shapes.Line;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.awt.Color;
+import java.lang.reflect.Proxy;
+import java.rmi.RemoteException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class WhiteboardServerDigestTest {
+    private static final int[] ROOT = {0};
+
+    private ScheduledExecutorService timer;
+    private WhiteboardServer server;
+
+    @BeforeEach
+    void joinBoard() throws RemoteException {
+        timer = Executors.newSingleThreadScheduledExecutor();
+        server = new WhiteboardServer("test", Runnable::run, timer, null, new HibernationMetrics());
+        assertTrue(server.requestJoin("alice", 1, client("alice")));
+    }
+
+    @AfterEach
+    void shutdown() {
+        timer.shutdownNow();
+    }
+
+    @Test
+    void answersAtAnOlderVersion() throws RemoteException {
+        List<IDrawable> drawn = draw(1, 20);
+        long[] then = digestOf(drawn).getBuckets();
+        draw(21, 40);
+
+        assertArrayEquals(BoardDigest.children(then, ROOT), server.getDigestNodes("alice", 20, ROOT));
+        int[] allBuckets = new int[BoardDigest.BUCKETS];
+        for (int i = 0; i < allBuckets.length; i++) {
+            allBuckets[i] = i;
+        }
+        List<IDrawable> elements = server.fetchBuckets("alice", 20, allBuckets);
+        assertEquals(drawn.size(), elements.size());
+        for (IDrawable drawable : elements) {
+            assertTrue(ElementId.counter(drawable.getId()) <= 20);
+        }
+    }
+
+    @Test
+    void refusesAcrossAClear() throws RemoteException {
+        draw(1, 5);
+        server.clearCanvas();
+        draw(6, 8);
+        assertNull(server.getDigestNodes("alice", 5, ROOT));
+        assertNull(server.fetchBuckets("alice", 5, new int[]{0}));
+        assertEquals(BoardDigest.children(new BoardDigest().getBuckets(), ROOT).length,
+                server.getDigestNodes("alice", 6, ROOT).length);
+        assertNull(server.getDigestNodes("bob", 8, ROOT));
+    }
+
+    private List<IDrawable> draw(int from, int to) throws RemoteException {
+        List<IDrawable> drawn = new ArrayList<>();
+        for (int counter = from; counter <= to; counter++) {
+            Line line = new Line(counter, counter, counter + 10, counter + 10, Color.BLACK, 1f);
+            line.setId(ElementId.of(1, counter));
+            server.drawShape(line);
+            drawn.add(line);
+        }
+        return drawn;
+    }
+
+    private static BoardDigest digestOf(List<IDrawable> elements) {
+        BoardDigest digest = new BoardDigest();
+        elements.forEach(digest::add);
+        return digest;
+    }
+
+    private static IRemoteClient client(String username) {
+        return (IRemoteClient) Proxy.newProxyInstance(IRemoteClient.class.getClassLoader(),
+                new Class<?>[]{IRemoteClient.class},
+                (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "getUsername":
+                            return username;
+                        case "equals":
+                            return proxy == args[0];
+                        case "hashCode":
+                            return System.identityHashCode(proxy);
+                        default:
+                            return null;
+                    }
+                });
+    }
+}
@@ -0,0 +1,93 @@
+package com.jaiswal.server;
+
+import com.jaiswal.shared.ElementCodec;
+import com.jaiswal.shared.ElementId;
+import com.jaiswal.shared.IDrawable;
+import com.jaiswal.shared.shapes.Line;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.awt.Color;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.rmi.RemoteException;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class WhiteboardServerHibernationTest {
+    @TempDir
+    Path dir;
+
+    private ScheduledExecutorService timer;
+    private Path file;
+    private WhiteboardServer server;
+
+    @BeforeEach
+    void createBoard() {
+        timer = Executors.newSingleThreadScheduledExecutor();
+        file = dir.resolve("test.sbd");
+        server = new WhiteboardServer("test", Runnable::run, timer, file, new HibernationMetrics());
+    }
+
+    @AfterEach
+    void shutdown() {
+        timer.shutdownNow();
+    }
+
+    @Test
+    void rewritesTheFileItWasReactivatedFrom() throws RemoteException {
+        draw(1, Color.BLACK);
+        draw(2, Color.BLACK);
+        hibernate();
+
+        // Reactivated from the mapped file, then changed and hibernated over that same file
+        draw(3, Color.BLUE);
+        hibernate();
+        Map<Long, IDrawable> state = server.getCurrentState();
+        assertEquals(3, state.size());
+        assertEquals(Color.BLUE.getRGB(), ElementCodec.colorOf(state.get(ElementId.of(1, 3))));
+
+        server.clearCanvas();
+        hibernate();
+        assertFalse(Files.exists(file));
+    }
+
+    @Test
+    void replicaReplacesAMappedCopy() throws IOException {
+        draw(1, Color.BLACK);
+        hibernate();
+        // Mapped again, then replaced by the primary's copy
+        assertEquals(1, server.getCurrentState().size());
+
+        HeapBoardStore primary = new HeapBoardStore();
+        primary.put(line(2, Color.RED));
+        primary.put(line(3, Color.RED));
+        server.installReplica(new BoardHandoff("test", BoardHandoff.encode(primary), 7, null));
+        Map<Long, IDrawable> state = server.getCurrentState();
+        assertEquals(2, state.size());
+        assertTrue(ElementCodec.sameContent(primary.get(ElementId.of(1, 2)), state.get(ElementId.of(1, 2))));
+        assertFalse(Files.exists(dir.resolve("test.sbd.tmp")));
+    }
+
+    private void hibernate() {
+        assertTrue(server.hibernateIfIdle(0, System.currentTimeMillis() + 1));
+    }
+
+    private void draw(int counter, Color color) throws RemoteException {
+        server.drawShape((Line) line(counter, color));
+    }
+
+    private static IDrawable line(int counter, Color color) {
+        Line line = new Line(counter, counter, counter + 10, counter + 10, color, 1f);
+        line.setId(ElementId.of(1, counter));
+        return line;
+    }
+}
@@ -0,0 +1,88 @@
+package com.jaiswal.shared;
+
+import com.jaiswal.shared.shapes.Line;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Measures BoardCrdt under concurrent editing: two replicas each draw N
+ * elements, setting a property on every tenth, then converge once by
+ * exchanging ops and once by merging whole states. Run by hand:
+ * <pre>
+ * java -cp target/classes:target/test-classes com.jaiswal.shared.BoardCrdtBenchmark [elements...]
+ * </pre>
+ */
+public final class BoardCrdtBenchmark {
+    private static final int ROUNDS = 3;
+
+    private BoardCrdtBenchmark() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        int[] sizes = {100_000, 500_000};
+        if (args.length > 0) {
+            sizes = new int[args.length];
+            for (int i = 0; i < args.length; i++) {
+                sizes[i] = Integer.parseInt(args[i]);
+            }
+        }
+        for (int n : sizes) {
+            // The last round is reported, earlier ones warm up the JIT
+            for (int round = 1; round <= ROUNDS; round++) {
+                String result = run(n);
+                if (round == ROUNDS) {
+                    System.out.println(result);
+                }
+            }
+        }
+    }
+
+    private static String run(int n) throws Exception {
+        BoardCrdt x = new BoardCrdt(10);
+        BoardCrdt y = new BoardCrdt(11);
+        List<CrdtOp> fromX = new ArrayList<>();
+        List<CrdtOp> fromY = new ArrayList<>();
+        long start = System.nanoTime();
+        for (int i = 0; i < n; i++) {
+            CrdtOp add = x.add(new Line(i, 0, i, 1));
+            fromX.add(add);
+            fromY.add(y.add(new Line(i, 1, i, 2)));
+            if (i % 10 == 0) {
+                fromX.add(x.set(add.getId(), "color", i));
+            }
+        }
+        double local = (System.nanoTime() - start) / 1e9;
+        BoardCrdt xState = BoardCrdtTest.copy(x);
+        BoardCrdt yState = BoardCrdtTest.copy(y);
+
+        // Collect the garbage of copying first, so it is not timed below
+        collectGarbage();
+        start = System.nanoTime();
+        for (CrdtOp op : fromY) {
+            x.apply(op);
+        }
+        for (CrdtOp op : fromX) {
+            y.apply(op);
+        }
+        double exchange = (System.nanoTime() - start) / 1e9;
+
+        collectGarbage();
+        start = System.nanoTime();
+        xState.merge(yState);
+        double merge = (System.nanoTime() - start) / 1e9;
+
+        int ops = fromX.size() + fromY.size();
+        String view = BoardCrdtTest.view(x);
+        boolean converged = view.equals(BoardCrdtTest.view(y)) && view.equals(BoardCrdtTest.view(xState));
+        return String.format("%d+%d concurrent adds: local %.2f M ops/s, op exchange %.2f M ops/s, "
+                        + "state merge %.0f ms (%.2f M elements/s), converged %b",
+                n, n, ops / local / 1e6, ops / exchange / 1e6, merge * 1e3, n / merge / 1e6, converged);
+    }
+
+    private static void collectGarbage() {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+    }
+}
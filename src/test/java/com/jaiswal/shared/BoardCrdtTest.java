@@ -0,0 +1,222 @@
+package com.jaiswal.shared;
+
+import com.jaiswal.shared.shapes.Line;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BoardCrdtTest {
+
+    @Test
+    void addWinsOverConcurrentClear() {
+        BoardCrdt a = new BoardCrdt(1);
+        BoardCrdt b = new BoardCrdt(2);
+        CrdtOp seenByBoth = a.add(new Line(0, 0, 1, 1));
+        b.apply(seenByBoth);
+
+        CrdtOp clear = a.clear();
+        CrdtOp concurrent = b.add(new Line(2, 2, 3, 3));
+        a.apply(concurrent);
+        b.apply(clear);
+
+        assertArrayEquals(new long[]{concurrent.getId()}, a.ids());
+        assertArrayEquals(a.ids(), b.ids());
+        assertNull(b.get(seenByBoth.getId()));
+    }
+
+    @Test
+    void concurrentSetsResolveToTheSameWinner() {
+        BoardCrdt a = new BoardCrdt(1);
+        BoardCrdt b = new BoardCrdt(2);
+        CrdtOp add = a.add(new Line(0, 0, 1, 1));
+        b.apply(add);
+
+        CrdtOp red = a.set(add.getId(), "color", "red");
+        CrdtOp blue = b.set(add.getId(), "color", "blue");
+        a.apply(blue);
+        b.apply(red);
+
+        // Equal Lamport times, the higher replica wins
+        assertEquals("blue", a.getProperty(add.getId(), "color"));
+        assertEquals("blue", b.getProperty(add.getId(), "color"));
+    }
+
+    @Test
+    void propertySetBeforeTheAddArrivesIsKept() {
+        BoardCrdt a = new BoardCrdt(1);
+        BoardCrdt b = new BoardCrdt(2);
+        BoardCrdt c = new BoardCrdt(3);
+        CrdtOp add = a.add(new Line(0, 0, 1, 1));
+        b.apply(add);
+        CrdtOp set = b.set(add.getId(), "z", 4);
+
+        c.apply(set);
+        assertNull(c.get(add.getId()));
+        c.apply(add);
+        assertNotNull(c.get(add.getId()));
+        assertEquals(4, c.getProperty(add.getId(), "z"));
+    }
+
+    @Test
+    void duplicateOpsAreIgnored() {
+        BoardCrdt a = new BoardCrdt(1);
+        BoardCrdt b = new BoardCrdt(2);
+        CrdtOp add = a.add(new Line(0, 0, 1, 1));
+        CrdtOp remove = a.remove(add.getId());
+        assertTrue(b.apply(add));
+        assertTrue(b.apply(remove));
+        assertFalse(b.apply(add));
+        assertEquals(0, b.size());
+        assertEquals(2L, (long) b.getSeen().get(1));
+    }
+
+    @Test
+    void replicasConvergeUnderReorderedDuplicatedOpsAndMerges() throws Exception {
+        Random random = new Random(42);
+        for (int round = 0; round < 40; round++) {
+            BoardCrdt[] replicas = simulate(random, 5, 150);
+            String expected = view(replicas[0]);
+            for (int i = 1; i < replicas.length; i++) {
+                assertEquals(expected, view(replicas[i]), "round " + round + " replica " + i);
+            }
+        }
+    }
+
+    @Test
+    void survivesSerialization() throws Exception {
+        BoardCrdt a = new BoardCrdt(1);
+        CrdtOp add = a.add(new Line(0, 0, 1, 1));
+        a.set(add.getId(), "color", "red");
+        a.remove(a.add(new Line(1, 1, 2, 2)).getId());
+
+        BoardCrdt copy = copy(a);
+        assertEquals(view(a), view(copy));
+        assertEquals(a.getSeen(), copy.getSeen());
+        // The copy keeps minting where the original left off
+        assertEquals(ElementId.of(1, 5), copy.add(new Line(3, 3, 4, 4)).getId());
+    }
+
+    /**
+     * Runs replicas making random edits, delivering each origin's ops in
+     * order but interleaved at random across origins, some twice, with
+     * occasional whole-state merges, until every op is delivered everywhere.
+     * Merges are rare: each copies the source's values, so frequent merges
+     * would make the replicas agree even if concurrent edits were resolved
+     * differently on each.
+     */
+    static BoardCrdt[] simulate(Random random, int count, int opsEach) throws IOException, ClassNotFoundException {
+        BoardCrdt[] replicas = new BoardCrdt[count];
+        // channels[from][to], FIFO per origin
+        List<List<Deque<CrdtOp>>> channels = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            replicas[i] = new BoardCrdt(i + 1);
+            List<Deque<CrdtOp>> out = new ArrayList<>();
+            for (int j = 0; j < count; j++) {
+                out.add(new ArrayDeque<>());
+            }
+            channels.add(out);
+        }
+
+        int[] made = new int[count];
+        int left = count * opsEach;
+        while (true) {
+            int action = random.nextInt(50);
+            if (left > 0 && action < 25) {
+                int i = random.nextInt(count);
+                if (made[i] == opsEach) {
+                    continue;
+                }
+                made[i]++;
+                left--;
+                CrdtOp op = randomEdit(random, replicas[i]);
+                for (int j = 0; j < count; j++) {
+                    if (j != i) {
+                        channels.get(i).get(j).add(op);
+                        if (random.nextInt(20) == 0) {
+                            channels.get(i).get(j).add(op);
+                        }
+                    }
+                }
+            } else if (action < 49) {
+                int from = random.nextInt(count);
+                int to = random.nextInt(count);
+                Deque<CrdtOp> channel = channels.get(from).get(to);
+                for (int n = 1 + random.nextInt(5); n > 0 && !channel.isEmpty(); n--) {
+                    replicas[to].apply(channel.poll());
+                }
+                if (left == 0 && allEmpty(channels)) {
+                    return replicas;
+                }
+            } else {
+                int from = random.nextInt(count);
+                int to = random.nextInt(count);
+                if (from != to) {
+                    replicas[to].merge(copy(replicas[from]));
+                }
+            }
+        }
+    }
+
+    private static CrdtOp randomEdit(Random random, BoardCrdt replica) {
+        long[] ids = replica.ids();
+        int kind = random.nextInt(200);
+        if (kind < 100 || ids.length == 0) {
+            return replica.add(new Line(random.nextInt(500), 0, 1, 1));
+        } else if (kind < 170) {
+            // Mostly the oldest elements, which every replica has, so sets from different replicas collide
+            long target = ids[random.nextInt(Math.min(ids.length, 4))];
+            return replica.set(target, random.nextBoolean() ? "color" : "z", random.nextInt(1000));
+        } else if (kind < 199) {
+            return replica.remove(ids[random.nextInt(ids.length)]);
+        }
+        return replica.clear();
+    }
+
+    private static boolean allEmpty(List<List<Deque<CrdtOp>>> channels) {
+        for (List<Deque<CrdtOp>> out : channels) {
+            for (Deque<CrdtOp> channel : out) {
+                if (!channel.isEmpty()) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    // Display order and properties, what a user would see
+    static String view(BoardCrdt replica) {
+        StringBuilder view = new StringBuilder();
+        for (long id : replica.ids()) {
+            view.append(ElementId.toString(id)).append('=')
+                    .append(replica.getProperty(id, "color")).append('/')
+                    .append(replica.getProperty(id, "z")).append(';');
+        }
+        return view.toString();
+    }
+
+    static BoardCrdt copy(BoardCrdt replica) throws IOException, ClassNotFoundException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(replica);
+        }
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            return (BoardCrdt) in.readObject();
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package com.jaiswal.shared;
+
+import com.jaiswal.shared.shapes.Line;
+import org.junit.jupiter.api.Test;
+
+import java.awt.Color;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BoardDigestTest {
+
+    @Test
+    void orderOfArrivalDoesNotMatter() {
+        List<IDrawable> elements = lines(1, 500);
+        BoardDigest inOrder = digestOf(elements);
+        Collections.shuffle(elements, new Random(3));
+        assertArrayEquals(inOrder.getBuckets(), digestOf(elements).getBuckets());
+    }
+
+    @Test
+    void removingUndoesAdding() {
+        List<IDrawable> elements = lines(1, 100);
+        BoardDigest digest = digestOf(elements);
+        long[] before = digest.getBuckets();
+        IDrawable extra = line(ElementId.of(9, 1), Color.RED);
+        digest.add(extra);
+        assertFalse(Arrays.equals(before, digest.getBuckets()));
+        digest.remove(extra);
+        assertArrayEquals(before, digest.getBuckets());
+    }
+
+    @Test
+    void differentContentShowsInOneBucketAndGroup() {
+        List<IDrawable> elements = lines(1, 1000);
+        BoardDigest server = digestOf(elements);
+        IDrawable changed = elements.get(400);
+        elements.set(400, line(changed.getId(), Color.RED));
+        BoardDigest client = digestOf(elements);
+
+        int bucket = BoardDigest.bucketOf(changed.getId());
+        assertEquals(1, differing(server.getBuckets(), client.getBuckets()));
+        assertTrue(server.getBuckets()[bucket] != client.getBuckets()[bucket]);
+
+        int[] root = {0};
+        long[] groups = server.children(root);
+        assertEquals(1, differing(groups, client.children(root)));
+        assertTrue(groups[bucket / BoardDigest.FANOUT] != client.children(root)[bucket / BoardDigest.FANOUT]);
+    }
+
+    @Test
+    void groupChildrenAreTheirBuckets() {
+        BoardDigest digest = digestOf(lines(1, 300));
+        long[] buckets = digest.getBuckets();
+        int[] groups = {BoardDigest.FIRST_GROUP, BoardDigest.FIRST_GROUP + 7, BoardDigest.FIRST_BUCKET - 1};
+        long[] children = digest.children(groups);
+        for (int n = 0; n < groups.length; n++) {
+            int first = (groups[n] - BoardDigest.FIRST_GROUP) * BoardDigest.FANOUT;
+            assertArrayEquals(Arrays.copyOfRange(buckets, first, first + BoardDigest.FANOUT),
+                    Arrays.copyOfRange(children, n * BoardDigest.FANOUT, (n + 1) * BoardDigest.FANOUT));
+        }
+        assertArrayEquals(children, BoardDigest.children(buckets, groups));
+    }
+
+    @Test
+    void sequentialIdsSpreadOverTheBuckets() {
+        int[] counts = new int[BoardDigest.BUCKETS];
+        int ids = BoardDigest.BUCKETS * 10;
+        for (int i = 1; i <= ids; i++) {
+            counts[BoardDigest.bucketOf(ElementId.of(1, i))]++;
+        }
+        int used = 0;
+        int fullest = 0;
+        for (int count : counts) {
+            used += count > 0 ? 1 : 0;
+            fullest = Math.max(fullest, count);
+        }
+        // Ten per bucket on average; ranges of IDs falling into few buckets would leave most empty
+        assertTrue(used > BoardDigest.BUCKETS * 0.99, used + " buckets used");
+        assertTrue(fullest < 40, "fullest bucket has " + fullest);
+    }
+
+    @Test
+    void onlyInnerNodesHaveChildren() {
+        BoardDigest digest = new BoardDigest();
+        assertThrows(IllegalArgumentException.class, () -> digest.children(new int[]{BoardDigest.FIRST_BUCKET}));
+        assertThrows(IllegalArgumentException.class, () -> digest.children(new int[]{-1}));
+    }
+
+    private static int differing(long[] a, long[] b) {
+        int count = 0;
+        for (int i = 0; i < a.length; i++) {
+            count += a[i] != b[i] ? 1 : 0;
+        }
+        return count;
+    }
+
+    private static BoardDigest digestOf(List<IDrawable> elements) {
+        BoardDigest digest = new BoardDigest();
+        elements.forEach(digest::add);
+        return digest;
+    }
+
+    private static List<IDrawable> lines(int replica, int count) {
+        List<IDrawable> elements = new ArrayList<>(count);
+        for (int i = 1; i <= count; i++) {
+            elements.add(line(ElementId.of(replica, i), Color.BLACK));
+        }
+        return elements;
+    }
+
+    private static IDrawable line(long id, Color color) {
+        IDrawable line = new Line(0, 0, 10, 10, color, 1f);
+        line.setId(id);
+        return line;
+    }
+}
@@ -0,0 +1,81 @@
+package com.jaiswal.shared;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class CompressedSocketTest {
+    private final CompressingSocketFactory factory = new CompressingSocketFactory(true, 16, 6);
+    private ServerSocket server;
+
+    @BeforeEach
+    void listen() throws IOException {
+        server = factory.createServerSocket(0);
+    }
+
+    @AfterEach
+    void close() throws IOException {
+        server.close();
+    }
+
+    @Test
+    void framesRoundTrip() throws IOException {
+        byte[] data = new byte[200_000];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) (i % 7);
+        }
+        try (Socket client = factory.createSocket("localhost", server.getLocalPort());
+             Socket accepted = server.accept()) {
+            OutputStream out = client.getOutputStream();
+            out.write(data);
+            out.flush();
+            byte[] received = new byte[data.length];
+            InputStream in = accepted.getInputStream();
+            for (int read = 0; read < received.length; ) {
+                read += in.read(received, read, received.length - read);
+            }
+            assertArrayEquals(data, received);
+        }
+    }
+
+    @Test
+    void negativeLengthIsRejected() throws IOException {
+        assertRejected(0, -1);
+    }
+
+    @Test
+    void oversizedLengthIsRejected() throws IOException {
+        // A stored frame claiming far more than a frame ever holds
+        assertRejected(0, Integer.MAX_VALUE);
+    }
+
+    @Test
+    void oversizedCompressedLengthIsRejected() throws IOException {
+        assertRejected(1, 1024, Integer.MAX_VALUE);
+    }
+
+    private void assertRejected(int kind, int... lengths) throws IOException {
+        try (Socket client = new Socket(InetAddress.getLoopbackAddress(), server.getLocalPort());
+             Socket accepted = server.accept()) {
+            DataOutputStream out = new DataOutputStream(client.getOutputStream());
+            out.writeByte(kind);
+            for (int length : lengths) {
+                out.writeInt(length);
+            }
+            out.flush();
+            InputStream in = accepted.getInputStream();
+            assertThrows(IOException.class, in::read);
+        }
+    }
+}
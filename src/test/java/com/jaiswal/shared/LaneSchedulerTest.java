@@ -0,0 +1,61 @@
+package com.jaiswal.shared;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class LaneSchedulerTest {
+    private static final int ALL = (1 << DeliveryLane.values().length) - 1;
+
+    @Test
+    void nothingWaitingPicksNothing() {
+        assertNull(new LaneScheduler().next(0));
+    }
+
+    @Test
+    void controlGoesFirstEveryTime() {
+        LaneScheduler scheduler = new LaneScheduler();
+        for (int i = 0; i < 100; i++) {
+            assertEquals(DeliveryLane.CONTROL, scheduler.next(ALL));
+        }
+        // Control's sends counted, so the lanes behind presence are due a turn before it goes again
+        int rest = ALL & ~bit(DeliveryLane.CONTROL);
+        assertEquals(DeliveryLane.LIVE, scheduler.next(rest));
+        assertEquals(DeliveryLane.BULK, scheduler.next(rest));
+        assertEquals(DeliveryLane.PRESENCE, scheduler.next(rest));
+    }
+
+    @Test
+    void waitingLaneGetsATurnAtItsStarvationLimit() {
+        LaneScheduler scheduler = new LaneScheduler();
+        int waiting = bit(DeliveryLane.LIVE) | bit(DeliveryLane.BULK);
+        int limit = DeliveryLane.BULK.getStarvationLimit();
+        for (int round = 0; round < 3; round++) {
+            for (int i = 0; i < limit; i++) {
+                assertEquals(DeliveryLane.LIVE, scheduler.next(waiting));
+            }
+            assertEquals(DeliveryLane.BULK, scheduler.next(waiting));
+        }
+    }
+
+    @Test
+    void laneWithNothingWaitingStartsCountingAgain() {
+        LaneScheduler scheduler = new LaneScheduler();
+        int waiting = bit(DeliveryLane.LIVE) | bit(DeliveryLane.BULK);
+        int limit = DeliveryLane.BULK.getStarvationLimit();
+        for (int i = 0; i < limit - 1; i++) {
+            assertEquals(DeliveryLane.LIVE, scheduler.next(waiting));
+        }
+        // Bulk ran dry for one send, so it waits its full limit again
+        assertEquals(DeliveryLane.LIVE, scheduler.next(bit(DeliveryLane.LIVE)));
+        for (int i = 0; i < limit; i++) {
+            assertEquals(DeliveryLane.LIVE, scheduler.next(waiting));
+        }
+        assertEquals(DeliveryLane.BULK, scheduler.next(waiting));
+    }
+
+    private static int bit(DeliveryLane lane) {
+        return 1 << lane.ordinal();
+    }
+}
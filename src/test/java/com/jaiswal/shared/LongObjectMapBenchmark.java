@@ -0,0 +1,106 @@
+package com.jaiswal.shared;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Compares LongObjectMap with HashMap on memory footprint, put and lookup
+ * time, for the key patterns of a board: one client's sequential IDs, IDs
+ * of a board file without replicas (replica 0), and IDs of many clients
+ * interleaved. Run by hand:
+ * <pre>
+ * java -cp target/classes:target/test-classes com.jaiswal.shared.LongObjectMapBenchmark [elements]
+ * </pre>
+ */
+public final class LongObjectMapBenchmark {
+    private static final int ROUNDS = 5;
+
+    private LongObjectMapBenchmark() {
+    }
+
+    public static void main(String[] args) {
+        int elements = args.length > 0 ? Integer.parseInt(args[0]) : 200_000;
+        Random random = new Random(1);
+
+        long[] sequential = new long[elements];
+        for (int i = 0; i < elements; i++) {
+            sequential[i] = ElementId.of(0, i + 1);
+        }
+        long[] interleaved = new long[elements];
+        long[] counters = new long[64];
+        for (int i = 0; i < elements; i++) {
+            int replica = 1 + random.nextInt(counters.length - 1);
+            interleaved[i] = ElementId.of(replica, ++counters[replica]);
+        }
+        // A v1 board file followed by drawing from a few clients: the case that clusters a weak hash
+        long[] mixed = new long[elements + elements / 10];
+        System.arraycopy(sequential, 0, mixed, 0, elements);
+        for (int i = elements; i < mixed.length; i++) {
+            mixed[i] = ElementId.of(1 + random.nextInt(8), 1 + random.nextInt(1 << 20));
+        }
+
+        System.out.printf("%d elements, best of %d rounds%n", elements, ROUNDS);
+        run("sequential", sequential);
+        run("interleaved", interleaved);
+        run("v1 file + clients", mixed);
+    }
+
+    private static void run(String pattern, long[] keys) {
+        long bestPrimitivePut = Long.MAX_VALUE;
+        long bestBoxedPut = Long.MAX_VALUE;
+        long bestPrimitiveGet = Long.MAX_VALUE;
+        long bestBoxedGet = Long.MAX_VALUE;
+        long primitiveBytes = 0;
+        long boxedBytes = 0;
+        long sink = 0;
+        for (int round = 0; round < ROUNDS; round++) {
+            long before = usedMemory();
+            long start = System.nanoTime();
+            LongObjectMap<Object> primitive = new LongObjectMap<>();
+            for (long key : keys) {
+                primitive.put(key, Boolean.TRUE);
+            }
+            bestPrimitivePut = Math.min(bestPrimitivePut, System.nanoTime() - start);
+            primitiveBytes = usedMemory() - before;
+
+            start = System.nanoTime();
+            for (long key : keys) {
+                sink += primitive.get(key) != null ? 1 : 0;
+            }
+            bestPrimitiveGet = Math.min(bestPrimitiveGet, System.nanoTime() - start);
+            primitive = null;
+
+            before = usedMemory();
+            start = System.nanoTime();
+            Map<Long, Object> boxed = new HashMap<>();
+            for (long key : keys) {
+                boxed.put(key, Boolean.TRUE);
+            }
+            bestBoxedPut = Math.min(bestBoxedPut, System.nanoTime() - start);
+            boxedBytes = usedMemory() - before;
+
+            start = System.nanoTime();
+            for (long key : keys) {
+                sink += boxed.get(key) != null ? 1 : 0;
+            }
+            bestBoxedGet = Math.min(bestBoxedGet, System.nanoTime() - start);
+            boxed = null;
+        }
+
+        System.out.printf("%-18s LongObjectMap %6.1f B/entry put %6.1f ns get %6.1f ns | "
+                        + "HashMap %6.1f B/entry put %6.1f ns get %6.1f ns%s%n",
+                pattern, (double) primitiveBytes / keys.length, (double) bestPrimitivePut / keys.length,
+                (double) bestPrimitiveGet / keys.length, (double) boxedBytes / keys.length,
+                (double) bestBoxedPut / keys.length, (double) bestBoxedGet / keys.length,
+                sink == 0 ? " (nothing found)" : "");
+    }
+
+    private static long usedMemory() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
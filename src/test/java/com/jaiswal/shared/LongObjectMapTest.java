@@ -0,0 +1,90 @@
+package com.jaiswal.shared;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LongObjectMapTest {
+
+    @Test
+    void putGetRemoveMatchHashMap() {
+        LongObjectMap<Long> map = new LongObjectMap<>();
+        Map<Long, Long> expected = new HashMap<>();
+        Random random = new Random(7);
+        for (int i = 0; i < 200_000; i++) {
+            // Few distinct keys, so removals hit and probe chains get shifted back
+            long key = ElementId.of(random.nextInt(4), 1 + random.nextInt(20_000));
+            if (random.nextInt(3) == 0) {
+                assertEquals(expected.remove(key), map.remove(key));
+            } else {
+                assertEquals(expected.put(key, (long) i), map.put(key, (long) i));
+            }
+        }
+        assertEquals(expected.size(), map.size());
+        expected.forEach((key, value) -> assertEquals(value, map.get(key)));
+        assertEquals(expected, map.toMap());
+    }
+
+    @Test
+    void clearEmptiesTheMap() {
+        LongObjectMap<String> map = new LongObjectMap<>();
+        for (long key = 0; key < 100; key++) {
+            map.put(key, "v" + key);
+        }
+        map.clear();
+        assertTrue(map.isEmpty());
+        assertNull(map.get(5));
+        assertFalse(map.containsKey(5));
+    }
+
+    @Test
+    void intMapMatchesHashMap() {
+        LongIntMap map = new LongIntMap();
+        Map<Long, Integer> expected = new HashMap<>();
+        Random random = new Random(11);
+        for (int i = 0; i < 100_000; i++) {
+            long key = ElementId.of(random.nextInt(3), 1 + random.nextInt(10_000));
+            if (random.nextInt(3) == 0) {
+                Integer removed = expected.remove(key);
+                assertEquals(removed == null ? -1 : removed, map.remove(key, -1));
+            } else {
+                expected.put(key, i);
+                map.put(key, i);
+            }
+        }
+        assertEquals(expected.size(), map.size());
+        expected.forEach((key, value) -> assertEquals((int) value, map.get(key, -1)));
+    }
+
+    @Test
+    void sequentialKeysDoNotFormLongRuns() {
+        // A table as full as the maps let it get, filled with one client's sequential IDs
+        int capacity = 1 << 16;
+        int mask = capacity - 1;
+        boolean[] used = new boolean[capacity];
+        int keys = (int) (capacity * 0.6f);
+        for (int i = 0; i < keys; i++) {
+            int slot = LongObjectMap.mix(ElementId.of(0, i + 1)) & mask;
+            while (used[slot]) {
+                slot = (slot + 1) & mask;
+            }
+            used[slot] = true;
+        }
+
+        int longest = 0;
+        int run = 0;
+        for (int i = 0; i < capacity * 2; i++) {
+            run = used[i & mask] ? run + 1 : 0;
+            longest = Math.max(longest, run);
+        }
+        // Random placement gives runs of a few dozen at this load; clustering gives thousands
+        assertTrue(longest < 200, "longest run of filled slots " + longest);
+    }
+}
@@ -0,0 +1,154 @@
+package com.jaiswal.transport;
+
+import com.jaiswal.shared.DeliveryLane;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Arrays;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class FrameConnectionTest {
+    // Flags in the length prefix of a slice, as on the wire
+    private static final int SLICE = 0x80000000;
+    private static final int LAST_SLICE = 0x40000000;
+
+    private FrameLoop loop;
+
+    @BeforeEach
+    void startLoop() throws IOException {
+        loop = new FrameLoop("test-loop");
+    }
+
+    @AfterEach
+    void stopLoop() {
+        loop.close();
+    }
+
+    @Test
+    void urgentFrameGoesBetweenTheSlicesOfALargeOne() throws IOException {
+        try (ServerSocketChannel server = ServerSocketChannel.open()) {
+            // Small buffers, so the socket cannot take the whole large frame at once
+            server.setOption(StandardSocketOptions.SO_RCVBUF, 64 * 1024);
+            server.bind(new InetSocketAddress("127.0.0.1", 0));
+            FrameConnection connection = loop.connect((InetSocketAddress) server.getLocalAddress(), ignoring());
+            try (SocketChannel peer = server.accept()) {
+                // The peer is not reading yet, so most of the large frame stays queued
+                byte[] large = pattern(4 * 1024 * 1024);
+                byte[] kick = pattern(10);
+                connection.send(frame(large), DeliveryLane.BULK);
+                connection.send(frame(kick), DeliveryLane.CONTROL);
+
+                ByteBuffer reassembled = ByteBuffer.allocate(large.length);
+                boolean kickSeen = false;
+                int slices = 0;
+                while (reassembled.hasRemaining()) {
+                    int prefix = readInt(peer);
+                    byte[] contents = readFully(peer, prefix & ~(SLICE | LAST_SLICE));
+                    if ((prefix & SLICE) == 0) {
+                        assertArrayEquals(kick, contents);
+                        kickSeen = true;
+                        continue;
+                    }
+                    slices++;
+                    assertTrue(contents.length <= 32 * 1024, "slice of " + contents.length + " bytes");
+                    reassembled.put(contents);
+                    assertEquals(!reassembled.hasRemaining(), (prefix & LAST_SLICE) != 0);
+                }
+                assertTrue(kickSeen, "the kick waited for the whole frame");
+                assertEquals(large.length / (32 * 1024), slices);
+                assertArrayEquals(large, reassembled.array());
+            }
+        }
+    }
+
+    @Test
+    void slicesAreReassembledAroundWholeFrames() throws Exception {
+        BlockingQueue<byte[]> received = new LinkedBlockingQueue<>();
+        int port;
+        try (ServerSocket probe = new ServerSocket(0)) {
+            port = probe.getLocalPort();
+        }
+        loop.listen(new InetSocketAddress("127.0.0.1", port), connection -> collecting(received));
+        try (SocketChannel peer = SocketChannel.open(new InetSocketAddress("127.0.0.1", port))) {
+            byte[] large = pattern(100_000);
+            byte[] small = pattern(7);
+            ByteBuffer wire = ByteBuffer.allocate(large.length + small.length + 64);
+            wire.putInt(40_000 | SLICE).put(large, 0, 40_000);
+            wire.putInt(small.length).put(small);
+            wire.putInt(40_000 | SLICE).put(large, 40_000, 40_000);
+            wire.putInt(20_000 | SLICE | LAST_SLICE).put(large, 80_000, 20_000);
+            wire.flip();
+            while (wire.hasRemaining()) {
+                peer.write(wire);
+            }
+
+            assertArrayEquals(small, received.poll(5, TimeUnit.SECONDS));
+            byte[] whole = received.poll(5, TimeUnit.SECONDS);
+            assertNotNull(whole);
+            assertArrayEquals(large, whole);
+        }
+    }
+
+    private static FrameLoop.Listener ignoring() {
+        return collecting(new LinkedBlockingQueue<>());
+    }
+
+    private static FrameLoop.Listener collecting(BlockingQueue<byte[]> received) {
+        return new FrameLoop.Listener() {
+            @Override
+            public void onFrame(FrameConnection connection, ByteBuffer frame) {
+                byte[] contents = new byte[frame.remaining()];
+                frame.get(contents);
+                received.add(contents);
+            }
+
+            @Override
+            public void onClosed(FrameConnection connection) {
+            }
+        };
+    }
+
+    private static ByteBuffer frame(byte[] contents) {
+        ByteBuffer frame = ByteBuffer.allocate(4 + contents.length);
+        frame.putInt(contents.length).put(contents);
+        frame.flip();
+        return frame;
+    }
+
+    private static byte[] pattern(int length) {
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            bytes[i] = (byte) (i * 31 + (i >>> 8));
+        }
+        return bytes;
+    }
+
+    private static int readInt(SocketChannel channel) throws IOException {
+        return ByteBuffer.wrap(readFully(channel, 4)).getInt();
+    }
+
+    private static byte[] readFully(SocketChannel channel, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) < 0) {
+                throw new IOException("Closed after " + buffer.position() + " of " + length + " bytes");
+            }
+        }
+        return Arrays.copyOf(buffer.array(), length);
+    }
+}
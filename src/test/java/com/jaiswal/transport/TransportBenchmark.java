@@ -0,0 +1,191 @@
+package com.jaiswal.transport;
+
+import com.jaiswal.server.BoardRegistry;
+import com.jaiswal.shared.BoardOp;
+import com.jaiswal.shared.ElementId;
+import com.jaiswal.shared.IRemoteClient;
+import com.jaiswal.shared.IRemoteWhiteboard;
+import com.jaiswal.shared.PresenceOp;
+import com.jaiswal.shared.shapes.Line;
+
+import java.awt.Color;
+import java.io.Closeable;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Compares the RMI and NIO transports over loopback: latency of single
+ * drawShape calls, and the rate sustained by several concurrent callers
+ * together with the rate a second client receives the broadcasts at.
+ * Run by hand:
+ * <pre>
+ * java -Djava.awt.headless=true -cp target/classes:target/test-classes com.jaiswal.transport.TransportBenchmark
+ * </pre>
+ */
+public final class TransportBenchmark {
+    private static final int WARMUP_CALLS = 3000;
+    private static final int TIMED_CALLS = 10_000;
+    private static final int CALLERS = 8;
+    private static final int SUSTAINED_SECONDS = 3;
+    private static final long DRAIN_TIMEOUT_NANOS = 120_000_000_000L;
+
+    private final AtomicLong counter = new AtomicLong();
+
+    private TransportBenchmark() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        PrintStream out = System.out;
+        PrintStream err = System.err;
+        PrintStream silent = new PrintStream(OutputStream.nullOutputStream());
+        int port = 19_100;
+        TransportBenchmark benchmark = new TransportBenchmark();
+        // Each transport twice, the first round warms up the JVM
+        for (Transport transport : new Transport[]{
+                new RmiTransport(), new NioTransport(), new RmiTransport(), new NioTransport()}) {
+            // The server logs every call, and broadcasts still queued when a round ends fail
+            System.setOut(silent);
+            System.setErr(silent);
+            String result;
+            try {
+                result = benchmark.run(transport, ++port);
+            } finally {
+                System.setOut(out);
+                System.setErr(err);
+            }
+            out.println(result);
+        }
+        System.exit(0);
+    }
+
+    private String run(Transport transport, int port) throws Exception {
+        Closeable endpoint = transport.serve(new BoardRegistry("localhost", port), "localhost", port);
+        IRemoteWhiteboard board = transport.connect("localhost", port, "bench");
+        Sink manager = new Sink("manager");
+        board.requestJoin(manager.name, 1, transport.exportClient(manager));
+        // A second client only receives the broadcasts
+        IRemoteWhiteboard viewerBoard = transport.connect("localhost", port, "bench");
+        Sink viewer = new Sink("viewer");
+        viewerBoard.requestJoin(viewer.name, 2, transport.exportClient(viewer));
+        board.answerJoinRequests(manager.name, List.of(viewer.name), List.of());
+
+        for (int i = 0; i < WARMUP_CALLS; i++) {
+            board.drawShape(nextLine(i));
+        }
+        long[] latency = new long[TIMED_CALLS];
+        for (int i = 0; i < TIMED_CALLS; i++) {
+            long start = System.nanoTime();
+            board.drawShape(nextLine(i));
+            latency[i] = System.nanoTime() - start;
+        }
+        Arrays.sort(latency);
+
+        AtomicLong calls = new AtomicLong();
+        AtomicBoolean stop = new AtomicBoolean();
+        ExecutorService callers = Executors.newFixedThreadPool(CALLERS);
+        List<Future<?>> running = new ArrayList<>();
+        for (int c = 0; c < CALLERS; c++) {
+            running.add(callers.submit(() -> {
+                for (int i = 0; !stop.get(); i++) {
+                    board.drawShape(nextLine(i));
+                    calls.incrementAndGet();
+                }
+                return null;
+            }));
+        }
+        Thread.sleep(1000);
+        long calls0 = calls.get();
+        long received0 = viewer.received.get();
+        Thread.sleep(SUSTAINED_SECONDS * 1000L);
+        long sent = (calls.get() - calls0) / SUSTAINED_SECONDS;
+        long received = (viewer.received.get() - received0) / SUSTAINED_SECONDS;
+        stop.set(true);
+        for (Future<?> caller : running) {
+            caller.get();
+        }
+        callers.shutdown();
+
+        // Let the viewer catch up, so a backlog does not spill into the next round
+        long total = WARMUP_CALLS + TIMED_CALLS + calls.get();
+        long stopped = System.nanoTime();
+        while (viewer.received.get() < total && System.nanoTime() - stopped < DRAIN_TIMEOUT_NANOS) {
+            Thread.sleep(10);
+        }
+        double drained = (System.nanoTime() - stopped) / 1e9;
+
+        viewerBoard.disconnect(viewer.name);
+        board.disconnect(manager.name);
+        transport.unexportClient(manager);
+        transport.unexportClient(viewer);
+        endpoint.close();
+        return String.format("%-4s drawShape p50 %5.0f us, p99 %6.0f us; %6d calls/s from %d callers, viewer received %6d ops/s, caught up %.1f s later",
+                transport.getName(), latency[TIMED_CALLS / 2] / 1e3, latency[TIMED_CALLS * 99 / 100] / 1e3,
+                sent, CALLERS, received, drained);
+    }
+
+    private Line nextLine(int i) {
+        Line line = new Line(i % 800, i % 600, i % 800 + 5, i % 600 + 5, Color.BLACK, 2f);
+        line.setId(ElementId.of(1, counter.incrementAndGet()));
+        return line;
+    }
+
+    // Counts broadcast ops, ignores everything else
+    private static final class Sink implements IRemoteClient {
+        final String name;
+        final AtomicLong received = new AtomicLong();
+
+        Sink(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public void applyOps(List<BoardOp> ops) {
+            received.addAndGet(ops.size());
+        }
+
+        @Override
+        public void updateUserList(long presenceVersion, List<PresenceOp> users) {
+        }
+
+        @Override
+        public void presenceChanged(List<PresenceOp> changes) {
+        }
+
+        @Override
+        public void receiveNotification(String message) {
+        }
+
+        @Override
+        public void joinRequestResult(boolean approved) {
+        }
+
+        @Override
+        public void joinRequestsPending(List<String> usernames) {
+        }
+
+        @Override
+        public void kickedFromServer() {
+        }
+
+        @Override
+        public void managerClosedWhiteboard() {
+        }
+
+        @Override
+        public void boardMoved(String boardId, String owner) {
+        }
+
+        @Override
+        public String getUsername() {
+            return name;
+        }
+    }
+}